@@ -0,0 +1,136 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tr.com.serkanozal.jcommon.map;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * @author Serkan ÖZAL
+ * 
+ * Benchmarks thread-safe maps ({@link ConcurrentJudyHashMap} and {@link java.util.concurrent.ConcurrentHashMap}) 
+ * under concurrent writes. Thread count of {@link #put(ThreadState)} and {@link #removeAndPut(ThreadState)} 
+ * is given by <code>-t</code> option (or by {@link JudyHashMapBenchmarkRunner}), 
+ * while the <code>readWrite</code> group runs 3 readers for every writer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms16g", "-Xmx16g"})
+public class ConcurrentJudyHashMapBenchmark {
+
+	private final static int LOOKUP_COUNT = 1 << 16;
+	private final static int LOOKUP_MASK = LOOKUP_COUNT - 1;
+	
+	@Param({"CONCURRENT_JUDY_HASH_MAP", "CONCURRENT_HASH_MAP"})
+	MapType mapType;
+	
+	@Param({"SEQUENTIAL", "RANDOM", "CLUSTERED"})
+	KeyDistribution keyDistribution;
+	
+	@Param({"1000", "100000", "1000000", "10000000", "50000000"})
+	int size;
+	
+	Integer[] keys;
+	Map<Integer, Integer> map;
+	
+	@Setup(Level.Trial)
+	public void setUp() {
+		if (!mapType.isThreadSafe()) {
+			throw new IllegalArgumentException(mapType + " is not thread-safe");
+		}
+		keys = keyDistribution.keys(size);
+		map = mapType.create();
+		for (Integer key : keys) {
+			map.put(key, key);
+		}
+	}
+	
+	@State(Scope.Thread)
+	public static class ThreadState {
+		
+		final int[] positions = new int[LOOKUP_COUNT];
+		int next;
+		
+		@Setup(Level.Trial)
+		public void setUp(ConcurrentJudyHashMapBenchmark benchmark) {
+			Random random = new Random(Thread.currentThread().getId());
+			for (int i = 0; i < LOOKUP_COUNT; i++) {
+				positions[i] = random.nextInt(benchmark.size);
+			}
+		}
+		
+		int nextPosition() {
+			return positions[next++ & LOOKUP_MASK];
+		}
+		
+	}
+	
+	@Benchmark
+	public Integer put(ThreadState state) {
+		Integer key = keys[state.nextPosition()];
+		return map.put(key, key);
+	}
+	
+	/**
+	 * Removed key may be put back by another thread in the meantime, 
+	 * so value is put back only if it was removed by this thread.
+	 */
+	@Benchmark
+	public Integer removeAndPut(ThreadState state) {
+		Integer key = keys[state.nextPosition()];
+		Integer value = map.remove(key);
+		if (value != null) {
+			map.put(key, value);
+		}
+		return value;
+	}
+	
+	@Benchmark
+	@Group("readWrite")
+	@GroupThreads(3)
+	public Integer readWriteGet(ThreadState state) {
+		return map.get(keys[state.nextPosition()]);
+	}
+	
+	@Benchmark
+	@Group("readWrite")
+	@GroupThreads(1)
+	public Integer readWritePut(ThreadState state) {
+		Integer key = keys[state.nextPosition()];
+		return map.put(key, key);
+	}
+	
+}
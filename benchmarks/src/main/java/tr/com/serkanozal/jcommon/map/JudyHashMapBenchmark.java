@@ -0,0 +1,156 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tr.com.serkanozal.jcommon.map;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * @author Serkan ÖZAL
+ * 
+ * Benchmarks single key operations and iteration of {@link JudyHashMap} against 
+ * {@link java.util.HashMap} and {@link java.util.concurrent.ConcurrentHashMap} 
+ * on a map filled with <code>size</code> keys of the given distribution.
+ * 
+ * Writes keep the size of map steady (a put replaces the value of an existing key 
+ * and a removed key is put back), so every invocation measures the same map. 
+ * Reads don't modify the map, so {@link #get(ThreadState)} can also be run with multiple threads 
+ * for all map types. {@link #fill()} measures building the whole map from scratch.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms16g", "-Xmx16g"})
+public class JudyHashMapBenchmark {
+
+	// Count of random positions of keys pre-generated for every thread
+	private final static int LOOKUP_COUNT = 1 << 16;
+	private final static int LOOKUP_MASK = LOOKUP_COUNT - 1;
+	
+	@Param({"JUDY_HASH_MAP", "HASH_MAP", "CONCURRENT_HASH_MAP"})
+	MapType mapType;
+	
+	@Param({"SEQUENTIAL", "RANDOM", "CLUSTERED"})
+	KeyDistribution keyDistribution;
+	
+	@Param({"1000", "100000", "1000000", "10000000", "50000000"})
+	int size;
+	
+	Integer[] keys;
+	Map<Integer, Integer> map;
+	
+	@Setup(Level.Trial)
+	public void setUp() {
+		keys = keyDistribution.keys(size);
+		map = mapType.create();
+		for (Integer key : keys) {
+			map.put(key, key);
+		}
+	}
+	
+	/**
+	 * Holds random positions of keys for a thread, 
+	 * so threads don't share a position counter and don't access keys in the same order.
+	 */
+	@State(Scope.Thread)
+	public static class ThreadState {
+		
+		final int[] positions = new int[LOOKUP_COUNT];
+		int next;
+		
+		@Setup(Level.Trial)
+		public void setUp(JudyHashMapBenchmark benchmark) {
+			Random random = new Random(Thread.currentThread().getId());
+			for (int i = 0; i < LOOKUP_COUNT; i++) {
+				positions[i] = random.nextInt(benchmark.size);
+			}
+		}
+		
+		int nextPosition() {
+			return positions[next++ & LOOKUP_MASK];
+		}
+		
+	}
+	
+	@Benchmark
+	public Integer get(ThreadState state) {
+		return map.get(keys[state.nextPosition()]);
+	}
+	
+	@Benchmark
+	public Integer put(ThreadState state) {
+		Integer key = keys[state.nextPosition()];
+		return map.put(key, key);
+	}
+	
+	@Benchmark
+	public Integer removeAndPut(ThreadState state) {
+		Integer key = keys[state.nextPosition()];
+		Integer value = map.remove(key);
+		map.put(key, value);
+		return value;
+	}
+	
+	/**
+	 * Iterates all entries, so score is the time of whole iteration, not of a single entry.
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	@Warmup(iterations = 10)
+	@Measurement(iterations = 10)
+	public void iterate(Blackhole blackhole) {
+		for (Map.Entry<Integer, Integer> entry : map.entrySet()) {
+			blackhole.consume(entry.getKey());
+			blackhole.consume(entry.getValue());
+		}
+	}
+	
+	/**
+	 * Puts all keys into an empty map, so score includes growth of map (resizing or node promotions).
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	@Warmup(iterations = 10)
+	@Measurement(iterations = 10)
+	public Map<Integer, Integer> fill() {
+		Map<Integer, Integer> filledMap = mapType.create();
+		for (Integer key : keys) {
+			filledMap.put(key, key);
+		}
+		return filledMap;
+	}
+	
+}
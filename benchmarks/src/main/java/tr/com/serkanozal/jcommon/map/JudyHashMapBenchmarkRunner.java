@@ -0,0 +1,79 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tr.com.serkanozal.jcommon.map;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * @author Serkan ÖZAL
+ * 
+ * Runs Judy map benchmarks with {@link GCProfiler}, so allocation rates and GC counts 
+ * are reported next to the scores. Benchmarks which are safe to run concurrently are run 
+ * for 1, 2, 4 and 8 threads (up to available processors) and the others by a single thread.
+ * Results are written as JSON files into the working directory.
+ * 
+ * If there are arguments, they are passed to JMH as they are 
+ * (for example <code>-p size=1000,100000 -prof gc JudyHashMapBenchmark.get</code>).
+ */
+public class JudyHashMapBenchmarkRunner {
+
+	private final static int[] THREAD_COUNTS = { 1, 2, 4, 8 };
+	
+	private JudyHashMapBenchmarkRunner() {
+		
+	}
+	
+	public static void main(String[] args) throws Exception {
+		if (args.length > 0) {
+			org.openjdk.jmh.Main.main(args);
+			return;
+		}
+		
+		run("judy-hash-map-single-thread", 1,  
+				JudyHashMapBenchmark.class.getName() + "\\.(put|removeAndPut|iterate|fill)$");
+		int processorCount = Runtime.getRuntime().availableProcessors();
+		for (int threadCount : THREAD_COUNTS) {
+			if (threadCount > processorCount) {
+				break;
+			}
+			run("judy-hash-map-" + threadCount + "-threads", threadCount, 
+					JudyHashMapBenchmark.class.getName() + "\\.get$",
+					ConcurrentJudyHashMapBenchmark.class.getName() + "\\.(put|removeAndPut)$");
+		}
+		run("concurrent-judy-hash-map-read-write", 1, 
+				ConcurrentJudyHashMapBenchmark.class.getName() + "\\.readWrite");
+	}
+	
+	private static void run(String name, int threadCount, String... includes) throws RunnerException {
+		ChainedOptionsBuilder builder = 
+			new OptionsBuilder().
+					threads(threadCount).
+					addProfiler(GCProfiler.class).
+					resultFormat(ResultFormatType.JSON).
+					result(name + ".json");
+		for (String include : includes) {
+			builder.include(include);
+		}
+		new Runner(builder.build()).run();
+	}
+	
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tr.com.serkanozal.jcommon.map;
+
+/**
+ * @author Serkan ÖZAL
+ * 
+ * Distributions of benchmarked keys. Keys are {@link Integer}s whose hash codes are their values, 
+ * so distribution of keys is also the distribution of the hash codes indexed by Judy tree. 
+ * All distributions are bijections on <code>int</code>s, so they generate distinct keys for up to 2^32 keys.
+ */
+public enum KeyDistribution {
+
+	/**
+	 * Consecutive hash codes, so last level nodes are filled densely.
+	 */
+	SEQUENTIAL {
+		@Override
+		int keyAt(int i) {
+			return i;
+		}
+	},
+	
+	/**
+	 * Hash codes scattered over the whole <code>int</code> space. 
+	 * Multiplying by an odd number is a bijection on <code>int</code>s, so keys are still distinct.
+	 */
+	RANDOM {
+		@Override
+		int keyAt(int i) {
+			return i * 0x9E3779B9;
+		}
+	},
+	
+	/**
+	 * Groups of 16 consecutive hash codes separated by gaps of 1008, 
+	 * like hash codes clustered on a few low bits, so most nodes are sparse. 
+	 * Group index is rotated within the upper 28 bits, so groups after the first 2^22 ones 
+	 * wrap around instead of overflowing and keys are still distinct.
+	 */
+	CLUSTERED {
+		@Override
+		int keyAt(int i) {
+			int group = i >>> 4;
+			int rotatedGroup = ((group << 6) | (group >>> 22)) & 0x0FFFFFFF;
+			return (rotatedGroup << 4) | (i & 15);
+		}
+	};
+	
+	abstract int keyAt(int i);
+	
+	public Integer[] keys(int count) {
+		Integer[] keys = new Integer[count];
+		for (int i = 0; i < count; i++) {
+			keys[i] = keyAt(i);
+		}
+		return keys;
+	}
+	
+}
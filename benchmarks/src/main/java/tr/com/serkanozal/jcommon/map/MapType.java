@@ -0,0 +1,74 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tr.com.serkanozal.jcommon.map;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @author Serkan ÖZAL
+ * 
+ * Benchmarked map implementations. Hash based maps are created with their default capacities, 
+ * so resizing costs are included like in the usual usage.
+ */
+public enum MapType {
+
+	JUDY_HASH_MAP(false) {
+		@Override
+		<K, V> Map<K, V> create() {
+			return new JudyHashMap<K, V>();
+		}
+	},
+	
+	HASH_MAP(false) {
+		@Override
+		<K, V> Map<K, V> create() {
+			return new HashMap<K, V>();
+		}
+	},
+	
+	CONCURRENT_JUDY_HASH_MAP(true) {
+		@Override
+		<K, V> Map<K, V> create() {
+			return new ConcurrentJudyHashMap<K, V>();
+		}
+	},
+	
+	CONCURRENT_HASH_MAP(true) {
+		@Override
+		<K, V> Map<K, V> create() {
+			return new ConcurrentHashMap<K, V>();
+		}
+	};
+	
+	private final boolean threadSafe;
+	
+	private MapType(boolean threadSafe) {
+		this.threadSafe = threadSafe;
+	}
+	
+	/**
+	 * Maps which are not thread-safe are only benchmarked for writes by a single thread.
+	 */
+	public boolean isThreadSafe() {
+		return threadSafe;
+	}
+	
+	abstract <K, V> Map<K, V> create();
+	
+}
@@ -0,0 +1,672 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tr.com.serkanozal.jcommon.map;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * @author Serkan ÖZAL
+ *
+ * Thread-safe variant of {@link JudyHashMap} with the same 4 level Judy tree indexing structure.
+ *
+ * Child nodes and entries are published into node slots by CAS, so readers never block
+ * and a lookup is at most 4 slot reads whatever the count of entities or contention is.
+ * Intermediate nodes are never unlinked once they are published.
+ *
+ * Entries with the same hash code are chained on their leaf slot and they are distinguished by 
+ * {@link Object#equals(Object)}. New entries are only inserted at head of the chain by CAS on the slot,
+ * so two threads can never insert the same key.
+ *
+ * Entries are removed in two steps: their value is marked as removed by CAS first
+ * (so concurrent updates on a removed entry fail and retry), then they are unlinked from their chain by CAS.
+ * Unlinking is best-effort, a marked entry which is still reachable is skipped by readers 
+ * and unlinked by later writers.
+ *
+ * Size is tracked by striped counters to prevent contention of writers on a single counter.
+ * Iterators are weakly consistent, they traverse the tree in hash code order
+ * and never throw {@link java.util.ConcurrentModificationException}.
+ *
+ * Null keys and values are not supported.
+ */
+public class ConcurrentJudyHashMap<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V> {
+
+	private final static int BITS_IN_BYTE = 8;
+	private final static int LEVEL_COUNT = Integer.SIZE / BITS_IN_BYTE;
+	private final static int MAX_LEVEL = LEVEL_COUNT - 1;
+	private final static int NODE_SIZE = 256;
+	private final static int INDEX_MASK = NODE_SIZE - 1;
+
+	private final static Object REMOVED = new Object();
+
+	@SuppressWarnings("rawtypes")
+	private final static AtomicReferenceFieldUpdater<ConcurrentJudyHashMap.JudyEntry, Object> VALUE_UPDATER =
+			AtomicReferenceFieldUpdater.newUpdater(ConcurrentJudyHashMap.JudyEntry.class, Object.class, "value");
+	@SuppressWarnings("rawtypes")
+	private final static AtomicReferenceFieldUpdater<ConcurrentJudyHashMap.JudyEntry, ConcurrentJudyHashMap.JudyEntry> NEXT_UPDATER =
+			AtomicReferenceFieldUpdater.newUpdater(ConcurrentJudyHashMap.JudyEntry.class, ConcurrentJudyHashMap.JudyEntry.class, "next");
+
+	private final AtomicReferenceArray<Object> root = new AtomicReferenceArray<Object>(NODE_SIZE);
+	private final StripedCounter size = new StripedCounter();
+	private final boolean spreadHashCodes;
+
+	public ConcurrentJudyHashMap() {
+		this(false);
+	}
+
+	/**
+	 * @param spreadHashCodes 	mixes bits of hash codes before indexing if <code>true</code>. 
+	 * 							See {@link JudyHashMap#JudyHashMap(boolean)}.
+	 */
+	public ConcurrentJudyHashMap(boolean spreadHashCodes) {
+		this.spreadHashCodes = spreadHashCodes;
+	}
+
+	@Override
+	public int size() {
+		long sum = size.sum();
+		if (sum < 0) {
+			// Decrements may be seen before their increments while summing stripes
+			return 0;
+		}
+		return sum > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) sum;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	@Override
+	public boolean containsValue(Object value) {
+		if (value == null) {
+			throw new NullPointerException();
+		}
+		for (JudyEntryIterator i = new JudyEntryIterator(); i.hasNext();) {
+			if (value.equals(i.next().getValue())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public Set<K> keySet() {
+		return new JudyKeySet();
+	}
+
+	@Override
+	public Collection<V> values() {
+		return new JudyValueCollection();
+	}
+
+	@Override
+	public Set<Map.Entry<K, V>> entrySet() {
+		return new JudyEntrySet();
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public V get(Object key) {
+		JudyEntry entry = findEntry(key);
+		if (entry != null) {
+			Object value = entry.value;
+			if (value != REMOVED) {
+				return (V) value;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return get(key) != null;
+	}
+
+	@Override
+	public V put(K key, V value) {
+		return doPut(key, value, false);
+	}
+
+	@Override
+	public V putIfAbsent(K key, V value) {
+		return doPut(key, value, true);
+	}
+
+	@Override
+	public V remove(Object key) {
+		return doRemove(key, null);
+	}
+
+	@Override
+	public boolean remove(Object key, Object value) {
+		if (value == null) {
+			return false;
+		}
+		return doRemove(key, value) != null;
+	}
+
+	@Override
+	public boolean replace(K key, V oldValue, V newValue) {
+		if (oldValue == null || newValue == null) {
+			throw new NullPointerException();
+		}
+		JudyEntry entry = findEntry(key);
+		if (entry == null) {
+			return false;
+		}
+		for (;;) {
+			Object value = entry.value;
+			if (value == REMOVED || !oldValue.equals(value)) {
+				return false;
+			}
+			if (VALUE_UPDATER.compareAndSet(entry, value, newValue)) {
+				return true;
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public V replace(K key, V value) {
+		if (value == null) {
+			throw new NullPointerException();
+		}
+		JudyEntry entry = findEntry(key);
+		if (entry == null) {
+			return null;
+		}
+		for (;;) {
+			Object oldValue = entry.value;
+			if (oldValue == REMOVED) {
+				return null;
+			}
+			if (VALUE_UPDATER.compareAndSet(entry, oldValue, value)) {
+				return (V) oldValue;
+			}
+		}
+	}
+
+	@Override
+	public void clear() {
+		for (JudyEntryIterator i = new JudyEntryIterator(); i.hasNext();) {
+			doRemove(i.next().getKey(), null);
+		}
+	}
+
+	/**
+	 * Finds related byte of hash code for using as index in given level.
+	 * Most significant byte is used at first level.
+	 */
+	private static int indexOf(int hash, int level) {
+		return (hash >>> ((MAX_LEVEL - level) << 3)) & INDEX_MASK;
+	}
+
+	@SuppressWarnings("unchecked")
+	private AtomicReferenceArray<Object> findLeafNode(int hash) {
+		AtomicReferenceArray<Object> node = root;
+		for (int level = 0; level < MAX_LEVEL; level++) {
+			node = (AtomicReferenceArray<Object>) node.get(indexOf(hash, level));
+			if (node == null) {
+				return null;
+			}
+		}
+		return node;
+	}
+
+	@SuppressWarnings("unchecked")
+	private AtomicReferenceArray<Object> findOrCreateLeafNode(int hash) {
+		AtomicReferenceArray<Object> node = root;
+		for (int level = 0; level < MAX_LEVEL; level++) {
+			int index = indexOf(hash, level);
+			AtomicReferenceArray<Object> child = (AtomicReferenceArray<Object>) node.get(index);
+			if (child == null) {
+				AtomicReferenceArray<Object> newChild = new AtomicReferenceArray<Object>(NODE_SIZE);
+				if (node.compareAndSet(index, null, newChild)) {
+					child = newChild;
+				}
+				else {
+					// Another thread has published the child node before us, so use it
+					child = (AtomicReferenceArray<Object>) node.get(index);
+				}
+			}
+			node = child;
+		}
+		return node;
+	}
+
+	private int hashOf(Object key) {
+		int hash = key.hashCode();
+		if (spreadHashCodes) {
+			hash = JudyHashMap.spread(hash);
+		}
+		return hash;
+	}
+
+	/**
+	 * Finds the live entry of key in chain starting from given head.
+	 */
+	private JudyEntry findInChain(JudyEntry head, Object key) {
+		for (JudyEntry entry = head; entry != null; entry = entry.next) {
+			if ((entry.key == key || entry.key.equals(key)) && entry.value != REMOVED) {
+				return entry;
+			}
+		}
+		return null;
+	}
+
+	@SuppressWarnings("unchecked")
+	private JudyEntry findEntry(Object key) {
+		int hash = hashOf(key);
+		AtomicReferenceArray<Object> leaf = findLeafNode(hash);
+		if (leaf == null) {
+			return null;
+		}
+		return findInChain((JudyEntry) leaf.get(indexOf(hash, MAX_LEVEL)), key);
+	}
+
+	/**
+	 * Unlinks entries marked as removed from chain of the slot. 
+	 * It is best-effort, failed CAS operations are ignored since marked entries are skipped anyway.
+	 */
+	@SuppressWarnings("unchecked")
+	private void unlinkRemoved(AtomicReferenceArray<Object> leaf, int index) {
+		JudyEntry prev = null;
+		JudyEntry entry = (JudyEntry) leaf.get(index);
+		while (entry != null) {
+			JudyEntry next = entry.next;
+			if (entry.value == REMOVED) {
+				if (prev == null) {
+					leaf.compareAndSet(index, entry, next);
+				}
+				else {
+					NEXT_UPDATER.compareAndSet(prev, entry, next);
+				}
+			}
+			else {
+				prev = entry;
+			}
+			entry = next;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private V doPut(K key, V value, boolean onlyIfAbsent) {
+		if (key == null || value == null) {
+			throw new NullPointerException();
+		}
+		int hash = hashOf(key);
+		AtomicReferenceArray<Object> leaf = findOrCreateLeafNode(hash);
+		int index = indexOf(hash, MAX_LEVEL);
+		JudyEntry newEntry = null;
+		for (;;) {
+			JudyEntry head = (JudyEntry) leaf.get(index);
+			JudyEntry entry = findInChain(head, key);
+			if (entry == null) {
+				if (newEntry == null) {
+					newEntry = new JudyEntry(key, value);
+				}
+				newEntry.next = head;
+				// Chain is changed if head is changed, so key is searched again on failure
+				if (leaf.compareAndSet(index, head, newEntry)) {
+					size.increment();
+					return null;
+				}
+			}
+			else {
+				Object oldValue = entry.value;
+				if (oldValue == REMOVED) {
+					// Entry is being removed, help to unlink it and retry
+					unlinkRemoved(leaf, index);
+				}
+				else if (onlyIfAbsent) {
+					return (V) oldValue;
+				}
+				else if (VALUE_UPDATER.compareAndSet(entry, oldValue, value)) {
+					return (V) oldValue;
+				}
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private V doRemove(Object key, Object expectedValue) {
+		int hash = hashOf(key);
+		AtomicReferenceArray<Object> leaf = findLeafNode(hash);
+		if (leaf == null) {
+			return null;
+		}
+		int index = indexOf(hash, MAX_LEVEL);
+		for (;;) {
+			JudyEntry entry = findInChain((JudyEntry) leaf.get(index), key);
+			if (entry == null) {
+				return null;
+			}
+			Object oldValue = entry.value;
+			if (oldValue == REMOVED) {
+				// Entry has been removed by another thread just now, look for a newer entry of key
+				continue;
+			}
+			if (expectedValue != null && !expectedValue.equals(oldValue)) {
+				return null;
+			}
+			if (VALUE_UPDATER.compareAndSet(entry, oldValue, REMOVED)) {
+				unlinkRemoved(leaf, index);
+				size.decrement();
+				return (V) oldValue;
+			}
+		}
+	}
+
+	class JudyEntrySet extends AbstractSet<Map.Entry<K, V>> {
+
+		@Override
+		public Iterator<Map.Entry<K, V>> iterator() {
+			return new JudyEntryIterator();
+		}
+
+		@Override
+		public int size() {
+			return ConcurrentJudyHashMap.this.size();
+		}
+
+		@Override
+		public void clear() {
+			ConcurrentJudyHashMap.this.clear();
+		}
+
+	}
+
+	/**
+	 * Traverses nodes depth first in hash code order.
+	 * Current slot index of every level is kept, so there is no need to go back to root.
+	 */
+	class JudyEntryIterator implements Iterator<Map.Entry<K, V>> {
+
+		@SuppressWarnings("rawtypes")
+		final AtomicReferenceArray[] nodes = new AtomicReferenceArray[LEVEL_COUNT];
+		final int[] indexes = new int[LEVEL_COUNT];
+		int level;
+		JudyEntry chainEntry;
+		K nextKey;
+		V nextValue;
+		K lastReturnedKey;
+
+		JudyEntryIterator() {
+			nodes[0] = root;
+			indexes[0] = -1;
+			advance();
+		}
+
+		@SuppressWarnings("unchecked")
+		void advance() {
+			nextKey = null;
+			nextValue = null;
+			// Continue with the rest of the current collision chain at first
+			while (chainEntry != null) {
+				JudyEntry entry = chainEntry;
+				chainEntry = entry.next;
+				Object value = entry.value;
+				if (value != REMOVED) {
+					nextKey = entry.key;
+					nextValue = (V) value;
+					return;
+				}
+			}
+			while (level >= 0) {
+				int index = ++indexes[level];
+				if (index == NODE_SIZE) {
+					// All slots of this node have been visited, so continue from parent
+					level--;
+					continue;
+				}
+				Object slot = nodes[level].get(index);
+				if (slot == null) {
+					continue;
+				}
+				if (level < MAX_LEVEL) {
+					level++;
+					nodes[level] = (AtomicReferenceArray<Object>) slot;
+					indexes[level] = -1;
+				}
+				else {
+					for (JudyEntry entry = (JudyEntry) slot; entry != null; entry = entry.next) {
+						Object value = entry.value;
+						if (value != REMOVED) {
+							nextKey = entry.key;
+							nextValue = (V) value;
+							chainEntry = entry.next;
+							return;
+						}
+					}
+				}
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return nextKey != null;
+		}
+
+		@Override
+		public Map.Entry<K, V> next() {
+			if (nextKey == null) {
+				throw new NoSuchElementException();
+			}
+			Map.Entry<K, V> entry = new WriteThroughEntry(nextKey, nextValue);
+			lastReturnedKey = nextKey;
+			advance();
+			return entry;
+		}
+
+		@Override
+		public void remove() {
+			if (lastReturnedKey == null) {
+				throw new IllegalStateException();
+			}
+			ConcurrentJudyHashMap.this.remove(lastReturnedKey);
+			lastReturnedKey = null;
+		}
+
+	}
+
+	class JudyKeySet extends AbstractSet<K> {
+
+		@Override
+		public Iterator<K> iterator() {
+			return new JudyKeyIterator(new JudyEntryIterator());
+		}
+
+		@Override
+		public int size() {
+			return ConcurrentJudyHashMap.this.size();
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			return containsKey(o);
+		}
+
+		@Override
+		public boolean remove(Object o) {
+			return ConcurrentJudyHashMap.this.remove(o) != null;
+		}
+
+		@Override
+		public void clear() {
+			ConcurrentJudyHashMap.this.clear();
+		}
+
+	}
+
+	class JudyKeyIterator implements Iterator<K> {
+
+		JudyEntryIterator entryIterator;
+
+		JudyKeyIterator(JudyEntryIterator entryIterator) {
+			this.entryIterator = entryIterator;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return entryIterator.hasNext();
+		}
+
+		@Override
+		public K next() {
+			return entryIterator.next().getKey();
+		}
+
+		@Override
+		public void remove() {
+			entryIterator.remove();
+		}
+
+	}
+
+	class JudyValueCollection extends AbstractCollection<V> {
+
+		@Override
+		public Iterator<V> iterator() {
+			return new JudyValueIterator(new JudyEntryIterator());
+		}
+
+		@Override
+		public int size() {
+			return ConcurrentJudyHashMap.this.size();
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			return containsValue(o);
+		}
+
+		@Override
+		public void clear() {
+			ConcurrentJudyHashMap.this.clear();
+		}
+
+	}
+
+	class JudyValueIterator implements Iterator<V> {
+
+		JudyEntryIterator entryIterator;
+
+		JudyValueIterator(JudyEntryIterator entryIterator) {
+			this.entryIterator = entryIterator;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return entryIterator.hasNext();
+		}
+
+		@Override
+		public V next() {
+			return entryIterator.next().getValue();
+		}
+
+		@Override
+		public void remove() {
+			entryIterator.remove();
+		}
+
+	}
+
+	/**
+	 * Entry returned by iterators. Its value is a snapshot and setting value writes through the map.
+	 */
+	@SuppressWarnings("serial")
+	class WriteThroughEntry extends AbstractMap.SimpleEntry<K, V> {
+
+		WriteThroughEntry(K key, V value) {
+			super(key, value);
+		}
+
+		@Override
+		public V setValue(V value) {
+			if (value == null) {
+				throw new NullPointerException();
+			}
+			V oldValue = super.setValue(value);
+			put(getKey(), value);
+			return oldValue;
+		}
+
+	}
+
+	class JudyEntry {
+
+		final K key;
+		volatile Object value;
+		volatile JudyEntry next;
+
+		JudyEntry(K key, V value) {
+			this.key = key;
+			this.value = value;
+		}
+
+	}
+
+	/**
+	 * Counter which spreads updates of threads over padded cells to prevent contention.
+	 */
+	static class StripedCounter {
+
+		// Cells are placed 64 bytes away from each other to prevent false sharing
+		static final int CELL_PADDING = 8;
+		static final int CELL_COUNT =
+				Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1) << 1;
+
+		final AtomicLongArray cells = new AtomicLongArray(CELL_COUNT * CELL_PADDING);
+
+		int cellIndex() {
+			long threadId = Thread.currentThread().getId();
+			int hash = (int) (threadId ^ (threadId >>> 32));
+			hash ^= (hash >>> 16);
+			return (hash & (CELL_COUNT - 1)) * CELL_PADDING;
+		}
+
+		void increment() {
+			cells.incrementAndGet(cellIndex());
+		}
+
+		void decrement() {
+			cells.decrementAndGet(cellIndex());
+		}
+
+		long sum() {
+			long sum = 0;
+			for (int i = 0; i < cells.length(); i += CELL_PADDING) {
+				sum += cells.get(i);
+			}
+			return sum;
+		}
+
+	}
+
+}
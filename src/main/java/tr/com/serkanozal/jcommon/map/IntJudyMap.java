@@ -0,0 +1,202 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tr.com.serkanozal.jcommon.map;
+
+import java.util.NoSuchElementException;
+
+/**
+ * @author Serkan ÖZAL
+ * 
+ * Holds and indexes entities by <code>int</code> keys with Judy tree based structure 
+ * like {@link JudyHashMap}, but bits of keys are used directly as indexes of levels 
+ * instead of hash codes of key objects. So there is no boxing of keys 
+ * and no entry object for values, values are held directly in slots of last level nodes.
+ * There are 4 levels for 4 byte of key as <code>int</code>.
+ * 
+ * Entities are iterated by {@link Cursor} in ascending order of keys.
+ * Since keys are ordered in the tree, ordered operations like {@link #firstKey()}, {@link #ceilingKey(int)} 
+ * and range iteration by {@link #cursor(int, int)} are supported like {@link java.util.NavigableMap}.
+ */
+public class IntJudyMap<V> implements JudyStats.Provider {
+
+	private final static int BITS_IN_BYTE = 8;
+	private final static int LEVEL_COUNT = Integer.SIZE / BITS_IN_BYTE;
+	
+	private final static Object NULL_VALUE = new Object();
+	
+	private final JudyIndex index = new JudyIndex(LEVEL_COUNT);
+	
+	public IntJudyMap() {
+		
+	}
+	
+	public int size() {
+		return index.size();
+	}
+	
+	public boolean isEmpty() {
+		return index.size() == 0;
+	}
+	
+	public V get(int key) {
+		return unmaskNull(index.get(indexKeyOf(key)));
+	}
+	
+	public boolean containsKey(int key) {
+		return index.get(indexKeyOf(key)) != null;
+	}
+	
+	public V put(int key, V value) {
+		return unmaskNull(index.put(indexKeyOf(key), maskNull(value)));
+	}
+	
+	public V remove(int key) {
+		return unmaskNull(index.remove(indexKeyOf(key)));
+	}
+	
+	public void clear() {
+		index.clear();
+	}
+	
+	/**
+	 * Gets statistics of nodes and estimated memory usage of this map. 
+	 * Values are held directly in slots, so there is no entry object to be estimated.
+	 */
+	@Override
+	public JudyStats getStats() {
+		return index.stats(index.size(), null);
+	}
+	
+	public int[] keys() {
+		int[] keys = new int[index.size()];
+		int i = 0;
+		for (Cursor cursor = cursor(); cursor.advance();) {
+			keys[i++] = cursor.getKey();
+		}
+		return keys;
+	}
+	
+	public Cursor cursor() {
+		return new Cursor(index.cursor());
+	}
+	
+	/**
+	 * Creates a cursor which iterates entities whose keys are 
+	 * from <code>fromKey</code> (inclusive) to <code>toKey</code> (exclusive) in ascending order.
+	 */
+	public Cursor cursor(int fromKey, int toKey) {
+		if (fromKey > toKey) {
+			throw new IllegalArgumentException("fromKey > toKey");
+		}
+		return new Cursor(index.cursor(indexKeyOf(fromKey), indexKeyOf(toKey)));
+	}
+	
+	/**
+	 * Gets the smallest key.
+	 * 
+	 * @throws NoSuchElementException if map is empty
+	 */
+	public int firstKey() {
+		JudyIndex.Cursor indexCursor = index.cursor();
+		if (!indexCursor.advance()) {
+			throw new NoSuchElementException();
+		}
+		return keyOf(indexCursor.key());
+	}
+	
+	/**
+	 * Gets the smallest key which is equal to or bigger than given key, 
+	 * or <code>null</code> if there is no such key.
+	 */
+	public Integer ceilingKey(int key) {
+		JudyIndex.Cursor indexCursor = index.cursor();
+		if (!indexCursor.seek(indexKeyOf(key))) {
+			return null;
+		}
+		return keyOf(indexCursor.key());
+	}
+	
+	/**
+	 * Gets the smallest key which is bigger than given key, 
+	 * or <code>null</code> if there is no such key.
+	 */
+	public Integer higherKey(int key) {
+		if (key == Integer.MAX_VALUE) {
+			return null;
+		}
+		return ceilingKey(key + 1);
+	}
+	
+	/**
+	 * Sign bit of key is flipped, so negative keys are placed before positive keys in the tree.
+	 */
+	private static long indexKeyOf(int key) {
+		return (key ^ Integer.MIN_VALUE) & 0xFFFFFFFFL;
+	}
+	
+	private static int keyOf(long indexKey) {
+		return (int) indexKey ^ Integer.MIN_VALUE;
+	}
+	
+	private static Object maskNull(Object value) {
+		return value == null ? NULL_VALUE : value;
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static <V> V unmaskNull(Object slot) {
+		return slot == NULL_VALUE ? null : (V) slot;
+	}
+	
+	/**
+	 * Iterates entities in ascending order of keys without boxing keys. 
+	 * Initially cursor is positioned before the first entity, 
+	 * so {@link #advance()} must be called before accessing the first entity.
+	 */
+	public class Cursor {
+		
+		private final JudyIndex.Cursor indexCursor;
+		
+		private Cursor(JudyIndex.Cursor indexCursor) {
+			this.indexCursor = indexCursor;
+		}
+		
+		/**
+		 * Moves to next entity and returns <code>false</code> if there is no more entity.
+		 */
+		public boolean advance() {
+			return indexCursor.advance();
+		}
+		
+		public int getKey() {
+			return keyOf(indexCursor.key());
+		}
+		
+		public V getValue() {
+			return unmaskNull(indexCursor.slot());
+		}
+		
+		public void setValue(V value) {
+			indexCursor.setSlot(maskNull(value));
+		}
+		
+		public void remove() {
+			indexCursor.remove();
+		}
+		
+	}
+	
+}
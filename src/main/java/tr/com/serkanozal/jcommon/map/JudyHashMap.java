@@ -19,9 +19,11 @@ package tr.com.serkanozal.jcommon.map;
 import java.util.AbstractCollection;
 import java.util.AbstractMap;
 import java.util.AbstractSet;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 /**
@@ -32,31 +34,60 @@ import java.util.Set;
  * Normally in CHM or HM,  complexity is O(1+n/k) where 
  * 		k is the number of buckets,
  * 		n is the number of entities.
- * In this map implementation, complexity is O(1) at every entity counts. But it uses more memory.
+ * In this map implementation, complexity is O(1) at every entity counts.
  * 
  * In Judy tree based indexing structure, there are 4 levels for 4 byte of hash code as integer.
  * Last level (level 4 or leaf node) is hold as values.
+ * Keys with the same hash code are held in a collision bucket and they are distinguished by 
+ * {@link Object#equals(Object)}, while a key without collision is found by a single probe on the leaf node.
+ * 
+ * Nodes are compressed adaptively by their populations like Judy arrays. 
+ * Sparse nodes are stored as linear nodes (up to 7 slots), moderately populated nodes are stored as 
+ * bitmap nodes (256 bit bitmap with population count based addressing) 
+ * and only dense nodes are stored as uncompressed 256 slot nodes. 
+ * Nodes are promoted and demoted automatically while putting and removing entities, 
+ * so memory usage is proportional to the count of entities instead of the size of hash space.
+ * 
+ * Since nodes are ordered by hash codes, ordered operations like {@link #firstKey()}, {@link #ceilingKey(Object)} 
+ * and range views by {@link #subMap(Object, Object)} are supported by traversing the tree in hash code order.
+ * For keys whose hash codes are their values (such as {@link Integer}, {@link Short} and {@link Character}), 
+ * hash code order is the natural order of keys as long as hash codes are not spread.
+ * 
+ * Entries are iterated in hash code order by traversing the tree, so entries are not linked to each other 
+ * and putting or removing an entry only touches its own leaf node. 
+ * {@link LinkedJudyHashMap} can be used for iterating entries in insertion order.
  */
-public class JudyHashMap<K, V> extends AbstractMap<K, V> {
+public class JudyHashMap<K, V> extends AbstractMap<K, V> implements JudyStats.Provider {
 
 	private final static int BITS_IN_BYTE = 8;
-	private final static int MAX_LEVEL = (Integer.SIZE / BITS_IN_BYTE) - 1; 
-	private final static int NODE_SIZE = 256;
+	private final static int LEVEL_COUNT = Integer.SIZE / BITS_IN_BYTE;
+	// Below this count, sorting keys costs more than walking down the tree for every key
+	private final static int BULK_OPERATION_THRESHOLD = 64;
 	
+	private final boolean spreadHashCodes;
 	private JudyTree root = new JudyTree();
 	
 	public JudyHashMap() {
-
+		this(false);
+	}
+	
+	/**
+	 * @param spreadHashCodes 	mixes bits of hash codes before indexing if <code>true</code>. 
+	 * 							Useful for keys whose hash codes are clustered on a few bits 
+	 * 							(such as multiples of a power of two) that create long chains of sparse nodes.
+	 */
+	public JudyHashMap(boolean spreadHashCodes) {
+		this.spreadHashCodes = spreadHashCodes;
 	}
 	
 	@Override
 	public int size() {
-		return root.size;
+		return root.size();
 	}
 	
 	@Override
 	public boolean isEmpty() {
-		return root.size == 0;
+		return root.size() == 0;
 	}
     
 	@Override
@@ -107,53 +138,307 @@ public class JudyHashMap<K, V> extends AbstractMap<K, V> {
 		root.clear();
 	}
 	
+	/**
+	 * Puts all entries of given map as a bulk load. Hash code of every key is computed only once 
+	 * and entries are put in hash code order, so the nodes on the path shared with the previous key 
+	 * are not walked down again and every node is built and visited only once.
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public void putAll(Map<? extends K, ? extends V> map) {
+		if (map.size() < BULK_OPERATION_THRESHOLD) {
+			super.putAll(map);
+			return;
+		}
+		Map.Entry<K, V>[] entries = map.entrySet().toArray(new Map.Entry[map.size()]);
+		long[] orderedKeys = new long[entries.length];
+		for (int i = 0; i < entries.length; i++) {
+			orderedKeys[i] = orderedKeyOf(root.indexKeyOf(entries[i].getKey()), i);
+		}
+		Arrays.sort(orderedKeys);
+		JudyIndex.Finger finger = root.index.finger();
+		for (int i = 0; i < orderedKeys.length; i++) {
+			long indexKey = indexKeyOfOrderedKey(orderedKeys[i]);
+			Map.Entry<K, V> entry = entries[positionOfOrderedKey(orderedKeys[i])];
+			root.put(entry.getKey(), entry.getValue(), indexKey, finger.get(indexKey), finger);
+		}
+	}
+	
+	/**
+	 * Gets values of given keys into given array at the same positions with keys.
+	 * Keys are looked up in hash code order, so the nodes shared by consecutive lookups 
+	 * are not walked down again and every node is visited only once.
+	 */
+	@SuppressWarnings("unchecked")
+	public void getAll(K[] keys, V[] values) {
+		if (values.length < keys.length) {
+			throw new IllegalArgumentException(
+					"Values array is smaller (" + values.length + ") than keys array (" + keys.length + ")");
+		}
+		if (keys.length < BULK_OPERATION_THRESHOLD) {
+			for (int i = 0; i < keys.length; i++) {
+				values[i] = root.get(keys[i]);
+			}
+			return;
+		}
+		long[] orderedKeys = new long[keys.length];
+		for (int i = 0; i < keys.length; i++) {
+			orderedKeys[i] = orderedKeyOf(root.indexKeyOf(keys[i]), i);
+		}
+		Arrays.sort(orderedKeys);
+		JudyIndex.Finger finger = root.index.finger();
+		for (int i = 0; i < orderedKeys.length; i++) {
+			int position = positionOfOrderedKey(orderedKeys[i]);
+			JudyEntry entry = root.findEntry(finger.get(indexKeyOfOrderedKey(orderedKeys[i])), keys[position]);
+			values[position] = entry != null ? entry.value : null;
+		}
+	}
+	
+	/**
+	 * Packs index key and position into a <code>long</code>, 
+	 * so positions can be sorted by index keys by sorting primitive values.
+	 * Sign bit is flipped since index keys are unsigned.
+	 */
+	private static long orderedKeyOf(long indexKey, int position) {
+		return ((indexKey << Integer.SIZE) | position) ^ Long.MIN_VALUE;
+	}
+	
+	private static long indexKeyOfOrderedKey(long orderedKey) {
+		return (orderedKey ^ Long.MIN_VALUE) >>> Integer.SIZE;
+	}
+	
+	private static int positionOfOrderedKey(long orderedKey) {
+		return (int) orderedKey;
+	}
+	
+	/**
+	 * Gets the first key in hash code order.
+	 * 
+	 * @throws NoSuchElementException if map is empty
+	 */
+	public K firstKey() {
+		JudyRangeIterator iterator = new JudyRangeIterator(root.index.cursor());
+		if (!iterator.hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return iterator.next().getKey();
+	}
+	
+	/**
+	 * Gets the first key whose hash code is equal to or bigger than hash code of given key in hash code order, 
+	 * or <code>null</code> if there is no such key. 
+	 * Keys with the same hash code are ordered by the order they were put.
+	 */
+	@SuppressWarnings("unchecked")
+	public K ceilingKey(K key) {
+		JudyIndex.Cursor cursor = root.index.cursor();
+		if (!cursor.seek(root.indexKeyOf(key))) {
+			return null;
+		}
+		Object slot = cursor.slot();
+		if (slot instanceof JudyHashMap.JudyEntry) {
+			return ((JudyEntry) slot).getKey();
+		}
+		return (K) ((JudyCollisionBucket) slot).entries[0].getKey();
+	}
+	
+	/**
+	 * Gets a view of entries whose keys are from <code>fromKey</code> (inclusive) 
+	 * to <code>toKey</code> (exclusive) in hash code order. 
+	 * View is backed by this map and it is iterated by traversing only the related part of tree.
+	 */
+	public Map<K, V> subMap(K fromKey, K toKey) {
+		long fromIndexKey = root.indexKeyOf(fromKey);
+		long toIndexKey = root.indexKeyOf(toKey);
+		if (JudyIndex.compareKeys(fromIndexKey, toIndexKey) > 0) {
+			throw new IllegalArgumentException("fromKey > toKey");
+		}
+		return new JudySubMap(fromIndexKey, toIndexKey);
+	}
+	
+	/**
+	 * Gets statistics of nodes and estimated memory usage of this map. 
+	 * Collision buckets are not included, since they only exist for keys with the same hash code.
+	 */
+	@Override
+	public JudyStats getStats() {
+		return root.index.stats(root.size(), entryClass());
+	}
+	
+	/////////////////////////////////////////////////////////////////////////////////
+	// Extension points for subclasses which keep their own order of entries
+	
+	Class<?> entryClass() {
+		return JudyHashMap.JudyEntry.class;
+	}
+	
+	JudyEntry newEntry(K key, V value) {
+		return new JudyEntry(key, value);
+	}
+	
+	void entryAdded(JudyEntry entry) {
+		
+	}
+	
+	void entryRemoved(JudyEntry entry) {
+		
+	}
+	
+	void entriesCleared() {
+		
+	}
+	
+	/**
+	 * Creates iterator of entries. Entries are iterated by traversing the tree in hash code order, 
+	 * so there is no need to link entries to each other.
+	 */
+	Iterator<Map.Entry<K, V>> entryIterator() {
+		return new JudyRangeIterator(root.index.cursor());
+	}
+	
 	class JudyEntrySet extends AbstractSet<Map.Entry<K, V>> {
 
 		@Override
 		public Iterator<Map.Entry<K, V>> iterator() {
-			return new JudyEntryIterator(root.firstEntry);
+			return entryIterator();
 		}
 
 		@Override
 		public int size() {
-			return root.size;
+			return root.size();
 		}
 		
 	}
 	
-	class JudyEntryIterator implements Iterator<Map.Entry<K, V>> {
-
-		JudyEntry currentEntry;
+	/**
+	 * Iterates entries in hash code order by traversing the tree with a cursor.
+	 * Entries with the same hash code are iterated from a snapshot of their collision bucket.
+	 */
+	class JudyRangeIterator implements Iterator<Map.Entry<K, V>> {
+		
+		final JudyIndex.Cursor cursor;
+		@SuppressWarnings("rawtypes")
+		JudyHashMap.JudyEntry[] bucketEntries;
+		int bucketIndex;
+		JudyEntry nextEntry;
+		JudyEntry lastReturnedEntry;
 		
-		JudyEntryIterator(JudyEntry firstEntry) {
-			currentEntry = firstEntry;
+		JudyRangeIterator(JudyIndex.Cursor cursor) {
+			this.cursor = cursor;
+			advance();
+		}
+		
+		@SuppressWarnings("unchecked")
+		void advance() {
+			if (bucketEntries != null && bucketIndex < bucketEntries.length) {
+				nextEntry = bucketEntries[bucketIndex++];
+				return;
+			}
+			bucketEntries = null;
+			if (!cursor.advance()) {
+				nextEntry = null;
+				return;
+			}
+			Object slot = cursor.slot();
+			if (slot instanceof JudyHashMap.JudyEntry) {
+				nextEntry = (JudyEntry) slot;
+			}
+			else {
+				bucketEntries = ((JudyCollisionBucket) slot).entries;
+				nextEntry = bucketEntries[0];
+				bucketIndex = 1;
+			}
 		}
 		
 		@Override
 		public boolean hasNext() {
-			if (currentEntry == null) {
-				return false;
+			return nextEntry != null;
+		}
+		
+		@Override
+		public Map.Entry<K, V> next() {
+			if (nextEntry == null) {
+				throw new NoSuchElementException();
 			}
-			else {
-				return currentEntry.next != null;
+			lastReturnedEntry = nextEntry;
+			advance();
+			return lastReturnedEntry;
+		}
+		
+		@Override
+		public void remove() {
+			if (lastReturnedEntry == null) {
+				throw new IllegalStateException();
 			}
+			root.remove(lastReturnedEntry.key);
+			// Tree may have been changed by removal, so cursor finds its position again
+			cursor.reposition();
+			lastReturnedEntry = null;
+		}
+		
+	}
+	
+	/**
+	 * View of entries in a hash code range backed by map.
+	 */
+	class JudySubMap extends AbstractMap<K, V> {
+		
+		final long fromIndexKey;
+		final long toIndexKey;
+		
+		JudySubMap(long fromIndexKey, long toIndexKey) {
+			this.fromIndexKey = fromIndexKey;
+			this.toIndexKey = toIndexKey;
+		}
+		
+		boolean inRange(Object key) {
+			long indexKey = root.indexKeyOf(key);
+			return JudyIndex.compareKeys(indexKey, fromIndexKey) >= 0 && 
+					JudyIndex.compareKeys(indexKey, toIndexKey) < 0;
 		}
+		
+		@Override
+		public Set<Map.Entry<K, V>> entrySet() {
+			return new AbstractSet<Map.Entry<K, V>>() {
+				
+				@Override
+				public Iterator<Map.Entry<K, V>> iterator() {
+					return new JudyRangeIterator(root.index.cursor(fromIndexKey, toIndexKey));
+				}
 
+				@Override
+				public int size() {
+					int size = 0;
+					for (Iterator<Map.Entry<K, V>> i = iterator(); i.hasNext(); i.next()) {
+						size++;
+					}
+					return size;
+				}
+				
+			};
+		}
+		
 		@Override
-		public JudyEntry next() {
-			if (currentEntry != null) {
-				JudyEntry nextEntry = currentEntry;
-				currentEntry = currentEntry.next;
-				return nextEntry;
+		public V get(Object key) {
+			return inRange(key) ? JudyHashMap.this.get(key) : null;
+		}
+		
+		@Override
+		public boolean containsKey(Object key) {
+			return inRange(key) && JudyHashMap.this.containsKey(key);
+		}
+		
+		@Override
+		public V put(K key, V value) {
+			if (!inRange(key)) {
+				throw new IllegalArgumentException("Key is out of range");
 			}
-			else {
-				return null;
-			}	
+			return JudyHashMap.this.put(key, value);
 		}
-
+		
 		@Override
-		public void remove() {
-			throw new UnsupportedOperationException("\"remove()\" operation is not supported by JudyEntryIterator !");
+		public V remove(Object key) {
+			return inRange(key) ? JudyHashMap.this.remove(key) : null;
 		}
 		
 	}
@@ -162,21 +447,21 @@ public class JudyHashMap<K, V> extends AbstractMap<K, V> {
 
 		@Override
 		public Iterator<K> iterator() {
-			return new JudyKeyIterator(new JudyEntryIterator(root.firstEntry));
+			return new JudyKeyIterator(entryIterator());
 		}
 
 		@Override
 		public int size() {
-			return root.size;
+			return root.size();
 		}
 		
 	}
 	
 	class JudyKeyIterator implements Iterator<K> {
 
-		JudyEntryIterator entryIterator;
+		Iterator<Map.Entry<K, V>> entryIterator;
 		
-		JudyKeyIterator(JudyEntryIterator entryIterator) {
+		JudyKeyIterator(Iterator<Map.Entry<K, V>> entryIterator) {
 			this.entryIterator = entryIterator;
 		}
 		
@@ -187,18 +472,12 @@ public class JudyHashMap<K, V> extends AbstractMap<K, V> {
 
 		@Override
 		public K next() {
-			JudyEntry entry = entryIterator.next();
-			if (entry == null) {
-				return null;
-			}
-			else {
-				return entry.key;
-			}
+			return entryIterator.next().getKey();
 		}
 
 		@Override
 		public void remove() {
-			throw new UnsupportedOperationException("\"remove()\" operation is not supported by JudyEntryIterator !");
+			entryIterator.remove();
 		}
 		
 	}
@@ -207,21 +486,21 @@ public class JudyHashMap<K, V> extends AbstractMap<K, V> {
 
 		@Override
 		public Iterator<V> iterator() {
-			return new JudyValueIterator(new JudyEntryIterator(root.firstEntry));
+			return new JudyValueIterator(entryIterator());
 		}
 
 		@Override
 		public int size() {
-			return root.size;
+			return root.size();
 		}
 		
 	}
 	
 	class JudyValueIterator implements Iterator<V> {
 
-		JudyEntryIterator entryIterator;
+		Iterator<Map.Entry<K, V>> entryIterator;
 		
-		JudyValueIterator(JudyEntryIterator entryIterator) {
+		JudyValueIterator(Iterator<Map.Entry<K, V>> entryIterator) {
 			this.entryIterator = entryIterator;
 		}
 		
@@ -232,18 +511,12 @@ public class JudyHashMap<K, V> extends AbstractMap<K, V> {
 
 		@Override
 		public V next() {
-			JudyEntry entry = entryIterator.next();
-			if (entry == null) {
-				return null;
-			}
-			else {
-				return entry.value;
-			}
+			return entryIterator.next().getValue();
 		}
 
 		@Override
 		public void remove() {
-			throw new UnsupportedOperationException("\"remove()\" operation is not supported by JudyEntryIterator !");
+			entryIterator.remove();
 		}
 		
 	}
@@ -252,8 +525,6 @@ public class JudyHashMap<K, V> extends AbstractMap<K, V> {
 
 		K key;
 		V value;
-		JudyEntry prev;
-		JudyEntry next;
 		
 		JudyEntry(K key) {
 			this.key = key;
@@ -276,285 +547,211 @@ public class JudyHashMap<K, V> extends AbstractMap<K, V> {
 
 		@Override
 		public V setValue(V value) {
-			return this.value = value;
+			V oldValue = this.value;
+			this.value = value;
+			return oldValue;
 		}
 		
 	}
 	
-	abstract class JudyNode {
-		
-		abstract V get(int hash, byte level);
-		abstract V put(int hash, K key, V value, byte level);
-		abstract V remove(int hash, byte level);
-		abstract boolean containsKey(int hash, byte level);
-		abstract void clear(byte level);
-		
-	}
-	
-	class JudyIntermediateNode extends JudyNode {
+	/**
+	 * Holds entries whose keys are not equal but have the same hash code.
+	 * Since collisions are rare, entries are held in an exactly sized array.
+	 */
+	class JudyCollisionBucket {
 		
 		@SuppressWarnings("rawtypes")
-		JudyHashMap.JudyNode[] children;
-		
-		JudyIntermediateNode() {
-			init();
-		}
-		
-		void init() {
-			children = new JudyHashMap.JudyNode[NODE_SIZE];
-		}
-		
-		void initIfNeeded() {
-			if (children == null) {
-				init();
-			}
-		}
+		JudyHashMap.JudyEntry[] entries;
 		
-		@SuppressWarnings("unchecked")
-		@Override
-		V get(int hash, byte level) {
-			initIfNeeded();
-			// Find related byte for using as index in current level
-			byte nextLevel = (byte) (level + 1);
-			short index = (short)(((hash >> (32 - (nextLevel << 3))) & 0x000000FF));
-			JudyNode child = children[index];
-			if (child != null) {
-				return child.get(hash, nextLevel);
-			}
-			return null;
+		@SuppressWarnings("rawtypes")
+		JudyCollisionBucket(JudyEntry entry1, JudyEntry entry2) {
+			entries = new JudyHashMap.JudyEntry[] { entry1, entry2 };
 		}
 		
 		@SuppressWarnings("unchecked")
-		@Override
-		V put(int hash, K key, V value, byte level) {
-			initIfNeeded();
-			// Find related byte for using as index in current level
-			byte nextLevel = (byte) (level + 1);
-			short index = (short)(((hash >> (32 - (nextLevel << 3))) & 0x000000FF));
-			JudyNode child = children[index];
-			if (child == null) {
-				if (nextLevel < MAX_LEVEL) {
-					child = new JudyIntermediateNode();
+		JudyEntry find(Object key) {
+			for (int i = 0; i < entries.length; i++) {
+				JudyEntry entry = entries[i];
+				if (entry.key.equals(key)) {
+					return entry;
 				}
-				else {
-					child = new JudyLeafNode();
-				}
-				children[index] = child;
-			}
-			return child.put(hash, key, value, nextLevel);
-		}
-		
-		@SuppressWarnings("unchecked")
-		@Override
-		V remove(int hash, byte level) {
-			initIfNeeded();
-			// Find related byte for using as index in current level
-			byte nextLevel = (byte) (level + 1);
-			short index = (short)(((hash >> (32 - (nextLevel << 3))) & 0x000000FF));
-			JudyNode child = children[index];
-			if (child != null) {
-				return child.remove(hash, nextLevel);
 			}
 			return null;
 		}
 		
-		@SuppressWarnings("unchecked")
-		@Override
-		boolean containsKey(int hash, byte level) {
-			initIfNeeded();
-			// Find related byte for using as index in current level
-			byte nextLevel = (byte) (level + 1);
-			short index = (short)(((hash >> (32 - (nextLevel << 3))) & 0x000000FF));
-			JudyNode child = children[index];
-			if (child != null) {
-				return child.containsKey(hash, nextLevel);
-			}
-			return false;
+		@SuppressWarnings("rawtypes")
+		void add(JudyEntry entry) {
+			JudyHashMap.JudyEntry[] newEntries = new JudyHashMap.JudyEntry[entries.length + 1];
+			System.arraycopy(entries, 0, newEntries, 0, entries.length);
+			newEntries[entries.length] = entry;
+			entries = newEntries;
 		}
 		
-		@SuppressWarnings("unchecked")
-		@Override
-		void clear(byte level) {
-			if (children != null) {
-				// Clear child nodes
-				for (JudyNode child : children) {
-					if (child != null) {
-						child.clear((byte) (level + 1));
-					}	
-					child = null; // Now it can be collected by GC
+		@SuppressWarnings("rawtypes")
+		void remove(JudyEntry entry) {
+			JudyHashMap.JudyEntry[] newEntries = new JudyHashMap.JudyEntry[entries.length - 1];
+			for (int i = 0, j = 0; i < entries.length; i++) {
+				if (entries[i] != entry) {
+					newEntries[j++] = entries[i];
 				}
 			}
-			children = null; // Now it can be collected by GC
+			entries = newEntries;
 		}
 		
 	}
 	
-	class JudyLeafNode extends JudyNode {
-		
-		@SuppressWarnings("rawtypes")
-		JudyHashMap.JudyEntry[] entries;
+	/**
+	 * Root node for Judy tree based indexing nodes
+	 */
+	class JudyTree {
 		
-		JudyLeafNode() {
-			init();
-		}
+		JudyIndex index = new JudyIndex(LEVEL_COUNT);
+		int size;
 		
-		void init() {
-			entries = new JudyHashMap.JudyEntry[NODE_SIZE];
+		JudyEntry getEntry(K key) {
+			return findEntry(index.get(indexKeyOf(key)), key);
 		}
 		
-		void initIfNeeded() {
-			if (entries == null) {
-				init();
+		/**
+		 * Finds entry of key in the slot of its hash code.
+		 */
+		@SuppressWarnings("unchecked")
+		JudyEntry findEntry(Object slot, Object key) {
+			if (slot instanceof JudyHashMap.JudyEntry) {
+				// Fast path for the common case, there is only one key with this hash code
+				JudyEntry entry = (JudyEntry) slot;
+				if (entry.key == key || entry.key.equals(key)) {
+					return entry;
+				}
+				return null;
+			}
+			else if (slot != null) {
+				return ((JudyCollisionBucket) slot).find(key);
 			}
+			return null;
 		}
 		
-		@SuppressWarnings("unchecked")
-		@Override
-		V get(int hash, byte level) {
-			initIfNeeded();
-			// Find related byte for using as index in current level
-			byte nextLevel = (byte) (level + 1);
-			short index = (short)(((hash >> (32 - (nextLevel << 3))) & 0x000000FF));
-			JudyEntry entry = entries[index];
+		V get(K key) {
+			JudyEntry entry = getEntry(key);
 			if (entry != null) {
 				return entry.value;
 			}
 			return null;
 		}
 		
+		V put(K key, V value) {
+			long indexKey = indexKeyOf(key);
+			return put(key, value, indexKey, index.get(indexKey), null);
+		}
+		
+		/**
+		 * Puts value for key whose current slot is given. 
+		 * If a finger is given, slot is updated through finger instead of walking down from root.
+		 */
 		@SuppressWarnings("unchecked")
-		@Override
-		V put(int hash, K key, V value, byte level) {
-			initIfNeeded();
-			// Find related byte for using as index in current level
-			byte nextLevel = (byte) (level + 1);
-			short index = (short)(((hash >> (32 - (nextLevel << 3))) & 0x000000FF));
-			JudyEntry entry = entries[index];
-			if (entry == null) {
-				entry = new JudyEntry(key);
-				entries[index] = entry;
-				synchronized (root) {
-					if (root.firstEntry == null) {
-						root.firstEntry = entry;
-					}
-					if (root.lastEntry != null) {
-						entry.prev = root.lastEntry;
-						root.lastEntry.next = entry;
-					}
-					root.lastEntry = entry;
-				}	
+		V put(K key, V value, long indexKey, Object slot, JudyIndex.Finger finger) {
+			JudyEntry entry = findEntry(slot, key);
+			if (entry != null) {
+				V oldValue = entry.value;
+				entry.value = value;
+				return oldValue;
 			}
-			entry.value = value;
-			return value;
+			entry = newEntry(key, value);
+			if (slot == null) {
+				putSlot(indexKey, entry, finger);
+			}
+			else if (slot instanceof JudyHashMap.JudyEntry) {
+				// Hash code collision, so keep both of entries in a bucket
+				putSlot(indexKey, new JudyCollisionBucket((JudyEntry) slot, entry), finger);
+			}
+			else {
+				((JudyCollisionBucket) slot).add(entry);
+			}
+			entryAdded(entry);
+			size++;
+			return null;
 		}
 		
 		@SuppressWarnings("unchecked")
-		@Override
-		V remove(int hash, byte level) {
-			initIfNeeded();
-			// Find related byte for using as index in current level
-			byte nextLevel = (byte) (level + 1);
-			short index = (short)(((hash >> (32 - (nextLevel << 3))) & 0x000000FF));
-			JudyEntry entryToRemove = entries[index];
-			if (entryToRemove != null) {
-				entries[index] = null;
-				synchronized (root) {
-					if (entryToRemove == root.firstEntry) {
-						root.firstEntry = entryToRemove.next;
-					}
-					if (entryToRemove == root.lastEntry) {
-						root.lastEntry = entryToRemove.prev;
-					}
+		V remove(K key) {
+			long indexKey = indexKeyOf(key);
+			Object slot = index.get(indexKey);
+			JudyEntry entryToRemove = null;
+			if (slot instanceof JudyHashMap.JudyEntry) {
+				JudyEntry currentEntry = (JudyEntry) slot;
+				if (currentEntry.key == key || currentEntry.key.equals(key)) {
+					entryToRemove = currentEntry;
+					index.remove(indexKey);
 				}
-				if (entryToRemove.prev != null) {
-					synchronized (entryToRemove.prev) {
-						entryToRemove.prev.next = entryToRemove.next;
+			}
+			else if (slot != null) {
+				JudyCollisionBucket bucket = (JudyCollisionBucket) slot;
+				entryToRemove = bucket.find(key);
+				if (entryToRemove != null) {
+					bucket.remove(entryToRemove);
+					if (bucket.entries.length == 1) {
+						// There is no collision anymore, so hold the remaining entry directly
+						index.put(indexKey, bucket.entries[0]);
 					}
 				}
-				if (entryToRemove.next != null) {
-					synchronized (entryToRemove.next) {
-						entryToRemove.next.prev = entryToRemove.prev;
-					}	
-				}
-				return entryToRemove.value;
 			}
-			return null;
-		}
-		
-		@Override
-		boolean containsKey(int hash, byte level) {
-			initIfNeeded();
-			// Find related byte for using as index in current level
-			byte nextLevel = (byte) (level + 1);
-			short index = (short)(((hash >> (32 - (nextLevel << 3))) & 0x000000FF));
-			return entries[index] != null;
-		}
-		
-		@Override
-		void clear(byte level) {
-			entries = null; // Now it can be collected by GC
-		}
-		
-	}
-	
-	/**
-	 * Root node for Judy tree based indexing nodes
-	 */
-	class JudyTree {
-		
-		@SuppressWarnings("unchecked")
-		JudyIntermediateNode[] nodes = new JudyHashMap.JudyIntermediateNode[NODE_SIZE];
-		JudyEntry firstEntry;
-		JudyEntry lastEntry;
-		volatile int size;
-		
-		JudyTree() {
-			// Create and initialize first level nodes
-			for (int i = 0 ; i < nodes.length; i++) {
-				nodes[i] = new JudyIntermediateNode();
+			if (entryToRemove == null) {
+				return null;
 			}
+			entryRemoved(entryToRemove);
+			size--;
+			return entryToRemove.value;
 		}
 		
-		V get(K key) {
-			// Use most significant byte as first level index
-			short index = (short)((key.hashCode() >> 24) & 0x000000FF);
-			return nodes[index].get(key.hashCode(), (byte) 1);
-		}
-		
-		V put(K key, V value) {
-			// Use most significant byte as first level index
-			short index = (short)((key.hashCode() >> 24) & 0x000000FF);
-			V obj = nodes[index].put(key.hashCode(), key, value, (byte) 1);
-			if (obj != null) {
-				size++;
+		void putSlot(long indexKey, Object slot, JudyIndex.Finger finger) {
+			if (finger != null) {
+				finger.put(indexKey, slot);
 			}
-			return obj;
-		}
-		
-		V remove(K key) {
-			// Use most significant byte as first level index
-			short index = (short)((key.hashCode() >> 24) & 0x000000FF);
-			V obj = nodes[index].remove(key.hashCode(), (byte) 1);
-			if (obj != null) {
-				size--;
+			else {
+				index.put(indexKey, slot);
 			}
-			return obj;
 		}
 		
 		boolean containsKey(K key) {
-			// Use most significant byte as first level index
-			short index = (short)((key.hashCode() >> 24) & 0x000000FF);
-			return nodes[index].containsKey(key.hashCode(), (byte) 1);
+			return getEntry(key) != null;
+		}
+		
+		int size() {
+			return size;
 		}
 		
 		void clear() {
-			// Start clearing from first level child nodes
-			for (int i = 0 ; i < nodes.length; i++) {
-				nodes[i].clear((byte) 1);
-			}
+			index.clear();
 			size = 0;
+			entriesCleared();
 		}
 		
+		/**
+		 * Hash code is used as index key, so most significant byte of it is used at first level.
+		 * Sign bit of hash code is flipped, so negative hash codes are placed before positive ones in the tree.
+		 */
+		long indexKeyOf(Object key) {
+			int hash = key.hashCode();
+			if (spreadHashCodes) {
+				hash = spread(hash);
+			}
+			return (hash ^ Integer.MIN_VALUE) & 0xFFFFFFFFL;
+		}
+		
+	}
+	
+	/**
+	 * Mixes all bits of hash code (finalizer of MurmurHash3), 
+	 * so hash codes which differ only at a few bits are distributed over the tree.
+	 * Since it is a bijection, it doesn't cause any new collision.
+	 */
+	static int spread(int hash) {
+		hash ^= hash >>> 16;
+		hash *= 0x85EBCA6B;
+		hash ^= hash >>> 13;
+		hash *= 0xC2B2AE35;
+		hash ^= hash >>> 16;
+		return hash;
 	}
 	
 }
@@ -0,0 +1,464 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tr.com.serkanozal.jcommon.map;
+
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+
+import tr.com.serkanozal.jcommon.map.JudyNode.JudyLinearNode;
+
+/**
+ * @author Serkan ÖZAL
+ *
+ * Judy tree which indexes slots by the bytes of a key directly.
+ * Every level uses one byte of the key as index, starting from the most significant one,
+ * so there are as many levels as the byte count of key (4 for int keys and 8 for long keys)
+ * and keys are ordered by their unsigned values in the tree.
+ *
+ * Slots of the last level hold the values (any non-null object),
+ * other levels hold their child nodes.
+ */
+class JudyIndex {
+
+	final int levelCount;
+	final int maxLevel;
+	final long maxKey;
+	// Count of nodes and occupied slots of them for every level and node type, maintained incrementally
+	final int[] nodeCounts;
+	final long[] slotCounts;
+	JudyNode root;
+	int size;
+	int modCount;
+
+	JudyIndex(int levelCount) {
+		this.levelCount = levelCount;
+		this.maxLevel = levelCount - 1;
+		this.maxKey = -1L >>> (Long.SIZE - (levelCount << 3));
+		this.nodeCounts = new int[levelCount * JudyNode.TYPE_COUNT];
+		this.slotCounts = new long[levelCount * JudyNode.TYPE_COUNT];
+		this.root = newNode(0);
+	}
+
+	/**
+	 * Finds related byte of key for using as index in given level.
+	 * Most significant byte is used at first level.
+	 */
+	int indexOf(long key, int level) {
+		return (int) (key >>> ((maxLevel - level) << 3)) & JudyNode.INDEX_MASK;
+	}
+
+	int size() {
+		return size;
+	}
+
+	JudyNode newNode(int level) {
+		nodeCounts[level * JudyNode.TYPE_COUNT + JudyNode.TYPE_LINEAR]++;
+		return new JudyLinearNode();
+	}
+
+	/**
+	 * Sets slot of node at given level and updates statistics if node has a new slot or it has been promoted.
+	 */
+	JudyNode set(int level, JudyNode node, int index, Object slot) {
+		int count = node.count();
+		JudyNode newNode = node.set(index, slot);
+		if (newNode != node || newNode.count() != count) {
+			updateCounts(level, node, count, newNode);
+		}
+		return newNode;
+	}
+
+	/**
+	 * Unsets slot of node at given level and updates statistics.
+	 */
+	JudyNode unset(int level, JudyNode node, int index) {
+		int count = node.count();
+		JudyNode newNode = node.unset(index);
+		updateCounts(level, node, count, newNode);
+		return newNode;
+	}
+
+	void updateCounts(int level, JudyNode oldNode, int oldCount, JudyNode newNode) {
+		int offset = level * JudyNode.TYPE_COUNT;
+		nodeCounts[offset + oldNode.type()]--;
+		slotCounts[offset + oldNode.type()] -= oldCount;
+		if (newNode != null) {
+			nodeCounts[offset + newNode.type()]++;
+			slotCounts[offset + newNode.type()] += newNode.count();
+		}
+	}
+
+	/**
+	 * Creates a snapshot of statistics with given count and shallow size of entry objects held in slots.
+	 */
+	JudyStats stats(long entryCount, Class<?> entryClass) {
+		return new JudyStats(levelCount, nodeCounts.clone(), slotCounts.clone(), entryCount, entryClass);
+	}
+
+	Object get(long key) {
+		JudyNode node = root;
+		// Walk down through intermediate levels by using bytes of key as indexes
+		for (int level = 0; level < maxLevel; level++) {
+			node = (JudyNode) node.get(indexOf(key, level));
+			if (node == null) {
+				return null;
+			}
+		}
+		return node.get(indexOf(key, maxLevel));
+	}
+
+	/**
+	 * Puts slot for key and returns the previous slot if there is.
+	 */
+	Object put(long key, Object slot) {
+		JudyNode parent = null;
+		JudyNode node = root;
+		// Walk down through intermediate levels by creating missing child nodes
+		for (int level = 0; level < maxLevel; level++) {
+			int index = indexOf(key, level);
+			JudyNode child = (JudyNode) node.get(index);
+			if (child == null) {
+				child = newNode(level + 1);
+				node = replace(parent, level, key, node, set(level, node, index, child));
+			}
+			parent = node;
+			node = child;
+		}
+		int index = indexOf(key, maxLevel);
+		Object oldSlot = node.get(index);
+		replace(parent, maxLevel, key, node, set(maxLevel, node, index, slot));
+		if (oldSlot == null) {
+			size++;
+			modCount++;
+		}
+		return oldSlot;
+	}
+
+	/**
+	 * Replaces reference of node at given level on its parent if node has been promoted.
+	 */
+	JudyNode replace(JudyNode parent, int level, long key, JudyNode node, JudyNode newNode) {
+		if (newNode != node) {
+			if (parent == null) {
+				root = newNode;
+			}
+			else {
+				parent.set(indexOf(key, level - 1), newNode);
+			}
+		}
+		return newNode;
+	}
+
+	/**
+	 * Removes slot of key and returns it if there is.
+	 */
+	Object remove(long key) {
+		JudyNode[] path = new JudyNode[levelCount];
+		JudyNode node = root;
+		for (int level = 0; level < maxLevel; level++) {
+			path[level] = node;
+			node = (JudyNode) node.get(indexOf(key, level));
+			if (node == null) {
+				return null;
+			}
+		}
+		path[maxLevel] = node;
+		Object slotToRemove = node.get(indexOf(key, maxLevel));
+		if (slotToRemove == null) {
+			return null;
+		}
+		// Remove slot, then go up while nodes are emptied or demoted and update their parents
+		int level = maxLevel;
+		JudyNode newNode = unset(level, node, indexOf(key, level));
+		while (newNode != path[level]) {
+			if (level == 0) {
+				root = newNode != null ? newNode : newNode(0);
+				break;
+			}
+			level--;
+			int index = indexOf(key, level);
+			if (newNode != null) {
+				newNode = set(level, path[level], index, newNode);
+			}
+			else {
+				newNode = unset(level, path[level], index);
+			}
+		}
+		size--;
+		modCount++;
+		return slotToRemove;
+	}
+
+	void clear() {
+		// Drop all nodes at once, now they can be collected by GC
+		Arrays.fill(nodeCounts, 0);
+		Arrays.fill(slotCounts, 0);
+		root = newNode(0);
+		size = 0;
+		modCount++;
+	}
+
+	Finger finger() {
+		return new Finger();
+	}
+
+	Cursor cursor() {
+		return new Cursor(0L, 0L, false);
+	}
+
+	/**
+	 * Creates a cursor which traverses slots of keys 
+	 * from <code>fromKey</code> (inclusive) to <code>toKey</code> (exclusive).
+	 */
+	Cursor cursor(long fromKey, long toKey) {
+		return new Cursor(fromKey, toKey, true);
+	}
+
+	/**
+	 * Compares keys as unsigned values like their order in the tree.
+	 */
+	static int compareKeys(long key1, long key2) {
+		key1 ^= Long.MIN_VALUE;
+		key2 ^= Long.MIN_VALUE;
+		return key1 < key2 ? -1 : (key1 == key2 ? 0 : 1);
+	}
+
+	/**
+	 * Accesses slots of keys by keeping the nodes on the path of the last accessed key.
+	 * Nodes of the levels shared with the last accessed key are not walked down again,
+	 * so accessing keys in ascending order touches every node only once like a bottom-up bulk load.
+	 * Index must not be modified by other means while a finger is in use.
+	 */
+	class Finger {
+
+		final JudyNode[] nodes = new JudyNode[levelCount];
+		// Count of nodes on the path of the last key which are known to be valid
+		int depth;
+		long lastKey;
+
+		/**
+		 * Finds count of nodes on the path of the last key which are also on the path of given key.
+		 */
+		int reusableDepth(long key) {
+			if (depth == 0) {
+				nodes[0] = root;
+				return 1;
+			}
+			long diff = lastKey ^ key;
+			if (diff == 0) {
+				return depth;
+			}
+			int commonLevels = (Long.numberOfLeadingZeros(diff) - (Long.SIZE - (levelCount << 3))) >>> 3;
+			return Math.min(commonLevels + 1, depth);
+		}
+
+		Object get(long key) {
+			int level = reusableDepth(key) - 1;
+			lastKey = key;
+			for (; level < maxLevel; level++) {
+				JudyNode child = (JudyNode) nodes[level].get(indexOf(key, level));
+				if (child == null) {
+					depth = level + 1;
+					return null;
+				}
+				nodes[level + 1] = child;
+			}
+			depth = levelCount;
+			return nodes[maxLevel].get(indexOf(key, maxLevel));
+		}
+
+		/**
+		 * Puts slot for key and returns the previous slot if there is.
+		 */
+		Object put(long key, Object slot) {
+			int level = reusableDepth(key) - 1;
+			lastKey = key;
+			for (; level < maxLevel; level++) {
+				int index = indexOf(key, level);
+				JudyNode node = nodes[level];
+				JudyNode child = (JudyNode) node.get(index);
+				if (child == null) {
+					child = newNode(level + 1);
+					nodes[level] = replace(level == 0 ? null : nodes[level - 1], level, key, node, set(level, node, index, child));
+				}
+				nodes[level + 1] = child;
+			}
+			depth = levelCount;
+			int index = indexOf(key, maxLevel);
+			JudyNode node = nodes[maxLevel];
+			Object oldSlot = node.get(index);
+			nodes[maxLevel] = replace(maxLevel == 0 ? null : nodes[maxLevel - 1], maxLevel, key, node, set(maxLevel, node, index, slot));
+			if (oldSlot == null) {
+				size++;
+				modCount++;
+			}
+			return oldSlot;
+		}
+
+	}
+
+	/**
+	 * Traverses slots of last level in key order.
+	 * Current node and slot index of every level is kept,
+	 * so moving to next slot doesn't need to go back to root.
+	 * Subtrees without any slot are never visited, since only occupied indexes of nodes are followed.
+	 */
+	class Cursor {
+
+		final JudyNode[] nodes = new JudyNode[levelCount];
+		final int[] indexes = new int[levelCount];
+		final long fromKey;
+		final long toKey;
+		final boolean bounded;
+		int expectedModCount = modCount;
+		boolean positioned;
+		boolean finished;
+		boolean removed;
+
+		Cursor(long fromKey, long toKey, boolean bounded) {
+			this.fromKey = fromKey;
+			this.toKey = toKey;
+			this.bounded = bounded;
+		}
+
+		/**
+		 * Moves to next slot and returns <code>false</code> if there is no more slot.
+		 */
+		boolean advance() {
+			if (finished) {
+				return false;
+			}
+			checkForModification();
+			boolean found;
+			if (removed) {
+				// Nodes on the path may have been demoted by removal, so find position again from root
+				removed = false;
+				long key = key();
+				if (key == maxKey) {
+					finished = true;
+					return false;
+				}
+				found = seek(key + 1);
+			}
+			else if (!positioned) {
+				found = seek(fromKey);
+			}
+			else {
+				found = find(maxLevel, indexes[maxLevel] + 1, false, 0L);
+			}
+			if (found && bounded && compareKeys(key(), toKey) >= 0) {
+				finished = true;
+				return false;
+			}
+			return found;
+		}
+
+		/**
+		 * Moves to the slot of the smallest key which is equal to or bigger than given key
+		 * and returns <code>false</code> if there is no such slot.
+		 */
+		boolean seek(long fromKey) {
+			checkForModification();
+			removed = false;
+			nodes[0] = root;
+			return find(0, indexOf(fromKey, 0), true, fromKey);
+		}
+
+		boolean find(int level, int fromIndex, boolean exact, long fromKey) {
+			positioned = true;
+			for (;;) {
+				int index = nodes[level].nextIndex(fromIndex);
+				if (index < 0) {
+					// There is no slot at or after this index, so continue with next slot of parent
+					if (level == 0) {
+						finished = true;
+						return false;
+					}
+					level--;
+					fromIndex = indexes[level] + 1;
+					exact = false;
+					continue;
+				}
+				indexes[level] = index;
+				if (level == maxLevel) {
+					finished = false;
+					return true;
+				}
+				exact = exact && index == fromIndex;
+				nodes[level + 1] = (JudyNode) nodes[level].get(index);
+				level++;
+				fromIndex = exact ? indexOf(fromKey, level) : 0;
+			}
+		}
+
+		long key() {
+			long key = 0;
+			for (int level = 0; level < levelCount; level++) {
+				key = (key << JudyNode.BITS_IN_BYTE) | indexes[level];
+			}
+			return key;
+		}
+
+		Object slot() {
+			return nodes[maxLevel].get(indexes[maxLevel]);
+		}
+
+		/**
+		 * Replaces slot at current position. Since slot is already occupied, node is not changed.
+		 */
+		void setSlot(Object slot) {
+			checkForModification();
+			if (!positioned || finished || removed) {
+				throw new IllegalStateException();
+			}
+			nodes[maxLevel].set(indexes[maxLevel], slot);
+		}
+
+		/**
+		 * Removes slot at current position. 
+		 * Next call to {@link #advance()} moves to the slot after the removed one.
+		 */
+		void remove() {
+			checkForModification();
+			if (!positioned || finished || removed) {
+				throw new IllegalStateException();
+			}
+			JudyIndex.this.remove(key());
+			expectedModCount = modCount;
+			removed = true;
+		}
+
+		/**
+		 * Accepts modifications done on index (not by this cursor) after the current position.
+		 * Next call to {@link #advance()} finds the slot after the current one again from root.
+		 */
+		void reposition() {
+			expectedModCount = modCount;
+			if (positioned && !finished) {
+				removed = true;
+			}
+		}
+
+		void checkForModification() {
+			if (modCount != expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,326 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tr.com.serkanozal.jcommon.map;
+
+/**
+ * @author Serkan ÖZAL
+ * 
+ * Base of adaptive Judy nodes. A node maps one byte of the key (0 - 255) to a slot.
+ * Slots hold child nodes at intermediate levels and values at the last level.
+ * 
+ * Nodes change their layout by the count of slots they hold:
+ * 		linear nodes hold up to {@link #LINEAR_NODE_MAX_SIZE} slots with sorted indexes,
+ * 		bitmap nodes hold up to {@link #BITMAP_NODE_MAX_SIZE} slots addressed by population count,
+ * 		uncompressed nodes hold all 256 slots directly.
+ * Since a node may be promoted or demoted while putting or removing a slot, 
+ * callers must replace their reference with the returned node.
+ */
+abstract class JudyNode {
+
+	final static int BITS_IN_BYTE = 8;
+	final static int NODE_SIZE = 256;
+	final static int INDEX_MASK = NODE_SIZE - 1;
+	final static int BITMAP_WORD_COUNT = NODE_SIZE / Long.SIZE;
+	
+	final static int LINEAR_NODE_MAX_SIZE = Long.SIZE / BITS_IN_BYTE - 1;
+	final static int BITMAP_NODE_MIN_SIZE = 4;
+	final static int BITMAP_NODE_MAX_SIZE = 128;
+	final static int UNCOMPRESSED_NODE_MIN_SIZE = 64;
+	
+	final static Object[] EMPTY_SLOTS = new Object[0];
+	
+	final static int TYPE_LINEAR = 0;
+	final static int TYPE_BITMAP = 1;
+	final static int TYPE_UNCOMPRESSED = 2;
+	final static int TYPE_COUNT = 3;
+	
+	abstract int type();
+	abstract int count();
+	abstract Object get(int index);
+	abstract JudyNode set(int index, Object slot);
+	abstract JudyNode unset(int index);
+	abstract int nextIndex(int fromIndex);
+	
+	JudyNode copyTo(JudyNode node) {
+		for (int i = nextIndex(0); i >= 0; i = nextIndex(i + 1)) {
+			node = node.set(i, get(i));
+		}
+		return node;
+	}
+	
+	/**
+	 * Node for sparse slots. Indexes are kept sorted and packed into a long 
+	 * (one byte for each slot) and slot array is sized exactly by the count of slots.
+	 */
+	static class JudyLinearNode extends JudyNode {
+		
+		long indexes;
+		Object[] slots = EMPTY_SLOTS;
+		
+		int indexAt(int i) {
+			return (int) (indexes >>> (i << 3)) & INDEX_MASK;
+		}
+		
+		int find(int index) {
+			for (int i = 0; i < slots.length; i++) {
+				int currentIndex = indexAt(i);
+				if (currentIndex == index) {
+					return i;
+				}
+				else if (currentIndex > index) {
+					// Indexes are sorted, so there is no need to look further
+					return -(i + 1);
+				}
+			}
+			return -(slots.length + 1);
+		}
+		
+		@Override
+		int type() {
+			return TYPE_LINEAR;
+		}
+		
+		@Override
+		int count() {
+			return slots.length;
+		}
+		
+		@Override
+		Object get(int index) {
+			int i = find(index);
+			if (i >= 0) {
+				return slots[i];
+			}
+			return null;
+		}
+		
+		@Override
+		JudyNode set(int index, Object slot) {
+			int i = find(index);
+			if (i >= 0) {
+				slots[i] = slot;
+				return this;
+			}
+			int count = slots.length;
+			if (count == LINEAR_NODE_MAX_SIZE) {
+				// No more space in packed indexes, so promote to bitmap node
+				return copyTo(new JudyBitmapNode()).set(index, slot);
+			}
+			i = -(i + 1);
+			Object[] newSlots = new Object[count + 1];
+			System.arraycopy(slots, 0, newSlots, 0, i);
+			System.arraycopy(slots, i, newSlots, i + 1, count - i);
+			newSlots[i] = slot;
+			int shift = i << 3;
+			long lowerIndexesMask = (1L << shift) - 1;
+			indexes = 	(indexes & lowerIndexesMask) | 
+						((long) index << shift) | 
+						((indexes & ~lowerIndexesMask) << BITS_IN_BYTE);
+			slots = newSlots;
+			return this;
+		}
+		
+		@Override
+		JudyNode unset(int index) {
+			int i = find(index);
+			if (i < 0) {
+				return this;
+			}
+			int count = slots.length;
+			if (count == 1) {
+				return null;
+			}
+			Object[] newSlots = new Object[count - 1];
+			System.arraycopy(slots, 0, newSlots, 0, i);
+			System.arraycopy(slots, i + 1, newSlots, i, count - i - 1);
+			long lowerIndexesMask = (1L << (i << 3)) - 1;
+			indexes = (indexes & lowerIndexesMask) | ((indexes >>> BITS_IN_BYTE) & ~lowerIndexesMask);
+			slots = newSlots;
+			return this;
+		}
+		
+		@Override
+		int nextIndex(int fromIndex) {
+			for (int i = 0; i < slots.length; i++) {
+				int currentIndex = indexAt(i);
+				if (currentIndex >= fromIndex) {
+					return currentIndex;
+				}
+			}
+			return -1;
+		}
+		
+	}
+	
+	/**
+	 * Node for moderately populated slots. Occupied indexes are marked on a 256 bit bitmap
+	 * and position of a slot in the exactly sized slot array is 
+	 * the count of occupied indexes before it.
+	 */
+	static class JudyBitmapNode extends JudyNode {
+		
+		long[] bitmap = new long[BITMAP_WORD_COUNT];
+		Object[] slots = EMPTY_SLOTS;
+		
+		int rank(int index) {
+			int word = index >>> 6;
+			int rank = 0;
+			for (int i = 0; i < word; i++) {
+				rank += Long.bitCount(bitmap[i]);
+			}
+			// Shift distance of long is masked by 63, so this is the bit of index in its word
+			return rank + Long.bitCount(bitmap[word] & ((1L << index) - 1));
+		}
+		
+		boolean contains(int index) {
+			return (bitmap[index >>> 6] & (1L << index)) != 0;
+		}
+		
+		@Override
+		int type() {
+			return TYPE_BITMAP;
+		}
+		
+		@Override
+		int count() {
+			return slots.length;
+		}
+		
+		@Override
+		Object get(int index) {
+			if (contains(index)) {
+				return slots[rank(index)];
+			}
+			return null;
+		}
+		
+		@Override
+		JudyNode set(int index, Object slot) {
+			if (contains(index)) {
+				slots[rank(index)] = slot;
+				return this;
+			}
+			int count = slots.length;
+			if (count == BITMAP_NODE_MAX_SIZE) {
+				// Node is dense enough, so promote to uncompressed node
+				return copyTo(new JudyUncompressedNode()).set(index, slot);
+			}
+			int i = rank(index);
+			Object[] newSlots = new Object[count + 1];
+			System.arraycopy(slots, 0, newSlots, 0, i);
+			System.arraycopy(slots, i, newSlots, i + 1, count - i);
+			newSlots[i] = slot;
+			bitmap[index >>> 6] |= (1L << index);
+			slots = newSlots;
+			return this;
+		}
+		
+		@Override
+		JudyNode unset(int index) {
+			if (!contains(index)) {
+				return this;
+			}
+			int count = slots.length;
+			int i = rank(index);
+			Object[] newSlots = new Object[count - 1];
+			System.arraycopy(slots, 0, newSlots, 0, i);
+			System.arraycopy(slots, i + 1, newSlots, i, count - i - 1);
+			bitmap[index >>> 6] &= ~(1L << index);
+			slots = newSlots;
+			if (newSlots.length < BITMAP_NODE_MIN_SIZE) {
+				// Node is sparse enough, so demote to linear node
+				return copyTo(new JudyLinearNode());
+			}
+			return this;
+		}
+		
+		@Override
+		int nextIndex(int fromIndex) {
+			if (fromIndex >= NODE_SIZE) {
+				return -1;
+			}
+			int word = fromIndex >>> 6;
+			long bits = bitmap[word] & (-1L << fromIndex);
+			while (bits == 0) {
+				if (++word == BITMAP_WORD_COUNT) {
+					return -1;
+				}
+				bits = bitmap[word];
+			}
+			return (word << 6) + Long.numberOfTrailingZeros(bits);
+		}
+		
+	}
+	
+	/**
+	 * Node for densely populated slots. Slots are indexed directly.
+	 */
+	static class JudyUncompressedNode extends JudyNode {
+		
+		Object[] slots = new Object[NODE_SIZE];
+		int count;
+		
+		@Override
+		int type() {
+			return TYPE_UNCOMPRESSED;
+		}
+		
+		@Override
+		int count() {
+			return count;
+		}
+		
+		@Override
+		Object get(int index) {
+			return slots[index];
+		}
+		
+		@Override
+		JudyNode set(int index, Object slot) {
+			if (slots[index] == null) {
+				count++;
+			}
+			slots[index] = slot;
+			return this;
+		}
+		
+		@Override
+		JudyNode unset(int index) {
+			if (slots[index] == null) {
+				return this;
+			}
+			slots[index] = null;
+			if (--count < UNCOMPRESSED_NODE_MIN_SIZE) {
+				// Node is not dense anymore, so demote to bitmap node
+				return copyTo(new JudyBitmapNode());
+			}
+			return this;
+		}
+		
+		@Override
+		int nextIndex(int fromIndex) {
+			for (int i = fromIndex; i < NODE_SIZE; i++) {
+				if (slots[i] != null) {
+					return i;
+				}
+			}
+			return -1;
+		}
+		
+	}
+	
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tr.com.serkanozal.jcommon.map;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import tr.com.serkanozal.jcommon.map.JudyNode.JudyBitmapNode;
+import tr.com.serkanozal.jcommon.map.JudyNode.JudyLinearNode;
+import tr.com.serkanozal.jcommon.map.JudyNode.JudyUncompressedNode;
+import tr.com.serkanozal.jcommon.util.JvmUtil;
+
+/**
+ * @author Serkan ÖZAL
+ * 
+ * Snapshot of statistics of a Judy tree based map. Counts of nodes and occupied slots 
+ * are maintained incrementally by the map for every level and node layout, 
+ * so taking a snapshot doesn't walk the tree.
+ * 
+ * Memory usage is estimated from these counts by object layout of JVM 
+ * (array base offsets, index scales and object alignment from {@link JvmUtil}), 
+ * so it is computed in constant time unlike {@link JvmUtil#sizeOf(Object)} which walks the object graph.
+ * Estimation covers nodes and entry objects of map, but not the keys and values themselves.
+ * Since compressed nodes have exactly sized slot arrays, their sizes are estimated by average slot count of level.
+ */
+public class JudyStats {
+
+	private final int levelCount;
+	private final int[] nodeCounts;
+	private final long[] slotCounts;
+	private final long entryCount;
+	private final Class<?> entryClass;
+	
+	JudyStats(int levelCount, int[] nodeCounts, long[] slotCounts, long entryCount, Class<?> entryClass) {
+		this.levelCount = levelCount;
+		this.nodeCounts = nodeCounts;
+		this.slotCounts = slotCounts;
+		this.entryCount = entryCount;
+		this.entryClass = entryClass;
+	}
+	
+	public int getLevelCount() {
+		return levelCount;
+	}
+	
+	public long getEntryCount() {
+		return entryCount;
+	}
+	
+	public int getLinearNodeCount(int level) {
+		return nodeCounts[level * JudyNode.TYPE_COUNT + JudyNode.TYPE_LINEAR];
+	}
+	
+	public int getBitmapNodeCount(int level) {
+		return nodeCounts[level * JudyNode.TYPE_COUNT + JudyNode.TYPE_BITMAP];
+	}
+	
+	public int getUncompressedNodeCount(int level) {
+		return nodeCounts[level * JudyNode.TYPE_COUNT + JudyNode.TYPE_UNCOMPRESSED];
+	}
+	
+	public int getNodeCount(int level) {
+		return getLinearNodeCount(level) + getBitmapNodeCount(level) + getUncompressedNodeCount(level);
+	}
+	
+	public int getNodeCount() {
+		int nodeCount = 0;
+		for (int level = 0; level < levelCount; level++) {
+			nodeCount += getNodeCount(level);
+		}
+		return nodeCount;
+	}
+	
+	/**
+	 * Gets count of occupied slots of nodes at given level.
+	 */
+	public long getSlotCount(int level) {
+		int offset = level * JudyNode.TYPE_COUNT;
+		return slotCounts[offset + JudyNode.TYPE_LINEAR] + 
+				slotCounts[offset + JudyNode.TYPE_BITMAP] + 
+				slotCounts[offset + JudyNode.TYPE_UNCOMPRESSED];
+	}
+	
+	public long getSlotCount() {
+		long slotCount = 0;
+		for (int level = 0; level < levelCount; level++) {
+			slotCount += getSlotCount(level);
+		}
+		return slotCount;
+	}
+	
+	/**
+	 * Gets ratio of occupied slots to all of 256 slots of nodes at given level.
+	 */
+	public double getFillRatio(int level) {
+		int nodeCount = getNodeCount(level);
+		return nodeCount == 0 ? 0.0 : (double) getSlotCount(level) / ((long) nodeCount * JudyNode.NODE_SIZE);
+	}
+	
+	public double getFillRatio() {
+		int nodeCount = getNodeCount();
+		return nodeCount == 0 ? 0.0 : (double) getSlotCount() / ((long) nodeCount * JudyNode.NODE_SIZE);
+	}
+	
+	/**
+	 * Estimates heap usage of nodes at given level in bytes.
+	 */
+	public long getEstimatedNodeBytes(int level) {
+		int offset = level * JudyNode.TYPE_COUNT;
+		int linearNodeCount = nodeCounts[offset + JudyNode.TYPE_LINEAR];
+		int bitmapNodeCount = nodeCounts[offset + JudyNode.TYPE_BITMAP];
+		int uncompressedNodeCount = nodeCounts[offset + JudyNode.TYPE_UNCOMPRESSED];
+		
+		long bytes = 
+			linearNodeCount * instanceSizeOf(JudyLinearNode.class) + 
+			slotArraysBytes(linearNodeCount, slotCounts[offset + JudyNode.TYPE_LINEAR]);
+		bytes += 
+			bitmapNodeCount * (instanceSizeOf(JudyBitmapNode.class) + 
+					JvmUtil.alignObjectSize(JvmUtil.sizeOfArray(long.class, JudyNode.BITMAP_WORD_COUNT))) + 
+			slotArraysBytes(bitmapNodeCount, slotCounts[offset + JudyNode.TYPE_BITMAP]);
+		bytes += 
+			uncompressedNodeCount * (instanceSizeOf(JudyUncompressedNode.class) + 
+					JvmUtil.alignObjectSize(JvmUtil.sizeOfArray(Object.class, JudyNode.NODE_SIZE)));
+		return bytes;
+	}
+	
+	public long getEstimatedNodeBytes() {
+		long bytes = 0;
+		for (int level = 0; level < levelCount; level++) {
+			bytes += getEstimatedNodeBytes(level);
+		}
+		return bytes;
+	}
+	
+	/**
+	 * Estimates heap usage of entry objects which hold keys and values in bytes.
+	 */
+	public long getEstimatedEntryBytes() {
+		return entryClass == null ? 0 : entryCount * instanceSizeOf(entryClass);
+	}
+	
+	public long getEstimatedBytes() {
+		return getEstimatedNodeBytes() + getEstimatedEntryBytes();
+	}
+	
+	/**
+	 * Instance sizes are calculated from field offsets, 
+	 * so they don't depend on reading class metadata from memory.
+	 */
+	private static long instanceSizeOf(Class<?> clazz) {
+		return JvmUtil.alignObjectSize(JvmUtil.sizeOfWithReflection(clazz));
+	}
+	
+	private static long slotArraysBytes(int nodeCount, long slotCount) {
+		if (nodeCount == 0 || slotCount == 0) {
+			return 0;
+		}
+		long averageSlotCount = (slotCount + nodeCount - 1) / nodeCount;
+		return nodeCount * 
+				JvmUtil.alignObjectSize(JvmUtil.sizeOfArray(Object.class, averageSlotCount));
+	}
+	
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("Entries: ").append(entryCount).append(", nodes: ").append(getNodeCount()).
+			append(", fill ratio: ").append(String.format("%.4f", getFillRatio())).append("\n");
+		for (int level = 0; level < levelCount; level++) {
+			sb.append("\tLevel ").append(level).
+				append(" - linear nodes: ").append(getLinearNodeCount(level)).
+				append(", bitmap nodes: ").append(getBitmapNodeCount(level)).
+				append(", uncompressed nodes: ").append(getUncompressedNodeCount(level)).
+				append(", slots: ").append(getSlotCount(level)).
+				append(", fill ratio: ").append(String.format("%.4f", getFillRatio(level))).append("\n");
+		}
+		return sb.toString();
+	}
+	
+	/**
+	 * Registers an MXBean to platform MBean server which exposes statistics of given provider 
+	 * by taking a new snapshot on every access.
+	 */
+	public static ObjectName registerMXBean(String objectName, Provider provider) throws JMException {
+		ObjectName name = new ObjectName(objectName);
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		server.registerMBean(new JudyStatsMXBeanImpl(provider), name);
+		return name;
+	}
+	
+	public static void unregisterMXBean(ObjectName objectName) throws JMException {
+		ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+	}
+	
+	/**
+	 * Implemented by maps which provide statistics of their Judy trees.
+	 */
+	public interface Provider {
+		
+		JudyStats getStats();
+		
+	}
+	
+	static class JudyStatsMXBeanImpl implements JudyStatsMXBean {
+		
+		private final Provider provider;
+		
+		JudyStatsMXBeanImpl(Provider provider) {
+			this.provider = provider;
+		}
+		
+		@Override
+		public long getEntryCount() {
+			return provider.getStats().getEntryCount();
+		}
+
+		@Override
+		public int getNodeCount() {
+			return provider.getStats().getNodeCount();
+		}
+
+		@Override
+		public long getSlotCount() {
+			return provider.getStats().getSlotCount();
+		}
+
+		@Override
+		public double getFillRatio() {
+			return provider.getStats().getFillRatio();
+		}
+
+		@Override
+		public long getEstimatedBytes() {
+			return provider.getStats().getEstimatedBytes();
+		}
+
+		@Override
+		public int[] getNodeCountsPerLevel() {
+			JudyStats stats = provider.getStats();
+			int[] nodeCounts = new int[stats.getLevelCount()];
+			for (int level = 0; level < nodeCounts.length; level++) {
+				nodeCounts[level] = stats.getNodeCount(level);
+			}
+			return nodeCounts;
+		}
+
+		@Override
+		public long[] getSlotCountsPerLevel() {
+			JudyStats stats = provider.getStats();
+			long[] slotCounts = new long[stats.getLevelCount()];
+			for (int level = 0; level < slotCounts.length; level++) {
+				slotCounts[level] = stats.getSlotCount(level);
+			}
+			return slotCounts;
+		}
+
+		@Override
+		public double[] getFillRatiosPerLevel() {
+			JudyStats stats = provider.getStats();
+			double[] fillRatios = new double[stats.getLevelCount()];
+			for (int level = 0; level < fillRatios.length; level++) {
+				fillRatios[level] = stats.getFillRatio(level);
+			}
+			return fillRatios;
+		}
+		
+	}
+	
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tr.com.serkanozal.jcommon.map;
+
+/**
+ * @author Serkan ÖZAL
+ * 
+ * Management interface for statistics of a Judy tree based map.
+ * 
+ * @see JudyStats#registerMXBean(String, JudyStats.Provider)
+ */
+public interface JudyStatsMXBean {
+
+	long getEntryCount();
+	int getNodeCount();
+	long getSlotCount();
+	double getFillRatio();
+	long getEstimatedBytes();
+	int[] getNodeCountsPerLevel();
+	long[] getSlotCountsPerLevel();
+	double[] getFillRatiosPerLevel();
+	
+}
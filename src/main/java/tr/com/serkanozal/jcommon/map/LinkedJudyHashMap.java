@@ -0,0 +1,150 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tr.com.serkanozal.jcommon.map;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * @author Serkan ÖZAL
+ * 
+ * {@link JudyHashMap} which iterates entries in the order they were put (insertion order) 
+ * like {@link java.util.LinkedHashMap}. Entries are linked to each other by two more references, 
+ * so putting and removing an entry also updates its neighbour entries.
+ */
+public class LinkedJudyHashMap<K, V> extends JudyHashMap<K, V> {
+
+	private JudyLinkedEntry firstEntry;
+	private JudyLinkedEntry lastEntry;
+	
+	public LinkedJudyHashMap() {
+		
+	}
+	
+	/**
+	 * @param spreadHashCodes 	mixes bits of hash codes before indexing if <code>true</code>. 
+	 * 							See {@link JudyHashMap#JudyHashMap(boolean)}.
+	 */
+	public LinkedJudyHashMap(boolean spreadHashCodes) {
+		super(spreadHashCodes);
+	}
+	
+	/**
+	 * Puts entries one by one, since bulk load puts them in hash code order instead of their iteration order.
+	 */
+	@Override
+	public void putAll(Map<? extends K, ? extends V> map) {
+		for (Map.Entry<? extends K, ? extends V> entry : map.entrySet()) {
+			put(entry.getKey(), entry.getValue());
+		}
+	}
+	
+	@Override
+	Class<?> entryClass() {
+		return LinkedJudyHashMap.JudyLinkedEntry.class;
+	}
+	
+	@Override
+	JudyEntry newEntry(K key, V value) {
+		return new JudyLinkedEntry(key, value);
+	}
+	
+	@Override
+	void entryAdded(JudyEntry entry) {
+		JudyLinkedEntry linkedEntry = (JudyLinkedEntry) entry;
+		if (firstEntry == null) {
+			firstEntry = linkedEntry;
+		}
+		if (lastEntry != null) {
+			linkedEntry.prev = lastEntry;
+			lastEntry.next = linkedEntry;
+		}
+		lastEntry = linkedEntry;
+	}
+	
+	@Override
+	void entryRemoved(JudyEntry entry) {
+		JudyLinkedEntry linkedEntry = (JudyLinkedEntry) entry;
+		if (linkedEntry == firstEntry) {
+			firstEntry = linkedEntry.next;
+		}
+		if (linkedEntry == lastEntry) {
+			lastEntry = linkedEntry.prev;
+		}
+		if (linkedEntry.prev != null) {
+			linkedEntry.prev.next = linkedEntry.next;
+		}
+		if (linkedEntry.next != null) {
+			linkedEntry.next.prev = linkedEntry.prev;
+		}
+	}
+	
+	@Override
+	void entriesCleared() {
+		firstEntry = null;
+		lastEntry = null;
+	}
+	
+	@Override
+	Iterator<Map.Entry<K, V>> entryIterator() {
+		return new JudyLinkedEntryIterator();
+	}
+	
+	class JudyLinkedEntryIterator implements Iterator<Map.Entry<K, V>> {
+
+		JudyLinkedEntry nextEntry = firstEntry;
+		JudyLinkedEntry lastReturnedEntry;
+		
+		@Override
+		public boolean hasNext() {
+			return nextEntry != null;
+		}
+
+		@Override
+		public Map.Entry<K, V> next() {
+			if (nextEntry == null) {
+				throw new NoSuchElementException();
+			}
+			lastReturnedEntry = nextEntry;
+			nextEntry = nextEntry.next;
+			return lastReturnedEntry;
+		}
+
+		@Override
+		public void remove() {
+			if (lastReturnedEntry == null) {
+				throw new IllegalStateException();
+			}
+			LinkedJudyHashMap.this.remove(lastReturnedEntry.key);
+			lastReturnedEntry = null;
+		}
+		
+	}
+	
+	class JudyLinkedEntry extends JudyEntry {
+		
+		JudyLinkedEntry prev;
+		JudyLinkedEntry next;
+		
+		JudyLinkedEntry(K key, V value) {
+			super(key, value);
+		}
+		
+	}
+	
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tr.com.serkanozal.jcommon.map;
+
+import java.util.NoSuchElementException;
+
+/**
+ * @author Serkan ÖZAL
+ * 
+ * Holds and indexes entities by <code>long</code> keys with Judy tree based structure 
+ * like {@link JudyHashMap}, but bits of keys are used directly as indexes of levels 
+ * instead of hash codes of key objects. So there is no boxing of keys 
+ * and no entry object for values, values are held directly in slots of last level nodes.
+ * There are 8 levels for 8 byte of key as <code>long</code>.
+ * 
+ * Entities are iterated by {@link Cursor} in ascending order of keys.
+ * Since keys are ordered in the tree, ordered operations like {@link #firstKey()}, {@link #ceilingKey(long)} 
+ * and range iteration by {@link #cursor(long, long)} are supported like {@link java.util.NavigableMap}.
+ */
+public class LongJudyMap<V> implements JudyStats.Provider {
+
+	private final static int BITS_IN_BYTE = 8;
+	private final static int LEVEL_COUNT = Long.SIZE / BITS_IN_BYTE;
+	
+	private final static Object NULL_VALUE = new Object();
+	
+	private final JudyIndex index = new JudyIndex(LEVEL_COUNT);
+	
+	public LongJudyMap() {
+		
+	}
+	
+	public int size() {
+		return index.size();
+	}
+	
+	public boolean isEmpty() {
+		return index.size() == 0;
+	}
+	
+	public V get(long key) {
+		return unmaskNull(index.get(indexKeyOf(key)));
+	}
+	
+	public boolean containsKey(long key) {
+		return index.get(indexKeyOf(key)) != null;
+	}
+	
+	public V put(long key, V value) {
+		return unmaskNull(index.put(indexKeyOf(key), maskNull(value)));
+	}
+	
+	public V remove(long key) {
+		return unmaskNull(index.remove(indexKeyOf(key)));
+	}
+	
+	public void clear() {
+		index.clear();
+	}
+	
+	/**
+	 * Gets statistics of nodes and estimated memory usage of this map. 
+	 * Values are held directly in slots, so there is no entry object to be estimated.
+	 */
+	@Override
+	public JudyStats getStats() {
+		return index.stats(index.size(), null);
+	}
+	
+	public long[] keys() {
+		long[] keys = new long[index.size()];
+		int i = 0;
+		for (Cursor cursor = cursor(); cursor.advance();) {
+			keys[i++] = cursor.getKey();
+		}
+		return keys;
+	}
+	
+	public Cursor cursor() {
+		return new Cursor(index.cursor());
+	}
+	
+	/**
+	 * Creates a cursor which iterates entities whose keys are 
+	 * from <code>fromKey</code> (inclusive) to <code>toKey</code> (exclusive) in ascending order.
+	 */
+	public Cursor cursor(long fromKey, long toKey) {
+		if (fromKey > toKey) {
+			throw new IllegalArgumentException("fromKey > toKey");
+		}
+		return new Cursor(index.cursor(indexKeyOf(fromKey), indexKeyOf(toKey)));
+	}
+	
+	/**
+	 * Gets the smallest key.
+	 * 
+	 * @throws NoSuchElementException if map is empty
+	 */
+	public long firstKey() {
+		JudyIndex.Cursor indexCursor = index.cursor();
+		if (!indexCursor.advance()) {
+			throw new NoSuchElementException();
+		}
+		return keyOf(indexCursor.key());
+	}
+	
+	/**
+	 * Gets the smallest key which is equal to or bigger than given key, 
+	 * or <code>null</code> if there is no such key.
+	 */
+	public Long ceilingKey(long key) {
+		JudyIndex.Cursor indexCursor = index.cursor();
+		if (!indexCursor.seek(indexKeyOf(key))) {
+			return null;
+		}
+		return keyOf(indexCursor.key());
+	}
+	
+	/**
+	 * Gets the smallest key which is bigger than given key, 
+	 * or <code>null</code> if there is no such key.
+	 */
+	public Long higherKey(long key) {
+		if (key == Long.MAX_VALUE) {
+			return null;
+		}
+		return ceilingKey(key + 1);
+	}
+	
+	/**
+	 * Sign bit of key is flipped, so negative keys are placed before positive keys in the tree.
+	 */
+	private static long indexKeyOf(long key) {
+		return key ^ Long.MIN_VALUE;
+	}
+	
+	private static long keyOf(long indexKey) {
+		return indexKey ^ Long.MIN_VALUE;
+	}
+	
+	private static Object maskNull(Object value) {
+		return value == null ? NULL_VALUE : value;
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static <V> V unmaskNull(Object slot) {
+		return slot == NULL_VALUE ? null : (V) slot;
+	}
+	
+	/**
+	 * Iterates entities in ascending order of keys without boxing keys. 
+	 * Initially cursor is positioned before the first entity, 
+	 * so {@link #advance()} must be called before accessing the first entity.
+	 */
+	public class Cursor {
+		
+		private final JudyIndex.Cursor indexCursor;
+		
+		private Cursor(JudyIndex.Cursor indexCursor) {
+			this.indexCursor = indexCursor;
+		}
+		
+		/**
+		 * Moves to next entity and returns <code>false</code> if there is no more entity.
+		 */
+		public boolean advance() {
+			return indexCursor.advance();
+		}
+		
+		public long getKey() {
+			return keyOf(indexCursor.key());
+		}
+		
+		public V getValue() {
+			return unmaskNull(indexCursor.slot());
+		}
+		
+		public void setValue(V value) {
+			indexCursor.setSlot(maskNull(value));
+		}
+		
+		public void remove() {
+			indexCursor.remove();
+		}
+		
+	}
+	
+}
@@ -0,0 +1,340 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tr.com.serkanozal.jcommon.map;
+
+import java.io.Closeable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * @author Serkan ÖZAL
+ *
+ * Variant of {@link JudyHashMap} whose Judy tree nodes are allocated in native memory.
+ * Keys and values are still objects, so entries are held in an on-heap entry table
+ * and leaf slots of the tree hold handles (indexes) of entries in this table instead of references.
+ * So GC only traces a single flat array of entries, not the nodes of the tree.
+ *
+ * Entries with the same hash code are chained by handles and they are distinguished by
+ * {@link Object#equals(Object)}. Handles of removed entries are reused by later puts.
+ *
+ * Native memory is not released by GC, so {@link #close()} must be called when map is not used anymore.
+ * Memory usage of nodes is tracked by {@link #getMemoryUsage()} and it can be capped
+ * by the memory limit given to constructor. A put exceeding the limit throws {@link IllegalStateException}.
+ *
+ * Map is not thread-safe. Null keys are not supported.
+ */
+public class OffHeapJudyHashMap<K, V> extends AbstractMap<K, V> implements Closeable {
+
+	private final static int BITS_IN_BYTE = 8;
+	private final static int LEVEL_COUNT = Integer.SIZE / BITS_IN_BYTE;
+	private final static int INITIAL_ENTRY_TABLE_SIZE = 16;
+	private final static int NO_HANDLE = -1;
+
+	private final OffHeapJudyIndex index;
+	@SuppressWarnings("rawtypes")
+	private OffHeapJudyHashMap.JudyEntry[] entries = new OffHeapJudyHashMap.JudyEntry[INITIAL_ENTRY_TABLE_SIZE];
+	// Handles of removed entries are kept as a stack to be reused
+	private int[] freeHandles = new int[INITIAL_ENTRY_TABLE_SIZE];
+	private int freeHandleCount;
+	private int usedHandleCount;
+
+	public OffHeapJudyHashMap() {
+		this(OffHeapJudyIndex.NO_LIMIT);
+	}
+
+	/**
+	 * @param memoryLimit 	maximum native memory in bytes which can be used by nodes of this map
+	 */
+	public OffHeapJudyHashMap(long memoryLimit) {
+		this.index = new OffHeapJudyIndex(LEVEL_COUNT, memoryLimit);
+	}
+
+	@Override
+	public int size() {
+		return usedHandleCount - freeHandleCount;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	@Override
+	public Set<Map.Entry<K, V>> entrySet() {
+		return new JudyEntrySet();
+	}
+
+	@Override
+	public V get(Object key) {
+		JudyEntry entry = findEntry(key);
+		return entry != null ? entry.value : null;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return findEntry(key) != null;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public V put(K key, V value) {
+		long indexKey = indexKeyOf(key);
+		int head = (int) index.get(indexKey, NO_HANDLE);
+		for (int handle = head; handle != NO_HANDLE; handle = entries[handle].next) {
+			JudyEntry entry = entries[handle];
+			if (entry.key == key || entry.key.equals(key)) {
+				V oldValue = entry.value;
+				entry.value = value;
+				return oldValue;
+			}
+		}
+		int handle = acquireHandle();
+		JudyEntry entry = new JudyEntry(key, value, head);
+		entries[handle] = entry;
+		try {
+			// New entry becomes head of the chain
+			index.put(indexKey, handle, NO_HANDLE);
+		}
+		catch (RuntimeException e) {
+			releaseHandle(handle);
+			throw e;
+		}
+		return null;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public V remove(Object key) {
+		long indexKey = indexKeyOf(key);
+		int prevHandle = NO_HANDLE;
+		for (int handle = (int) index.get(indexKey, NO_HANDLE); handle != NO_HANDLE; handle = entries[handle].next) {
+			JudyEntry entry = entries[handle];
+			if (entry.key == key || entry.key.equals(key)) {
+				if (prevHandle != NO_HANDLE) {
+					entries[prevHandle].next = entry.next;
+				}
+				else if (entry.next != NO_HANDLE) {
+					// Slot already exists, so replacing it never allocates memory
+					index.put(indexKey, entry.next, NO_HANDLE);
+				}
+				else {
+					index.remove(indexKey, NO_HANDLE);
+				}
+				releaseHandle(handle);
+				return entry.value;
+			}
+			prevHandle = handle;
+		}
+		return null;
+	}
+
+	@Override
+	public void clear() {
+		index.clear();
+		entries = new OffHeapJudyHashMap.JudyEntry[INITIAL_ENTRY_TABLE_SIZE];
+		freeHandles = new int[INITIAL_ENTRY_TABLE_SIZE];
+		freeHandleCount = 0;
+		usedHandleCount = 0;
+	}
+
+	/**
+	 * Gets native memory used by nodes of this map in bytes.
+	 * Entry table is on heap, so it is not included.
+	 */
+	public long getMemoryUsage() {
+		return index.getMemoryUsage();
+	}
+
+	/**
+	 * Releases native memory of this map. Map cannot be used anymore after it is closed, 
+	 * but it is seen as empty map by size and iteration.
+	 */
+	@Override
+	public void close() {
+		index.free();
+		entries = null;
+		freeHandles = null;
+		freeHandleCount = 0;
+		usedHandleCount = 0;
+	}
+
+	public boolean isClosed() {
+		return index.isFreed();
+	}
+
+	/**
+	 * Hash code is used as unsigned index key, so most significant byte of it is used at first level.
+	 */
+	private static long indexKeyOf(Object key) {
+		return key.hashCode() & 0xFFFFFFFFL;
+	}
+
+	@SuppressWarnings("unchecked")
+	private JudyEntry findEntry(Object key) {
+		for (int handle = (int) index.get(indexKeyOf(key), NO_HANDLE); handle != NO_HANDLE; handle = entries[handle].next) {
+			JudyEntry entry = entries[handle];
+			if (entry.key == key || entry.key.equals(key)) {
+				return entry;
+			}
+		}
+		return null;
+	}
+
+	private int acquireHandle() {
+		if (freeHandleCount > 0) {
+			return freeHandles[--freeHandleCount];
+		}
+		if (usedHandleCount == entries.length) {
+			@SuppressWarnings("rawtypes")
+			OffHeapJudyHashMap.JudyEntry[] newEntries = new OffHeapJudyHashMap.JudyEntry[entries.length << 1];
+			System.arraycopy(entries, 0, newEntries, 0, entries.length);
+			entries = newEntries;
+		}
+		return usedHandleCount++;
+	}
+
+	private void releaseHandle(int handle) {
+		entries[handle] = null;
+		if (freeHandleCount == freeHandles.length) {
+			int[] newFreeHandles = new int[freeHandles.length << 1];
+			System.arraycopy(freeHandles, 0, newFreeHandles, 0, freeHandles.length);
+			freeHandles = newFreeHandles;
+		}
+		freeHandles[freeHandleCount++] = handle;
+	}
+
+	class JudyEntrySet extends AbstractSet<Map.Entry<K, V>> {
+
+		@Override
+		public Iterator<Map.Entry<K, V>> iterator() {
+			return new JudyEntryIterator();
+		}
+
+		@Override
+		public int size() {
+			return OffHeapJudyHashMap.this.size();
+		}
+
+		@Override
+		public void clear() {
+			OffHeapJudyHashMap.this.clear();
+		}
+
+	}
+
+	/**
+	 * Iterates entries in the order of their handles in entry table.
+	 */
+	class JudyEntryIterator implements Iterator<Map.Entry<K, V>> {
+
+		int nextHandle = -1;
+		JudyEntry lastReturnedEntry;
+
+		JudyEntryIterator() {
+			advance();
+		}
+
+		void advance() {
+			do {
+				nextHandle++;
+			} while (nextHandle < usedHandleCount && entries[nextHandle] == null);
+		}
+
+		@Override
+		public boolean hasNext() {
+			return nextHandle < usedHandleCount;
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public Map.Entry<K, V> next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			lastReturnedEntry = entries[nextHandle];
+			advance();
+			return lastReturnedEntry;
+		}
+
+		@Override
+		public void remove() {
+			if (lastReturnedEntry == null) {
+				throw new IllegalStateException();
+			}
+			OffHeapJudyHashMap.this.remove(lastReturnedEntry.key);
+			lastReturnedEntry = null;
+		}
+
+	}
+
+	class JudyEntry implements Map.Entry<K, V> {
+
+		final K key;
+		V value;
+		// Handle of the next entry with the same hash code
+		int next;
+
+		JudyEntry(K key, V value, int next) {
+			this.key = key;
+			this.value = value;
+			this.next = next;
+		}
+
+		@Override
+		public K getKey() {
+			return key;
+		}
+
+		@Override
+		public V getValue() {
+			return value;
+		}
+
+		@Override
+		public V setValue(V value) {
+			V oldValue = this.value;
+			this.value = value;
+			return oldValue;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Map.Entry)) {
+				return false;
+			}
+			Map.Entry<?, ?> entry = (Map.Entry<?, ?>) obj;
+			return key.equals(entry.getKey()) &&
+					(value == null ? entry.getValue() == null : value.equals(entry.getValue()));
+		}
+
+		@Override
+		public int hashCode() {
+			return key.hashCode() ^ (value == null ? 0 : value.hashCode());
+		}
+
+		@Override
+		public String toString() {
+			return key + "=" + value;
+		}
+
+	}
+
+}
@@ -0,0 +1,531 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tr.com.serkanozal.jcommon.map;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import sun.misc.Unsafe;
+import tr.com.serkanozal.jcommon.util.JvmUtil;
+
+/**
+ * @author Serkan ÖZAL
+ *
+ * Judy tree like {@link JudyIndex}, but its nodes are allocated in native memory
+ * and referenced by their addresses, so they are not traced by GC at all.
+ * Slots of the last level hold <code>long</code> values and other levels hold addresses of their child nodes.
+ *
+ * Nodes have the same adaptive layouts with {@link JudyNode}. Every node starts with an 8 byte header
+ * (type at first byte and slot count as <code>short</code> at third byte):
+ * 		linear nodes: header, sorted indexes packed into a <code>long</code>, exactly sized slots
+ * 		bitmap nodes: header, 256 bit bitmap, exactly sized slots addressed by population count
+ * 		uncompressed nodes: header, 256 bit bitmap, 256 slots
+ * Since presence of a slot is known by its index or bitmap, any value (including 0) can be stored.
+ *
+ * Native memory is not released by GC, so {@link #free()} must be called when index is not used anymore.
+ * Memory usage can be capped by a limit. When a put requires more memory than limit,
+ * it fails with {@link IllegalStateException} and index is left as it was before the put.
+ * Removals never fail since they only shrink nodes.
+ *
+ * Index is not thread-safe.
+ */
+class OffHeapJudyIndex {
+
+	final static long NO_LIMIT = Long.MAX_VALUE;
+
+	final static int TYPE_LINEAR = 1;
+	final static int TYPE_BITMAP = 2;
+	final static int TYPE_UNCOMPRESSED = 3;
+
+	final static int SLOT_SIZE = 8;
+	final static int TYPE_OFFSET = 0;
+	final static int COUNT_OFFSET = 2;
+	final static int HEADER_SIZE = 8;
+	final static int LINEAR_INDEXES_OFFSET = HEADER_SIZE;
+	final static int LINEAR_SLOTS_OFFSET = LINEAR_INDEXES_OFFSET + 8;
+	final static int BITMAP_OFFSET = HEADER_SIZE;
+	final static int BITMAP_SLOTS_OFFSET = BITMAP_OFFSET + JudyNode.BITMAP_WORD_COUNT * 8;
+
+	private final static AtomicLong TOTAL_MEMORY_USAGE = new AtomicLong();
+
+	private final Unsafe unsafe = JvmUtil.getUnsafe();
+	final int levelCount;
+	final int maxLevel;
+	final long memoryLimit;
+	long root;
+	int size;
+	long memoryUsage;
+	boolean freed;
+
+	OffHeapJudyIndex(int levelCount, long memoryLimit) {
+		this.levelCount = levelCount;
+		this.maxLevel = levelCount - 1;
+		this.memoryLimit = memoryLimit;
+	}
+
+	/**
+	 * Gets native memory used by nodes of all off-heap indexes.
+	 */
+	static long getTotalMemoryUsage() {
+		return TOTAL_MEMORY_USAGE.get();
+	}
+
+	/**
+	 * Finds related byte of key for using as index in given level.
+	 * Most significant byte is used at first level.
+	 */
+	int indexOf(long key, int level) {
+		return (int) (key >>> ((maxLevel - level) << 3)) & JudyNode.INDEX_MASK;
+	}
+
+	int size() {
+		return size;
+	}
+
+	long getMemoryUsage() {
+		return memoryUsage;
+	}
+
+	boolean containsKey(long key) {
+		return findSlot(key) != 0;
+	}
+
+	long get(long key, long defaultValue) {
+		long slot = findSlot(key);
+		return slot != 0 ? unsafe.getLong(slot) : defaultValue;
+	}
+
+	/**
+	 * Puts value for key and returns the previous value if there is, otherwise returns given default value.
+	 */
+	long put(long key, long value, long defaultValue) {
+		checkNotFreed();
+		if (root == 0) {
+			root = newPath(key, 0, value);
+			size++;
+			return defaultValue;
+		}
+		long node = root;
+		// Address of the slot which holds reference of current node (0 for root)
+		long nodeSlot = 0;
+		for (int level = 0; level < maxLevel; level++) {
+			int index = indexOf(key, level);
+			long slot = slotOf(node, index);
+			if (slot == 0) {
+				// Nodes of the rest of levels are built at first, so a failure leaves tree as it is
+				long child = newPath(key, level + 1, value);
+				long newNode;
+				try {
+					newNode = insert(node, index, child);
+				}
+				catch (RuntimeException e) {
+					freeNodes(child, level + 1);
+					throw e;
+				}
+				replace(nodeSlot, node, newNode);
+				size++;
+				return defaultValue;
+			}
+			nodeSlot = slot;
+			node = unsafe.getLong(slot);
+		}
+		int index = indexOf(key, maxLevel);
+		long slot = slotOf(node, index);
+		if (slot != 0) {
+			long oldValue = unsafe.getLong(slot);
+			unsafe.putLong(slot, value);
+			return oldValue;
+		}
+		replace(nodeSlot, node, insert(node, index, value));
+		size++;
+		return defaultValue;
+	}
+
+	/**
+	 * Removes value of key and returns it if there is, otherwise returns given default value.
+	 */
+	long remove(long key, long defaultValue) {
+		checkNotFreed();
+		if (root == 0) {
+			return defaultValue;
+		}
+		long[] nodes = new long[levelCount];
+		long[] nodeSlots = new long[levelCount];
+		long node = root;
+		for (int level = 0; level < maxLevel; level++) {
+			nodes[level] = node;
+			long slot = slotOf(node, indexOf(key, level));
+			if (slot == 0) {
+				return defaultValue;
+			}
+			nodeSlots[level + 1] = slot;
+			node = unsafe.getLong(slot);
+		}
+		nodes[maxLevel] = node;
+		long slot = slotOf(node, indexOf(key, maxLevel));
+		if (slot == 0) {
+			return defaultValue;
+		}
+		long oldValue = unsafe.getLong(slot);
+		// Remove slot, then go up while nodes are emptied and remove them from their parents
+		int level = maxLevel;
+		long newNode = delete(nodes[level], indexOf(key, level));
+		while (newNode == 0 && level > 0) {
+			level--;
+			newNode = delete(nodes[level], indexOf(key, level));
+		}
+		replace(level == 0 ? 0 : nodeSlots[level], nodes[level], newNode);
+		size--;
+		return oldValue;
+	}
+
+	void clear() {
+		checkNotFreed();
+		if (root != 0) {
+			freeNodes(root, 0);
+			root = 0;
+		}
+		size = 0;
+	}
+
+	/**
+	 * Releases native memory of all nodes. Index cannot be used anymore after it is freed.
+	 */
+	void free() {
+		if (!freed) {
+			clear();
+			freed = true;
+		}
+	}
+
+	boolean isFreed() {
+		return freed;
+	}
+
+	/**
+	 * Collects keys in ascending order.
+	 */
+	long[] keys() {
+		checkNotFreed();
+		long[] keys = new long[size];
+		if (root != 0) {
+			collectKeys(root, 0, 0L, keys, 0);
+		}
+		return keys;
+	}
+
+	private int collectKeys(long node, int level, long prefix, long[] keys, int count) {
+		for (int index = nextIndex(node, 0); index >= 0; index = nextIndex(node, index + 1)) {
+			long key = (prefix << JudyNode.BITS_IN_BYTE) | index;
+			if (level == maxLevel) {
+				keys[count++] = key;
+			}
+			else {
+				count = collectKeys(unsafe.getLong(slotOf(node, index)), level + 1, key, keys, count);
+			}
+		}
+		return count;
+	}
+
+	private void checkNotFreed() {
+		if (freed) {
+			throw new IllegalStateException("Off-heap Judy index has already been freed");
+		}
+	}
+
+	private long findSlot(long key) {
+		checkNotFreed();
+		long node = root;
+		if (node == 0) {
+			return 0;
+		}
+		// Walk down through intermediate levels by using bytes of key as indexes
+		for (int level = 0; level < maxLevel; level++) {
+			long slot = slotOf(node, indexOf(key, level));
+			if (slot == 0) {
+				return 0;
+			}
+			node = unsafe.getLong(slot);
+		}
+		return slotOf(node, indexOf(key, maxLevel));
+	}
+
+	/**
+	 * Replaces reference of node in the slot of its parent (or root) if node has been changed.
+	 * Parent already has a slot for node, so parent itself is never changed.
+	 */
+	private void replace(long nodeSlot, long node, long newNode) {
+		if (newNode != node) {
+			if (nodeSlot == 0) {
+				root = newNode;
+			}
+			else {
+				unsafe.putLong(nodeSlot, newNode);
+			}
+		}
+	}
+
+	/**
+	 * Builds nodes from given level to the last level which hold only the slot of key.
+	 */
+	private long newPath(long key, int fromLevel, long value) {
+		long node = newNode(TYPE_LINEAR, 1, true);
+		node = appendSlot(node, 0, indexOf(key, maxLevel), value);
+		for (int level = maxLevel - 1; level >= fromLevel; level--) {
+			long parent;
+			try {
+				parent = newNode(TYPE_LINEAR, 1, true);
+			}
+			catch (RuntimeException e) {
+				freeNodes(node, level + 1);
+				throw e;
+			}
+			node = appendSlot(parent, 0, indexOf(key, level), node);
+		}
+		return node;
+	}
+
+	private void freeNodes(long node, int level) {
+		if (level < maxLevel) {
+			for (int index = nextIndex(node, 0); index >= 0; index = nextIndex(node, index + 1)) {
+				freeNodes(unsafe.getLong(slotOf(node, index)), level + 1);
+			}
+		}
+		freeNode(node);
+	}
+
+	/////////////////////////////////////////////////////////////////////////////////
+
+	private int typeOf(long node) {
+		return unsafe.getByte(node + TYPE_OFFSET);
+	}
+
+	private int countOf(long node) {
+		return unsafe.getShort(node + COUNT_OFFSET);
+	}
+
+	private long sizeOf(int type, int count) {
+		switch (type) {
+			case TYPE_LINEAR:
+				return LINEAR_SLOTS_OFFSET + count * SLOT_SIZE;
+			case TYPE_BITMAP:
+				return BITMAP_SLOTS_OFFSET + count * SLOT_SIZE;
+			default:
+				return BITMAP_SLOTS_OFFSET + JudyNode.NODE_SIZE * SLOT_SIZE;
+		}
+	}
+
+	/**
+	 * Allocates an empty node which has space for given count of slots.
+	 * Slots are appended by {@link #appendSlot(long, int, int, long)} in ascending order of indexes.
+	 */
+	private long newNode(int type, int capacity, boolean checkLimit) {
+		long nodeSize = sizeOf(type, capacity);
+		if (checkLimit && memoryUsage + nodeSize > memoryLimit) {
+			throw new IllegalStateException(
+					"Memory limit of off-heap Judy index (" + memoryLimit + " bytes) has been exceeded");
+		}
+		long node = unsafe.allocateMemory(nodeSize);
+		memoryUsage += nodeSize;
+		TOTAL_MEMORY_USAGE.addAndGet(nodeSize);
+		// Header, linear indexes and bitmap are cleared. Slots are written before they are used.
+		unsafe.setMemory(node, type == TYPE_LINEAR ? LINEAR_SLOTS_OFFSET : BITMAP_SLOTS_OFFSET, (byte) 0);
+		unsafe.putByte(node + TYPE_OFFSET, (byte) type);
+		return node;
+	}
+
+	private void freeNode(long node) {
+		long nodeSize = sizeOf(typeOf(node), countOf(node));
+		unsafe.freeMemory(node);
+		memoryUsage -= nodeSize;
+		TOTAL_MEMORY_USAGE.addAndGet(-nodeSize);
+	}
+
+	private long appendSlot(long node, int position, int index, long value) {
+		switch (typeOf(node)) {
+			case TYPE_LINEAR:
+				long indexes = unsafe.getLong(node + LINEAR_INDEXES_OFFSET);
+				unsafe.putLong(node + LINEAR_INDEXES_OFFSET, indexes | ((long) index << (position << 3)));
+				unsafe.putLong(node + LINEAR_SLOTS_OFFSET + position * SLOT_SIZE, value);
+				break;
+			case TYPE_BITMAP:
+				setBit(node, index);
+				unsafe.putLong(node + BITMAP_SLOTS_OFFSET + position * SLOT_SIZE, value);
+				break;
+			default:
+				setBit(node, index);
+				unsafe.putLong(node + BITMAP_SLOTS_OFFSET + index * SLOT_SIZE, value);
+		}
+		unsafe.putShort(node + COUNT_OFFSET, (short) (position + 1));
+		return node;
+	}
+
+	private long wordAddressOf(long node, int index) {
+		return node + BITMAP_OFFSET + (index >>> 6) * 8;
+	}
+
+	private boolean hasBit(long node, int index) {
+		return (unsafe.getLong(wordAddressOf(node, index)) & (1L << index)) != 0;
+	}
+
+	private void setBit(long node, int index) {
+		long wordAddress = wordAddressOf(node, index);
+		unsafe.putLong(wordAddress, unsafe.getLong(wordAddress) | (1L << index));
+	}
+
+	private void clearBit(long node, int index) {
+		long wordAddress = wordAddressOf(node, index);
+		unsafe.putLong(wordAddress, unsafe.getLong(wordAddress) & ~(1L << index));
+	}
+
+	/**
+	 * Finds address of the slot at given index, or returns 0 if there is no slot at given index.
+	 */
+	private long slotOf(long node, int index) {
+		switch (typeOf(node)) {
+			case TYPE_LINEAR:
+				long indexes = unsafe.getLong(node + LINEAR_INDEXES_OFFSET);
+				int count = countOf(node);
+				for (int i = 0; i < count; i++) {
+					int currentIndex = (int) (indexes >>> (i << 3)) & JudyNode.INDEX_MASK;
+					if (currentIndex == index) {
+						return node + LINEAR_SLOTS_OFFSET + i * SLOT_SIZE;
+					}
+					else if (currentIndex > index) {
+						// Indexes are sorted, so there is no need to look further
+						return 0;
+					}
+				}
+				return 0;
+			case TYPE_BITMAP:
+				if (!hasBit(node, index)) {
+					return 0;
+				}
+				// Rank of index is the count of set bits before it
+				int word = index >>> 6;
+				int rank = Long.bitCount(unsafe.getLong(node + BITMAP_OFFSET + word * 8) & ((1L << index) - 1));
+				for (int i = 0; i < word; i++) {
+					rank += Long.bitCount(unsafe.getLong(node + BITMAP_OFFSET + i * 8));
+				}
+				return node + BITMAP_SLOTS_OFFSET + rank * SLOT_SIZE;
+			default:
+				return hasBit(node, index) ? node + BITMAP_SLOTS_OFFSET + index * SLOT_SIZE : 0;
+		}
+	}
+
+	/**
+	 * Finds the smallest index which is equal to or bigger than given index and has a slot,
+	 * or returns -1 if there is no such index.
+	 */
+	private int nextIndex(long node, int fromIndex) {
+		if (typeOf(node) == TYPE_LINEAR) {
+			long indexes = unsafe.getLong(node + LINEAR_INDEXES_OFFSET);
+			int count = countOf(node);
+			for (int i = 0; i < count; i++) {
+				int index = (int) (indexes >>> (i << 3)) & JudyNode.INDEX_MASK;
+				if (index >= fromIndex) {
+					return index;
+				}
+			}
+			return -1;
+		}
+		for (int word = fromIndex >>> 6; word < JudyNode.BITMAP_WORD_COUNT; word++) {
+			long bits = unsafe.getLong(node + BITMAP_OFFSET + word * 8);
+			if (word == fromIndex >>> 6) {
+				bits &= -1L << fromIndex;
+			}
+			if (bits != 0) {
+				return (word << 6) + Long.numberOfTrailingZeros(bits);
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Inserts a new slot to node and returns the node which holds slots from now on.
+	 * Compressed nodes are reallocated by their new size, so returned node may be a different node.
+	 */
+	private long insert(long node, int index, long value) {
+		int type = typeOf(node);
+		int count = countOf(node);
+		if (type == TYPE_UNCOMPRESSED) {
+			setBit(node, index);
+			unsafe.putLong(node + BITMAP_SLOTS_OFFSET + index * SLOT_SIZE, value);
+			unsafe.putShort(node + COUNT_OFFSET, (short) (count + 1));
+			return node;
+		}
+		int newType = type;
+		if (type == TYPE_LINEAR && count == JudyNode.LINEAR_NODE_MAX_SIZE) {
+			newType = TYPE_BITMAP;
+		}
+		else if (type == TYPE_BITMAP && count == JudyNode.BITMAP_NODE_MAX_SIZE) {
+			newType = TYPE_UNCOMPRESSED;
+		}
+		return copy(node, newType, count + 1, index, value, -1, true);
+	}
+
+	/**
+	 * Deletes slot from node and returns the node which holds slots from now on,
+	 * or returns 0 if there is no slot anymore.
+	 */
+	private long delete(long node, int index) {
+		int type = typeOf(node);
+		int count = countOf(node) - 1;
+		if (count == 0) {
+			freeNode(node);
+			return 0;
+		}
+		if (type == TYPE_UNCOMPRESSED && count >= JudyNode.UNCOMPRESSED_NODE_MIN_SIZE) {
+			clearBit(node, index);
+			unsafe.putShort(node + COUNT_OFFSET, (short) count);
+			return node;
+		}
+		int newType = type;
+		if (type == TYPE_UNCOMPRESSED) {
+			newType = TYPE_BITMAP;
+		}
+		else if (type == TYPE_BITMAP && count < JudyNode.BITMAP_NODE_MIN_SIZE) {
+			newType = TYPE_LINEAR;
+		}
+		// Node is shrunk, so limit is not checked and removals never fail
+		return copy(node, newType, count, -1, 0, index, false);
+	}
+
+	/**
+	 * Copies slots of node into a new node by inserting or skipping a slot, then frees the old node.
+	 */
+	private long copy(long node, int newType, int newCount, int insertIndex, long insertValue,
+			int skipIndex, boolean checkLimit) {
+		long newNode = newNode(newType, newCount, checkLimit);
+		int position = 0;
+		boolean inserted = insertIndex < 0;
+		for (int index = nextIndex(node, 0); index >= 0; index = nextIndex(node, index + 1)) {
+			if (!inserted && insertIndex < index) {
+				appendSlot(newNode, position++, insertIndex, insertValue);
+				inserted = true;
+			}
+			if (index != skipIndex) {
+				appendSlot(newNode, position++, index, unsafe.getLong(slotOf(node, index)));
+			}
+		}
+		if (!inserted) {
+			appendSlot(newNode, position, insertIndex, insertValue);
+		}
+		freeNode(node);
+		return newNode;
+	}
+
+}
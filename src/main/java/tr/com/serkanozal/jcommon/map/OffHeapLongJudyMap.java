@@ -0,0 +1,138 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tr.com.serkanozal.jcommon.map;
+
+import java.io.Closeable;
+
+/**
+ * @author Serkan ÖZAL
+ *
+ * Maps <code>long</code> keys to <code>long</code> values with a Judy tree whose nodes are
+ * allocated in native memory, so neither keys nor values nor nodes are held on heap.
+ * There are 8 levels for 8 byte of key as <code>long</code> like {@link LongJudyMap}.
+ *
+ * Since values are primitives, absence of a key is reported by <code>0</code> (or by given default value)
+ * and {@link #containsKey(long)} must be used to distinguish a <code>0</code> value from absence.
+ *
+ * Native memory is not released by GC, so {@link #close()} must be called when map is not used anymore.
+ * Memory usage of nodes is tracked by {@link #getMemoryUsage()} and it can be capped
+ * by the memory limit given to constructor. A put exceeding the limit throws {@link IllegalStateException}.
+ *
+ * Map is not thread-safe.
+ */
+public class OffHeapLongJudyMap implements Closeable {
+
+	private final static int BITS_IN_BYTE = 8;
+	private final static int LEVEL_COUNT = Long.SIZE / BITS_IN_BYTE;
+
+	private final OffHeapJudyIndex index;
+
+	public OffHeapLongJudyMap() {
+		this(OffHeapJudyIndex.NO_LIMIT);
+	}
+
+	/**
+	 * @param memoryLimit 	maximum native memory in bytes which can be used by nodes of this map
+	 */
+	public OffHeapLongJudyMap(long memoryLimit) {
+		this.index = new OffHeapJudyIndex(LEVEL_COUNT, memoryLimit);
+	}
+
+	/**
+	 * Gets native memory used by nodes of all off-heap Judy maps.
+	 */
+	public static long getTotalMemoryUsage() {
+		return OffHeapJudyIndex.getTotalMemoryUsage();
+	}
+
+	public int size() {
+		return index.size();
+	}
+
+	public boolean isEmpty() {
+		return index.size() == 0;
+	}
+
+	public long get(long key) {
+		return index.get(indexKeyOf(key), 0L);
+	}
+
+	public long get(long key, long defaultValue) {
+		return index.get(indexKeyOf(key), defaultValue);
+	}
+
+	public boolean containsKey(long key) {
+		return index.containsKey(indexKeyOf(key));
+	}
+
+	/**
+	 * Puts value for key and returns the previous value if there is, otherwise returns <code>0</code>.
+	 */
+	public long put(long key, long value) {
+		return index.put(indexKeyOf(key), value, 0L);
+	}
+
+	/**
+	 * Removes value of key and returns it if there is, otherwise returns <code>0</code>.
+	 */
+	public long remove(long key) {
+		return index.remove(indexKeyOf(key), 0L);
+	}
+
+	public void clear() {
+		index.clear();
+	}
+
+	public long[] keys() {
+		long[] keys = index.keys();
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = keyOf(keys[i]);
+		}
+		return keys;
+	}
+
+	/**
+	 * Gets native memory used by nodes of this map in bytes.
+	 */
+	public long getMemoryUsage() {
+		return index.getMemoryUsage();
+	}
+
+	/**
+	 * Releases native memory of this map. Map cannot be used anymore after it is closed.
+	 */
+	@Override
+	public void close() {
+		index.free();
+	}
+
+	public boolean isClosed() {
+		return index.isFreed();
+	}
+
+	/**
+	 * Sign bit of key is flipped, so negative keys are placed before positive keys in the tree.
+	 */
+	private static long indexKeyOf(long key) {
+		return key ^ Long.MIN_VALUE;
+	}
+
+	private static long keyOf(long indexKey) {
+		return indexKey ^ Long.MIN_VALUE;
+	}
+
+}
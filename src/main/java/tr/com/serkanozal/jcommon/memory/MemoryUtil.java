@@ -0,0 +1,92 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package tr.com.serkanozal.jcommon.memory;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import sun.misc.Unsafe;
+import tr.com.serkanozal.jcommon.util.JvmUtil;
+
+/**
+ * @author Serkan ÖZAL
+ * 
+ * Reserves native memory for off-heap allocators and tracks how much of it is in use by all of them, 
+ * so leaks of allocators which are never closed can be noticed.
+ */
+@SuppressWarnings("restriction")
+public class MemoryUtil {
+
+	public static final int DEFAULT_ALIGNMENT = 8;
+	
+	private static final Unsafe unsafe = JvmUtil.getUnsafe();
+	private static final AtomicLong TOTAL_RESERVED_MEMORY = new AtomicLong();
+	private static final AtomicLong TOTAL_RESERVED_CHUNK_COUNT = new AtomicLong();
+	
+	private MemoryUtil() {
+		
+	}
+	
+	/**
+	 * Gets native memory reserved by all off-heap allocators which are not closed yet in bytes.
+	 */
+	public static long getTotalReservedMemory() {
+		return TOTAL_RESERVED_MEMORY.get();
+	}
+	
+	/**
+	 * Gets count of native memory chunks reserved by all off-heap allocators which are not closed yet.
+	 */
+	public static long getTotalReservedChunkCount() {
+		return TOTAL_RESERVED_CHUNK_COUNT.get();
+	}
+	
+	public static boolean isPowerOfTwo(long value) {
+		return value > 0 && (value & (value - 1)) == 0;
+	}
+	
+	public static long alignAddress(long address, long alignment) {
+		return (address + alignment - 1) & -alignment;
+	}
+	
+	static void checkAlignment(int alignment, int maxAlignment) {
+		if (!isPowerOfTwo(alignment) || alignment > maxAlignment) {
+			throw new IllegalArgumentException(
+					"Alignment must be power of two and not bigger than " + maxAlignment + ": " + alignment);
+		}
+	}
+	
+	static void checkSize(long size) {
+		if (size <= 0) {
+			throw new IllegalArgumentException("Size must be positive: " + size);
+		}
+	}
+	
+	static long reserve(long size) {
+		long address = unsafe.allocateMemory(size);
+		TOTAL_RESERVED_MEMORY.addAndGet(size);
+		TOTAL_RESERVED_CHUNK_COUNT.incrementAndGet();
+		return address;
+	}
+	
+	static void release(long address, long size) {
+		unsafe.freeMemory(address);
+		TOTAL_RESERVED_MEMORY.addAndGet(-size);
+		TOTAL_RESERVED_CHUNK_COUNT.decrementAndGet();
+	}
+	
+}
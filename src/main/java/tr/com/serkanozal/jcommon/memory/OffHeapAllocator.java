@@ -0,0 +1,65 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package tr.com.serkanozal.jcommon.memory;
+
+import java.io.Closeable;
+
+/**
+ * @author Serkan ÖZAL
+ * 
+ * Allocates blocks of native memory and returns their addresses to be used by <code>Unsafe</code>.
+ * Memory is reserved from operating system in big chunks and blocks are carved from them, 
+ * so allocating a block is much cheaper than <code>Unsafe.allocateMemory</code>.
+ * 
+ * Native memory is not released by GC, so {@link #close()} must be called when allocator is not used anymore.
+ * It releases all reserved memory at once, so blocks don't need to be freed one by one before closing.
+ */
+public interface OffHeapAllocator extends Closeable {
+
+	/**
+	 * Allocates a block which is aligned to 8 bytes. Content of the block is not cleared.
+	 */
+	long allocate(long size);
+	
+	/**
+	 * Allocates a block whose address is multiple of given alignment. Content of the block is not cleared.
+	 * 
+	 * @param alignment	power of two alignment in bytes
+	 */
+	long allocate(long size, int alignment);
+	
+	/**
+	 * Gets memory of blocks which are allocated and not freed yet in bytes.
+	 */
+	long getAllocatedMemory();
+	
+	/**
+	 * Gets native memory reserved from operating system in bytes.
+	 */
+	long getReservedMemory();
+	
+	boolean isClosed();
+	
+	/**
+	 * Releases all native memory reserved by this allocator. 
+	 * Allocator and addresses allocated from it cannot be used anymore after it is closed.
+	 */
+	@Override
+	void close();
+	
+}
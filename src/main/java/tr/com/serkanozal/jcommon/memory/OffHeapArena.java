@@ -0,0 +1,146 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package tr.com.serkanozal.jcommon.memory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author Serkan ÖZAL
+ * 
+ * Off-heap allocator which allocates blocks by bumping a pointer in its current chunk. 
+ * Blocks cannot be freed one by one, all of them are freed at once by {@link #reset()} or {@link #close()}. 
+ * So it suits to data whose lifetime ends together, such as temporary buffers of a request or a batch.
+ * 
+ * When current chunk is full, a new chunk is reserved. 
+ * Blocks bigger than chunk size get their own chunks.
+ * 
+ * Arena is not thread-safe, so every thread should use its own arena.
+ */
+public class OffHeapArena implements OffHeapAllocator {
+
+	public static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+	public static final int MAX_ALIGNMENT = 4 * 1024;
+	
+	private final int chunkSize;
+	// Raw addresses and sizes of all reserved chunks, the first one is kept while arena is reset
+	private final List<long[]> chunks = new ArrayList<long[]>();
+	private long position;
+	private long limit;
+	private long allocatedMemory;
+	private long reservedMemory;
+	private boolean closed;
+	
+	public OffHeapArena() {
+		this(DEFAULT_CHUNK_SIZE);
+	}
+	
+	public OffHeapArena(int chunkSize) {
+		MemoryUtil.checkSize(chunkSize);
+		this.chunkSize = chunkSize;
+	}
+	
+	@Override
+	public long allocate(long size) {
+		return allocate(size, MemoryUtil.DEFAULT_ALIGNMENT);
+	}
+	
+	@Override
+	public long allocate(long size, int alignment) {
+		checkNotClosed();
+		MemoryUtil.checkSize(size);
+		MemoryUtil.checkAlignment(alignment, MAX_ALIGNMENT);
+		long address = MemoryUtil.alignAddress(position, alignment);
+		if (position == 0 || address + size > limit) {
+			reserveChunk(Math.max(chunkSize, size + alignment));
+			address = MemoryUtil.alignAddress(position, alignment);
+		}
+		position = address + size;
+		allocatedMemory += size;
+		return address;
+	}
+	
+	private void reserveChunk(long size) {
+		long address = MemoryUtil.reserve(size);
+		chunks.add(new long[] { address, size });
+		reservedMemory += size;
+		position = address;
+		limit = address + size;
+	}
+	
+	@Override
+	public long getAllocatedMemory() {
+		return allocatedMemory;
+	}
+	
+	@Override
+	public long getReservedMemory() {
+		return reservedMemory;
+	}
+	
+	public int getChunkCount() {
+		return chunks.size();
+	}
+	
+	/**
+	 * Frees all blocks at once. The first chunk is kept for later allocations and others are released.
+	 */
+	public void reset() {
+		checkNotClosed();
+		if (chunks.isEmpty()) {
+			return;
+		}
+		for (int i = chunks.size() - 1; i > 0; i--) {
+			long[] chunk = chunks.remove(i);
+			MemoryUtil.release(chunk[0], chunk[1]);
+			reservedMemory -= chunk[1];
+		}
+		long[] firstChunk = chunks.get(0);
+		position = firstChunk[0];
+		limit = firstChunk[0] + firstChunk[1];
+		allocatedMemory = 0;
+	}
+	
+	@Override
+	public boolean isClosed() {
+		return closed;
+	}
+	
+	@Override
+	public void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		for (long[] chunk : chunks) {
+			MemoryUtil.release(chunk[0], chunk[1]);
+		}
+		chunks.clear();
+		position = 0;
+		limit = 0;
+		allocatedMemory = 0;
+		reservedMemory = 0;
+	}
+	
+	private void checkNotClosed() {
+		if (closed) {
+			throw new IllegalStateException("Arena has been closed");
+		}
+	}
+	
+}
@@ -0,0 +1,460 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package tr.com.serkanozal.jcommon.memory;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import sun.misc.Unsafe;
+import tr.com.serkanozal.jcommon.util.JvmUtil;
+
+/**
+ * @author Serkan ÖZAL
+ * 
+ * Thread-safe off-heap allocator which serves blocks from size classes. 
+ * Sizes are rounded up to power of two size classes between {@link #MIN_BLOCK_SIZE} and {@link #MAX_BLOCK_SIZE}
+ * and every size class carves its blocks from its own slabs. 
+ * Freed blocks are linked into free list of their size class through their first 8 bytes, 
+ * so there is no memory overhead per block. Bigger blocks are reserved from operating system one by one.
+ * 
+ * Every thread has its own cache of blocks for every size class, so allocating and freeing 
+ * don't contend with other threads until the cache is empty or full. Then half of the cache 
+ * is refilled from or returned to the shared free list at once. 
+ * Caches are held weakly by their threads, so blocks in caches of dead threads are returned to 
+ * the shared free lists while caches are refilled or statistics are read. 
+ * Threads of pools can return their cached blocks by {@link #flushThreadCache()}.
+ * 
+ * Since blocks of a size class are placed at multiples of their size in slabs aligned to their size, 
+ * an aligned allocation is just an allocation from the size class of its alignment.
+ * 
+ * Blocks must be freed with the same size (and alignment) which they are allocated with.
+ * Allocations and frees are counted for leak tracking by {@link #getLiveAllocationCount()}.
+ */
+@SuppressWarnings("restriction")
+public class SlabAllocator implements OffHeapAllocator {
+
+	public static final int DEFAULT_SLAB_SIZE = 256 * 1024;
+	public static final int MIN_BLOCK_SIZE = 16;
+	public static final int MAX_BLOCK_SIZE = 32 * 1024;
+	public static final int MAX_ALIGNMENT = 4 * 1024;
+	
+	static final int THREAD_CACHE_SIZE = 64;
+	
+	private static final int MIN_BLOCK_SIZE_SHIFT = Integer.numberOfTrailingZeros(MIN_BLOCK_SIZE);
+	private static final int SIZE_CLASS_COUNT = Integer.numberOfTrailingZeros(MAX_BLOCK_SIZE) - MIN_BLOCK_SIZE_SHIFT + 1;
+	
+	private final Unsafe unsafe = JvmUtil.getUnsafe();
+	private final int slabSize;
+	private final SizeClass[] sizeClasses = new SizeClass[SIZE_CLASS_COUNT];
+	// Raw addresses and sizes of all reserved slabs to release them at once
+	private final List<long[]> slabs = new ArrayList<long[]>();
+	// Blocks bigger than size classes by their addresses
+	private final Map<Long, LargeBlock> largeBlocks = new ConcurrentHashMap<Long, LargeBlock>();
+	private final List<ThreadCache> threadCaches = new CopyOnWriteArrayList<ThreadCache>();
+	// Caches whose threads are garbage collected
+	private final ReferenceQueue<Thread> deadThreadCaches = new ReferenceQueue<Thread>();
+	private final ThreadLocal<ThreadCache> threadCache = 
+			new ThreadLocal<ThreadCache>() {
+				@Override
+				protected ThreadCache initialValue() {
+					pollDeadThreadCaches();
+					ThreadCache cache = new ThreadCache(Thread.currentThread(), deadThreadCaches);
+					threadCaches.add(cache);
+					return cache;
+				}
+			};
+	// Counters of caches of dead threads
+	private final AtomicLong retiredAllocationCount = new AtomicLong();
+	private final AtomicLong retiredFreeCount = new AtomicLong();
+	private final AtomicLong retiredAllocatedMemory = new AtomicLong();
+	private final AtomicLong reservedMemory = new AtomicLong();
+	private volatile boolean closed;
+	
+	public SlabAllocator() {
+		this(DEFAULT_SLAB_SIZE);
+	}
+	
+	/**
+	 * @param slabSize	size of memory chunks which are reserved for size classes. 
+	 * 					It must not be smaller than {@link #MAX_BLOCK_SIZE}.
+	 */
+	public SlabAllocator(int slabSize) {
+		if (slabSize < MAX_BLOCK_SIZE) {
+			throw new IllegalArgumentException(
+					"Slab size must not be smaller than " + MAX_BLOCK_SIZE + ": " + slabSize);
+		}
+		this.slabSize = slabSize;
+		for (int i = 0; i < SIZE_CLASS_COUNT; i++) {
+			sizeClasses[i] = new SizeClass(MIN_BLOCK_SIZE << i);
+		}
+	}
+	
+	@Override
+	public long allocate(long size) {
+		return allocate(size, MemoryUtil.DEFAULT_ALIGNMENT);
+	}
+	
+	@Override
+	public long allocate(long size, int alignment) {
+		checkNotClosed();
+		MemoryUtil.checkSize(size);
+		MemoryUtil.checkAlignment(alignment, MAX_ALIGNMENT);
+		ThreadCache cache = threadCache.get();
+		long blockSize = blockSizeOf(size, alignment);
+		if (blockSize > MAX_BLOCK_SIZE) {
+			long address = allocateLarge(size, alignment);
+			cache.allocated(size);
+			return address;
+		}
+		int sizeClassIndex = sizeClassIndexOf(blockSize);
+		long[] blocks = cache.blocks[sizeClassIndex];
+		int count = cache.counts[sizeClassIndex];
+		if (count == 0) {
+			pollDeadThreadCaches();
+			count = sizeClasses[sizeClassIndex].refill(blocks, THREAD_CACHE_SIZE >> 1);
+		}
+		long address = blocks[--count];
+		cache.counts[sizeClassIndex] = count;
+		cache.allocated(blockSize);
+		return address;
+	}
+	
+	/**
+	 * Frees a block which is allocated by {@link #allocate(long)} with given size.
+	 */
+	public void free(long address, long size) {
+		free(address, size, MemoryUtil.DEFAULT_ALIGNMENT);
+	}
+	
+	/**
+	 * Frees a block which is allocated by {@link #allocate(long, int)} with given size and alignment.
+	 */
+	public void free(long address, long size, int alignment) {
+		checkNotClosed();
+		MemoryUtil.checkSize(size);
+		MemoryUtil.checkAlignment(alignment, MAX_ALIGNMENT);
+		ThreadCache cache = threadCache.get();
+		long blockSize = blockSizeOf(size, alignment);
+		if (blockSize > MAX_BLOCK_SIZE) {
+			freeLarge(address);
+			cache.freed(size);
+			return;
+		}
+		int sizeClassIndex = sizeClassIndexOf(blockSize);
+		long[] blocks = cache.blocks[sizeClassIndex];
+		int count = cache.counts[sizeClassIndex];
+		if (count == THREAD_CACHE_SIZE) {
+			// Upper half is returned, so the blocks which are used recently stay in cache
+			int half = THREAD_CACHE_SIZE >> 1;
+			sizeClasses[sizeClassIndex].release(blocks, half, THREAD_CACHE_SIZE - half);
+			count = half;
+		}
+		blocks[count++] = address;
+		cache.counts[sizeClassIndex] = count;
+		cache.freed(blockSize);
+	}
+	
+	/**
+	 * Returns blocks in cache of current thread to shared free lists, 
+	 * so they can be used by other threads. 
+	 * It can be called by threads of pools when they are idle or before they finish.
+	 */
+	public void flushThreadCache() {
+		checkNotClosed();
+		threadCache.get().flush(sizeClasses);
+	}
+	
+	/**
+	 * Retires caches whose threads are garbage collected. 
+	 * It only polls a reference queue, so it is cheap enough for allocation path.
+	 */
+	private void pollDeadThreadCaches() {
+		for (ThreadCache cache = (ThreadCache) deadThreadCaches.poll(); 
+				cache != null; 
+				cache = (ThreadCache) deadThreadCaches.poll()) {
+			retire(cache);
+		}
+	}
+	
+	/**
+	 * Retires caches of all threads which are not alive anymore, 
+	 * even if they are not garbage collected yet.
+	 */
+	private void reclaimDeadThreadCaches() {
+		pollDeadThreadCaches();
+		for (ThreadCache cache : threadCaches) {
+			Thread thread = cache.get();
+			if (thread == null || !thread.isAlive()) {
+				retire(cache);
+			}
+		}
+	}
+	
+	/**
+	 * Returns blocks of a dead thread's cache to shared free lists and keeps its counters. 
+	 * Termination of a thread happens-before detecting it is not alive, 
+	 * so blocks and counters written by the thread are visible here.
+	 */
+	private void retire(ThreadCache cache) {
+		// Cache may be found dead by more than one thread, but only one of them can remove it
+		if (!threadCaches.remove(cache)) {
+			return;
+		}
+		if (!closed) {
+			cache.flush(sizeClasses);
+		}
+		retiredAllocationCount.addAndGet(cache.allocationCount.get());
+		retiredFreeCount.addAndGet(cache.freeCount.get());
+		retiredAllocatedMemory.addAndGet(cache.allocatedMemory.get());
+	}
+	
+	/**
+	 * Gets size of memory which is actually used by a block for given size.
+	 */
+	public static long blockSizeOf(long size) {
+		return blockSizeOf(size, MemoryUtil.DEFAULT_ALIGNMENT);
+	}
+	
+	public static long blockSizeOf(long size, int alignment) {
+		long blockSize = Math.max(Math.max(size, alignment), MIN_BLOCK_SIZE);
+		if (blockSize > MAX_BLOCK_SIZE) {
+			return blockSize;
+		}
+		return Long.highestOneBit(blockSize - 1) << 1;
+	}
+	
+	private static int sizeClassIndexOf(long blockSize) {
+		return Long.numberOfTrailingZeros(blockSize) - MIN_BLOCK_SIZE_SHIFT;
+	}
+	
+	private long allocateLarge(long size, int alignment) {
+		long reservedSize = size + alignment;
+		long rawAddress = MemoryUtil.reserve(reservedSize);
+		long address = MemoryUtil.alignAddress(rawAddress, alignment);
+		largeBlocks.put(address, new LargeBlock(rawAddress, reservedSize));
+		reservedMemory.addAndGet(reservedSize);
+		return address;
+	}
+	
+	private void freeLarge(long address) {
+		LargeBlock largeBlock = largeBlocks.remove(address);
+		if (largeBlock == null) {
+			throw new IllegalArgumentException(
+					"Block at address " + JvmUtil.toHexAddress(address) + " is not allocated by this allocator");
+		}
+		MemoryUtil.release(largeBlock.rawAddress, largeBlock.reservedSize);
+		reservedMemory.addAndGet(-largeBlock.reservedSize);
+	}
+	
+	@Override
+	public long getAllocatedMemory() {
+		reclaimDeadThreadCaches();
+		long allocatedMemory = retiredAllocatedMemory.get();
+		for (ThreadCache cache : threadCaches) {
+			allocatedMemory += cache.allocatedMemory.get();
+		}
+		return allocatedMemory;
+	}
+	
+	@Override
+	public long getReservedMemory() {
+		return reservedMemory.get();
+	}
+	
+	public long getAllocationCount() {
+		reclaimDeadThreadCaches();
+		long allocationCount = retiredAllocationCount.get();
+		for (ThreadCache cache : threadCaches) {
+			allocationCount += cache.allocationCount.get();
+		}
+		return allocationCount;
+	}
+	
+	public long getFreeCount() {
+		reclaimDeadThreadCaches();
+		long freeCount = retiredFreeCount.get();
+		for (ThreadCache cache : threadCaches) {
+			freeCount += cache.freeCount.get();
+		}
+		return freeCount;
+	}
+	
+	/**
+	 * Gets count of blocks which are allocated but not freed yet. 
+	 * If it keeps growing while load is stable, blocks are leaking.
+	 */
+	public long getLiveAllocationCount() {
+		return getAllocationCount() - getFreeCount();
+	}
+	
+	@Override
+	public boolean isClosed() {
+		return closed;
+	}
+	
+	/**
+	 * Releases all slabs and big blocks. 
+	 * Allocator must not be used by other threads while it is being closed.
+	 */
+	@Override
+	public synchronized void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		// Caches of other threads don't refer to allocator, so they don't keep it reachable
+		threadCache.remove();
+		synchronized (slabs) {
+			for (long[] slab : slabs) {
+				MemoryUtil.release(slab[0], slab[1]);
+			}
+			slabs.clear();
+		}
+		for (LargeBlock largeBlock : largeBlocks.values()) {
+			MemoryUtil.release(largeBlock.rawAddress, largeBlock.reservedSize);
+		}
+		largeBlocks.clear();
+		reservedMemory.set(0);
+	}
+	
+	private void checkNotClosed() {
+		if (closed) {
+			throw new IllegalStateException("Allocator has been closed");
+		}
+	}
+	
+	/**
+	 * Reserves a slab which is aligned to given alignment and returns its aligned address.
+	 */
+	private long reserveSlab(int alignment) {
+		long reservedSize = (long) slabSize + alignment;
+		long rawAddress = MemoryUtil.reserve(reservedSize);
+		synchronized (slabs) {
+			slabs.add(new long[] { rawAddress, reservedSize });
+		}
+		reservedMemory.addAndGet(reservedSize);
+		return MemoryUtil.alignAddress(rawAddress, alignment);
+	}
+	
+	/**
+	 * Shared free list and current slab of blocks with the same size.
+	 */
+	class SizeClass {
+		
+		final int blockSize;
+		final int alignment;
+		// Address of the first free block and every free block holds address of the next one
+		long freeList;
+		// Unused part of the current slab
+		long slabPosition;
+		long slabLimit;
+		
+		SizeClass(int blockSize) {
+			this.blockSize = blockSize;
+			this.alignment = Math.min(blockSize, MAX_ALIGNMENT);
+		}
+		
+		/**
+		 * Puts given count of blocks into given array and returns the count.
+		 */
+		synchronized int refill(long[] blocks, int count) {
+			for (int i = 0; i < count; i++) {
+				if (freeList != 0) {
+					blocks[i] = freeList;
+					freeList = unsafe.getLong(freeList);
+				}
+				else {
+					if (slabPosition == slabLimit) {
+						slabPosition = reserveSlab(alignment);
+						slabLimit = slabPosition + slabSize / blockSize * blockSize;
+					}
+					blocks[i] = slabPosition;
+					slabPosition += blockSize;
+				}
+			}
+			return count;
+		}
+		
+		synchronized void release(long[] blocks, int from, int count) {
+			for (int i = from; i < from + count; i++) {
+				unsafe.putLong(blocks[i], freeList);
+				freeList = blocks[i];
+			}
+		}
+		
+	}
+	
+	/**
+	 * Blocks and counters of a thread. Counters are only written by their thread, 
+	 * so they are updated by lazy sets without atomic instructions and summed up while they are read. 
+	 * Cache refers to its thread weakly, so it is queued when its thread is garbage collected. 
+	 * It doesn't refer to its allocator, since a value of thread local which refers to its allocator 
+	 * (and so to the thread local itself) would keep the allocator reachable until the thread dies.
+	 */
+	static class ThreadCache extends WeakReference<Thread> {
+		
+		final long[][] blocks = new long[SIZE_CLASS_COUNT][THREAD_CACHE_SIZE];
+		final int[] counts = new int[SIZE_CLASS_COUNT];
+		final AtomicLong allocationCount = new AtomicLong();
+		final AtomicLong freeCount = new AtomicLong();
+		final AtomicLong allocatedMemory = new AtomicLong();
+		
+		ThreadCache(Thread thread, ReferenceQueue<Thread> queue) {
+			super(thread, queue);
+		}
+		
+		void flush(SizeClass[] sizeClasses) {
+			for (int i = 0; i < SIZE_CLASS_COUNT; i++) {
+				if (counts[i] > 0) {
+					sizeClasses[i].release(blocks[i], 0, counts[i]);
+					counts[i] = 0;
+				}
+			}
+		}
+		
+		void allocated(long size) {
+			allocationCount.lazySet(allocationCount.get() + 1);
+			allocatedMemory.lazySet(allocatedMemory.get() + size);
+		}
+		
+		void freed(long size) {
+			freeCount.lazySet(freeCount.get() + 1);
+			allocatedMemory.lazySet(allocatedMemory.get() - size);
+		}
+		
+	}
+	
+	static class LargeBlock {
+		
+		final long rawAddress;
+		final long reservedSize;
+		
+		LargeBlock(long rawAddress, long reservedSize) {
+			this.rawAddress = rawAddress;
+			this.reservedSize = reservedSize;
+		}
+		
+	}
+	
+}
@@ -0,0 +1,329 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package tr.com.serkanozal.jcommon.util;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * @author Serkan ÖZAL
+ * 
+ * Accessor of properties of a bean class created by {@link ReflectionUtil#getBeanAccessor(Class)}. 
+ * 
+ * Properties are public getter/setter pairs (<code>getX</code>/<code>isX</code> and <code>setX</code>) 
+ * and public non-static fields of class, sorted by their names and accessed by their indexes. 
+ * Getter and setter have precedence over field with the same name. 
+ * 
+ * Accessors are generated as classes at runtime which call getters and setters (or access fields) directly, 
+ * so there is no reflective call and primitive values are not boxed by typed methods or by {@link #copy(Object, Object)}. 
+ * If an accessor class cannot be generated (for example for non-public classes), accessor falls back to reflection 
+ * with the same behaviour. 
+ * 
+ * Values of wrong types cause {@link ClassCastException} and <code>null</code> values of primitive properties cause 
+ * {@link NullPointerException}. Accessing a property which doesn't exist, which is not readable or writable 
+ * or which has another type than typed method causes {@link IllegalArgumentException}.
+ */
+public abstract class BeanAccessor<T> {
+
+	private final Class<T> beanClass;
+	private final Property[] properties;
+	private final Map<String, Integer> indexes;
+	
+	protected BeanAccessor(Class<T> beanClass, Property[] properties) {
+		this.beanClass = beanClass;
+		this.properties = properties;
+		this.indexes = new HashMap<String, Integer>(properties.length * 2);
+		for (int i = 0; i < properties.length; i++) {
+			indexes.put(properties[i].name, i);
+		}
+	}
+	
+	public Class<T> getBeanClass() {
+		return beanClass;
+	}
+	
+	public List<Property> getProperties() {
+		return Collections.unmodifiableList(Arrays.asList(properties));
+	}
+	
+	public int getPropertyCount() {
+		return properties.length;
+	}
+	
+	/**
+	 * Gets index of property with given name or <code>-1</code> if there is no such property.
+	 */
+	public int indexOf(String propertyName) {
+		Integer index = indexes.get(propertyName);
+		return index != null ? index : -1;
+	}
+	
+	/**
+	 * Creates a new bean by public no-arg constructor of class.
+	 * 
+	 * @throws UnsupportedOperationException if class has no public no-arg constructor or it is abstract
+	 */
+	public T newInstance() {
+		throw new UnsupportedOperationException("Class " + beanClass.getName() + " cannot be instantiated by a public no-arg constructor");
+	}
+	
+	/**
+	 * Gets value of property and boxes it if it is primitive.
+	 */
+	public abstract Object get(T bean, int index);
+	
+	/**
+	 * Sets value of property and unboxes it if it is primitive.
+	 */
+	public abstract void set(T bean, int index, Object value);
+	
+	/**
+	 * Copies values of all readable and writable properties.
+	 */
+	public void copy(T from, T to) {
+		for (int i = 0; i < properties.length; i++) {
+			if (properties[i].isReadable() && properties[i].isWritable()) {
+				set(to, i, get(from, i));
+			}
+		}
+	}
+	
+	public boolean getBoolean(T bean, int index) {
+		return (Boolean) get(bean, checkType(index, boolean.class));
+	}
+	
+	public void setBoolean(T bean, int index, boolean value) {
+		set(bean, checkType(index, boolean.class), value);
+	}
+	
+	public byte getByte(T bean, int index) {
+		return (Byte) get(bean, checkType(index, byte.class));
+	}
+	
+	public void setByte(T bean, int index, byte value) {
+		set(bean, checkType(index, byte.class), value);
+	}
+	
+	public char getChar(T bean, int index) {
+		return (Character) get(bean, checkType(index, char.class));
+	}
+	
+	public void setChar(T bean, int index, char value) {
+		set(bean, checkType(index, char.class), value);
+	}
+	
+	public short getShort(T bean, int index) {
+		return (Short) get(bean, checkType(index, short.class));
+	}
+	
+	public void setShort(T bean, int index, short value) {
+		set(bean, checkType(index, short.class), value);
+	}
+	
+	public int getInt(T bean, int index) {
+		return (Integer) get(bean, checkType(index, int.class));
+	}
+	
+	public void setInt(T bean, int index, int value) {
+		set(bean, checkType(index, int.class), value);
+	}
+	
+	public float getFloat(T bean, int index) {
+		return (Float) get(bean, checkType(index, float.class));
+	}
+	
+	public void setFloat(T bean, int index, float value) {
+		set(bean, checkType(index, float.class), value);
+	}
+	
+	public long getLong(T bean, int index) {
+		return (Long) get(bean, checkType(index, long.class));
+	}
+	
+	public void setLong(T bean, int index, long value) {
+		set(bean, checkType(index, long.class), value);
+	}
+	
+	public double getDouble(T bean, int index) {
+		return (Double) get(bean, checkType(index, double.class));
+	}
+	
+	public void setDouble(T bean, int index, double value) {
+		set(bean, checkType(index, double.class), value);
+	}
+	
+	/**
+	 * Creates exception for a property which cannot be accessed in the requested way. 
+	 * It is used by generated accessors for indexes which are not handled by them.
+	 */
+	protected RuntimeException invalidAccess(int index) {
+		if (index < 0 || index >= properties.length) {
+			return new IllegalArgumentException(
+					"There is no property at index " + index + " of class " + beanClass.getName());
+		}
+		Property property = properties[index];
+		return new IllegalArgumentException(
+				"Property " + property.name + " of class " + beanClass.getName() + " is not " + 
+				(property.isReadable() ? (property.isWritable() ? "accessible in this way" : "writable") : "readable"));
+	}
+	
+	Property property(int index) {
+		if (index < 0 || index >= properties.length) {
+			throw invalidAccess(index);
+		}
+		return properties[index];
+	}
+	
+	private int checkType(int index, Class<?> type) {
+		if (property(index).type != type) {
+			throw new IllegalArgumentException(
+					"Property " + properties[index].name + " of class " + beanClass.getName() + 
+					" cannot be accessed as " + type.getName());
+		}
+		return index;
+	}
+	
+	/**
+	 * Finds properties of class sorted by their names.
+	 */
+	static Property[] findProperties(Class<?> beanClass) {
+		Map<String, Method> getters = new HashMap<String, Method>();
+		Map<String, List<Method>> setters = new HashMap<String, List<Method>>();
+		for (Method m : beanClass.getMethods()) {
+			if (Modifier.isStatic(m.getModifiers()) || m.isBridge() || m.isSynthetic()) {
+				continue;
+			}
+			String name = m.getName();
+			Class<?>[] paramTypes = m.getParameterTypes();
+			Class<?> returnType = m.getReturnType();
+			if (paramTypes.length == 0 && name.length() > 3 && name.startsWith("get") && 
+					returnType != void.class && !name.equals("getClass")) {
+				getters.put(propertyName(name.substring(3)), m);
+			}
+			else if (paramTypes.length == 0 && name.length() > 2 && name.startsWith("is") && returnType == boolean.class) {
+				String propertyName = propertyName(name.substring(2));
+				// "getX" has precedence over "isX"
+				if (!getters.containsKey(propertyName)) {
+					getters.put(propertyName, m);
+				}
+			}
+			else if (paramTypes.length == 1 && name.length() > 3 && name.startsWith("set") && returnType == void.class) {
+				String propertyName = propertyName(name.substring(3));
+				List<Method> candidates = setters.get(propertyName);
+				if (candidates == null) {
+					candidates = new ArrayList<Method>(1);
+					setters.put(propertyName, candidates);
+				}
+				candidates.add(m);
+			}
+		}
+		
+		Map<String, Property> properties = new TreeMap<String, Property>();
+		for (Field f : beanClass.getFields()) {
+			if (!Modifier.isStatic(f.getModifiers()) && !properties.containsKey(f.getName())) {
+				properties.put(f.getName(), new Property(f.getName(), f.getType(), null, null, f));
+			}
+		}
+		for (Map.Entry<String, Method> e : getters.entrySet()) {
+			Method getter = e.getValue();
+			Method setter = findSetter(setters.remove(e.getKey()), getter.getReturnType());
+			properties.put(e.getKey(), new Property(e.getKey(), getter.getReturnType(), getter, setter, null));
+		}
+		for (Map.Entry<String, List<Method>> e : setters.entrySet()) {
+			// Write-only property is only supported if it is not ambiguous
+			if (e.getValue().size() == 1 && !properties.containsKey(e.getKey())) {
+				Method setter = e.getValue().get(0);
+				properties.put(e.getKey(), new Property(e.getKey(), setter.getParameterTypes()[0], null, setter, null));
+			}
+		}
+		return properties.values().toArray(new Property[properties.size()]);
+	}
+	
+	private static Method findSetter(List<Method> candidates, Class<?> type) {
+		if (candidates != null) {
+			for (Method setter : candidates) {
+				if (setter.getParameterTypes()[0] == type) {
+					return setter;
+				}
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Decapitalizes name like <code>java.beans.Introspector</code>, 
+	 * so names starting with multiple upper case characters (such as "URL") are kept as they are.
+	 */
+	private static String propertyName(String name) {
+		if (name.length() > 1 && Character.isUpperCase(name.charAt(1)) && Character.isUpperCase(name.charAt(0))) {
+			return name;
+		}
+		return Character.toLowerCase(name.charAt(0)) + name.substring(1);
+	}
+	
+	/**
+	 * Property of a bean. It is accessed by its getter and setter if it has, otherwise by its field.
+	 */
+	public static final class Property {
+		
+		final String name;
+		final Class<?> type;
+		final Method getter;
+		final Method setter;
+		final Field field;
+		
+		Property(String name, Class<?> type, Method getter, Method setter, Field field) {
+			this.name = name;
+			this.type = type;
+			this.getter = getter;
+			this.setter = setter;
+			this.field = field;
+		}
+		
+		public String getName() {
+			return name;
+		}
+		
+		public Class<?> getType() {
+			return type;
+		}
+		
+		public boolean isReadable() {
+			return getter != null || field != null;
+		}
+		
+		public boolean isWritable() {
+			return setter != null || (field != null && !Modifier.isFinal(field.getModifiers()));
+		}
+		
+		@Override
+		public String toString() {
+			return name + ": " + type.getName();
+		}
+		
+	}
+	
+}
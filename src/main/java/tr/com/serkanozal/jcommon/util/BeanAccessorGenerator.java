@@ -0,0 +1,594 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package tr.com.serkanozal.jcommon.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author Serkan ÖZAL
+ * 
+ * Generates {@link BeanAccessor} classes at runtime. 
+ * 
+ * Generated class calls getters and setters (or accesses fields) of bean directly 
+ * and selects property by a <code>tableswitch</code> on its index, so accessing a property 
+ * costs a switch and a (probably inlined) call. Typed methods are generated only for types of properties. 
+ * 
+ * Class file is written directly in Java 5 format which doesn't require stack map frames, 
+ * so there is no dependency to a bytecode library. Only public members of public classes with public property types 
+ * are accessed, since generated class is defined by its own class loader (as a child of class loader of bean class) 
+ * and so it is in another runtime package.
+ */
+final class BeanAccessorGenerator {
+
+	private static final int CLASS_FILE_MAGIC = 0xCAFEBABE;
+	// Java 5 class file format doesn't require stack map frames
+	private static final int CLASS_FILE_VERSION = 49;
+	private static final int ACC_PUBLIC = 0x0001;
+	private static final int ACC_FINAL = 0x0010;
+	private static final int ACC_SUPER = 0x0020;
+	
+	private static final int ALOAD_0 = 0x2a;
+	private static final int ILOAD_2 = 0x1c;
+	private static final int ALOAD_3 = 0x2d;
+	private static final int ILOAD_3 = 0x1d;
+	private static final int LLOAD_3 = 0x21;
+	private static final int FLOAD_3 = 0x25;
+	private static final int DLOAD_3 = 0x29;
+	private static final int DUP = 0x59;
+	private static final int TABLESWITCH = 0xaa;
+	private static final int IRETURN = 0xac;
+	private static final int LRETURN = 0xad;
+	private static final int FRETURN = 0xae;
+	private static final int DRETURN = 0xaf;
+	private static final int ARETURN = 0xb0;
+	private static final int RETURN = 0xb1;
+	private static final int GETFIELD = 0xb4;
+	private static final int PUTFIELD = 0xb5;
+	private static final int INVOKEVIRTUAL = 0xb6;
+	private static final int INVOKESPECIAL = 0xb7;
+	private static final int INVOKESTATIC = 0xb8;
+	private static final int NEW = 0xbb;
+	private static final int ATHROW = 0xbf;
+	private static final int CHECKCAST = 0xc0;
+	
+	private static final int MAX_STACK = 4;
+	// this, bean, index and value (two slots for long and double)
+	private static final int MAX_LOCALS = 5;
+	
+	private static final Class<?>[] PRIMITIVE_TYPES = { 
+		boolean.class, byte.class, char.class, short.class, int.class, float.class, long.class, double.class 
+	};
+	// Packages of JDK classes in named modules may not be exported, so their members may not be accessible
+	private static final String[] RESTRICTED_PACKAGES = { "java.", "javax.", "sun.", "com.sun.", "jdk." };
+	private static final String ACCESSOR_CLASS_NAME_PREFIX = 
+			BeanAccessor.class.getPackage().getName() + ".GeneratedBeanAccessor$";
+	private static final AtomicInteger classCounter = new AtomicInteger();
+	
+	private BeanAccessorGenerator() {
+		
+	}
+	
+	/**
+	 * Returns <code>true</code> if generated class can access given class and types of its properties. 
+	 * Otherwise accessor must use reflection, since access check fails at first execution of generated code 
+	 * (such as casting value to a package-private property type) instead of at generation.
+	 */
+	static boolean canGenerate(Class<?> beanClass, BeanAccessor.Property[] properties) {
+		if (beanClass.isInterface() || beanClass.isArray() || beanClass.isPrimitive() || 
+				beanClass.getClassLoader() == null || !isAccessible(beanClass)) {
+			return false;
+		}
+		for (BeanAccessor.Property property : properties) {
+			if (!isAccessible(property.type)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Returns <code>true</code> if given type can be referred by generated class from another runtime package.
+	 */
+	private static boolean isAccessible(Class<?> type) {
+		while (type.isArray()) {
+			type = type.getComponentType();
+		}
+		if (type.isPrimitive()) {
+			return true;
+		}
+		if (!Modifier.isPublic(type.getModifiers())) {
+			return false;
+		}
+		if (type.getClassLoader() == null) {
+			// Public types of "java" packages are exported
+			return type.getName().startsWith("java.");
+		}
+		for (String restrictedPackage : RESTRICTED_PACKAGES) {
+			if (type.getName().startsWith(restrictedPackage)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	@SuppressWarnings("unchecked")
+	static <T> BeanAccessor<T> generate(Class<T> beanClass, BeanAccessor.Property[] properties) throws Exception {
+		String className = ACCESSOR_CLASS_NAME_PREFIX + classCounter.incrementAndGet();
+		byte[] classContents = new ClassFileWriter(className, beanClass, properties).toByteArray();
+		Class<?> accessorClass = new AccessorClassLoader(beanClass.getClassLoader()).define(className, classContents);
+		return (BeanAccessor<T>) accessorClass.getConstructor(Class.class, BeanAccessor.Property[].class).
+					newInstance(beanClass, properties);
+	}
+	
+	private static String internalName(Class<?> clazz) {
+		// Arrays are referred by their descriptors
+		return clazz.isArray() ? descriptor(clazz) : clazz.getName().replace('.', '/');
+	}
+	
+	private static String descriptor(Class<?> clazz) {
+		if (clazz == boolean.class) {
+			return "Z";
+		}
+		else if (clazz == byte.class) {
+			return "B";
+		}
+		else if (clazz == char.class) {
+			return "C";
+		}
+		else if (clazz == short.class) {
+			return "S";
+		}
+		else if (clazz == int.class) {
+			return "I";
+		}
+		else if (clazz == float.class) {
+			return "F";
+		}
+		else if (clazz == long.class) {
+			return "J";
+		}
+		else if (clazz == double.class) {
+			return "D";
+		}
+		else if (clazz == void.class) {
+			return "V";
+		}
+		else if (clazz.isArray()) {
+			return clazz.getName().replace('.', '/');
+		}
+		else {
+			return "L" + clazz.getName().replace('.', '/') + ";";
+		}
+	}
+	
+	private static String capitalizedName(Class<?> primitiveType) {
+		String name = primitiveType.getName();
+		return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+	}
+	
+	/**
+	 * Writes class file of accessor of a bean class.
+	 */
+	private static final class ClassFileWriter {
+		
+		private static final int GET = 0;
+		private static final int SET = 1;
+		private static final int TYPED_GET = 2;
+		private static final int TYPED_SET = 3;
+		
+		private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+		private final DataOutputStream pool = new DataOutputStream(poolBytes);
+		private final Map<String, Integer> poolIndexes = new HashMap<String, Integer>();
+		private int poolCount = 1;
+		private final List<byte[]> methods = new ArrayList<byte[]>();
+		
+		private final Class<?> beanClass;
+		private final String beanClassName;
+		private final BeanAccessor.Property[] properties;
+		private final int thisClass;
+		private final int superClass;
+		
+		ClassFileWriter(String className, Class<?> beanClass, BeanAccessor.Property[] properties) throws IOException {
+			this.beanClass = beanClass;
+			this.beanClassName = internalName(beanClass);
+			this.properties = properties;
+			this.thisClass = classRef(className.replace('.', '/'));
+			this.superClass = classRef(internalName(BeanAccessor.class));
+		}
+		
+		byte[] toByteArray() throws IOException {
+			generateConstructor();
+			generateNewInstance();
+			generateCopy();
+			generateSwitch("get", "(Ljava/lang/Object;I)Ljava/lang/Object;", GET, null);
+			generateSwitch("set", "(Ljava/lang/Object;ILjava/lang/Object;)V", SET, null);
+			for (Class<?> type : PRIMITIVE_TYPES) {
+				String typeDescriptor = descriptor(type);
+				generateSwitch("get" + capitalizedName(type), "(Ljava/lang/Object;I)" + typeDescriptor, TYPED_GET, type);
+				generateSwitch("set" + capitalizedName(type), "(Ljava/lang/Object;I" + typeDescriptor + ")V", TYPED_SET, type);
+			}
+			
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeInt(CLASS_FILE_MAGIC);
+			out.writeShort(0);
+			out.writeShort(CLASS_FILE_VERSION);
+			pool.flush();
+			out.writeShort(poolCount);
+			poolBytes.writeTo(out);
+			out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+			out.writeShort(thisClass);
+			out.writeShort(superClass);
+			// No interface and no field
+			out.writeShort(0);
+			out.writeShort(0);
+			out.writeShort(methods.size());
+			for (byte[] method : methods) {
+				out.write(method);
+			}
+			// No class attribute
+			out.writeShort(0);
+			out.flush();
+			return bytes.toByteArray();
+		}
+		
+		private void generateConstructor() throws IOException {
+			String descriptor = "(Ljava/lang/Class;[" + descriptor(BeanAccessor.Property.class) + ")V";
+			Code code = new Code();
+			code.u1(ALOAD_0);
+			code.u1(ALOAD_0 + 1);
+			code.u1(ALOAD_0 + 2);
+			code.u1(INVOKESPECIAL);
+			code.u2(methodRef(internalName(BeanAccessor.class), "<init>", descriptor));
+			code.u1(RETURN);
+			addMethod("<init>", descriptor, code);
+		}
+		
+		private void generateNewInstance() throws IOException {
+			if (Modifier.isAbstract(beanClass.getModifiers())) {
+				return;
+			}
+			try {
+				beanClass.getConstructor();
+			}
+			catch (NoSuchMethodException e) {
+				// Default implementation throws UnsupportedOperationException
+				return;
+			}
+			Code code = new Code();
+			code.u1(NEW);
+			code.u2(classRef(beanClassName));
+			code.u1(DUP);
+			code.u1(INVOKESPECIAL);
+			code.u2(methodRef(beanClassName, "<init>", "()V"));
+			code.u1(ARETURN);
+			addMethod("newInstance", "()Ljava/lang/Object;", code);
+		}
+		
+		private void generateCopy() throws IOException {
+			Code code = new Code();
+			for (BeanAccessor.Property property : properties) {
+				if (property.isReadable() && property.isWritable()) {
+					loadBean(code, 2);
+					loadBean(code, 1);
+					read(code, property);
+					write(code, property);
+				}
+			}
+			code.u1(RETURN);
+			addMethod("copy", "(Ljava/lang/Object;Ljava/lang/Object;)V", code);
+		}
+		
+		/**
+		 * Generates a method which selects property by a <code>tableswitch</code> on index. 
+		 * Properties which cannot be accessed by the method go to default case which throws exception. 
+		 * Typed methods are not generated if there is no property of their types.
+		 */
+		private void generateSwitch(String name, String descriptor, int kind, Class<?> type) throws IOException {
+			int count = properties.length;
+			boolean[] handled = new boolean[count];
+			boolean anyHandled = false;
+			for (int i = 0; i < count; i++) {
+				BeanAccessor.Property property = properties[i];
+				boolean accessible = (kind == GET || kind == TYPED_GET) ? property.isReadable() : property.isWritable();
+				handled[i] = accessible && (type == null || property.type == type);
+				anyHandled |= handled[i];
+			}
+			if (!anyHandled && type != null) {
+				return;
+			}
+			
+			Code code = new Code();
+			if (anyHandled) {
+				code.u1(ILOAD_2);
+				int switchPosition = code.length();
+				code.u1(TABLESWITCH);
+				// Operands are aligned to 4 bytes from start of code
+				code.align4();
+				int defaultPosition = code.length();
+				code.u4(0);
+				code.u4(0);
+				code.u4(count - 1);
+				int tablePosition = code.length();
+				for (int i = 0; i < count; i++) {
+					code.u4(0);
+				}
+				for (int i = 0; i < count; i++) {
+					if (handled[i]) {
+						code.patch4(tablePosition + 4 * i, code.length() - switchPosition);
+						generateCase(code, properties[i], kind);
+					}
+				}
+				int defaultOffset = code.length() - switchPosition;
+				code.patch4(defaultPosition, defaultOffset);
+				for (int i = 0; i < count; i++) {
+					if (!handled[i]) {
+						code.patch4(tablePosition + 4 * i, defaultOffset);
+					}
+				}
+			}
+			code.u1(ALOAD_0);
+			code.u1(ILOAD_2);
+			code.u1(INVOKEVIRTUAL);
+			code.u2(methodRef(internalName(BeanAccessor.class), "invalidAccess", "(I)Ljava/lang/RuntimeException;"));
+			code.u1(ATHROW);
+			addMethod(name, descriptor, code);
+		}
+		
+		private void generateCase(Code code, BeanAccessor.Property property, int kind) throws IOException {
+			Class<?> type = property.type;
+			loadBean(code, 1);
+			switch (kind) {
+				case GET:
+					read(code, property);
+					if (type.isPrimitive()) {
+						Class<?> wrapperType = ReflectionUtil.getNonPrimitiveType(type);
+						code.u1(INVOKESTATIC);
+						code.u2(methodRef(internalName(wrapperType), "valueOf", 
+								"(" + descriptor(type) + ")" + descriptor(wrapperType)));
+					}
+					code.u1(ARETURN);
+					break;
+				case SET:
+					code.u1(ALOAD_3);
+					if (type.isPrimitive()) {
+						Class<?> wrapperType = ReflectionUtil.getNonPrimitiveType(type);
+						code.u1(CHECKCAST);
+						code.u2(classRef(internalName(wrapperType)));
+						code.u1(INVOKEVIRTUAL);
+						code.u2(methodRef(internalName(wrapperType), type.getName() + "Value", "()" + descriptor(type)));
+					}
+					else if (type != Object.class) {
+						code.u1(CHECKCAST);
+						code.u2(classRef(internalName(type)));
+					}
+					write(code, property);
+					code.u1(RETURN);
+					break;
+				case TYPED_GET:
+					read(code, property);
+					code.u1(type == long.class ? LRETURN : (type == float.class ? FRETURN : 
+							(type == double.class ? DRETURN : IRETURN)));
+					break;
+				default:
+					code.u1(type == long.class ? LLOAD_3 : (type == float.class ? FLOAD_3 : 
+							(type == double.class ? DLOAD_3 : ILOAD_3)));
+					write(code, property);
+					code.u1(RETURN);
+					break;
+			}
+		}
+		
+		private void loadBean(Code code, int local) throws IOException {
+			code.u1(ALOAD_0 + local);
+			code.u1(CHECKCAST);
+			code.u2(classRef(beanClassName));
+		}
+		
+		private void read(Code code, BeanAccessor.Property property) throws IOException {
+			String typeDescriptor = descriptor(property.type);
+			if (property.getter != null) {
+				code.u1(INVOKEVIRTUAL);
+				code.u2(methodRef(beanClassName, property.getter.getName(), "()" + typeDescriptor));
+			}
+			else {
+				code.u1(GETFIELD);
+				code.u2(fieldRef(beanClassName, property.field.getName(), typeDescriptor));
+			}
+		}
+		
+		private void write(Code code, BeanAccessor.Property property) throws IOException {
+			String typeDescriptor = descriptor(property.type);
+			if (property.setter != null) {
+				code.u1(INVOKEVIRTUAL);
+				code.u2(methodRef(beanClassName, property.setter.getName(), "(" + typeDescriptor + ")V"));
+			}
+			else {
+				code.u1(PUTFIELD);
+				code.u2(fieldRef(beanClassName, property.field.getName(), typeDescriptor));
+			}
+		}
+		
+		private void addMethod(String name, String descriptor, Code code) throws IOException {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeShort(ACC_PUBLIC);
+			out.writeShort(utf8(name));
+			out.writeShort(utf8(descriptor));
+			// Only "Code" attribute
+			out.writeShort(1);
+			out.writeShort(utf8("Code"));
+			out.writeInt(12 + code.length());
+			out.writeShort(MAX_STACK);
+			out.writeShort(MAX_LOCALS);
+			out.writeInt(code.length());
+			out.write(code.bytes, 0, code.length());
+			// No exception table and no attribute of code
+			out.writeShort(0);
+			out.writeShort(0);
+			out.flush();
+			methods.add(bytes.toByteArray());
+		}
+		
+		private int utf8(String value) throws IOException {
+			Integer index = poolIndexes.get("U" + value);
+			if (index == null) {
+				pool.writeByte(1);
+				pool.writeUTF(value);
+				index = addPoolEntry("U" + value);
+			}
+			return index;
+		}
+		
+		private int classRef(String internalName) throws IOException {
+			Integer index = poolIndexes.get("C" + internalName);
+			if (index == null) {
+				int nameIndex = utf8(internalName);
+				pool.writeByte(7);
+				pool.writeShort(nameIndex);
+				index = addPoolEntry("C" + internalName);
+			}
+			return index;
+		}
+		
+		private int nameAndType(String name, String descriptor) throws IOException {
+			String key = "N" + name + " " + descriptor;
+			Integer index = poolIndexes.get(key);
+			if (index == null) {
+				int nameIndex = utf8(name);
+				int descriptorIndex = utf8(descriptor);
+				pool.writeByte(12);
+				pool.writeShort(nameIndex);
+				pool.writeShort(descriptorIndex);
+				index = addPoolEntry(key);
+			}
+			return index;
+		}
+		
+		private int fieldRef(String owner, String name, String descriptor) throws IOException {
+			return memberRef(9, owner, name, descriptor);
+		}
+		
+		private int methodRef(String owner, String name, String descriptor) throws IOException {
+			return memberRef(10, owner, name, descriptor);
+		}
+		
+		private int memberRef(int tag, String owner, String name, String descriptor) throws IOException {
+			String key = tag + owner + "." + name + " " + descriptor;
+			Integer index = poolIndexes.get(key);
+			if (index == null) {
+				int classIndex = classRef(owner);
+				int nameAndTypeIndex = nameAndType(name, descriptor);
+				pool.writeByte(tag);
+				pool.writeShort(classIndex);
+				pool.writeShort(nameAndTypeIndex);
+				index = addPoolEntry(key);
+			}
+			return index;
+		}
+		
+		private int addPoolEntry(String key) {
+			int index = poolCount++;
+			poolIndexes.put(key, index);
+			return index;
+		}
+		
+	}
+	
+	/**
+	 * Bytecode of a method.
+	 */
+	private static final class Code {
+		
+		private byte[] bytes = new byte[64];
+		private int length;
+		
+		int length() {
+			return length;
+		}
+		
+		void u1(int value) {
+			if (length == bytes.length) {
+				byte[] newBytes = new byte[bytes.length << 1];
+				System.arraycopy(bytes, 0, newBytes, 0, length);
+				bytes = newBytes;
+			}
+			bytes[length++] = (byte) value;
+		}
+		
+		void u2(int value) {
+			u1(value >>> 8);
+			u1(value);
+		}
+		
+		void u4(int value) {
+			u2(value >>> 16);
+			u2(value);
+		}
+		
+		void patch4(int position, int value) {
+			bytes[position] = (byte) (value >>> 24);
+			bytes[position + 1] = (byte) (value >>> 16);
+			bytes[position + 2] = (byte) (value >>> 8);
+			bytes[position + 3] = (byte) value;
+		}
+		
+		void align4() {
+			while ((length & 3) != 0) {
+				u1(0);
+			}
+		}
+		
+	}
+	
+	/**
+	 * Defines an accessor class as a child of class loader of bean class, so bean class is visible to accessor. 
+	 * Class loader of bean class may not see this library, so accessor base classes are resolved from here.
+	 */
+	private static final class AccessorClassLoader extends ClassLoader {
+		
+		AccessorClassLoader(ClassLoader parent) {
+			super(parent);
+		}
+		
+		@Override
+		protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+			if (name.equals(BeanAccessor.class.getName())) {
+				return BeanAccessor.class;
+			}
+			if (name.equals(BeanAccessor.Property.class.getName())) {
+				return BeanAccessor.Property.class;
+			}
+			return super.loadClass(name, resolve);
+		}
+		
+		Class<?> define(String name, byte[] classContents) {
+			return defineClass(name, classContents, 0, classContents.length);
+		}
+		
+	}
+	
+}
@@ -0,0 +1,274 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package tr.com.serkanozal.jcommon.util;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+
+/**
+ * @author Serkan ÖZAL
+ * 
+ * Reads name, super class, interfaces and class level annotations from a class file 
+ * without loading the class. Constant pool is read once, then fields and methods are skipped 
+ * and only annotation attributes of the class are interpreted.
+ */
+class ClassFileParser {
+
+	static final int ACC_ANNOTATION = 0x2000;
+	static final int ACC_ENUM = 0x4000;
+	
+	private static final int MAGIC = 0xCAFEBABE;
+	
+	private static final int CONSTANT_UTF8 = 1;
+	private static final int CONSTANT_INTEGER = 3;
+	private static final int CONSTANT_FLOAT = 4;
+	private static final int CONSTANT_LONG = 5;
+	private static final int CONSTANT_DOUBLE = 6;
+	private static final int CONSTANT_CLASS = 7;
+	private static final int CONSTANT_STRING = 8;
+	private static final int CONSTANT_FIELD_REF = 9;
+	private static final int CONSTANT_METHOD_REF = 10;
+	private static final int CONSTANT_INTERFACE_METHOD_REF = 11;
+	private static final int CONSTANT_NAME_AND_TYPE = 12;
+	private static final int CONSTANT_METHOD_HANDLE = 15;
+	private static final int CONSTANT_METHOD_TYPE = 16;
+	private static final int CONSTANT_DYNAMIC = 17;
+	private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+	private static final int CONSTANT_MODULE = 19;
+	private static final int CONSTANT_PACKAGE = 20;
+	
+	private static final String RUNTIME_VISIBLE_ANNOTATIONS = "RuntimeVisibleAnnotations";
+	private static final String RUNTIME_INVISIBLE_ANNOTATIONS = "RuntimeInvisibleAnnotations";
+	
+	private static final String[] NO_NAMES = new String[0];
+	
+	private ClassFileParser() {
+		
+	}
+	
+	/**
+	 * Parses class file in the given stream. Stream is not closed.
+	 * 
+	 * @param in	stream of class file
+	 * @param root	classpath root which class file is found in
+	 * @return entry of class
+	 * @throws IOException if stream cannot be read or it is not a valid class file
+	 */
+	static ClasspathIndex.ClassEntry parse(InputStream in, URL root) throws IOException {
+		DataInputStream data = new DataInputStream(in);
+		if (data.readInt() != MAGIC) {
+			throw new IOException("Not a class file");
+		}
+		// Minor and major versions
+		skipFully(data, 4);
+		
+		int constantCount = data.readUnsignedShort();
+		String[] utf8s = new String[constantCount];
+		int[] classNameIndexes = new int[constantCount];
+		for (int i = 1; i < constantCount; i++) {
+			int tag = data.readUnsignedByte();
+			switch (tag) {
+				case CONSTANT_UTF8:
+					utf8s[i] = data.readUTF();
+					break;
+				case CONSTANT_CLASS:
+					classNameIndexes[i] = data.readUnsignedShort();
+					break;
+				case CONSTANT_STRING:
+				case CONSTANT_METHOD_TYPE:
+				case CONSTANT_MODULE:
+				case CONSTANT_PACKAGE:
+					skipFully(data, 2);
+					break;
+				case CONSTANT_METHOD_HANDLE:
+					skipFully(data, 3);
+					break;
+				case CONSTANT_INTEGER:
+				case CONSTANT_FLOAT:
+				case CONSTANT_FIELD_REF:
+				case CONSTANT_METHOD_REF:
+				case CONSTANT_INTERFACE_METHOD_REF:
+				case CONSTANT_NAME_AND_TYPE:
+				case CONSTANT_DYNAMIC:
+				case CONSTANT_INVOKE_DYNAMIC:
+					skipFully(data, 4);
+					break;
+				case CONSTANT_LONG:
+				case CONSTANT_DOUBLE:
+					skipFully(data, 8);
+					// 8 byte constants take two entries
+					i++;
+					break;
+				default:
+					throw new IOException("Unknown constant pool tag " + tag + " at entry " + i);	
+			}
+		}
+		
+		int accessFlags = data.readUnsignedShort();
+		String name = classNameOf(data.readUnsignedShort(), utf8s, classNameIndexes);
+		String superclassName = classNameOf(data.readUnsignedShort(), utf8s, classNameIndexes);
+		int interfaceCount = data.readUnsignedShort();
+		String[] interfaceNames = interfaceCount == 0 ? NO_NAMES : new String[interfaceCount];
+		for (int i = 0; i < interfaceCount; i++) {
+			interfaceNames[i] = classNameOf(data.readUnsignedShort(), utf8s, classNameIndexes);
+		}
+		
+		// Fields and methods have the same layout
+		skipMembers(data);
+		skipMembers(data);
+		
+		String[] annotationNames = NO_NAMES;
+		int attributeCount = data.readUnsignedShort();
+		for (int i = 0; i < attributeCount; i++) {
+			String attributeName = utf8Of(data.readUnsignedShort(), utf8s);
+			int length = data.readInt();
+			if (RUNTIME_VISIBLE_ANNOTATIONS.equals(attributeName) || 
+					RUNTIME_INVISIBLE_ANNOTATIONS.equals(attributeName)) {
+				annotationNames = concat(annotationNames, readAnnotationNames(data, utf8s));
+			}
+			else {
+				skipFully(data, length);
+			}
+		}
+		
+		return new ClasspathIndex.ClassEntry(name, superclassName, interfaceNames, annotationNames, accessFlags, root);
+	}
+	
+	private static String classNameOf(int index, String[] utf8s, int[] classNameIndexes) throws IOException {
+		if (index == 0) {
+			// Only "java.lang.Object" and modules have no super class
+			return null;
+		}
+		if (index >= classNameIndexes.length || classNameIndexes[index] == 0) {
+			throw new IOException("Invalid class reference " + index);
+		}
+		String name = utf8Of(classNameIndexes[index], utf8s);
+		if (name == null) {
+			throw new IOException("Invalid class name reference " + classNameIndexes[index]);
+		}
+		return name.replace('/', '.');
+	}
+	
+	/**
+	 * Gets UTF-8 constant at given index, or <code>null</code> if the constant is not a UTF-8 constant. 
+	 * Indexes are read from class file, so they are checked not to fail with a runtime exception.
+	 */
+	private static String utf8Of(int index, String[] utf8s) throws IOException {
+		if (index <= 0 || index >= utf8s.length) {
+			throw new IOException("Invalid constant pool index " + index);
+		}
+		return utf8s[index];
+	}
+	
+	private static void skipMembers(DataInputStream data) throws IOException {
+		int memberCount = data.readUnsignedShort();
+		for (int i = 0; i < memberCount; i++) {
+			// Access flags, name and descriptor
+			skipFully(data, 6);
+			skipAttributes(data);
+		}
+	}
+	
+	private static void skipAttributes(DataInputStream data) throws IOException {
+		int attributeCount = data.readUnsignedShort();
+		for (int i = 0; i < attributeCount; i++) {
+			skipFully(data, 2);
+			skipFully(data, data.readInt());
+		}
+	}
+	
+	private static String[] readAnnotationNames(DataInputStream data, String[] utf8s) throws IOException {
+		int annotationCount = data.readUnsignedShort();
+		String[] names = new String[annotationCount];
+		for (int i = 0; i < annotationCount; i++) {
+			names[i] = typeNameOf(utf8Of(data.readUnsignedShort(), utf8s));
+			skipElementValuePairs(data);
+		}
+		return names;
+	}
+	
+	private static void skipElementValuePairs(DataInputStream data) throws IOException {
+		int pairCount = data.readUnsignedShort();
+		for (int i = 0; i < pairCount; i++) {
+			skipFully(data, 2);
+			skipElementValue(data);
+		}
+	}
+	
+	private static void skipElementValue(DataInputStream data) throws IOException {
+		int tag = data.readUnsignedByte();
+		switch (tag) {
+			case 'e':
+				// Type name and constant name of enum
+				skipFully(data, 4);
+				break;
+			case '@':
+				skipFully(data, 2);
+				skipElementValuePairs(data);
+				break;
+			case '[':
+				int valueCount = data.readUnsignedShort();
+				for (int i = 0; i < valueCount; i++) {
+					skipElementValue(data);
+				}
+				break;
+			default:
+				// Constants and classes are given as a single constant pool index
+				skipFully(data, 2);
+		}
+	}
+	
+	/**
+	 * Converts type descriptor like <code>Lcom/foo/Bar;</code> to class name like <code>com.foo.Bar</code>.
+	 */
+	private static String typeNameOf(String descriptor) throws IOException {
+		if (descriptor == null || descriptor.length() < 3 || 
+				descriptor.charAt(0) != 'L' || descriptor.charAt(descriptor.length() - 1) != ';') {
+			throw new IOException("Invalid annotation type " + descriptor);
+		}
+		return descriptor.substring(1, descriptor.length() - 1).replace('/', '.');
+	}
+	
+	private static String[] concat(String[] names1, String[] names2) {
+		if (names1.length == 0) {
+			return names2;
+		}
+		String[] names = new String[names1.length + names2.length];
+		System.arraycopy(names1, 0, names, 0, names1.length);
+		System.arraycopy(names2, 0, names, names1.length, names2.length);
+		return names;
+	}
+	
+	private static void skipFully(DataInputStream data, int length) throws IOException {
+		if (length < 0) {
+			throw new IOException("Invalid length " + length);
+		}
+		while (length > 0) {
+			int skipped = data.skipBytes(length);
+			if (skipped <= 0) {
+				// "skipBytes" may skip nothing before end of stream, so end is checked by reading
+				data.readByte();
+				skipped = 1;
+			}
+			length -= skipped;
+		}
+	}
+	
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package tr.com.serkanozal.jcommon.util;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * @author Serkan ÖZAL
+ * 
+ * Histogram of classes of objects reachable from a root object, 
+ * built by {@link JvmUtil#histogramOf(Object, long, int)}. 
+ * Classes are sorted by their total shallow sizes and immediate children of root 
+ * are sorted by their retained sizes, both in descending order. 
+ * 
+ * Retained size of a child is approximate: it is total size of objects which are reached first through that child, 
+ * so objects shared by children are counted only under the first one of them (in field name or array index order). 
+ * 
+ * Histogram holds names of classes instead of classes, so it doesn't prevent unloading of them. 
+ * It can be written as CSV or JSON.
+ */
+public class ClassHistogram {
+
+	private final String rootClassName;
+	private final List<ClassEntry> classEntries;
+	private final List<ChildEntry> childEntries;
+	private final long totalCount;
+	private final long totalSize;
+	private final long childCount;
+	private final boolean completed;
+	
+	ClassHistogram(String rootClassName, List<ClassEntry> classEntries, List<ChildEntry> childEntries, 
+			long totalCount, long totalSize, long childCount, boolean completed) {
+		this.rootClassName = rootClassName;
+		this.totalCount = totalCount;
+		this.totalSize = totalSize;
+		this.childCount = childCount;
+		this.completed = completed;
+		Collections.sort(classEntries, ClassEntry.BY_SHALLOW_SIZE);
+		Collections.sort(childEntries, Collections.reverseOrder(ChildEntry.BY_RETAINED_SIZE));
+		this.classEntries = Collections.unmodifiableList(classEntries);
+		this.childEntries = Collections.unmodifiableList(childEntries);
+	}
+	
+	public String getRootClassName() {
+		return rootClassName;
+	}
+	
+	public List<ClassEntry> getClassEntries() {
+		return classEntries;
+	}
+	
+	/**
+	 * Gets immediate children of root with the largest retained sizes. 
+	 * Children without retained size (which are already reached through previous children) are not included.
+	 */
+	public List<ChildEntry> getChildEntries() {
+		return childEntries;
+	}
+	
+	public long getTotalCount() {
+		return totalCount;
+	}
+	
+	public long getTotalSize() {
+		return totalSize;
+	}
+	
+	/**
+	 * Gets count of immediate children of root with retained size. 
+	 * It may be larger than count of child entries, since only the largest ones are kept.
+	 */
+	public long getChildCount() {
+		return childCount;
+	}
+	
+	/**
+	 * Returns <code>false</code> if traversal was stopped by object limit, so counts and sizes are partial.
+	 */
+	public boolean isCompleted() {
+		return completed;
+	}
+	
+	/**
+	 * Writes class entries as CSV with <code>class,count,shallowSize</code> columns.
+	 */
+	public void writeClassesCsv(Appendable out) throws IOException {
+		out.append("class,count,shallowSize\n");
+		for (ClassEntry entry : classEntries) {
+			out.append(csv(entry.className)).append(',').
+				append(String.valueOf(entry.count)).append(',').
+				append(String.valueOf(entry.shallowSize)).append('\n');
+		}
+	}
+	
+	/**
+	 * Writes child entries as CSV with <code>path,class,retainedSize</code> columns.
+	 */
+	public void writeChildrenCsv(Appendable out) throws IOException {
+		out.append("path,class,retainedSize\n");
+		for (ChildEntry entry : childEntries) {
+			out.append(csv(entry.path)).append(',').
+				append(csv(entry.className)).append(',').
+				append(String.valueOf(entry.retainedSize)).append('\n');
+		}
+	}
+	
+	public void writeJson(Appendable out) throws IOException {
+		out.append("{\"rootClass\":").append(json(rootClassName)).
+			append(",\"totalCount\":").append(String.valueOf(totalCount)).
+			append(",\"totalSize\":").append(String.valueOf(totalSize)).
+			append(",\"childCount\":").append(String.valueOf(childCount)).
+			append(",\"completed\":").append(String.valueOf(completed)).
+			append(",\"classes\":[");
+		for (int i = 0; i < classEntries.size(); i++) {
+			ClassEntry entry = classEntries.get(i);
+			if (i > 0) {
+				out.append(',');
+			}
+			out.append("{\"class\":").append(json(entry.className)).
+				append(",\"count\":").append(String.valueOf(entry.count)).
+				append(",\"shallowSize\":").append(String.valueOf(entry.shallowSize)).append('}');
+		}
+		out.append("],\"children\":[");
+		for (int i = 0; i < childEntries.size(); i++) {
+			ChildEntry entry = childEntries.get(i);
+			if (i > 0) {
+				out.append(',');
+			}
+			out.append("{\"path\":").append(json(entry.path)).
+				append(",\"class\":").append(json(entry.className)).
+				append(",\"retainedSize\":").append(String.valueOf(entry.retainedSize)).append('}');
+		}
+		out.append("]}");
+	}
+	
+	public String toClassesCsv() {
+		StringBuilder sb = new StringBuilder();
+		try {
+			writeClassesCsv(sb);
+		} 
+		catch (IOException e) {
+			// StringBuilder never throws IOException
+			throw new IllegalStateException(e);
+		}
+		return sb.toString();
+	}
+	
+	public String toChildrenCsv() {
+		StringBuilder sb = new StringBuilder();
+		try {
+			writeChildrenCsv(sb);
+		} 
+		catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return sb.toString();
+	}
+	
+	public String toJson() {
+		StringBuilder sb = new StringBuilder();
+		try {
+			writeJson(sb);
+		} 
+		catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return sb.toString();
+	}
+	
+	@Override
+	public String toString() {
+		return totalCount + " objects, " + totalSize + " bytes, " + classEntries.size() + " classes" + 
+				(completed ? "" : " (object limit exceeded)");
+	}
+	
+	private static String csv(String value) {
+		if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+			return value;
+		}
+		return "\"" + value.replace("\"", "\"\"") + "\"";
+	}
+	
+	private static String json(String value) {
+		StringBuilder sb = new StringBuilder(value.length() + 2);
+		sb.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				sb.append('\\').append(c);
+			}
+			else if (c < 0x20) {
+				sb.append(String.format("\\u%04x", (int) c));
+			}
+			else {
+				sb.append(c);
+			}
+		}
+		return sb.append('"').toString();
+	}
+	
+	public static class ClassEntry {
+		
+		static final Comparator<ClassEntry> BY_SHALLOW_SIZE = 
+				new Comparator<ClassEntry>() {
+					@Override
+					public int compare(ClassEntry e1, ClassEntry e2) {
+						if (e1.shallowSize != e2.shallowSize) {
+							return e1.shallowSize > e2.shallowSize ? -1 : 1;
+						}
+						return e1.className.compareTo(e2.className);
+					}
+				};
+		
+		private final String className;
+		private final long count;
+		private final long shallowSize;
+		
+		ClassEntry(String className, long count, long shallowSize) {
+			this.className = className;
+			this.count = count;
+			this.shallowSize = shallowSize;
+		}
+
+		public String getClassName() {
+			return className;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public long getShallowSize() {
+			return shallowSize;
+		}
+		
+		@Override
+		public String toString() {
+			return className + ": " + count + " objects, " + shallowSize + " bytes";
+		}
+		
+	}
+	
+	public static class ChildEntry {
+		
+		static final Comparator<ChildEntry> BY_RETAINED_SIZE = 
+				new Comparator<ChildEntry>() {
+					@Override
+					public int compare(ChildEntry e1, ChildEntry e2) {
+						return e1.retainedSize < e2.retainedSize ? -1 : (e1.retainedSize == e2.retainedSize ? 0 : 1);
+					}
+				};
+		
+		private final String path;
+		private final String className;
+		private final long retainedSize;
+		
+		ChildEntry(String path, String className, long retainedSize) {
+			this.path = path;
+			this.className = className;
+			this.retainedSize = retainedSize;
+		}
+
+		/**
+		 * Gets field name or array index (such as <code>[3]</code>) of child in root.
+		 */
+		public String getPath() {
+			return path;
+		}
+
+		public String getClassName() {
+			return className;
+		}
+
+		public long getRetainedSize() {
+			return retainedSize;
+		}
+		
+		@Override
+		public String toString() {
+			return path + " (" + className + "): " + retainedSize + " bytes";
+		}
+		
+	}
+	
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tr.com.serkanozal.jcommon.util;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * @author Serkan ÖZAL
+ * 
+ * Thread-safe cache of metadata computed per class like <code>java.lang.ClassValue</code> of Java 7. 
+ * Reads are lock-free. If metadata of a class is computed by multiple threads at the same time, 
+ * one of them is published and returned to all of them.
+ * 
+ * Classes loaded by bootstrap, extension or system class loaders are never unloaded, 
+ * so their metadata is held by classes themselves as keys and reads don't allocate anything. 
+ * Other classes are held by weak keys, so they can be unloaded with their class loaders 
+ * and their metadata is removed after that. Metadata of such classes must not refer to them 
+ * (or to their class loaders), otherwise they are never unloaded. 
+ * See {@link #isPermanent(Class)} for metadata which needs to refer to classes.
+ */
+abstract class ClassMetadataCache<V> {
+
+	private static final ClassLoader[] PERMANENT_CLASS_LOADERS = findPermanentClassLoaders();
+	
+	private final ConcurrentMap<Class<?>, V> permanentValues = new ConcurrentHashMap<Class<?>, V>();
+	private final ConcurrentMap<ClassKey, V> values = new ConcurrentHashMap<ClassKey, V>();
+	private final ReferenceQueue<Class<?>> staleKeys = new ReferenceQueue<Class<?>>();
+	
+	protected abstract V computeValue(Class<?> clazz);
+	
+	V get(Class<?> clazz) {
+		if (isPermanent(clazz)) {
+			V value = permanentValues.get(clazz);
+			if (value == null) {
+				value = computeValue(clazz);
+				V existingValue = permanentValues.putIfAbsent(clazz, value);
+				if (existingValue != null) {
+					value = existingValue;
+				}
+			}
+			return value;
+		}
+		
+		expungeStaleKeys();
+		V value = values.get(new ClassKey(clazz, null));
+		if (value == null) {
+			value = computeValue(clazz);
+			V existingValue = values.putIfAbsent(new ClassKey(clazz, staleKeys), value);
+			if (existingValue != null) {
+				value = existingValue;
+			}
+		}
+		return value;
+	}
+	
+	void remove(Class<?> clazz) {
+		if (isPermanent(clazz)) {
+			permanentValues.remove(clazz);
+		}
+		else {
+			values.remove(new ClassKey(clazz, null));
+		}
+	}
+	
+	int size() {
+		expungeStaleKeys();
+		return permanentValues.size() + values.size();
+	}
+	
+	private void expungeStaleKeys() {
+		for (Reference<? extends Class<?>> key = staleKeys.poll(); key != null; key = staleKeys.poll()) {
+			values.remove(key);
+		}
+	}
+	
+	/**
+	 * Returns <code>true</code> if class is loaded by bootstrap class loader 
+	 * or by system class loader (or one of its parents), so it is never unloaded.
+	 */
+	static boolean isPermanent(Class<?> clazz) {
+		ClassLoader classLoader = clazz.getClassLoader();
+		if (classLoader == null) {
+			return true;
+		}
+		for (ClassLoader permanentClassLoader : PERMANENT_CLASS_LOADERS) {
+			if (classLoader == permanentClassLoader) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	private static ClassLoader[] findPermanentClassLoaders() {
+		List<ClassLoader> classLoaders = new ArrayList<ClassLoader>();
+		try {
+			for (ClassLoader cl = ClassLoader.getSystemClassLoader(); cl != null; cl = cl.getParent()) {
+				classLoaders.add(cl);
+			}
+		}
+		catch (SecurityException e) {
+			// Then only classes of bootstrap class loader are treated as permanent
+		}
+		return classLoaders.toArray(new ClassLoader[classLoaders.size()]);
+	}
+	
+	/**
+	 * Weak key of class compared by identity. Keys created only for lookups are not registered to any queue.
+	 */
+	static class ClassKey extends WeakReference<Class<?>> {
+		
+		private final int hashCode;
+		
+		ClassKey(Class<?> clazz, ReferenceQueue<Class<?>> queue) {
+			super(clazz, queue);
+			this.hashCode = System.identityHashCode(clazz);
+		}
+		
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if (obj == this) {
+				return true;
+			}
+			if (!(obj instanceof ClassKey)) {
+				return false;
+			}
+			Class<?> clazz = get();
+			return clazz != null && clazz == ((ClassKey) obj).get();
+		}
+		
+	}
+	
+}
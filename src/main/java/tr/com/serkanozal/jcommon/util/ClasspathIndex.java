@@ -0,0 +1,337 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package tr.com.serkanozal.jcommon.util;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Modifier;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * @author Serkan ÖZAL
+ * 
+ * Index of classes, packages and resources found in classpath roots, 
+ * built by {@link ClasspathUtil#scan(java.util.Collection, int)}. 
+ * Classes are indexed by their packages, class level annotations, super classes and interfaces. 
+ * 
+ * Index is built from class files without loading classes, 
+ * so it holds names of classes instead of classes. 
+ * If the same class or resource is found in more than one root, class entry of the root 
+ * which comes first in the order of roots is used, but resources are kept for all of the roots.
+ */
+public class ClasspathIndex {
+
+	private final List<URL> roots;
+	private final Map<String, ClassEntry> classes = new HashMap<String, ClassEntry>();
+	private final Map<String, List<String>> packageClasses = new HashMap<String, List<String>>();
+	private final Map<String, List<String>> annotatedClasses = new HashMap<String, List<String>>();
+	private final Map<String, List<String>> directSubtypes = new HashMap<String, List<String>>();
+	private final Map<String, List<URL>> resourceRoots = new HashMap<String, List<URL>>();
+	
+	/**
+	 * Resource names and their roots are given as lists with the same order.
+	 */
+	ClasspathIndex(List<URL> roots, List<ClassEntry> classEntries, 
+			List<String> resourceNames, List<URL> resourceNameRoots) {
+		this.roots = Collections.unmodifiableList(new ArrayList<URL>(roots));
+		// Roots are compared by identity since "URL.equals" may resolve host names
+		Map<URL, Integer> rootOrders = new IdentityHashMap<URL, Integer>();
+		for (int i = 0; i < roots.size(); i++) {
+			rootOrders.put(roots.get(i), i);
+		}
+		for (ClassEntry entry : classEntries) {
+			ClassEntry existingEntry = classes.get(entry.name);
+			if (existingEntry == null || 
+					rootOrders.get(entry.root) < rootOrders.get(existingEntry.root)) {
+				classes.put(entry.name, entry);
+			}
+		}
+		for (ClassEntry entry : classes.values()) {
+			add(packageClasses, entry.getPackageName(), entry.name);
+			for (String annotationName : entry.annotationNames) {
+				add(annotatedClasses, annotationName, entry.name);
+			}
+			if (entry.superclassName != null) {
+				add(directSubtypes, entry.superclassName, entry.name);
+			}
+			for (String interfaceName : entry.interfaceNames) {
+				add(directSubtypes, interfaceName, entry.name);
+			}
+		}
+		for (int i = 0; i < resourceNames.size(); i++) {
+			add(resourceRoots, resourceNames.get(i), resourceNameRoots.get(i));
+		}
+		for (List<URL> urls : resourceRoots.values()) {
+			if (urls.size() > 1) {
+				Collections.sort(urls, new RootComparator(rootOrders));
+			}
+		}
+	}
+	
+	private static <V> void add(Map<String, List<V>> map, String key, V value) {
+		List<V> values = map.get(key);
+		if (values == null) {
+			values = new ArrayList<V>(1);
+			map.put(key, values);
+		}
+		values.add(value);
+	}
+	
+	private static List<String> unmodifiableCopy(List<String> names) {
+		if (names == null) {
+			return Collections.emptyList();
+		}
+		return Collections.unmodifiableList(new ArrayList<String>(names));
+	}
+	
+	/**
+	 * Gets roots in their order. Archives in "WEB-INF/lib" of a root are roots of their own 
+	 * and they come just after the root which contains them.
+	 */
+	public List<URL> getRoots() {
+		return roots;
+	}
+	
+	public int getClassCount() {
+		return classes.size();
+	}
+	
+	public Set<String> getClassNames() {
+		return Collections.unmodifiableSet(classes.keySet());
+	}
+	
+	public boolean containsClass(String className) {
+		return classes.containsKey(className);
+	}
+	
+	/**
+	 * Gets entry of class with the given name like <code>java.util.Map$Entry</code>, 
+	 * or <code>null</code> if there is no such class in the index.
+	 */
+	public ClassEntry getClassEntry(String className) {
+		return classes.get(className);
+	}
+	
+	public Set<String> getPackageNames() {
+		return Collections.unmodifiableSet(packageClasses.keySet());
+	}
+	
+	/**
+	 * Gets names of classes directly in the given package, not in its sub packages. 
+	 * Default package is given as empty string.
+	 */
+	public List<String> getClassNamesInPackage(String packageName) {
+		return unmodifiableCopy(packageClasses.get(packageName));
+	}
+	
+	/**
+	 * Gets names of classes annotated with the given annotation. 
+	 * Annotations with both <code>RUNTIME</code> and <code>CLASS</code> retentions are indexed, 
+	 * but inherited annotations are not.
+	 */
+	public List<String> getClassNamesAnnotatedWith(String annotationName) {
+		return unmodifiableCopy(annotatedClasses.get(annotationName));
+	}
+	
+	public List<String> getClassNamesAnnotatedWith(Class<? extends Annotation> annotationClass) {
+		return getClassNamesAnnotatedWith(annotationClass.getName());
+	}
+	
+	/**
+	 * Gets names of classes which extend or implement the given type directly or indirectly. 
+	 * Only the types in the index can be followed, so subtypes of a class in the index 
+	 * are not found through a super class outside of the index.
+	 */
+	public List<String> getSubtypeNamesOf(String typeName) {
+		List<String> subtypeNames = new ArrayList<String>();
+		Set<String> visited = new HashSet<String>();
+		Deque<String> typeNames = new ArrayDeque<String>();
+		typeNames.push(typeName);
+		while (!typeNames.isEmpty()) {
+			List<String> names = directSubtypes.get(typeNames.pop());
+			if (names != null) {
+				for (String name : names) {
+					// An interface may be reached through more than one path
+					if (visited.add(name)) {
+						subtypeNames.add(name);
+						typeNames.push(name);
+					}
+				}
+			}
+		}
+		return subtypeNames;
+	}
+	
+	public List<String> getSubtypeNamesOf(Class<?> type) {
+		return getSubtypeNamesOf(type.getName());
+	}
+	
+	/**
+	 * Gets names of resources other than class files like <code>META-INF/MANIFEST.MF</code>.
+	 */
+	public Set<String> getResourceNames() {
+		return Collections.unmodifiableSet(resourceRoots.keySet());
+	}
+	
+	/**
+	 * Gets URLs of resource with the given name in all of the roots which it is found in, 
+	 * in the order of roots.
+	 */
+	public List<URL> getResourceUrls(String resourceName) {
+		List<URL> urls = resourceRoots.get(resourceName);
+		if (urls == null) {
+			return Collections.emptyList();
+		}
+		List<URL> resourceUrls = new ArrayList<URL>(urls.size());
+		for (URL root : urls) {
+			try {
+				if (root.getPath().endsWith("/")) {
+					resourceUrls.add(new URL(root, resourceName));
+				}
+				else {
+					resourceUrls.add(new URL("jar:" + root.toExternalForm() + "!/" + resourceName));
+				}
+			}
+			catch (MalformedURLException e) {
+				throw new IllegalStateException("Unable to create URL of resource " + resourceName + 
+						" in " + root, e);
+			}
+		}
+		return resourceUrls;
+	}
+	
+	@Override
+	public String toString() {
+		return "ClasspathIndex [" + roots.size() + " roots, " + classes.size() + " classes, " + 
+				packageClasses.size() + " packages, " + resourceRoots.size() + " resources]";
+	}
+	
+	private static class RootComparator implements Comparator<URL> {
+		
+		private final Map<URL, Integer> rootOrders;
+		
+		private RootComparator(Map<URL, Integer> rootOrders) {
+			this.rootOrders = rootOrders;
+		}
+		
+		@Override
+		public int compare(URL url1, URL url2) {
+			return rootOrders.get(url1).compareTo(rootOrders.get(url2));
+		}
+		
+	}
+	
+	public static class ClassEntry {
+		
+		private final String name;
+		private final String superclassName;
+		private final String[] interfaceNames;
+		private final String[] annotationNames;
+		private final int accessFlags;
+		private final URL root;
+		
+		ClassEntry(String name, String superclassName, String[] interfaceNames, 
+				String[] annotationNames, int accessFlags, URL root) {
+			this.name = name;
+			this.superclassName = superclassName;
+			this.interfaceNames = interfaceNames;
+			this.annotationNames = annotationNames;
+			this.accessFlags = accessFlags;
+			this.root = root;
+		}
+
+		public String getName() {
+			return name;
+		}
+		
+		public String getPackageName() {
+			int index = name.lastIndexOf('.');
+			return index < 0 ? "" : name.substring(0, index);
+		}
+
+		/**
+		 * Gets name of super class, or <code>null</code> for <code>java.lang.Object</code>. 
+		 * Super class of interfaces is <code>java.lang.Object</code>.
+		 */
+		public String getSuperclassName() {
+			return superclassName;
+		}
+
+		public List<String> getInterfaceNames() {
+			return Collections.unmodifiableList(Arrays.asList(interfaceNames));
+		}
+
+		public List<String> getAnnotationNames() {
+			return Collections.unmodifiableList(Arrays.asList(annotationNames));
+		}
+		
+		/**
+		 * Gets access flags of class file. They are compatible with {@link Modifier} 
+		 * for public, final, interface and abstract flags, but nested classes are not 
+		 * marked as private, protected or static in their class files.
+		 */
+		public int getAccessFlags() {
+			return accessFlags;
+		}
+		
+		public boolean isInterface() {
+			return Modifier.isInterface(accessFlags);
+		}
+		
+		public boolean isAbstract() {
+			return Modifier.isAbstract(accessFlags);
+		}
+		
+		/**
+		 * Annotation types are also interfaces.
+		 */
+		public boolean isAnnotation() {
+			return (accessFlags & ClassFileParser.ACC_ANNOTATION) != 0;
+		}
+		
+		public boolean isEnum() {
+			return (accessFlags & ClassFileParser.ACC_ENUM) != 0;
+		}
+
+		/**
+		 * Gets classpath root which class is found in.
+		 */
+		public URL getRoot() {
+			return root;
+		}
+		
+		@Override
+		public String toString() {
+			return name + " (" + root + ")";
+		}
+		
+	}
+	
+}
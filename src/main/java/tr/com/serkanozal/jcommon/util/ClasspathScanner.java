@@ -0,0 +1,431 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package tr.com.serkanozal.jcommon.util;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.log4j.Logger;
+
+/**
+ * @author Serkan ÖZAL
+ * 
+ * Scans classpath roots by a group of threads which share work as directories and archives. 
+ * Sub directories are queued as separate tasks, so large directory trees are also walked in parallel. 
+ * Archives are read through their central directories by {@link ZipFile}. 
+ * Archives in "WEB-INF/lib" are roots of their own and they are ordered just after the root which contains them. 
+ * Idle threads wait on the task queue and they are released by end markers after the last task is finished. 
+ * 
+ * Each thread collects what it finds into its own lists and lists are merged into 
+ * {@link ClasspathIndex} after all threads are finished, so threads don't share any index structure. 
+ * Roots or class files which cannot be read or parsed are logged and skipped, 
+ * and so are directories which link to one of their parent directories.
+ */
+class ClasspathScanner {
+
+	private static final Logger logger = Logger.getLogger(ClasspathScanner.class);
+	
+	private static final String CLASS_FILE_SUFFIX = ".class";
+	private static final String WEB_INF_LIB = "WEB-INF/lib/";
+	private static final int BUFFER_SIZE = 8192;
+	
+	private static final ScanTask END_OF_SCAN = new ScanTask(null, null);
+	
+	private final List<URL> roots;
+	private final int parallelism;
+	private final BlockingQueue<ScanTask> tasks = new LinkedBlockingQueue<ScanTask>();
+	// Count of tasks which are queued or being processed
+	private final AtomicInteger pendingTaskCount = new AtomicInteger();
+	private volatile Throwable failure;
+	
+	ClasspathScanner(List<URL> roots, int parallelism) {
+		this.roots = roots;
+		this.parallelism = parallelism;
+	}
+	
+	ClasspathIndex scan() {
+		for (URL root : roots) {
+			File file = fileOf(root);
+			if (file == null) {
+				logger.debug("Skipping classpath root " + root + " since it is not a local file");
+			}
+			else if (file.isDirectory()) {
+				offer(new ScanTask(root, file, "", canonicalPathOf(file), null));
+			}
+			else if (file.isFile()) {
+				offer(new ScanTask(root, file));
+			}
+			else {
+				logger.debug("Skipping classpath root " + root + " since it doesn't exist");
+			}
+		}
+		if (pendingTaskCount.get() == 0) {
+			finish();
+		}
+		
+		final Result[] results = new Result[parallelism];
+		Thread[] threads = new Thread[parallelism];
+		for (int i = 0; i < parallelism; i++) {
+			final Result result = new Result();
+			results[i] = result;
+			threads[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					work(result);
+				}
+			}, "jcommon-classpathScan-" + i);
+			threads[i].setDaemon(true);
+			threads[i].start();
+		}
+		try {
+			for (Thread thread : threads) {
+				thread.join();
+			}
+		} 
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			failure = e;
+		}
+		if (failure != null) {
+			throw new IllegalStateException("Unable to scan classpath", failure);
+		}
+		
+		List<ClasspathIndex.ClassEntry> classEntries = new ArrayList<ClasspathIndex.ClassEntry>();
+		List<String> resourceNames = new ArrayList<String>();
+		List<URL> resourceRoots = new ArrayList<URL>();
+		Map<URL, List<URL>> nestedRoots = new IdentityHashMap<URL, List<URL>>();
+		for (Result result : results) {
+			classEntries.addAll(result.classEntries);
+			resourceNames.addAll(result.resourceNames);
+			resourceRoots.addAll(result.resourceRoots);
+			for (int i = 0; i < result.nestedRoots.size(); i++) {
+				URL parentRoot = result.nestedRootParents.get(i);
+				List<URL> urls = nestedRoots.get(parentRoot);
+				if (urls == null) {
+					urls = new ArrayList<URL>();
+					nestedRoots.put(parentRoot, urls);
+				}
+				urls.add(result.nestedRoots.get(i));
+			}
+		}
+		return new ClasspathIndex(orderRoots(nestedRoots), classEntries, resourceNames, resourceRoots);
+	}
+	
+	/**
+	 * Puts nested roots just after the root which contains them. 
+	 * Nested roots of the same root are ordered by their names, since they are found in no specific order.
+	 */
+	private List<URL> orderRoots(Map<URL, List<URL>> nestedRoots) {
+		List<URL> orderedRoots = new ArrayList<URL>(roots.size());
+		for (URL root : roots) {
+			orderedRoots.add(root);
+			List<URL> urls = nestedRoots.get(root);
+			if (urls != null) {
+				Collections.sort(urls, new Comparator<URL>() {
+					@Override
+					public int compare(URL url1, URL url2) {
+						return url1.toExternalForm().compareTo(url2.toExternalForm());
+					}
+				});
+				orderedRoots.addAll(urls);
+			}
+		}
+		return orderedRoots;
+	}
+	
+	private static File fileOf(URL url) {
+		if (!"file".equals(url.getProtocol())) {
+			return null;
+		}
+		try {
+			return new File(url.toURI());
+		} 
+		catch (URISyntaxException e) {
+			// URLs of some class loaders are not escaped, like with spaces in their paths
+			return new File(url.getPath());
+		}
+		catch (IllegalArgumentException e) {
+			return new File(url.getPath());
+		}
+	}
+	
+	private void offer(ScanTask task) {
+		// Task is counted as pending before it is queued, so the count never drops to zero too early
+		pendingTaskCount.incrementAndGet();
+		tasks.offer(task);
+	}
+	
+	/**
+	 * Releases all threads waiting on the task queue. 
+	 * End markers are queued after the remaining tasks, so threads stop only when there is no task to wait for.
+	 */
+	private void finish() {
+		for (int i = 0; i < parallelism; i++) {
+			tasks.offer(END_OF_SCAN);
+		}
+	}
+	
+	private void work(Result result) {
+		byte[] buffer = new byte[BUFFER_SIZE];
+		try {
+			for (ScanTask task = tasks.take(); task != END_OF_SCAN && failure == null; task = tasks.take()) {
+				try {
+					if (task.archive) {
+						scanArchive(task.root, task.file, result);
+					}
+					else {
+						scanDirectory(task, result, buffer);
+					}
+				}
+				finally {
+					if (pendingTaskCount.decrementAndGet() == 0) {
+						finish();
+					}
+				}
+			}
+		}
+		catch (Throwable t) {
+			failure = t;
+			// Other threads may be waiting for tasks which will never be queued
+			finish();
+		}
+	}
+	
+	private void scanDirectory(ScanTask task, Result result, byte[] buffer) {
+		URL root = task.root;
+		String path = task.path;
+		File[] files = task.file.listFiles();
+		if (files == null) {
+			logger.warn("Unable to list directory " + task.file + " in classpath root " + root);
+			return;
+		}
+		// Archives directly in "WEB-INF/lib" are libraries of web application, not resources
+		boolean libraryDirectory = path.length() == 0 && root.toExternalForm().endsWith(WEB_INF_LIB);
+		for (File file : files) {
+			String name = path + file.getName();
+			if (file.isDirectory()) {
+				String canonicalPath = canonicalPathOf(file);
+				if (task.hasAncestor(canonicalPath)) {
+					logger.warn("Skipping directory " + file + " in classpath root " + root + 
+							" since it links to one of its parent directories");
+				}
+				else {
+					offer(new ScanTask(root, file, name + "/", canonicalPath, task));
+				}
+			}
+			else if (libraryDirectory && name.endsWith(".jar")) {
+				try {
+					URL nestedRoot = file.toURI().toURL();
+					result.addNestedRoot(nestedRoot, root);
+					offer(new ScanTask(nestedRoot, file));
+				}
+				catch (MalformedURLException e) {
+					logger.warn("Unable to scan archive " + file + " in classpath root " + root, e);
+				}
+			}
+			else if (isClassFile(name)) {
+				InputStream in = null;
+				try {
+					in = new FileInputStream(file);
+					parseClassFile(new BufferedInputStream(in, buffer.length), name, root, result);
+				}
+				catch (IOException e) {
+					logger.warn("Unable to read class file " + file + " in classpath root " + root, e);
+				}
+				finally {
+					closeQuietly(in);
+				}
+			}
+			else {
+				result.addResource(name, root);
+			}
+		}
+	}
+	
+	private void scanArchive(URL root, File file, Result result) {
+		ZipFile zipFile = null;
+		try {
+			zipFile = new ZipFile(file);
+			Enumeration<? extends ZipEntry> entries = zipFile.entries();
+			while (entries.hasMoreElements()) {
+				ZipEntry entry = entries.nextElement();
+				if (entry.isDirectory()) {
+					continue;
+				}
+				String name = entry.getName();
+				if (isClassFile(name)) {
+					InputStream in = zipFile.getInputStream(entry);
+					try {
+						parseClassFile(new BufferedInputStream(in, BUFFER_SIZE), name, root, result);
+					}
+					finally {
+						closeQuietly(in);
+					}
+				}
+				else {
+					result.addResource(name, root);
+				}
+			}
+		}
+		catch (IOException e) {
+			logger.warn("Unable to read archive in classpath root " + root, e);
+		}
+		finally {
+			if (zipFile != null) {
+				try {
+					zipFile.close();
+				} 
+				catch (IOException e) {
+					// Ignore
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Parses a class file and logs it if it is malformed or cannot be read, 
+	 * so a single bad class file doesn't fail the whole scan.
+	 */
+	private static void parseClassFile(InputStream in, String name, URL root, Result result) {
+		try {
+			result.classEntries.add(ClassFileParser.parse(in, root));
+		}
+		catch (IOException e) {
+			logger.warn("Unable to read class file " + name + " in classpath root " + root, e);
+		}
+		catch (RuntimeException e) {
+			logger.warn("Unable to parse class file " + name + " in classpath root " + root, e);
+		}
+	}
+	
+	/**
+	 * Canonical paths resolve symbolic links, so they are used for detecting cycles of directories.
+	 */
+	private static String canonicalPathOf(File file) {
+		try {
+			return file.getCanonicalPath();
+		}
+		catch (IOException e) {
+			return file.getAbsolutePath();
+		}
+	}
+	
+	/**
+	 * Class files under "META-INF" (like versioned classes of multi-release archives) and 
+	 * module descriptors are not classes of the root, so they are indexed as resources.
+	 */
+	private static boolean isClassFile(String name) {
+		return name.endsWith(CLASS_FILE_SUFFIX) && 
+				!name.startsWith("META-INF/") && 
+				!name.endsWith("module-info" + CLASS_FILE_SUFFIX);
+	}
+	
+	private static void closeQuietly(InputStream in) {
+		if (in != null) {
+			try {
+				in.close();
+			} 
+			catch (IOException e) {
+				// Ignore
+			}
+		}
+	}
+	
+	private static class ScanTask {
+		
+		private final URL root;
+		private final File file;
+		// Path of directory relative to root, ends with "/" unless it is the root itself
+		private final String path;
+		private final String canonicalPath;
+		// Task of parent directory
+		private final ScanTask parent;
+		private final boolean archive;
+		
+		private ScanTask(URL root, File file) {
+			this.root = root;
+			this.file = file;
+			this.path = null;
+			this.canonicalPath = null;
+			this.parent = null;
+			this.archive = true;
+		}
+		
+		private ScanTask(URL root, File file, String path, String canonicalPath, ScanTask parent) {
+			this.root = root;
+			this.file = file;
+			this.path = path;
+			this.canonicalPath = canonicalPath;
+			this.parent = parent;
+			this.archive = false;
+		}
+		
+		/**
+		 * Every endless walk through symbolic links reaches a directory which is already on its path, 
+		 * so only the directories from root to this one are checked.
+		 */
+		private boolean hasAncestor(String canonicalPath) {
+			for (ScanTask task = this; task != null; task = task.parent) {
+				if (task.canonicalPath.equals(canonicalPath)) {
+					return true;
+				}
+			}
+			return false;
+		}
+		
+	}
+	
+	private static class Result {
+		
+		private final List<ClasspathIndex.ClassEntry> classEntries = new ArrayList<ClasspathIndex.ClassEntry>();
+		private final List<String> resourceNames = new ArrayList<String>();
+		private final List<URL> resourceRoots = new ArrayList<URL>();
+		private final List<URL> nestedRoots = new ArrayList<URL>();
+		private final List<URL> nestedRootParents = new ArrayList<URL>();
+		
+		private void addResource(String name, URL root) {
+			resourceNames.add(name);
+			resourceRoots.add(root);
+		}
+		
+		private void addNestedRoot(URL nestedRoot, URL parentRoot) {
+			nestedRoots.add(nestedRoot);
+			nestedRootParents.add(parentRoot);
+		}
+		
+	}
+	
+}
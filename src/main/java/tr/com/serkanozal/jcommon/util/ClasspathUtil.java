@@ -22,12 +22,16 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.net.URLConnection;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
@@ -39,8 +43,11 @@ public class ClasspathUtil {
 	
 	private static final Logger logger = Logger.getLogger(ClasspathUtil.class);
 	
+	private static final int DEFAULT_SCAN_PARALLELISM = Runtime.getRuntime().availableProcessors();
+	
 	private static Set<URL> classpathUrls;
 	private static String fullClasspath;
+	private static volatile ClasspathIndex classpathIndex;
 	
 	static {
 		init();
@@ -58,6 +65,53 @@ public class ClasspathUtil {
 		return fullClasspath;
 	}
 	
+	/**
+	 * Gets index of classpath roots given by {@link #getClasspathUrls()}. 
+	 * Classpath is scanned at the first call and the same index is returned by later calls.
+	 */
+	public static ClasspathIndex getClasspathIndex() {
+		ClasspathIndex index = classpathIndex;
+		if (index == null) {
+			synchronized (ClasspathUtil.class) {
+				index = classpathIndex;
+				if (index == null) {
+					index = scan(classpathUrls);
+					classpathIndex = index;
+				}
+			}
+		}
+		return index;
+	}
+	
+	/**
+	 * Scans the given classpath roots with a thread per available processor.
+	 * 
+	 * @see #scan(Collection, int)
+	 */
+	public static ClasspathIndex scan(Collection<URL> roots) {
+		return scan(roots, DEFAULT_SCAN_PARALLELISM);
+	}
+	
+	/**
+	 * Scans the given classpath roots in parallel and builds index of their classes and resources. 
+	 * Directories and archives (like JAR files) are supported as roots. 
+	 * Classes are not loaded, their class files are parsed to find their super classes, 
+	 * interfaces and annotations.
+	 * 
+	 * @param roots 		classpath roots as local file URLs, other URLs are skipped
+	 * @param parallelism 	number of threads to scan roots
+	 * @return index of classes and resources in roots
+	 */
+	public static ClasspathIndex scan(Collection<URL> roots, int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+		}
+		long start = System.currentTimeMillis();
+		ClasspathIndex index = new ClasspathScanner(new ArrayList<URL>(roots), parallelism).scan();
+		logger.info("Scanned classpath in " + (System.currentTimeMillis() - start) + " ms: " + index);
+		return index;
+	}
+	
 	private static void init() {
 		classpathUrls = findClasspathUrls();
 		logger.info("Found classpath URL list: " + classpathUrls);
@@ -173,28 +227,28 @@ public class ClasspathUtil {
 		urls.removeAll(replaceURLs.keySet());
 		urls.addAll(replaceURLs.values());
 		urls.addAll(derivedUrls);
-		replaceURLs.clear();
-		//Check contained urls
+		return removeContainedUrls(urls);
+	}
+	
+	/**
+	 * Removes urls which are contained by other urls. 
+	 * In lexicographical order, a url comes after the urls which are its prefixes and 
+	 * urls between them have the same prefixes, so comparing each url with the last remaining one is enough.
+	 */
+	private static Set<URL> removeContainedUrls(Set<URL> urls) {
+		Map<String, URL> sortedUrls = new TreeMap<String, URL>();
 		for (URL url : urls) {
-			for (URL rootUrl : urls) {
-				if (url.equals(rootUrl)) {
-					continue;
-				}
-				if (url.toExternalForm().startsWith(rootUrl.toExternalForm())) {
-					if (replaceURLs.get(url) != null) {
-						URL settledUrl =replaceURLs.get(url);
-						if (settledUrl.toExternalForm().startsWith(rootUrl.toExternalForm())) {
-							replaceURLs.put(url, rootUrl);	
-						}
-					}
-					else {
-						replaceURLs.put(url, rootUrl);						
-					}
-				}
+			sortedUrls.put(url.toExternalForm(), url);
+		}
+		Set<URL> rootUrls = new LinkedHashSet<URL>();
+		String lastRootUrl = null;
+		for (Map.Entry<String, URL> entry : sortedUrls.entrySet()) {
+			if (lastRootUrl == null || !entry.getKey().startsWith(lastRootUrl)) {
+				rootUrls.add(entry.getValue());
+				lastRootUrl = entry.getKey();
 			}
 		}
-		urls.removeAll(replaceURLs.keySet());
-		return urls;
+		return rootUrls;
 	}
 
 	
@@ -0,0 +1,448 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package tr.com.serkanozal.jcommon.util;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+import sun.misc.Unsafe;
+
+/**
+ * @author Serkan ÖZAL
+ * 
+ * Reusable accessor of a field created by {@link ReflectionUtil#getFieldAccessor(Class, String)}. 
+ * 
+ * Field is accessed by {@link Unsafe} with its offset, so there is no access check per call and 
+ * primitive values can be read and written by typed methods without boxing. 
+ * Volatile fields are accessed with volatile semantics. 
+ * If offset of field cannot be resolved (for example for fields of hidden classes), 
+ * field is accessed by reflection instead.
+ * 
+ * Since memory is accessed directly, type of object and type of value are checked on every call 
+ * and {@link IllegalArgumentException} is thrown if they don't match to field.
+ */
+@SuppressWarnings("restriction")
+public final class FieldAccessor {
+
+	private static final Unsafe unsafe = JvmUtil.getUnsafe();
+	private static final long INVALID_OFFSET = -1;
+	
+	private final Field field;
+	private final Class<?> declaringClass;
+	private final Class<?> type;
+	private final boolean isStatic;
+	private final boolean isVolatile;
+	private final boolean isStaticFinal;
+	// Base and offset of static fields are resolved at first access, since their class must be initialized
+	private Object staticBase;
+	private long offset;
+	private volatile boolean staticBaseResolved;
+	
+	FieldAccessor(Field field) {
+		field.setAccessible(true);
+		int modifiers = field.getModifiers();
+		this.field = field;
+		this.declaringClass = field.getDeclaringClass();
+		this.type = field.getType();
+		this.isStatic = Modifier.isStatic(modifiers);
+		this.isVolatile = Modifier.isVolatile(modifiers);
+		this.isStaticFinal = isStatic && Modifier.isFinal(modifiers);
+		long fieldOffset = INVALID_OFFSET;
+		if (!isStatic) {
+			try {
+				fieldOffset = unsafe.objectFieldOffset(field);
+			}
+			catch (UnsupportedOperationException e) {
+				fieldOffset = INVALID_OFFSET;
+			}
+		}
+		this.offset = fieldOffset;
+	}
+	
+	public Field getField() {
+		return field;
+	}
+	
+	public String getName() {
+		return field.getName();
+	}
+	
+	public Class<?> getType() {
+		return type;
+	}
+	
+	public boolean isStatic() {
+		return isStatic;
+	}
+	
+	/**
+	 * Gets value of field and boxes it if field is primitive. 
+	 * Given object is ignored for static fields.
+	 */
+	public Object get(Object obj) {
+		if (type.isPrimitive()) {
+			if (type == boolean.class) {
+				return getBoolean(obj);
+			}
+			else if (type == byte.class) {
+				return getByte(obj);
+			}
+			else if (type == char.class) {
+				return getChar(obj);
+			}
+			else if (type == short.class) {
+				return getShort(obj);
+			}
+			else if (type == int.class) {
+				return getInt(obj);
+			}
+			else if (type == float.class) {
+				return getFloat(obj);
+			}
+			else if (type == long.class) {
+				return getLong(obj);
+			}
+			else {
+				return getDouble(obj);
+			}
+		}
+		Object base = baseOf(obj);
+		if (offset == INVALID_OFFSET) {
+			return reflectiveGet(obj);
+		}
+		return isVolatile ? unsafe.getObjectVolatile(base, offset) : unsafe.getObject(base, offset);
+	}
+	
+	/**
+	 * Sets value of field and unboxes it if field is primitive. 
+	 * Given object is ignored for static fields.
+	 */
+	public void set(Object obj, Object value) {
+		if (type.isPrimitive()) {
+			if (value == null) {
+				throw new IllegalArgumentException("Primitive field " + this + " cannot be set to null");
+			}
+			if (type == boolean.class) {
+				setBoolean(obj, (Boolean) checkValue(Boolean.class, value));
+			}
+			else if (type == byte.class) {
+				setByte(obj, (Byte) checkValue(Byte.class, value));
+			}
+			else if (type == char.class) {
+				setChar(obj, (Character) checkValue(Character.class, value));
+			}
+			else if (type == short.class) {
+				setShort(obj, (Short) checkValue(Short.class, value));
+			}
+			else if (type == int.class) {
+				setInt(obj, (Integer) checkValue(Integer.class, value));
+			}
+			else if (type == float.class) {
+				setFloat(obj, (Float) checkValue(Float.class, value));
+			}
+			else if (type == long.class) {
+				setLong(obj, (Long) checkValue(Long.class, value));
+			}
+			else {
+				setDouble(obj, (Double) checkValue(Double.class, value));
+			}
+			return;
+		}
+		if (value != null) {
+			checkValue(type, value);
+		}
+		Object base = writableBaseOf(obj);
+		if (offset == INVALID_OFFSET) {
+			reflectiveSet(obj, value);
+		}
+		else if (isVolatile) {
+			unsafe.putObjectVolatile(base, offset, value);
+		}
+		else {
+			unsafe.putObject(base, offset, value);
+		}
+	}
+	
+	public boolean getBoolean(Object obj) {
+		Object base = readableBaseOf(obj, boolean.class);
+		if (offset == INVALID_OFFSET) {
+			return (Boolean) reflectiveGet(obj);
+		}
+		return isVolatile ? unsafe.getBooleanVolatile(base, offset) : unsafe.getBoolean(base, offset);
+	}
+	
+	public void setBoolean(Object obj, boolean value) {
+		Object base = writableBaseOf(obj, boolean.class);
+		if (offset == INVALID_OFFSET) {
+			reflectiveSet(obj, value);
+		}
+		else if (isVolatile) {
+			unsafe.putBooleanVolatile(base, offset, value);
+		}
+		else {
+			unsafe.putBoolean(base, offset, value);
+		}
+	}
+	
+	public byte getByte(Object obj) {
+		Object base = readableBaseOf(obj, byte.class);
+		if (offset == INVALID_OFFSET) {
+			return (Byte) reflectiveGet(obj);
+		}
+		return isVolatile ? unsafe.getByteVolatile(base, offset) : unsafe.getByte(base, offset);
+	}
+	
+	public void setByte(Object obj, byte value) {
+		Object base = writableBaseOf(obj, byte.class);
+		if (offset == INVALID_OFFSET) {
+			reflectiveSet(obj, value);
+		}
+		else if (isVolatile) {
+			unsafe.putByteVolatile(base, offset, value);
+		}
+		else {
+			unsafe.putByte(base, offset, value);
+		}
+	}
+	
+	public char getChar(Object obj) {
+		Object base = readableBaseOf(obj, char.class);
+		if (offset == INVALID_OFFSET) {
+			return (Character) reflectiveGet(obj);
+		}
+		return isVolatile ? unsafe.getCharVolatile(base, offset) : unsafe.getChar(base, offset);
+	}
+	
+	public void setChar(Object obj, char value) {
+		Object base = writableBaseOf(obj, char.class);
+		if (offset == INVALID_OFFSET) {
+			reflectiveSet(obj, value);
+		}
+		else if (isVolatile) {
+			unsafe.putCharVolatile(base, offset, value);
+		}
+		else {
+			unsafe.putChar(base, offset, value);
+		}
+	}
+	
+	public short getShort(Object obj) {
+		Object base = readableBaseOf(obj, short.class);
+		if (offset == INVALID_OFFSET) {
+			return (Short) reflectiveGet(obj);
+		}
+		return isVolatile ? unsafe.getShortVolatile(base, offset) : unsafe.getShort(base, offset);
+	}
+	
+	public void setShort(Object obj, short value) {
+		Object base = writableBaseOf(obj, short.class);
+		if (offset == INVALID_OFFSET) {
+			reflectiveSet(obj, value);
+		}
+		else if (isVolatile) {
+			unsafe.putShortVolatile(base, offset, value);
+		}
+		else {
+			unsafe.putShort(base, offset, value);
+		}
+	}
+	
+	public int getInt(Object obj) {
+		Object base = readableBaseOf(obj, int.class);
+		if (offset == INVALID_OFFSET) {
+			return (Integer) reflectiveGet(obj);
+		}
+		return isVolatile ? unsafe.getIntVolatile(base, offset) : unsafe.getInt(base, offset);
+	}
+	
+	public void setInt(Object obj, int value) {
+		Object base = writableBaseOf(obj, int.class);
+		if (offset == INVALID_OFFSET) {
+			reflectiveSet(obj, value);
+		}
+		else if (isVolatile) {
+			unsafe.putIntVolatile(base, offset, value);
+		}
+		else {
+			unsafe.putInt(base, offset, value);
+		}
+	}
+	
+	public float getFloat(Object obj) {
+		Object base = readableBaseOf(obj, float.class);
+		if (offset == INVALID_OFFSET) {
+			return (Float) reflectiveGet(obj);
+		}
+		return isVolatile ? unsafe.getFloatVolatile(base, offset) : unsafe.getFloat(base, offset);
+	}
+	
+	public void setFloat(Object obj, float value) {
+		Object base = writableBaseOf(obj, float.class);
+		if (offset == INVALID_OFFSET) {
+			reflectiveSet(obj, value);
+		}
+		else if (isVolatile) {
+			unsafe.putFloatVolatile(base, offset, value);
+		}
+		else {
+			unsafe.putFloat(base, offset, value);
+		}
+	}
+	
+	public long getLong(Object obj) {
+		Object base = readableBaseOf(obj, long.class);
+		if (offset == INVALID_OFFSET) {
+			return (Long) reflectiveGet(obj);
+		}
+		return isVolatile ? unsafe.getLongVolatile(base, offset) : unsafe.getLong(base, offset);
+	}
+	
+	public void setLong(Object obj, long value) {
+		Object base = writableBaseOf(obj, long.class);
+		if (offset == INVALID_OFFSET) {
+			reflectiveSet(obj, value);
+		}
+		else if (isVolatile) {
+			unsafe.putLongVolatile(base, offset, value);
+		}
+		else {
+			unsafe.putLong(base, offset, value);
+		}
+	}
+	
+	public double getDouble(Object obj) {
+		Object base = readableBaseOf(obj, double.class);
+		if (offset == INVALID_OFFSET) {
+			return (Double) reflectiveGet(obj);
+		}
+		return isVolatile ? unsafe.getDoubleVolatile(base, offset) : unsafe.getDouble(base, offset);
+	}
+	
+	public void setDouble(Object obj, double value) {
+		Object base = writableBaseOf(obj, double.class);
+		if (offset == INVALID_OFFSET) {
+			reflectiveSet(obj, value);
+		}
+		else if (isVolatile) {
+			unsafe.putDoubleVolatile(base, offset, value);
+		}
+		else {
+			unsafe.putDouble(base, offset, value);
+		}
+	}
+	
+	/**
+	 * Initializes declaring class and resolves base and offset of static field. 
+	 * If class cannot be found by its name (like hidden classes) or it cannot be initialized, 
+	 * field is accessed by reflection which initializes class or reports its initialization error.
+	 * Resolving more than once by concurrent threads is harmless since results are the same.
+	 */
+	private void resolveStaticBase() {
+		Object base = null;
+		long fieldOffset = INVALID_OFFSET;
+		try {
+			Class.forName(declaringClass.getName(), true, declaringClass.getClassLoader());
+			base = unsafe.staticFieldBase(field);
+			fieldOffset = unsafe.staticFieldOffset(field);
+		}
+		catch (ClassNotFoundException e) {
+			base = null;
+			fieldOffset = INVALID_OFFSET;
+		}
+		catch (LinkageError e) {
+			base = null;
+			fieldOffset = INVALID_OFFSET;
+		}
+		catch (UnsupportedOperationException e) {
+			base = null;
+			fieldOffset = INVALID_OFFSET;
+		}
+		staticBase = base;
+		offset = fieldOffset;
+		// Volatile write publishes base and offset to the threads which see it resolved
+		staticBaseResolved = true;
+	}
+	
+	private Object baseOf(Object obj) {
+		if (isStatic) {
+			if (!staticBaseResolved) {
+				resolveStaticBase();
+			}
+			return staticBase;
+		}
+		if (!declaringClass.isInstance(obj)) {
+			throw new IllegalArgumentException(
+					"Field " + this + " cannot be accessed on " + (obj == null ? "null" : obj.getClass().getName()));
+		}
+		return obj;
+	}
+	
+	private Object readableBaseOf(Object obj, Class<?> accessType) {
+		if (type != accessType) {
+			throw new IllegalArgumentException("Field " + this + " cannot be accessed as " + accessType.getName());
+		}
+		return baseOf(obj);
+	}
+	
+	private Object writableBaseOf(Object obj) {
+		if (isStaticFinal) {
+			// Values of static final fields may be inlined by compiler, so writes may not be seen
+			throw new IllegalArgumentException("Static final field " + this + " cannot be set");
+		}
+		return baseOf(obj);
+	}
+	
+	private Object writableBaseOf(Object obj, Class<?> accessType) {
+		if (type != accessType) {
+			throw new IllegalArgumentException("Field " + this + " cannot be accessed as " + accessType.getName());
+		}
+		return writableBaseOf(obj);
+	}
+	
+	private Object checkValue(Class<?> valueType, Object value) {
+		if (!valueType.isInstance(value)) {
+			throw new IllegalArgumentException(
+					"Field " + this + " cannot be set to value of type " + value.getClass().getName());
+		}
+		return value;
+	}
+	
+	private Object reflectiveGet(Object obj) {
+		try {
+			return field.get(obj);
+		} 
+		catch (IllegalAccessException e) {
+			throw new IllegalStateException("Unable to get field " + this, e);
+		}
+	}
+	
+	private void reflectiveSet(Object obj, Object value) {
+		try {
+			field.set(obj, value);
+		} 
+		catch (IllegalAccessException e) {
+			throw new IllegalStateException("Unable to set field " + this, e);
+		}
+	}
+	
+	@Override
+	public String toString() {
+		return declaringClass.getName() + "." + field.getName();
+	}
+	
+}
@@ -16,17 +16,29 @@
 
 package tr.com.serkanozal.jcommon.util;
 
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.io.Writer;
 import java.lang.management.ManagementFactory;
 import java.lang.management.RuntimeMXBean;
 import java.lang.reflect.AccessibleObject;
 import java.lang.reflect.Array;
 import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.nio.ByteOrder;
+import java.security.ProtectionDomain;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -38,7 +50,9 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -49,11 +63,8 @@ import javax.management.openmbean.CompositeDataSupport;
 
 import org.apache.log4j.Logger;
 
-import sun.management.VMManagement;
 import sun.misc.Unsafe;
 
-import com.google.common.collect.HashMultiset;
-import com.google.common.collect.Multiset;
 
 /**
  * 
@@ -72,6 +83,7 @@ public class JvmUtil {
 	
 	public static final String JAVA_1_6 = "1.6";
 	public static final String JAVA_1_7 = "1.7";
+	public static final String JAVA_1_8 = "1.8";
 	
 	public static final String JAVA_VERSION = System.getProperty("java.version");
 	public static final String JAVA_SPEC_VERSION = System.getProperty("java.specification.version");
@@ -84,6 +96,7 @@ public class JvmUtil {
 	public static final String OS_NAME = System.getProperty("os.name");
 	public static final String OS_VERSION = System.getProperty("os.version");
 	
+	public static final int JAVA_MAJOR_VERSION = findJavaMajorVersion();
 	public static final JavaVersionInfo JAVA_VERSION_INFO = findJavaVersionInfo();
 	  
 	public static final byte SIZE_32_BIT = 4;
@@ -128,35 +141,50 @@ public class JvmUtil {
     public static final int LONG_SIZE = Long.SIZE / BYTE;
     public static final int DOUBLE_SIZE = Double.SIZE / BYTE;
     
+    public static final String VM_OPTIONS_CACHE_ENABLED_PROPERTY = "jcommon.vmOptions.cache.enabled";
+    public static final String VM_OPTIONS_CACHE_DIR_PROPERTY = "jcommon.vmOptions.cache.dir";
+    
+    public static final long DEFAULT_HISTOGRAM_MAX_OBJECTS = 10000000;
+    public static final int DEFAULT_HISTOGRAM_MAX_CHILDREN = 100;
+    
+    // Cached options of older formats or detected by older probes are not used
+    private static final int VM_OPTIONS_CACHE_FORMAT_VERSION = 2;
+    private static final int DEFAULT_HOTSPOT_OBJECT_ALIGNMENT = 8;
+    private static final String OBJECT_ALIGNMENT_ARGUMENT = "-XX:ObjectAlignmentInBytes=";
+    
     private static final Logger logger = Logger.getLogger(JvmUtil.class);
     
-    private static VMOptions options;
     private static Unsafe unsafe;
-    private static Object[] objArray;
     private static int addressSize;
     private static int headerSize;
     private static int arrayHeaderSize;
     private static long baseOffset;
     private static int indexScale;
+    private static int arrayLengthOffset;
 	private static int classDefPointerOffsetInObject;
+	private static int classDefPointerSize;
     private static int classDefPointerOffsetInClass;
     private static int sizeFieldOffsetOffsetInClass;
+    private static boolean staticFieldsInClassMirror;
+    private static boolean classMetadataInHeap;
+    private static Method unsafeDefineClassMethod;
     
     private static JvmAwareUtil jvmAwareUtil;
+    private static volatile long optionsDetectionTime;
     
-    private static final Map<Class<?>, ClassInfo> classCache = new HashMap<Class<?>, ClassInfo>();
-    private static final Map<Class<?>, Map<String, Field>> classFieldCache = new HashMap<Class<?>, Map<String, Field>>();
-    private static final Map<Class<?>, Map<Field, Long>> classFieldOffsetCache = new HashMap<Class<?>, Map<Field, Long>>();
+    private static final ClassMetadataCache<ClassInfo> classInfoCache = 
+    		new ClassMetadataCache<ClassInfo>() {
+    			@Override
+    			protected ClassInfo computeValue(Class<?> clazz) {
+    				return createClassInfo(clazz);
+    			}
+    		};
     
     static {
     	init();
     }
 	
 	private static void init() {
-        if (isJavaVersionSupported() == false) {
-        	throw new AssertionError("Java version is not supported: " + JAVA_SPEC_VERSION); 
-        }
-		
 		try {
             Field unsafeField = Unsafe.class.getDeclaredField("theUnsafe");
             unsafeField.setAccessible(true);
@@ -169,8 +197,6 @@ public class JvmUtil {
         	throw new RuntimeException("Unable to get unsafe", e);
         }
 
-        objArray = new Object[1];
-        
         int headerSize;
         try {
             long off1 = unsafe.objectFieldOffset(HeaderClass.class.getField("b1"));
@@ -184,61 +210,118 @@ public class JvmUtil {
         JvmUtil.baseOffset = unsafe.arrayBaseOffset(Object[].class);
         JvmUtil.indexScale = unsafe.arrayIndexScale(Object[].class);
         JvmUtil.headerSize = headerSize;
-        JvmUtil.arrayHeaderSize = headerSize + indexScale;
-        JvmUtil.options = findOptions();
+        // Array length is placed just after the class pointer where the first field of an object would be placed
+        JvmUtil.arrayLengthOffset = headerSize;
+        JvmUtil.arrayHeaderSize = headerSize + INT_SIZE;
+        // VM options are detected lazily, compressed references are found by cheaper way for selecting implementation
+        boolean compressedRef = indexScale < addressSize;
+        
+        /*
+         * Object header is a mark word followed by class pointer. So class pointer is compressed
+         * if header is 12 bytes on 64-bit JVM and there is no class pointer (it is encoded in mark word)
+         * if header is just a mark word as compact object headers.
+         */
+        JvmUtil.classDefPointerOffsetInObject = addressSize;
+        JvmUtil.classDefPointerSize = headerSize - addressSize;
+        JvmUtil.staticFieldsInClassMirror = isStaticFieldBaseClassMirror();
+        JvmUtil.classMetadataInHeap = isClassMetadataInHeap();
+        // Layout of class metadata is only known for JVMs which hold them in permanent generation
+        JvmUtil.classDefPointerOffsetInClass = INVALID_ADDRESS;
+        JvmUtil.sizeFieldOffsetOffsetInClass = INVALID_ADDRESS;
 
         switch (addressSize) {
             case SIZE_32_BIT:
-            	JvmUtil.classDefPointerOffsetInObject = CLASS_DEF_POINTER_OFFSET_IN_OBJECT_FOR_32_BIT;
-            	if (isJava_1_6()) {
-            		JvmUtil.classDefPointerOffsetInClass = CLASS_DEF_POINTER_OFFSET_IN_CLASS_32_BIT_FOR_JAVA_1_6;
-            	}	
-            	else if (isJava_1_7()) {
-            		JvmUtil.classDefPointerOffsetInClass = CLASS_DEF_POINTER_OFFSET_IN_CLASS_32_BIT_FOR_JAVA_1_7;
+            	if (classMetadataInHeap) {
+	            	if (isJava_1_6()) {
+	            		JvmUtil.classDefPointerOffsetInClass = CLASS_DEF_POINTER_OFFSET_IN_CLASS_32_BIT_FOR_JAVA_1_6;
+	            	}	
+	            	else if (isJava_1_7()) {
+	            		JvmUtil.classDefPointerOffsetInClass = CLASS_DEF_POINTER_OFFSET_IN_CLASS_32_BIT_FOR_JAVA_1_7;
+	            	}
+	            	JvmUtil.sizeFieldOffsetOffsetInClass = SIZE_FIELD_OFFSET_IN_CLASS_32_BIT;
             	}
-            	JvmUtil.sizeFieldOffsetOffsetInClass = SIZE_FIELD_OFFSET_IN_CLASS_32_BIT;
             	jvmAwareUtil = new Address32BitJvmUtil();
                 break;
             case SIZE_64_BIT:
-            	JvmUtil.classDefPointerOffsetInObject = CLASS_DEF_POINTER_OFFSET_IN_OBJECT_FOR_64_BIT;
-            	if (isJava_1_6()) {
-            		if (options.compressedRef) {
-            			JvmUtil.classDefPointerOffsetInClass = 
-            					CLASS_DEF_POINTER_OFFSET_IN_CLASS_64_BIT_WITH_COMPRESSED_REF_FOR_JAVA_1_6;
-            			jvmAwareUtil = new Address64BitWithCompressedOopsJvmUtil();
-            		}
-            		else {
-            			JvmUtil.classDefPointerOffsetInClass = 
-            					CLASS_DEF_POINTER_OFFSET_IN_CLASS_64_BIT_WITHOUT_COMPRESSED_REF_FOR_JAVA_1_6;
-            			jvmAwareUtil = new Address64BitWithoutCompressedOopsJvmUtil();
-            		}
+            	if (classMetadataInHeap) {
+	            	if (isJava_1_6()) {
+	            		JvmUtil.classDefPointerOffsetInClass = compressedRef ?
+	            				CLASS_DEF_POINTER_OFFSET_IN_CLASS_64_BIT_WITH_COMPRESSED_REF_FOR_JAVA_1_6 :
+	            				CLASS_DEF_POINTER_OFFSET_IN_CLASS_64_BIT_WITHOUT_COMPRESSED_REF_FOR_JAVA_1_6;
+	            	}
+	            	else if (isJava_1_7()) {
+	            		JvmUtil.classDefPointerOffsetInClass = compressedRef ?
+	            				CLASS_DEF_POINTER_OFFSET_IN_CLASS_64_BIT_WITH_COMPRESSED_REF_FOR_JAVA_1_7 :
+	            				CLASS_DEF_POINTER_OFFSET_IN_CLASS_64_BIT_WITHOUT_COMPRESSED_REF_FOR_JAVA_1_7;
+	            	}
+	            	JvmUtil.sizeFieldOffsetOffsetInClass = SIZE_FIELD_OFFSET_IN_CLASS_64_BIT;
             	}
-            	else if (isJava_1_7()) {
-            		if (options.compressedRef) {
-            			JvmUtil.classDefPointerOffsetInClass = 
-            					CLASS_DEF_POINTER_OFFSET_IN_CLASS_64_BIT_WITH_COMPRESSED_REF_FOR_JAVA_1_7;
-            			jvmAwareUtil = new Address64BitWithCompressedOopsJvmUtil();
-            		}
-            		else {
-            			JvmUtil.classDefPointerOffsetInClass = 
-            					CLASS_DEF_POINTER_OFFSET_IN_CLASS_64_BIT_WITHOUT_COMPRESSED_REF_FOR_JAVA_1_7;
-            			jvmAwareUtil = new Address64BitWithoutCompressedOopsJvmUtil();
-            		}
+            	if (compressedRef) {
+            		jvmAwareUtil = new Address64BitWithCompressedOopsJvmUtil();
             	}
             	else {
-            		throw new AssertionError("Java version is not supported: " + JAVA_SPEC_VERSION); 
+            		jvmAwareUtil = new Address64BitWithoutCompressedOopsJvmUtil();
             	}
-            	JvmUtil.sizeFieldOffsetOffsetInClass = SIZE_FIELD_OFFSET_IN_CLASS_64_BIT;
                 break;
             default:
             	throw new AssertionError("Unsupported address size: " + addressSize); 
         }        
+        
+        try {
+        	JvmUtil.unsafeDefineClassMethod = 
+        			Unsafe.class.getMethod("defineClass", String.class, byte[].class, int.class, int.class, 
+        					ClassLoader.class, ProtectionDomain.class);
+        }
+        catch (NoSuchMethodException e) {
+        	// Unsafe cannot define classes since Java 11, so classes are defined by a class loader
+        	JvmUtil.unsafeDefineClassMethod = null;
+        }
     }
 	
+	/**
+	 * Static fields are held by class mirror (<code>java.lang.Class</code> instance) since Java 7, 
+	 * otherwise they are held by class metadata.
+	 */
+	private static boolean isStaticFieldBaseClassMirror() {
+		try {
+			return unsafe.staticFieldBase(StaticFieldClass.class.getDeclaredField("s")) == StaticFieldClass.class;
+		}
+		catch (NoSuchFieldException e) {
+			throw new RuntimeException("Unable to find static field base", e);
+		}
+	}
+	
+	/**
+	 * Class metadata is held in heap (permanent generation) until Java 8, 
+	 * since then it is held in native memory (metaspace) and class pointers are not heap references anymore. 
+	 * It is decided by Java version, since memory pool MBeans are too expensive to get while JvmUtil is initialized.
+	 */
+	private static boolean isClassMetadataInHeap() {
+		return JAVA_MAJOR_VERSION <= 7;
+	}
+	
 	public static Unsafe getUnsafe() {
 		return unsafe;
 	}
 	
+	/**
+	 * Gets major version of Java from specification version such as "1.7" or "17".
+	 */
+	private static int findJavaMajorVersion() {
+		String version = JAVA_SPEC_VERSION;
+		if (version.startsWith("1.")) {
+			version = version.substring(2);
+		}
+		int i = 0;
+		while (i < version.length() && Character.isDigit(version.charAt(i))) {
+			i++;
+		}
+		if (i == 0) {
+			throw new AssertionError("Java version is not supported: " + JAVA_SPEC_VERSION); 
+		}
+		return Integer.parseInt(version.substring(0, i));
+	}
+	
 	private static JavaVersionInfo findJavaVersionInfo() {
 		if (JAVA_SPEC_VERSION.equals(JAVA_1_6)) {
 			return JavaVersionInfo.JAVA_VERSION_1_6;
@@ -246,6 +329,12 @@ public class JvmUtil {
 		else if (JAVA_SPEC_VERSION.equals(JAVA_1_7)) {
 			return JavaVersionInfo.JAVA_VERSION_1_7;
 		}
+		else if (JAVA_SPEC_VERSION.equals(JAVA_1_8)) {
+			return JavaVersionInfo.JAVA_VERSION_1_8;
+		}
+		else if (JAVA_MAJOR_VERSION > 8) {
+			return JavaVersionInfo.JAVA_VERSION_9_OR_LATER;
+		}
 		else {
 			throw new AssertionError("Java version is not supported: " + JAVA_SPEC_VERSION); 
 		}
@@ -259,12 +348,36 @@ public class JvmUtil {
 		return JAVA_VERSION_INFO == JavaVersionInfo.JAVA_VERSION_1_7;
 	}
 	
+	public static boolean isJava_1_8() {
+		return JAVA_VERSION_INFO == JavaVersionInfo.JAVA_VERSION_1_8;
+	}
+	
+	public static boolean isJava_9_OrLater() {
+		return JAVA_VERSION_INFO == JavaVersionInfo.JAVA_VERSION_9_OR_LATER;
+	}
+	
+	/**
+	 * Layouts are detected by probes at runtime, so all Java versions since 1.6 are supported.
+	 */
 	public static boolean isJavaVersionSupported() {
-		return isJava_1_6() || isJava_1_7();
+		return JAVA_MAJOR_VERSION >= 6;
+	}
+	
+	private static VMOptions options() {
+		return VMOptionsHolder.OPTIONS;
+	}
+	
+	/**
+	 * Gets time spent for detecting VM options in nanoseconds. 
+	 * VM options are detected at first usage of them (such as sizing or addressing objects).
+	 */
+	public static long getOptionsDetectionTime() {
+		options();
+		return optionsDetectionTime;
 	}
 	
 	public static VMOptions getOptions() {
-		return options;
+		return options();
 	}
 	
 	public static int getAddressSize() {
@@ -299,28 +412,44 @@ public class JvmUtil {
 		return classDefPointerOffsetInObject;
 	}
 	
+	/**
+	 * Gets size of class pointer in object header. It is <code>0</code> if class pointer is not stored separately 
+	 * (such as compact object headers) and it is <code>4</code> if class pointers are compressed on 64-bit JVM.
+	 */
+	public static int getClassDefPointerSize() {
+		return classDefPointerSize;
+	}
+	
+	public static boolean isClassDefPointerCompressed() {
+		return classDefPointerSize > 0 && classDefPointerSize < addressSize;
+	}
+	
+	public static int getArrayLengthOffset() {
+		return arrayLengthOffset;
+	}
+	
 	public static int getSizeFieldOffsetOffsetInClass() {
 		return sizeFieldOffsetOffsetInClass;
 	}
 	
 	public static boolean isCompressedRef() {
-		return options.compressedRef;
+		return options().compressedRef;
 	}
 	
 	public static int getReferenceSize() {
-		return options.referenceSize;
+		return options().referenceSize;
 	}
 	
 	public static int getObjectAlignment() {
-		return options.objectAlignment;
+		return options().objectAlignment;
 	}
 	
 	public static int getCompressedReferenceShift() {
-		return options.compressRefShift;
+		return options().compressRefShift;
 	}
 	
 	public static String getVmName() {
-		return options.name;
+		return options().name;
 	}
 	
     public static long normalize(int value) {
@@ -339,8 +468,10 @@ public class JvmUtil {
     private interface JvmAwareUtil {
     	
     	long addressOf(Object obj);
+    	long addressOf(Object[] array, long offset);
     	long addressOfClass(Object o);
     	long jvmAddressOf(Object obj);
+    	long jvmAddressOf(Object[] array, long offset);
     	long jvmAddressOfClass(Object o);
     	long addressOfClassBase(Class<?> clazz);
     	long addressOfClassInternal(Class<?> clazz);
@@ -351,254 +482,234 @@ public class JvmUtil {
     }
     
     private static abstract class BaseJvmAwaretil implements JvmAwareUtil {
+    	
+    	// Every thread has its own slot to put an object and read its reference as address
+    	private final ThreadLocal<Object[]> objArrays = 
+    			new ThreadLocal<Object[]>() {
+    				@Override
+    				protected Object[] initialValue() {
+    					return new Object[1];
+    				}
+    			};
+    	
+    	@Override
+    	public long addressOf(Object obj) {
+    		if (obj == null) {
+    			return 0;
+    		}
+    		Object[] objArray = objArrays.get();
+    		objArray[0] = obj;
+    		try {
+    			return addressOf(objArray, baseOffset);
+    		}
+    		finally {
+    			// Slot must not keep the object reachable
+    			objArray[0] = null;
+    		}
+    	}
+    	
+    	@Override
+    	public long jvmAddressOf(Object obj) {
+    		if (obj == null) {
+    			return 0;
+    		}
+    		Object[] objArray = objArrays.get();
+    		objArray[0] = obj;
+    		try {
+    			return jvmAddressOf(objArray, baseOffset);
+    		}
+    		finally {
+    			objArray[0] = null;
+    		}
+    	}
+
+    	@Override
+    	public long jvmAddressOfClass(Object o) {
+    		switch (classDefPointerSize) {
+    			case SIZE_32_BIT:
+    				return normalize(unsafe.getInt(o, (long) classDefPointerOffsetInObject));
+    			case SIZE_64_BIT:
+    				return unsafe.getLong(o, (long) classDefPointerOffsetInObject);
+    			default:
+    				throw new UnsupportedOperationException(
+    						"Class pointers are not stored separately in object headers of this JVM");
+    		}
+    	}
+    	
+    	@Override
+    	public long addressOfClass(Object o) {
+    		long jvmAddressOfClass = jvmAddressOfClass(o);
+    		if (classDefPointerSize == addressSize) {
+    			return jvmAddressOfClass;
+    		}
+    		if (classMetadataInHeap) {
+    			// Compressed class pointers are compressed references while classes are in heap
+    			return JvmUtil.toNativeAddress(jvmAddressOfClass);
+    		}
+    		throw new UnsupportedOperationException(
+    				"Compressed class pointers to native class metadata cannot be decoded on this JVM");
+    	}
+    	
+    	@Override
+		public long addressOfClassBase(Class<?> clazz) {
+    		if (staticFieldsInClassMirror) {
+    			return addressOf(clazz);
+    		}
+    		return addressOfClassInternal(clazz);
+		}
+    	
+    	@Override
+		public long addressOfClassInternal(Class<?> clazz) {
+    		if (classDefPointerOffsetInClass == INVALID_ADDRESS) {
+    			throw new UnsupportedOperationException("Layout of class metadata is not known for this JVM");
+    		}
+			return classAddressAt(addressOf(clazz) + classDefPointerOffsetInClass);
+		}
+    	
+    	/**
+    	 * Reads class pointer in class mirror at given address.
+    	 */
+    	abstract long classAddressAt(long address);
 
     	@Override
 		public long sizeOfWithUnsafe(Object obj) {
 			if (obj == null) {
 				return 0;
 			}    
+			else if (sizeFieldOffsetOffsetInClass == INVALID_ADDRESS) {
+				// Size cannot be read from class metadata, so it is calculated by field offsets
+				return shallowSizeOf(obj);
+			}
 			else {
 				long classAddress = JvmUtil.addressOfClassBase(obj.getClass());
 				return unsafe.getInt(classAddress + sizeFieldOffsetOffsetInClass);
 			}
 		}
     	
-    }
-    
-    private static class Address32BitJvmUtil extends BaseJvmAwaretil {
-
-		@Override
-		public long addressOf(Object obj) {
-			if (obj == null) {
-	            return 0;
-	        }
-	        objArray[0] = obj;
-	        return unsafe.getInt(objArray, baseOffset);
-		}
-
-		@SuppressWarnings("deprecation")
-		@Override
-		public long addressOfClass(Object o) {
-			return normalize(unsafe.getInt(o, classDefPointerOffsetInObject));
-		}
-		
-		@Override
-		public long jvmAddressOf(Object obj) {
-			return addressOf(obj);
-		}
-
-		@Override
-		public long jvmAddressOfClass(Object o) {
-			return addressOfClass(o);
-		}
-
-		@Override
-		public long addressOfClassBase(Class<?> clazz) {
-			long addressOfClass = addressOf(clazz);
-	    	if (isJava_1_7()) {
-	    		return addressOfClass;
-	    	}
-	    	return normalize(unsafe.getInt(addressOfClass + classDefPointerOffsetInClass));
-		}
-
-		@Override
-		public long addressOfClassInternal(Class<?> clazz) {
-			long addressOfClass = addressOf(clazz);
-	    	return normalize(unsafe.getInt(addressOfClass + classDefPointerOffsetInClass));
-		}
-
-		@Override
-		public int getArrayLength(long arrayStartAddress, Class<?> elementType) {
-			long arrayIndexStartAddress = arrayStartAddress + JvmUtil.arrayBaseOffset(elementType);
-			return unsafe.getInt(arrayIndexStartAddress - JvmUtil.arrayLengthSize());
-		}
-
-		@Override
-		public void setArrayLength(long arrayStartAddress, Class<?> elementType, int length) {
-			long arrayIndexStartAddress = arrayStartAddress + JvmUtil.arrayBaseOffset(elementType);
-			unsafe.putInt(arrayIndexStartAddress - JvmUtil.arrayLengthSize(), length);
-		}
-
-    }
-    
-    private static abstract class Address64BitJvmUtil extends BaseJvmAwaretil {
-
     	@Override
     	public int getArrayLength(long arrayStartAddress, Class<?> elementType) {
-    		long arrayIndexStartAddress = arrayStartAddress + JvmUtil.arrayBaseOffset(elementType);
-    		return (int)unsafe.getLong(arrayIndexStartAddress - JvmUtil.arrayLengthSize());
+    		return unsafe.getInt(arrayStartAddress + arrayLengthOffset);
     	}
     	
     	@Override
-		public void setArrayLength(long arrayStartAddress, Class<?> elementType, int length) {
-			long arrayIndexStartAddress = arrayStartAddress + JvmUtil.arrayBaseOffset(elementType);
-			unsafe.putLong(arrayIndexStartAddress - JvmUtil.arrayLengthSize(), length);
-		}
-
+    	public void setArrayLength(long arrayStartAddress, Class<?> elementType, int length) {
+    		unsafe.putInt(arrayStartAddress + arrayLengthOffset, length);
+    	}
+    	
     }
     
-    private static class Address64BitWithCompressedOopsJvmUtil extends Address64BitJvmUtil {
-
-		@Override
-		public long addressOf(Object obj) {
-			if (obj == null) {
-	            return 0;
-	        }
-	        objArray[0] = obj;
-	        return JvmUtil.toNativeAddress(normalize(unsafe.getInt(objArray, baseOffset)));
-		}
-
-		@SuppressWarnings("deprecation")
-		@Override
-		public long addressOfClass(Object o) {
-			return JvmUtil.toNativeAddress(normalize(unsafe.getInt(o, classDefPointerOffsetInObject)));
-		}
-		
-		@Override
-		public long jvmAddressOf(Object obj) {
-			if (obj == null) {
-	            return 0;
-	        }
-	        objArray[0] = obj;
-	        return normalize(unsafe.getInt(objArray, baseOffset));
-		}
+    private static class Address32BitJvmUtil extends BaseJvmAwaretil {
 
-		@SuppressWarnings("deprecation")
 		@Override
-		public long jvmAddressOfClass(Object o) {
-			return normalize(unsafe.getInt(o, classDefPointerOffsetInObject));
+		public long addressOf(Object[] array, long offset) {
+	        return unsafe.getInt(array, offset);
 		}
 
 		@Override
-		public long addressOfClassBase(Class<?> clazz) {
-			long addressOfClass = addressOf(clazz);
-	    	if (isJava_1_7()) {
-	    		return addressOfClass;
-	    	}
-	    	return JvmUtil.toNativeAddress(normalize(unsafe.getInt(addressOfClass + classDefPointerOffsetInClass)));
+		public long jvmAddressOf(Object[] array, long offset) {
+			return addressOf(array, offset);
 		}
 
 		@Override
-		public long addressOfClassInternal(Class<?> clazz) {
-			long addressOfClass = addressOf(clazz);
-			return JvmUtil.toNativeAddress(normalize(unsafe.getInt(addressOfClass + classDefPointerOffsetInClass)));
+		long classAddressAt(long address) {
+			return normalize(unsafe.getInt(address));
 		}
 
     }
     
-    private static class Address64BitWithoutCompressedOopsJvmUtil extends Address64BitJvmUtil {
+    private static class Address64BitWithCompressedOopsJvmUtil extends BaseJvmAwaretil {
 
 		@Override
-		public long addressOf(Object obj) {
-			if (obj == null) {
-	            return 0;
-	        }
-	        objArray[0] = obj;
-	        return unsafe.getLong(objArray, baseOffset);
+		public long addressOf(Object[] array, long offset) {
+	        return JvmUtil.toNativeAddress(normalize(unsafe.getInt(array, offset)));
 		}
 
-		@SuppressWarnings("deprecation")
 		@Override
-		public long addressOfClass(Object o) {
-			return unsafe.getLong(o, classDefPointerOffsetInObject); 
+		public long jvmAddressOf(Object[] array, long offset) {
+	        return normalize(unsafe.getInt(array, offset));
 		}
-		
+
 		@Override
-		public long jvmAddressOf(Object obj) {
-			return addressOf(obj);
+		long classAddressAt(long address) {
+			return JvmUtil.toNativeAddress(normalize(unsafe.getInt(address)));
 		}
 
+    }
+    
+    private static class Address64BitWithoutCompressedOopsJvmUtil extends BaseJvmAwaretil {
+
 		@Override
-		public long jvmAddressOfClass(Object o) {
-			return addressOfClass(o);
+		public long addressOf(Object[] array, long offset) {
+	        return unsafe.getLong(array, offset);
 		}
 
 		@Override
-		public long addressOfClassBase(Class<?> clazz) {
-			long addressOfClass = addressOf(clazz);
-	    	if (isJava_1_7()) {
-	    		return addressOfClass;
-	    	}
-	    	return unsafe.getLong(addressOfClass + classDefPointerOffsetInClass); 
+		public long jvmAddressOf(Object[] array, long offset) {
+			return addressOf(array, offset);
 		}
 
 		@Override
-		public long addressOfClassInternal(Class<?> clazz) {
-			long addressOfClass = addressOf(clazz);
-			return unsafe.getLong(addressOfClass + classDefPointerOffsetInClass); 
+		long classAddressAt(long address) {
+			return unsafe.getLong(address);
 		}
 
     }
     
-    public synchronized static long addressOf(Object obj) {
+    public static long addressOf(Object obj) {
     	return jvmAwareUtil.addressOf(obj);
     }
     
-    public synchronized static long jvmAddressOf(Object obj) {
+    public static long jvmAddressOf(Object obj) {
     	return jvmAwareUtil.jvmAddressOf(obj);
     }
-  
-    public static Field getField(Class<?> clazz, String fieldName) {
-    	Map<String, Field> fieldMap = classFieldCache.get(clazz);
-    	if (fieldMap == null) {
-    		fieldMap = new HashMap<String, Field>();
-    		classFieldCache.put(clazz, fieldMap);
+    
+    /**
+     * Gets addresses of objects into given array (<code>0</code> for <code>null</code> objects). 
+     * References are read directly from the given array, so there is no per object setup.
+     * Objects may be moved by GC at any time, so addresses are only valid until the next GC like {@link #addressOf(Object)}.
+     */
+    public static void addressesOf(Object[] objs, long[] addresses) {
+    	if (addresses.length < objs.length) {
+    		throw new IllegalArgumentException(
+    				"Addresses array (length=" + addresses.length + ") is shorter than objects array (length=" + objs.length + ")");
     	}
-    	Field field = fieldMap.get(fieldName);
-    	if (field == null) {
-    		field = ReflectionUtil.getField(clazz, fieldName);
-    		fieldMap.put(fieldName, field);
+    	long offset = baseOffset;
+    	for (int i = 0; i < objs.length; i++, offset += indexScale) {
+    		addresses[i] = objs[i] != null ? jvmAwareUtil.addressOf(objs, offset) : 0;
     	}
-    	return field;
+    }
+  
+    public static Field getField(Class<?> clazz, String fieldName) {
+    	return ReflectionUtil.getField(clazz, fieldName);
     }
     
     public static long addressOfField(Object obj, String fieldName) {
     	Class<?> clazz = obj.getClass();
-    	Field field = getField(clazz, fieldName);
-    	if (field == null) {
+    	FieldOffset fieldOffset = getClassInfo(clazz).fieldOffsets.get(fieldName);
+    	if (fieldOffset == null) {
     		throw new IllegalArgumentException("Field " + fieldName + " couldn't be found at class " + clazz.getName());
     	}
-    	long baseAddress = 0; 
-        long fieldOffset = 0;
-        if (Modifier.isStatic(field.getModifiers())) {
-         	baseAddress = JvmUtil.addressOfClassBase(obj.getClass());
-         	fieldOffset = unsafe.staticFieldOffset(field);
+        if (fieldOffset.isStatic) {
+        	return JvmUtil.addressOfClassBase(clazz) + fieldOffset.offset;
         }
         else {
-         	baseAddress = addressOf(obj);
-         	fieldOffset = unsafe.objectFieldOffset(field);
+        	return addressOf(obj) + fieldOffset.offset;
         }
-        return baseAddress + fieldOffset; 
     }
     
-    @SuppressWarnings("unused")
-	private static long findInstanceFieldOffset(Class<?> clazz, Field field) {
-    	Map<Field, Long> fieldOffsetMap = classFieldOffsetCache.get(field);
-    	if (fieldOffsetMap == null) {
-    		fieldOffsetMap = new HashMap<Field, Long>();
-    		classFieldOffsetCache.put(clazz, fieldOffsetMap);
-    	}
-    	Long fieldOffset = fieldOffsetMap.get(field);
-    	if (fieldOffset == null) {
-    		fieldOffset = JvmUtil.getUnsafe().objectFieldOffset(field);
-    		fieldOffsetMap.put(field, fieldOffset);
+    /**
+     * Computes and caches layouts of given classes, so they are not computed while they are used at first.
+     */
+    public static void warmUpClassInfos(Class<?>... classes) {
+    	for (Class<?> clazz : classes) {
+    		getClassInfo(clazz);
     	}
-    	return fieldOffset;
     }
     
-    @SuppressWarnings("unused")
-	private static long findClassFieldOffset(Class<?> clazz, Field field) {
-    	Map<Field, Long> fieldOffsetMap = classFieldOffsetCache.get(field);
-    	if (fieldOffsetMap == null) {
-    		fieldOffsetMap = new HashMap<Field, Long>();
-    		classFieldOffsetCache.put(clazz, fieldOffsetMap);
-    	}
-    	Long fieldOffset = fieldOffsetMap.get(field);
-    	if (fieldOffset == null) {
-    		fieldOffset = JvmUtil.getUnsafe().staticFieldOffset(field);
-    		fieldOffsetMap.put(field, fieldOffset);
+    public static void warmUpClassInfos(Iterable<Class<?>> classes) {
+    	for (Class<?> clazz : classes) {
+    		getClassInfo(clazz);
     	}
-    	return fieldOffset;
     }
     
 	public static long addressOfClass(Object o) {
@@ -610,7 +721,11 @@ public class JvmUtil {
     }
     
     public static long addressOfClass(Class<?> clazz) {
-    	return getClassInfo(clazz).classAddress;
+    	ClassInfo classInfo = getClassInfo(clazz);
+    	if (classInfo.classAddress == INVALID_ADDRESS) {
+    		classInfo.classAddress = addressOfClassInternal(clazz);
+    	}
+    	return classInfo.classAddress;
     }
     
     private static long addressOfClassBase(Class<?> clazz) {
@@ -622,101 +737,26 @@ public class JvmUtil {
     }
     
     public static boolean isPrimitiveType(Class<?> type) {
-    	if (type == boolean.class) { 
-        	return true; 
-        }
-    	else if (type == byte.class) { 
-        	return true; 
-        }
-    	else if (type == char.class) { 
-        	return true;
-        }
-        else if (type == short.class) { 
-        	return true;
-        }
-        else if (type == int.class) { 
-        	return true;
-        }
-        else if (type == float.class) { 
-        	return true;
-        }
-        else if (type == long.class) { 
-        	return true;
-        }
-        else if (type == double.class) { 
-        	return true;
-        }
-        else {
-        	return false;
-        }	
+    	return TypeDescriptor.of(type).is(TypeDescriptor.PRIMITIVE);
     }
     
     public static boolean isComplexType(Class<?> type) {
     	return !isPrimitiveType(type);
     }
     
+    /**
+     * Gets primitive type of given primitive or wrapper type, otherwise returns <code>null</code>.
+     */
     public static Class<?> primitiveTypeOf(Class<?> type) {
-    	if (isPrimitiveType(type)) {
-    		return type;
-    	}
-    	
-    	if (type == Boolean.class) { 
-        	return boolean.class; 
-        }
-    	else if (type == Byte.class) { 
-        	return byte.class; 
-        }
-    	else if (type == Character.class) { 
-        	return char.class;
-        }
-        else if (type == Short.class) { 
-        	return short.class;
-        }
-        else if (type == Integer.class) { 
-        	return int.class;
-        }
-        else if (type == Float.class) { 
-        	return float.class;
-        }
-        else if (type == Long.class) { 
-        	return long.class;
-        }
-        else if (type == Double.class) { 
-        	return double.class;
-        }
-        else {
-        	return null;
-        }	
+    	return TypeDescriptor.of(type).primitiveType;
     }
     
+    /**
+     * Gets wrapper type of given primitive type, otherwise returns given type.
+     */
     public static Class<?> complexTypeOf(Class<?> type) {
-    	if (type == boolean.class) { 
-        	return Boolean.class; 
-        }
-    	else if (type == byte.class) { 
-        	return Byte.class; 
-        }
-    	else if (type == char.class) { 
-        	return Character.class;
-        }
-        else if (type == short.class) { 
-        	return Short.class;
-        }
-        else if (type == int.class) { 
-        	return Integer.class;
-        }
-        else if (type == float.class) { 
-        	return Float.class;
-        }
-        else if (type == long.class) { 
-        	return Long.class;
-        }
-        else if (type == double.class) { 
-        	return Double.class;
-        }
-        else {
-        	return type;
-        }	
+    	TypeDescriptor descriptor = TypeDescriptor.of(type);
+    	return descriptor.is(TypeDescriptor.PRIMITIVE) ? descriptor.wrapperType : type;
     }
 
     public static long sizeOfWithUnsafe(Object obj) {
@@ -728,7 +768,7 @@ public class JvmUtil {
     	
         do {
             if (objClass == Object.class) {
-            	return JvmUtil.MIN_SIZE;
+            	return alignObjectSize(headerSize);
             }
             for (Field f : objClass.getDeclaredFields()) {
                 if ((f.getModifiers() & Modifier.STATIC) == 0) {
@@ -750,33 +790,8 @@ public class JvmUtil {
     }
     
     public static int sizeOfType(Class<?> type) {
-    	if (type == boolean.class) { 
-        	return BOOLEAN_SIZE; 
-        }
-    	else if (type == byte.class) { 
-        	return BYTE_SIZE; 
-        }
-    	else if (type == char.class) { 
-        	return CHAR_SIZE;
-        }
-        else if (type == short.class) { 
-        	return SHORT_SIZE;
-        }
-        else if (type == int.class) { 
-        	return INT_SIZE;
-        }
-        else if (type == float.class) { 
-        	return FLOAT_SIZE;
-        }
-        else if (type == long.class) { 
-        	return LONG_SIZE;
-        }
-        else if (type == double.class) { 
-        	return DOUBLE_SIZE;
-        }
-        else {
-        	return options.referenceSize;
-        }	
+    	TypeDescriptor descriptor = TypeDescriptor.of(type);
+    	return descriptor.is(TypeDescriptor.PRIMITIVE) ? descriptor.size : options().referenceSize;
     }
     
 	public static int sizeOfArray(Object o) {
@@ -825,7 +840,7 @@ public class JvmUtil {
     }
 	
 	public static int arrayLengthSize() {
-		return options.referenceSize;
+		return INT_SIZE;
 	}
 	
 	public static long getArrayBaseAddress(Object array, Class<?> elementType) {
@@ -846,11 +861,11 @@ public class JvmUtil {
 	}
     
     public static long toNativeAddress(long address) {
-    	return options.toNativeAddress(address);
+    	return options().toNativeAddress(address);
     }
     
     public static long toJvmAddress(long address) {
-    	return options.toJvmAddress(address);
+    	return options().toJvmAddress(address);
     }
     
     public static void dump(long address, long size) {
@@ -883,6 +898,11 @@ public class JvmUtil {
     	System.out.println();
     }
     
+    /**
+     * Builds whole tree of object graph in memory and prints it with deep sizes. 
+     * It is only suitable for small graphs, 
+     * {@link #dump(Writer, Object, DumpOptions)} should be used for large ones.
+     */
     public static void dump(PrintWriter pw, Object root) {
 		Node nodeTree = Node.create(root);
 	    printTree(new StringBuilder(), new StringBuilder(), pw, nodeTree);
@@ -896,6 +916,24 @@ public class JvmUtil {
 	    return sw.toString();
 	}
 	  
+	/**
+	 * Writes tree of object graph while traversing it, so memory usage doesn't depend on size of output. 
+	 * Tree is limited by given options and a summary of total object count 
+	 * and top objects by retained size is written after tree. Writer is flushed but not closed.
+	 */
+	public static void dump(Writer writer, Object root, DumpOptions options) throws IOException {
+		new ObjectGraphDumper(writer, options).dump(root);
+	}
+	
+	/**
+	 * Writes tree of object graph to stream as UTF-8 text. Stream is flushed but not closed.
+	 * 
+	 * @see #dump(Writer, Object, DumpOptions)
+	 */
+	public static void dump(OutputStream out, Object root, DumpOptions options) throws IOException {
+		dump(new BufferedWriter(new OutputStreamWriter(out, "UTF-8")), root, options);
+	}
+	  
 	private static void printTree(StringBuilder prefix, StringBuilder line, PrintWriter pw, Node node) {
 	    line.append(node.getName());
 	    pw.println(String.format("%,8d %,8d  %s", node.deepSize, node.shallowSize, line.toString()));
@@ -973,34 +1011,89 @@ public class JvmUtil {
 	}
 	
 	public static long alignObjectSize(long size) {
-		size += (long) options.getObjectAlignment() - 1L;
-	    return size - (size % options.getObjectAlignment());
+		size += (long) options().getObjectAlignment() - 1L;
+	    return size - (size % options().getObjectAlignment());
 	}
 
 	public static long sizeOf(Object obj) {
-	    ArrayList<Object> stack = new ArrayList<Object>();
-	    stack.add(obj);
-	    return measureSizeOf(stack);
+	    return ObjectGraphSizer.sizeOf(new Object[] { obj });
+	}
+	
+	/**
+	 * Measures size of object graph by given count of threads. 
+	 * Useful for very large graphs, since threads are created for every call.
+	 */
+	public static long sizeOf(Object obj, int parallelism) {
+	    return ObjectGraphSizer.sizeOf(new Object[] { obj }, parallelism);
+	}
+
+	/**
+	 * Estimates size of a huge collection, map or array by measuring a sample of its elements. 
+	 * Other objects are measured exactly.
+	 * 
+	 * @param obj				collection, map or array to be estimated
+	 * @param sampleRatio		ratio of elements to be measured in (0, 1]. 
+	 * 							At least 32 elements are measured if there are.
+	 * @param timeBudgetMillis	maximum time to be spent for measuring, no limit if it is not positive. 
+	 * 							If it is exceeded, estimation is done by the elements measured so far.
+	 */
+	public static SizeEstimate estimateSizeOf(Object obj, double sampleRatio, long timeBudgetMillis) {
+		return ObjectSizeEstimator.estimate(obj, sampleRatio, timeBudgetMillis);
+	}
+	
+	public static SizeEstimate estimateSizeOf(Object obj, double sampleRatio) {
+		return ObjectSizeEstimator.estimate(obj, sampleRatio, 0);
+	}
+
+	/**
+	 * Builds class histogram of object graph with default limits.
+	 * 
+	 * @see #histogramOf(Object, long, int)
+	 */
+	public static ClassHistogram histogramOf(Object root) {
+		return histogramOf(root, DEFAULT_HISTOGRAM_MAX_OBJECTS, DEFAULT_HISTOGRAM_MAX_CHILDREN);
+	}
+	
+	/**
+	 * Builds histogram of instance counts and shallow sizes per class of objects reachable from root, 
+	 * and retained sizes of immediate children of root. 
+	 * Memory used for traversal is bounded by the limits, so it can be used on live systems.
+	 * 
+	 * @param root			root of object graph
+	 * @param maxObjects	traversal is stopped after this count of objects and histogram is marked as incomplete
+	 * @param maxChildren	count of immediate children of root with the largest retained sizes to be kept
+	 */
+	public static ClassHistogram histogramOf(Object root, long maxObjects, int maxChildren) {
+		if (root == null) {
+			throw new IllegalArgumentException("Root object cannot be null");
+		}
+		if (maxObjects <= 0) {
+			throw new IllegalArgumentException("Max objects must be positive: " + maxObjects);
+		}
+		if (maxChildren < 0) {
+			throw new IllegalArgumentException("Max children cannot be negative: " + maxChildren);
+		}
+		return ObjectGraphSizer.histogramOf(root, maxObjects, maxChildren);
 	}
 
 	public static long sizeOfAll(Object... objects) {
-	    return sizeOfAll(Arrays.asList(objects));
+	    return ObjectGraphSizer.sizeOf(objects);
 	}
 
 	public static long sizeOfAll(Iterable<Object> objects) {
-	    final ArrayList<Object> stack;
+	    final ArrayList<Object> roots;
 	    if (objects instanceof Collection<?>) {
-	    	stack = new ArrayList<Object>(((Collection<?>) objects).size());
+	    	roots = new ArrayList<Object>(((Collection<?>) objects).size());
 	    } 
 	    else {
-	    	stack = new ArrayList<Object>();
+	    	roots = new ArrayList<Object>();
 	    }
 
 	    for (Object o : objects) {
-	    	stack.add(o);
+	    	roots.add(o);
 	    }
 
-	    return measureSizeOf(stack);
+	    return ObjectGraphSizer.sizeOf(roots.toArray());
 	}
 
 	public static long shallowSizeOf(Object obj) {
@@ -1053,108 +1146,37 @@ public class JvmUtil {
 	}
 	
 	private static long shallowSizeOfArray(Object array) {
-		long size = arrayHeaderSize;
+		// Base offset depends on element type, since elements may be aligned to their sizes after length
+		Class<?> arrayClass = array.getClass();
+		long size = unsafe.arrayBaseOffset(arrayClass);
 	    final int len = Array.getLength(array);
 	    if (len > 0) {
-	    	Class<?> arrayElementClazz = array.getClass().getComponentType();
-	    	if (arrayElementClazz.isPrimitive()) {
-	    		size += (long) len * sizeOfType(arrayElementClazz);
-	    	} 
-	    	else {
-	    		size += (long) options.referenceSize * len;
-	    	}
+	    	size += (long) len * unsafe.arrayIndexScale(arrayClass);
 	    }
 	    return alignObjectSize(size);
 	}
 
-	private static long measureSizeOf(ArrayList<Object> stack) {
-	    final IdentityHashMap<Long, Object> seen = new IdentityHashMap<Long, Object>();
-	    final IdentityHashMap<Class<?>, ClassInfo> classCache = new IdentityHashMap<Class<?>, ClassInfo>();
-
-	    long totalSize = 0;
-	    while (!stack.isEmpty()) {
-	    	final Object obj = stack.remove(stack.size() - 1);
-	    	long id = System.identityHashCode(obj);
-	    	if (obj == null || seen.containsKey(id)) {
-	    		continue;
-	    	}
-	    	seen.put(id, obj);
-
-	    	final Class<?> obClazz = obj.getClass();
-	    	if (obClazz.isArray()) {
-	    		/*
-	    		 * Consider an array, possibly of primitive types. Push any of its references to
-	    		 * the processing stack and accumulate this array's shallow size. 
-	    		 */
-	    		long size = arrayHeaderSize;
-	    		final int len = Array.getLength(obj);
-	    		if (len > 0) {
-	    			Class<?> componentClazz = obClazz.getComponentType();
-	    			if (componentClazz.isPrimitive()) {
-	    				size += (long) len * sizeOfType(componentClazz);
-	    			} 
-	    			else {
-	    				size += (long) options.referenceSize * len;
-
-	    				for (int i = len; --i >= 0 ;) {
-	    					final Object o = Array.get(obj, i);
-	    					if (o != null && !seen.containsKey(id)) {
-	    						stack.add(o);
-	    					}
-	    				}            
-	    			}
-	    		}
-	    		totalSize += alignObjectSize(size);
-	    	} 
-	    	else {
-	    		/*
-	    		 * Consider an object. Push any references it has to the processing stack
-	    		 * and accumulate this object's shallow size. 
-	    		 */
-	    		try {
-	    			ClassInfo cachedInfo = classCache.get(obClazz);
-	    			if (cachedInfo == null) {
-	    				classCache.put(obClazz, cachedInfo = createClassInfo(obClazz));
-	    			}
-
-	    			for (Field f : cachedInfo.referenceFields) {
-	    				// Fast path to eliminate redundancies.
-	    				final Object o = f.get(obj);
-	    				if (o != null && !seen.containsKey(id)) {
-	    					stack.add(o);
-	    				}
-	    			}
-
-	    			totalSize += cachedInfo.alignedShallowInstanceSize;
-	    		} 
-	    		catch (IllegalAccessException e) {
-	    			// This should never happen as we enabled setAccessible().
-	    			throw new RuntimeException("Reflective field access failed?", e);
-	    		}
-	    	}
-	    }
-
-	    // Help the GC.
-	    seen.clear();
-	    stack.clear();
-	    classCache.clear();
-
-	    return totalSize;
-	}
-	
 	private static ClassInfo createClassInfo(final Class<?> clazz) {
-	    ClassInfo cachedInfo;
 	    long shallowInstanceSize = headerSize;
-	    final ArrayList<Field> referenceFields = new ArrayList<Field>(32);
+	    final ArrayList<Long> referenceFieldOffsets = new ArrayList<Long>(32);
+	    final ArrayList<Long> primitiveFieldOffsets = new ArrayList<Long>(32);
+	    final Map<String, FieldOffset> fieldOffsets = new HashMap<String, FieldOffset>();
 	    for (Class<?> c = clazz; c != null; c = c.getSuperclass()) {
 	    	final Field[] fields = c.getDeclaredFields();
 	    	for (final Field f : fields) {
-	    		if (!Modifier.isStatic(f.getModifiers())) {
+	    		boolean isStatic = Modifier.isStatic(f.getModifiers());
+	    		long offset = isStatic ? unsafe.staticFieldOffset(f) : unsafe.objectFieldOffset(f);
+	    		// Fields of sub classes hide the fields of super classes with the same name
+	    		if (!fieldOffsets.containsKey(f.getName())) {
+	    			fieldOffsets.put(f.getName(), new FieldOffset(offset, isStatic));
+	    		}
+	    		if (!isStatic) {
 	    			shallowInstanceSize = adjustForField(shallowInstanceSize, f);
-
-	    			if (!f.getType().isPrimitive()) {
-	    				f.setAccessible(true);
-	    				referenceFields.add(f);
+	    			if (f.getType().isPrimitive()) {
+	    				primitiveFieldOffsets.add(offset);
+	    			}
+	    			else {
+	    				referenceFieldOffsets.add(offset);
 	    			}
 	    		}
 	    	}
@@ -1164,25 +1186,24 @@ public class JvmUtil {
 	    Object array = Array.newInstance(clazz, 0);
         int arrayBaseOffset = unsafe.arrayBaseOffset(array.getClass());
         int arrayIndexScale = unsafe.arrayIndexScale(array.getClass());	
-        long classAddress = addressOfClassInternal(clazz);
-	    cachedInfo = 
-	    	new ClassInfo(	alignObjectSize(shallowInstanceSize), 
-	    					referenceFields.toArray(new Field[referenceFields.size()]),
-	    					size, arrayBaseOffset, arrayIndexScale, classAddress);
-	    return cachedInfo;
+        return new ClassInfo(	alignObjectSize(shallowInstanceSize), 
+        						toLongArray(referenceFieldOffsets), toLongArray(primitiveFieldOffsets), 
+        						fieldOffsets, size, arrayBaseOffset, arrayIndexScale);
 	}
 	
-	private static ClassInfo getClassInfo(final Class<?> clazz) {
-		ClassInfo cacheEntry = classCache.get(clazz);
-		if (cacheEntry == null) {
-			cacheEntry = createClassInfo(clazz);
-			classCache.put(clazz, cacheEntry);
+	private static long[] toLongArray(List<Long> list) {
+		long[] array = new long[list.size()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = list.get(i);
 		}
-	    return cacheEntry;
+		return array;
+	}
+	
+	static ClassInfo getClassInfo(final Class<?> clazz) {
+		return classInfoCache.get(clazz);
 	}
 
 	private static long adjustForField(long sizeSoFar, final Field f) {
-		f.setAccessible(true);
 	    final Class<?> type = f.getType();
 	    final int fsize = sizeOfType(type);
 	    long offsetPlusSize = 0;
@@ -1207,7 +1228,19 @@ public class JvmUtil {
 	}
 
 	public static Class<?> defineClass(byte[] classContents) {
-		return unsafe.defineClass(null, classContents, 0, classContents.length);
+		if (unsafeDefineClassMethod == null) {
+			return new ClassDefiner(JvmUtil.class.getClassLoader()).defineClass(classContents);
+		}
+		try {
+			return (Class<?>) unsafeDefineClassMethod.invoke(unsafe, null, classContents, 0, classContents.length, null, null);
+		}
+		catch (InvocationTargetException e) {
+			throwException(e.getCause());
+			return null;
+		} 
+		catch (IllegalAccessException e) {
+			throw new IllegalStateException("Unable to define class", e);
+		}
 	}
 	
 	public static void throwException(Throwable t) {
@@ -1227,7 +1260,7 @@ public class JvmUtil {
         Field jvmField = mxbean.getClass().getDeclaredField("jvm");
 
         jvmField.setAccessible(true);
-        VMManagement management = (VMManagement) jvmField.get(mxbean);
+        Object management = jvmField.get(mxbean);
         Method method = management.getClass().getDeclaredMethod("getProcessId");
         method.setAccessible(true);
         Integer processId = (Integer) method.invoke(management);
@@ -1254,14 +1287,48 @@ public class JvmUtil {
         System.out.println("OS Version                 : " + OS_VERSION);
         System.out.println("Word Size                  : " + WORD + " byte");
         
-        System.out.println("Running " + (addressSize * BYTE) + "-bit " + options.name + " VM.");
-        if (options.compressedRef) {
-        	System.out.println("Using compressed references with " + options.compressRefShift + "-bit shift.");
+        System.out.println("Running " + (addressSize * BYTE) + "-bit " + options().name + " VM.");
+        if (options().compressedRef) {
+        	System.out.println("Using compressed references with " + options().compressRefShift + "-bit shift.");
         }
-        System.out.println("Objects are " + options.objectAlignment + " bytes aligned.");
+        System.out.println("Objects are " + options().objectAlignment + " bytes aligned.");
         System.out.println();
     }
 
+    /**
+     * Holds VM options, so they are detected at first usage instead of while JvmUtil is initialized.
+     */
+    private static class VMOptionsHolder {
+    	
+    	static final VMOptions OPTIONS = detectOptions();
+    	
+    }
+    
+    private static VMOptions detectOptions() {
+    	long startTime = System.nanoTime();
+    	// Cache key needs JVM arguments, so cache is not cheaper than probes and it is only used for slower ways
+    	VMOptions vmOptions = probeHotspotSpecifics();
+    	if (vmOptions == null) {
+    		String cacheKey = optionsCacheKey();
+    		File cacheFile = optionsCacheFile(cacheKey);
+    		vmOptions = loadOptions(cacheFile, cacheKey);
+    		if (vmOptions == null) {
+    			vmOptions = findOptions();
+    			storeOptions(cacheFile, cacheKey, vmOptions);
+    		}
+    	}
+    	optionsDetectionTime = System.nanoTime() - startTime;
+    	if (logger.isInfoEnabled()) {
+    		logger.info("VM options (" + vmOptions + ") have been detected in " + 
+    					TimeUnit.NANOSECONDS.toMillis(optionsDetectionTime) + " milliseconds");
+    	}
+    	return vmOptions;
+    }
+    
+    /**
+     * Detects VM options when they cannot be probed cheaply. 
+     * VM specific MBeans are tried at first and then the addresses of allocated objects.
+     */
     private static VMOptions findOptions() {
         // Try Hotspot
         VMOptions hsOpts = getHotspotSpecifics();
@@ -1305,6 +1372,229 @@ public class JvmUtil {
         }
     }
     
+    /**
+     * Detects HotSpot options without MBean server and without allocating objects. 
+     * Reference size is the index scale of object arrays and object alignment is 
+     * given by "-XX:ObjectAlignmentInBytes" argument or it is the default alignment of HotSpot.
+     */
+    private static VMOptions probeHotspotSpecifics() {
+        String name = System.getProperty("java.vm.name");
+        if (!name.contains("HotSpot") && !name.contains("OpenJDK")) {
+            return null;
+        }
+        List<String> arguments = inputArguments();
+        if (arguments == null) {
+        	return null;
+        }
+        int align = DEFAULT_HOTSPOT_OBJECT_ALIGNMENT;
+        for (String argument : arguments) {
+        	if (argument.startsWith(OBJECT_ALIGNMENT_ARGUMENT)) {
+        		try {
+        			align = Integer.parseInt(argument.substring(OBJECT_ALIGNMENT_ARGUMENT.length()).trim());
+        		}
+        		catch (NumberFormatException e) {
+        			return null;
+        		}
+        	}
+        }
+        int referenceSize = unsafe.arrayIndexScale(Object[].class);
+        if (referenceSize < unsafe.addressSize()) {
+        	return new VMOptions("HotSpot", referenceSize, align, true, probeCompressedRefShift(align));
+        }
+        else {
+        	return new VMOptions("HotSpot", referenceSize, align, false, 0);
+        }
+    }
+    
+    /**
+     * Compressed references are not shifted if heap fits into the first 4 GB of address space, 
+     * so they are the real addresses which are multiple of object alignment. 
+     * Otherwise shifted references of adjacent small objects are not multiple of alignment.
+     */
+    private static int probeCompressedRefShift(int align) {
+    	final int COUNT = 64;
+    	Object[] objs = new Object[COUNT];
+    	for (int i = 0; i < COUNT; i++) {
+    		objs[i] = (i & 1) == 0 ? new MyObject1() : new MyObject3();
+    	}
+    	long bits = 0;
+    	for (int i = 0; i < COUNT; i++) {
+    		bits |= normalize(unsafe.getInt(objs, baseOffset + (long) i * indexScale));
+    	}
+    	return (bits & (align - 1)) == 0 ? 0 : log2p(align);
+    }
+    
+    private static List<String> inputArguments() {
+    	try {
+    		return ManagementFactory.getRuntimeMXBean().getInputArguments();
+    	}
+    	catch (Throwable t) {
+    		logger.debug("Unable to get input arguments of JVM", t);
+    		return null;
+    	}
+    }
+    
+    /**
+     * Key of VM options in cache file. Options depend on VM, architecture, JVM arguments and maximum heap size.
+     */
+    private static String optionsCacheKey() {
+    	StringBuilder key = new StringBuilder();
+    	key.append(VM_OPTIONS_CACHE_FORMAT_VERSION).append('|').append(JVM_NAME).append('|').append(JVM_VENDOR).append('|').append(JVM_VERSION).append('|').
+    		append(JAVA_RUNTIME_VERSION).append('|').append(OS_ARCH).append('|').append(NR_BITS).append('|').
+    		append(Runtime.getRuntime().maxMemory());
+    	List<String> arguments = inputArguments();
+    	if (arguments != null) {
+    		for (String argument : arguments) {
+    			key.append('|').append(argument);
+    		}
+    	}
+    	return key.toString();
+    }
+    
+    /**
+     * Cache is disabled by default. Cache file is placed in a directory of the user by default, 
+     * not in a shared temporary directory, since cached options are used for accessing memory.
+     */
+    private static File optionsCacheFile(String cacheKey) {
+    	if (!Boolean.parseBoolean(System.getProperty(VM_OPTIONS_CACHE_ENABLED_PROPERTY, "false"))) {
+    		return null;
+    	}
+    	String cacheDir = System.getProperty(VM_OPTIONS_CACHE_DIR_PROPERTY);
+    	if (cacheDir == null) {
+    		cacheDir = System.getProperty("user.home") + File.separator + ".jcommon";
+    	}
+    	return new File(cacheDir, "vm-options-" + Integer.toHexString(cacheKey.hashCode()) + ".properties");
+    }
+    
+    /**
+     * Loads cached options, but they are used only if they are consistent with the cheap probes 
+     * since cache file may be modified by someone else.
+     */
+    static VMOptions loadOptions(File cacheFile, String cacheKey) {
+    	if (cacheFile == null || !cacheFile.isFile()) {
+    		return null;
+    	}
+    	Properties properties = new Properties();
+    	InputStream in = null;
+    	try {
+    		in = new FileInputStream(cacheFile);
+    		properties.load(in);
+    		// Hash codes of different keys may be the same, so the whole key is checked
+    		if (!cacheKey.equals(properties.getProperty("key"))) {
+    			return null;
+    		}
+    		VMOptions vmOptions = 
+    				new VMOptions(	properties.getProperty("name"), 
+    								Integer.parseInt(properties.getProperty("referenceSize")), 
+    								Integer.parseInt(properties.getProperty("objectAlignment")), 
+    								Boolean.parseBoolean(properties.getProperty("compressedRef")), 
+    								Integer.parseInt(properties.getProperty("compressRefShift")));
+    		if (!isConsistent(vmOptions)) {
+    			logger.warn("Ignoring VM options (" + vmOptions + ") in " + cacheFile + 
+    					" since they are not consistent with this VM");
+    			return null;
+    		}
+    		return vmOptions;
+    	}
+    	catch (Exception e) {
+    		logger.warn("Unable to load VM options from " + cacheFile, e);
+    		return null;
+    	}
+    	finally {
+    		closeQuietly(in);
+    	}
+    }
+    
+    /**
+     * Checks options against reference size probed by field offsets and array index scale, 
+     * and compressed reference shift probed by references of allocated objects.
+     */
+    private static boolean isConsistent(VMOptions vmOptions) {
+    	int referenceSize = unsafe.arrayIndexScale(Object[].class);
+    	int align = vmOptions.objectAlignment;
+    	if (vmOptions.referenceSize != referenceSize || 
+    			vmOptions.compressedRef != (referenceSize < unsafe.addressSize())) {
+    		return false;
+    	}
+    	try {
+            long off1 = unsafe.objectFieldOffset(CompressedOopsClass.class.getField("obj1"));
+            long off2 = unsafe.objectFieldOffset(CompressedOopsClass.class.getField("obj2"));
+            if (Math.abs(off2 - off1) != referenceSize) {
+            	return false;
+            }
+        } 
+        catch (NoSuchFieldException e) {
+            return false;
+        }
+    	// Alignment is a power of two and HotSpot supports alignments up to 256 bytes
+    	if (align < INT_SIZE || align > 256 || (align & (align - 1)) != 0) {
+    		return false;
+    	}
+    	if (vmOptions.compressedRef) {
+    		return vmOptions.compressRefShift == probeCompressedRefShift(align);
+    	}
+    	else {
+    		return vmOptions.compressRefShift == 0;
+    	}
+    }
+    
+    static void storeOptions(File cacheFile, String cacheKey, VMOptions vmOptions) {
+    	if (cacheFile == null) {
+    		return;
+    	}
+    	Properties properties = new Properties();
+    	properties.setProperty("key", cacheKey);
+    	properties.setProperty("name", vmOptions.name);
+    	properties.setProperty("referenceSize", String.valueOf(vmOptions.referenceSize));
+    	properties.setProperty("objectAlignment", String.valueOf(vmOptions.objectAlignment));
+    	properties.setProperty("compressedRef", String.valueOf(vmOptions.compressedRef));
+    	properties.setProperty("compressRefShift", String.valueOf(vmOptions.compressRefShift));
+    	OutputStream out = null;
+    	try {
+    		File cacheDir = cacheFile.getParentFile();
+    		if (!cacheDir.isDirectory()) {
+    			if (!cacheDir.mkdirs()) {
+    				return;
+    			}
+    			// Only owner can read and write cache files
+    			cacheDir.setReadable(false, false);
+    			cacheDir.setWritable(false, false);
+    			cacheDir.setExecutable(false, false);
+    			cacheDir.setReadable(true, true);
+    			cacheDir.setWritable(true, true);
+    			cacheDir.setExecutable(true, true);
+    		}
+    		// File is written by another name and then renamed, so other JVMs never read a partially written file
+    		File tempFile = File.createTempFile("vm-options-", ".tmp", cacheDir);
+    		tempFile.setReadable(false, false);
+    		tempFile.setReadable(true, true);
+    		out = new FileOutputStream(tempFile);
+    		properties.store(out, "Detected VM options of jcommon");
+    		out.close();
+    		out = null;
+    		if (!tempFile.renameTo(cacheFile)) {
+    			tempFile.delete();
+    		}
+    	}
+    	catch (Exception e) {
+    		logger.warn("Unable to store VM options to " + cacheFile, e);
+    	}
+    	finally {
+    		closeQuietly(out);
+    	}
+    }
+    
+    private static void closeQuietly(Closeable closeable) {
+    	if (closeable != null) {
+    		try {
+    			closeable.close();
+    		}
+    		catch (IOException e) {
+    			// Ignore
+    		}
+    	}
+    }
+    
     private static VMOptions getHotspotSpecifics() {
         String name = System.getProperty("java.vm.name");
         if (!name.contains("HotSpot") && !name.contains("OpenJDK")) {
@@ -1375,7 +1665,7 @@ public class JvmUtil {
     
     @SuppressWarnings("unused")
 	private static int align(int addr) {
-        int align = options.objectAlignment;
+        int align = options().objectAlignment;
         if ((addr % align) == 0) {
             return addr;
         } 
@@ -1393,14 +1683,14 @@ public class JvmUtil {
     }
     
     private static int guessAlignment(int oopSize) {
-        final int COUNT = 1000 * 1000;
+        final int COUNT = 10 * 1000;
         Object[] array = new Object[COUNT];
         long[] offsets = new long[COUNT];
 
-        for (int c = 0; c < COUNT - 3; c += 3) {
+        for (int c = 0; c < COUNT - 2; c += 3) {
             array[c + 0] = new MyObject1();
             array[c + 1] = new MyObject2();
-            array[c + 1] = new MyObject3();
+            array[c + 2] = new MyObject3();
         }
 
         for (int c = 0; c < COUNT; c++) {
@@ -1409,13 +1699,9 @@ public class JvmUtil {
 
         Arrays.sort(offsets);
 
-        Multiset<Integer> sizes = HashMultiset.create();
-        for (int c = 1; c < COUNT; c++) {
-            sizes.add((int) (offsets[c] - offsets[c - 1]));
-        }
-
         int min = -1;
-        for (int s : sizes.elementSet()) {
+        for (int c = 1; c < COUNT; c++) {
+        	int s = (int) (offsets[c] - offsets[c - 1]);
             if (s <= 0) {
             	continue;
             }
@@ -1432,7 +1718,7 @@ public class JvmUtil {
     
     @SuppressWarnings("unused")
 	private static long addressOfObject(Object o) {
-    	return addressOfObject(options.referenceSize);
+    	return addressOfObject(options().referenceSize);
     }
     
     private static long addressOfObject(Object o, int oopSize) {
@@ -1463,27 +1749,198 @@ public class JvmUtil {
         return a;
     }
     
-    private static final class ClassInfo {
+    /**
+     * Layout of a class. It doesn't refer to the class, so it doesn't prevent the class from being unloaded.
+     */
+    static final class ClassInfo {
     	
         final long alignedShallowInstanceSize;
-        final Field[] referenceFields;
+        final long[] referenceFieldOffsets;
+        final long[] primitiveFieldOffsets;
+        final Map<String, FieldOffset> fieldOffsets;
         final long size;
         final int arrayBaseOffset;
         final int arrayIndexScale;
-        final long classAddress;
+        // Resolved on first request, since sizing objects doesn't need address of class
+        volatile long classAddress = INVALID_ADDRESS;
         
-		ClassInfo(long alignedShallowInstanceSize, Field[] referenceFields, long size, int arrayBaseOffset, 
-				int arrayIndexScale, long classAddress) {
+		ClassInfo(long alignedShallowInstanceSize, long[] referenceFieldOffsets, long[] primitiveFieldOffsets, 
+				Map<String, FieldOffset> fieldOffsets, long size, int arrayBaseOffset, int arrayIndexScale) {
 			this.alignedShallowInstanceSize = alignedShallowInstanceSize;
-			this.referenceFields = referenceFields;
+			this.referenceFieldOffsets = referenceFieldOffsets;
+			this.primitiveFieldOffsets = primitiveFieldOffsets;
+			this.fieldOffsets = fieldOffsets;
 			this.size = size;
 			this.arrayBaseOffset = arrayBaseOffset;
 			this.arrayIndexScale = arrayIndexScale;
-			this.classAddress = classAddress;
 		}
 
 	}
     
+    static final class FieldOffset {
+    	
+    	final long offset;
+    	final boolean isStatic;
+    	
+    	FieldOffset(long offset, boolean isStatic) {
+    		this.offset = offset;
+    		this.isStatic = isStatic;
+    	}
+    	
+    }
+    
+    /**
+     * Estimated size of an object graph with its 95% confidence interval.
+     */
+    public static class SizeEstimate {
+    	
+    	private final long size;
+    	private final long lowerBound;
+    	private final long upperBound;
+    	private final long elementCount;
+    	private final long sampledElementCount;
+    	private final boolean completed;
+    	
+    	SizeEstimate(long size, long lowerBound, long upperBound, long elementCount, 
+    			long sampledElementCount, boolean completed) {
+    		this.size = size;
+    		this.lowerBound = lowerBound;
+    		this.upperBound = upperBound;
+    		this.elementCount = elementCount;
+    		this.sampledElementCount = sampledElementCount;
+    		this.completed = completed;
+    	}
+
+		public long getSize() {
+			return size;
+		}
+
+		public long getLowerBound() {
+			return lowerBound;
+		}
+
+		public long getUpperBound() {
+			return upperBound;
+		}
+
+		public long getElementCount() {
+			return elementCount;
+		}
+
+		public long getSampledElementCount() {
+			return sampledElementCount;
+		}
+
+		/**
+		 * Returns <code>false</code> if time budget was exceeded before all of the planned elements were measured.
+		 */
+		public boolean isCompleted() {
+			return completed;
+		}
+		
+		@Override
+		public String toString() {
+			return size + " bytes [" + lowerBound + ", " + upperBound + "] by " + 
+					sampledElementCount + " of " + elementCount + " elements" + (completed ? "" : " (time budget exceeded)");
+		}
+    	
+    }
+    
+    /**
+     * Limits of {@link JvmUtil#dump(Writer, Object, DumpOptions)}.
+     */
+    public static class DumpOptions {
+    	
+    	public static final int DEFAULT_MAX_DEPTH = 16;
+    	public static final long DEFAULT_MAX_LINES = 10000;
+    	public static final long DEFAULT_MAX_OBJECTS = 10000000;
+    	public static final int DEFAULT_AGGREGATION_THRESHOLD = 16;
+    	public static final int DEFAULT_TOP_COUNT = 20;
+    	
+    	private int maxDepth = DEFAULT_MAX_DEPTH;
+    	private long maxLines = DEFAULT_MAX_LINES;
+    	private long maxObjects = DEFAULT_MAX_OBJECTS;
+    	private int aggregationThreshold = DEFAULT_AGGREGATION_THRESHOLD;
+    	private int topCount = DEFAULT_TOP_COUNT;
+    	
+		public int getMaxDepth() {
+			return maxDepth;
+		}
+		
+		/**
+		 * Objects deeper than this are not printed, but they are still included in sizes.
+		 */
+		public DumpOptions setMaxDepth(int maxDepth) {
+			this.maxDepth = checkNotNegative(maxDepth, "Max depth");
+			return this;
+		}
+		
+		public long getMaxLines() {
+			return maxLines;
+		}
+		
+		/**
+		 * Lines of tree after this count are not printed, but traversal continues for summary.
+		 */
+		public DumpOptions setMaxLines(long maxLines) {
+			this.maxLines = checkNotNegative(maxLines, "Max lines");
+			return this;
+		}
+		
+		public long getMaxObjects() {
+			return maxObjects;
+		}
+		
+		/**
+		 * Traversal is stopped after this count of objects, so memory used for visited objects is bounded. 
+		 * Sizes are partial in that case.
+		 */
+		public DumpOptions setMaxObjects(long maxObjects) {
+			this.maxObjects = checkNotNegative(maxObjects, "Max objects");
+			return this;
+		}
+		
+		public int getAggregationThreshold() {
+			return aggregationThreshold;
+		}
+		
+		/**
+		 * Children of an object with the same class are printed as a single line, 
+		 * if there are more of them than this count.
+		 */
+		public DumpOptions setAggregationThreshold(int aggregationThreshold) {
+			this.aggregationThreshold = checkNotNegative(aggregationThreshold, "Aggregation threshold");
+			return this;
+		}
+		
+		public int getTopCount() {
+			return topCount;
+		}
+		
+		/**
+		 * Count of objects listed by retained size in summary. <code>0</code> disables summary list.
+		 */
+		public DumpOptions setTopCount(int topCount) {
+			this.topCount = checkNotNegative(topCount, "Top count");
+			return this;
+		}
+		
+		private static int checkNotNegative(int value, String name) {
+			if (value < 0) {
+				throw new IllegalArgumentException(name + " cannot be negative: " + value);
+			}
+			return value;
+		}
+		
+		private static long checkNotNegative(long value, String name) {
+			if (value < 0) {
+				throw new IllegalArgumentException(name + " cannot be negative: " + value);
+			}
+			return value;
+		}
+    	
+    }
+    
     public static class VMOptions {
     	
         private final String name;
@@ -1507,6 +1964,14 @@ public class JvmUtil {
             this.compressedRef = true;
             this.compressRefShift = shift;
         }
+        
+        public VMOptions(String name, int referenceSize, int objectAlignment, boolean compressedRef, int compressRefShift) {
+        	this.name = name;
+        	this.referenceSize = referenceSize;
+        	this.objectAlignment = objectAlignment;
+        	this.compressedRef = compressedRef;
+        	this.compressRefShift = compressRefShift;
+        }
 
         public long toNativeAddress(long address) {
             if (compressedRef) {
@@ -1545,6 +2010,12 @@ public class JvmUtil {
 		public int getReferenceSize() {
 			return referenceSize;
 		}
+		
+		@Override
+		public String toString() {
+			return "name=" + name + ", referenceSize=" + referenceSize + ", objectAlignment=" + objectAlignment + 
+					", compressedRef=" + compressedRef + ", compressRefShift=" + compressRefShift;
+		}
 
     }
     
@@ -1563,6 +2034,28 @@ public class JvmUtil {
         
     }
     
+    @SuppressWarnings("unused")
+    private static class StaticFieldClass {
+    	
+    	static Object s;
+    	
+    }
+    
+    /**
+     * Defines classes by itself where <code>Unsafe</code> cannot define classes.
+     */
+    private static class ClassDefiner extends ClassLoader {
+    	
+    	ClassDefiner(ClassLoader parent) {
+    		super(parent);
+    	}
+    	
+    	Class<?> defineClass(byte[] classContents) {
+    		return defineClass(null, classContents, 0, classContents.length);
+    	}
+    	
+    }
+    
     private static class MyObject1 {
 
     }
@@ -1694,7 +2187,9 @@ public class JvmUtil {
 	public enum JavaVersionInfo {
 		
 		JAVA_VERSION_1_6(JAVA_1_6),
-		JAVA_VERSION_1_7(JAVA_1_7);
+		JAVA_VERSION_1_7(JAVA_1_7),
+		JAVA_VERSION_1_8(JAVA_1_8),
+		JAVA_VERSION_9_OR_LATER("9+");
 		
 		String name;
 		
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package tr.com.serkanozal.jcommon.util;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * @author Serkan ÖZAL
+ * 
+ * Reusable accessor of a method created by {@link ReflectionUtil#getMethodAccessor(Class, String, Class[])}. 
+ * Method is made accessible once when accessor is created, so it is not done on every lookup. 
+ * 
+ * Exceptions thrown by method are rethrown as they are if they are unchecked, 
+ * otherwise they are wrapped by {@link RuntimeException}.
+ */
+public final class MethodAccessor {
+
+	private final Method method;
+	private final Class<?>[] parameterTypes;
+	
+	MethodAccessor(Method method) {
+		method.setAccessible(true);
+		this.method = method;
+		// Method clones its parameter types on every call, so they are kept for matching lookups
+		this.parameterTypes = method.getParameterTypes();
+	}
+	
+	public Method getMethod() {
+		return method;
+	}
+	
+	public String getName() {
+		return method.getName();
+	}
+	
+	public Class<?> getReturnType() {
+		return method.getReturnType();
+	}
+	
+	public int getParameterCount() {
+		return parameterTypes.length;
+	}
+	
+	/**
+	 * Invokes method on given object. Given object is ignored for static methods.
+	 */
+	public Object invoke(Object obj, Object... args) {
+		try {
+			return method.invoke(obj, args);
+		} 
+		catch (InvocationTargetException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new RuntimeException(cause);
+		}
+		catch (IllegalAccessException e) {
+			throw new IllegalStateException("Unable to invoke method " + this, e);
+		}
+	}
+	
+	/**
+	 * Returns <code>true</code> if method has exactly given parameter types. 
+	 * <code>null</code> means no parameter.
+	 */
+	boolean hasParameterTypes(Class<?>[] types) {
+		if (types == null) {
+			return parameterTypes.length == 0;
+		}
+		if (types.length != parameterTypes.length) {
+			return false;
+		}
+		for (int i = 0; i < types.length; i++) {
+			if (types[i] != parameterTypes[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	@Override
+	public String toString() {
+		return method.getDeclaringClass().getName() + "." + method.getName();
+	}
+	
+}
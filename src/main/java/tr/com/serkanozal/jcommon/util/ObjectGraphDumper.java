@@ -0,0 +1,425 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package tr.com.serkanozal.jcommon.util;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import sun.misc.Unsafe;
+
+/**
+ * @author Serkan ÖZAL
+ * 
+ * Writes tree of an object graph for {@link JvmUtil#dump(Writer, Object, JvmUtil.DumpOptions)} 
+ * while it is being traversed, so nothing is kept per printed object. 
+ * 
+ * Every object is printed at the first path it is reached by (in pre-order with its shallow size) 
+ * and objects reached again are printed as <code>[seen]</code>. 
+ * Graph is traversed by an explicit stack of frames, one per printed level, 
+ * and objects below maximum depth or grouped under an aggregation line are traversed silently 
+ * by {@link ObjectGraphSizer.ObjectStack} with the same visited set, so long chains don't overflow thread stack.
+ * 
+ * Retained sizes in summary are sizes of subtrees of the spanning tree built by traversal, 
+ * so an object shared by many paths is counted only under the first one.
+ */
+@SuppressWarnings("restriction")
+final class ObjectGraphDumper {
+
+	private static final int INITIAL_CAPACITY = 1024;
+	private static final String INDENT = "   ";
+	
+	private final Unsafe unsafe = JvmUtil.getUnsafe();
+	private final Writer writer;
+	private final JvmUtil.DumpOptions options;
+	private final ObjectGraphSizer.IdentitySet visited = new ObjectGraphSizer.IdentitySet(INITIAL_CAPACITY);
+	private final ObjectGraphSizer.ObjectStack stack = new ObjectGraphSizer.ObjectStack(INITIAL_CAPACITY);
+	private final IdentityHashMap<Class<?>, ObjectGraphSizer.ReferenceFields> referenceFieldsCache = 
+			new IdentityHashMap<Class<?>, ObjectGraphSizer.ReferenceFields>();
+	private final List<Frame> frames = new ArrayList<Frame>();
+	private final PriorityQueue<Retained> topRetained;
+	private final StringBuilder line = new StringBuilder();
+	private long lineCount;
+	private boolean truncated;
+	
+	ObjectGraphDumper(Writer writer, JvmUtil.DumpOptions options) {
+		this.writer = writer;
+		this.options = options;
+		this.topRetained = new PriorityQueue<Retained>(Math.max(options.getTopCount(), 1), Retained.BY_SIZE);
+	}
+	
+	void dump(Object root) throws IOException {
+		if (root == null) {
+			throw new IllegalArgumentException("Root object cannot be null");
+		}
+		visited.add(root);
+		pushFrame(root, "root");
+		while (!frames.isEmpty()) {
+			Frame frame = frames.get(frames.size() - 1);
+			if (truncated || !frame.next()) {
+				popFrame(frame);
+				continue;
+			}
+			Object child = frame.child;
+			Aggregate aggregate = frame.aggregates != null ? frame.aggregates.get(child.getClass()) : null;
+			if (aggregate != null) {
+				if (visited.add(child)) {
+					long size = measure(child);
+					aggregate.count++;
+					aggregate.shallowSize += shallowSizeOf(child);
+					aggregate.deepSize += size;
+					frame.deepSize += size;
+				}
+			}
+			else if (!visited.add(child)) {
+				printLine(frames.size(), "[seen] " + frame.childLabel + " => " + nameOf(child.getClass()), -1);
+			}
+			else if (frame.depth < options.getMaxDepth()) {
+				pushFrame(child, frame.childLabel);
+			}
+			else {
+				frame.deepSize += measure(child);
+				frame.hiddenCount++;
+			}
+		}
+		printSummary();
+		writer.flush();
+	}
+	
+	private void pushFrame(Object obj, String label) throws IOException {
+		checkBudget();
+		Frame frame = new Frame(obj, label, frames.size(), shallowSizeOf(obj));
+		printLine(frame.depth, label + " => " + nameOf(obj.getClass()), frame.deepSize);
+		frames.add(frame);
+	}
+	
+	private void popFrame(Frame frame) throws IOException {
+		frames.remove(frames.size() - 1);
+		if (frame.aggregates != null) {
+			for (Aggregate aggregate : frame.aggregates.values()) {
+				if (aggregate.count > 0) {
+					printLine(frame.depth + 1, 
+							String.format("%,d x %s (%,d bytes deep)", 
+									aggregate.count, nameOf(aggregate.clazz), aggregate.deepSize), 
+							aggregate.shallowSize);
+					if (isRetainedCandidate(aggregate.deepSize)) {
+						addRetained(aggregate.deepSize, 
+								pathOf(frame, frame.array ? "[*]" : "") + 
+								String.format(" (%,d x %s)", aggregate.count, nameOf(aggregate.clazz)));
+					}
+				}
+			}
+		}
+		if (frame.hiddenCount > 0) {
+			printLine(frame.depth + 1, 
+					String.format("... %,d more below depth %d", frame.hiddenCount, options.getMaxDepth()), -1);
+		}
+		if (isRetainedCandidate(frame.deepSize)) {
+			addRetained(frame.deepSize, pathOf(frame, null));
+		}
+		if (!frames.isEmpty()) {
+			frames.get(frames.size() - 1).deepSize += frame.deepSize;
+		}
+	}
+	
+	/**
+	 * Measures objects reachable from given object which is already marked as visited 
+	 * and which are not visited yet. Given object is included.
+	 */
+	private long measure(Object obj) {
+		long totalSize = 0;
+		boolean first = true;
+		stack.push(obj);
+		while (!stack.isEmpty()) {
+			Object o = stack.pop();
+			if (first) {
+				first = false;
+			}
+			else if (!visited.add(o)) {
+				continue;
+			}
+			else if (!checkBudget()) {
+				while (!stack.isEmpty()) {
+					stack.pop();
+				}
+				break;
+			}
+			Class<?> clazz = o.getClass();
+			if (clazz.isArray()) {
+				totalSize += shallowSizeOf(o);
+				if (!clazz.getComponentType().isPrimitive()) {
+					for (Object element : (Object[]) o) {
+						if (element != null) {
+							stack.push(element);
+						}
+					}
+				}
+			}
+			else {
+				for (long offset : referenceFieldsOf(clazz).offsets) {
+					Object ref = unsafe.getObject(o, offset);
+					if (ref != null) {
+						stack.push(ref);
+					}
+				}
+				totalSize += JvmUtil.getClassInfo(clazz).alignedShallowInstanceSize;
+			}
+		}
+		return totalSize;
+	}
+	
+	private boolean checkBudget() {
+		if (visited.size() > options.getMaxObjects()) {
+			truncated = true;
+		}
+		return !truncated;
+	}
+	
+	private long shallowSizeOf(Object obj) {
+		Class<?> clazz = obj.getClass();
+		if (clazz.isArray()) {
+			// Elements may be aligned to their sizes after array length, so base offset depends on array type
+			return JvmUtil.alignObjectSize(
+					unsafe.arrayBaseOffset(clazz) + (long) Array.getLength(obj) * unsafe.arrayIndexScale(clazz));
+		}
+		else {
+			return JvmUtil.getClassInfo(clazz).alignedShallowInstanceSize;
+		}
+	}
+	
+	private ObjectGraphSizer.ReferenceFields referenceFieldsOf(Class<?> clazz) {
+		ObjectGraphSizer.ReferenceFields referenceFields = referenceFieldsCache.get(clazz);
+		if (referenceFields == null) {
+			referenceFields = new ObjectGraphSizer.ReferenceFields(clazz, unsafe);
+			referenceFieldsCache.put(clazz, referenceFields);
+		}
+		return referenceFields;
+	}
+	
+	private static String nameOf(Class<?> clazz) {
+		if (clazz.isArray()) {
+			return nameOf(clazz.getComponentType()) + "[]";
+		}
+		String name = clazz.getName();
+		return name.substring(name.lastIndexOf('.') + 1);
+	}
+	
+	private String pathOf(Frame last, String suffix) {
+		StringBuilder path = new StringBuilder();
+		for (Frame frame : frames) {
+			appendLabel(path, frame.label);
+		}
+		appendLabel(path, last.label);
+		if (suffix != null) {
+			path.append(suffix);
+		}
+		return path.toString();
+	}
+	
+	private static void appendLabel(StringBuilder path, String label) {
+		if (path.length() > 0 && label.charAt(0) != '[') {
+			path.append('.');
+		}
+		path.append(label);
+	}
+	
+	private boolean isRetainedCandidate(long size) {
+		int topCount = options.getTopCount();
+		return topCount > 0 && (topRetained.size() < topCount || topRetained.peek().size < size);
+	}
+	
+	private void addRetained(long size, String path) {
+		if (topRetained.size() == options.getTopCount()) {
+			topRetained.poll();
+		}
+		topRetained.add(new Retained(size, path));
+	}
+	
+	/**
+	 * Prints a line with given size. Size is not printed if it is negative.
+	 */
+	private void printLine(int depth, String text, long size) throws IOException {
+		if (lineCount > options.getMaxLines()) {
+			return;
+		}
+		line.setLength(0);
+		if (lineCount++ == options.getMaxLines()) {
+			line.append(String.format("... output is limited to %,d lines", options.getMaxLines()));
+		}
+		else {
+			line.append(size >= 0 ? String.format("%,10d  ", size) : "            ");
+			for (int i = 0; i < depth; i++) {
+				line.append(INDENT);
+			}
+			if (depth > 0) {
+				line.append("+- ");
+			}
+			line.append(text);
+		}
+		line.append('\n');
+		writer.write(line.toString());
+	}
+	
+	private void printSummary() throws IOException {
+		writer.write(String.format("%nTotal: %,d objects%s%n", 
+				visited.size(), truncated ? 
+						String.format(" (traversal stopped at limit of %,d objects, sizes are partial)", 
+								options.getMaxObjects()) : ""));
+		if (!topRetained.isEmpty()) {
+			List<Retained> retainedList = new ArrayList<Retained>(topRetained);
+			Collections.sort(retainedList, Collections.reverseOrder(Retained.BY_SIZE));
+			writer.write(String.format("Top %d by retained size:%n", retainedList.size()));
+			for (Retained retained : retainedList) {
+				writer.write(String.format("%,14d  %s%n", retained.size, retained.path));
+			}
+		}
+	}
+	
+	private class Frame {
+		
+		final Object obj;
+		final String label;
+		final int depth;
+		final boolean array;
+		final int length;
+		final long[] offsets;
+		final String[] names;
+		// Only classes whose instances are aggregated
+		final Map<Class<?>, Aggregate> aggregates;
+		long deepSize;
+		long hiddenCount;
+		int index = -1;
+		Object child;
+		String childLabel;
+		
+		Frame(Object obj, String label, int depth, long shallowSize) {
+			this.obj = obj;
+			this.label = label;
+			this.depth = depth;
+			this.deepSize = shallowSize;
+			Class<?> clazz = obj.getClass();
+			if (clazz.isArray()) {
+				this.array = true;
+				this.length = clazz.getComponentType().isPrimitive() ? 0 : Array.getLength(obj);
+				this.offsets = null;
+				this.names = null;
+			}
+			else {
+				ObjectGraphSizer.ReferenceFields referenceFields = referenceFieldsOf(clazz);
+				this.array = false;
+				this.length = referenceFields.offsets.length;
+				this.offsets = referenceFields.offsets;
+				this.names = referenceFields.names;
+			}
+			this.aggregates = findAggregates();
+		}
+		
+		private Object childAt(int i) {
+			return array ? ((Object[]) obj)[i] : unsafe.getObject(obj, offsets[i]);
+		}
+		
+		private Map<Class<?>, Aggregate> findAggregates() {
+			int threshold = options.getAggregationThreshold();
+			if (length <= threshold) {
+				return null;
+			}
+			IdentityHashMap<Class<?>, Aggregate> counts = new IdentityHashMap<Class<?>, Aggregate>();
+			for (int i = 0; i < length; i++) {
+				Object o = childAt(i);
+				if (o != null) {
+					Aggregate aggregate = counts.get(o.getClass());
+					if (aggregate == null) {
+						aggregate = new Aggregate(o.getClass());
+						counts.put(o.getClass(), aggregate);
+					}
+					aggregate.count++;
+				}
+			}
+			Map<Class<?>, Aggregate> aggregates = null;
+			for (Aggregate aggregate : counts.values()) {
+				if (aggregate.count > threshold) {
+					if (aggregates == null) {
+						aggregates = new IdentityHashMap<Class<?>, Aggregate>();
+					}
+					// Only objects reached first from here are counted
+					aggregate.count = 0;
+					aggregates.put(aggregate.clazz, aggregate);
+				}
+			}
+			return aggregates;
+		}
+		
+		/**
+		 * Moves to next non-null child and returns <code>true</code> if there is.
+		 */
+		boolean next() {
+			while (++index < length) {
+				Object o = childAt(index);
+				if (o != null) {
+					child = o;
+					childLabel = array ? "[" + index + "]" : names[index];
+					return true;
+				}
+			}
+			child = null;
+			return false;
+		}
+		
+	}
+	
+	private static class Aggregate {
+		
+		final Class<?> clazz;
+		long count;
+		long shallowSize;
+		long deepSize;
+		
+		Aggregate(Class<?> clazz) {
+			this.clazz = clazz;
+		}
+		
+	}
+	
+	private static class Retained {
+		
+		static final Comparator<Retained> BY_SIZE = 
+				new Comparator<Retained>() {
+					@Override
+					public int compare(Retained r1, Retained r2) {
+						return r1.size < r2.size ? -1 : (r1.size == r2.size ? 0 : 1);
+					}
+				};
+		
+		final long size;
+		final String path;
+		
+		Retained(long size, String path) {
+			this.size = size;
+			this.path = path;
+		}
+		
+	}
+	
+}
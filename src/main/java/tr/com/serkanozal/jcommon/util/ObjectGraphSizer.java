@@ -0,0 +1,574 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tr.com.serkanozal.jcommon.util;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import sun.misc.Unsafe;
+
+/**
+ * @author Serkan ÖZAL
+ * 
+ * Measures sizes of object graphs for {@link JvmUtil#sizeOf(Object)} 
+ * and builds class histograms of them for {@link JvmUtil#histogramOf(Object)}. 
+ * 
+ * Graph is traversed with an explicit stack of objects and visited objects are tracked 
+ * by an open addressing identity set, so there is no boxing or entry allocation per object. 
+ * References of objects are read by {@link Unsafe} from field offsets precomputed per class 
+ * and references of arrays are read directly, so there is no reflective access per field.
+ * 
+ * Very large graphs can be traversed by multiple threads. Every thread has its own stack 
+ * and gives the older half of it to idle threads when it grows, while the visited set is shared 
+ * (it is split into segments locked separately) so every object is counted once.
+ */
+@SuppressWarnings("restriction")
+final class ObjectGraphSizer {
+
+	private static final int INITIAL_CAPACITY = 1024;
+	// Below this count of pending objects, giving work to other threads costs more than processing it
+	private static final int SPLIT_THRESHOLD = 1024;
+	private static final int SEGMENT_COUNT_PER_THREAD = 4;
+	
+	private ObjectGraphSizer() {
+		
+	}
+	
+	static long sizeOf(Object[] roots) {
+		ObjectStack stack = new ObjectStack(INITIAL_CAPACITY);
+		stack.pushAll(roots);
+		return traverse(stack, new IdentitySet(INITIAL_CAPACITY), 
+						new IdentityHashMap<Class<?>, JvmUtil.ClassInfo>(), null);
+	}
+	
+	static long sizeOf(Object[] roots, int parallelism) {
+		if (parallelism <= 1) {
+			return sizeOf(roots);
+		}
+		return new ParallelTraversal(parallelism).run(roots);
+	}
+	
+	/**
+	 * Builds histogram of classes of objects reachable from given root. 
+	 * Immediate children of root are traversed one by one with the same visited set, 
+	 * so retained size of a child is size of objects which are reached first through it.
+	 */
+	static ClassHistogram histogramOf(Object root, long maxObjects, int maxChildren) {
+		Unsafe unsafe = JvmUtil.getUnsafe();
+		IdentityHashMap<Class<?>, JvmUtil.ClassInfo> classInfos = new IdentityHashMap<Class<?>, JvmUtil.ClassInfo>();
+		HistogramVisitor visitor = new HistogramVisitor(maxObjects);
+		IdentitySet visited = new IdentitySet(INITIAL_CAPACITY);
+		ObjectStack stack = new ObjectStack(INITIAL_CAPACITY);
+		ChildCollector children = new ChildCollector(maxChildren);
+		visited.add(root);
+		Class<?> clazz = root.getClass();
+		long totalSize;
+		if (clazz.isArray()) {
+			int length = Array.getLength(root);
+			totalSize = JvmUtil.alignObjectSize(
+					unsafe.arrayBaseOffset(clazz) + (long) length * unsafe.arrayIndexScale(clazz));
+			visitor.visit(clazz, totalSize);
+			if (!clazz.getComponentType().isPrimitive()) {
+				Object[] array = (Object[]) root;
+				for (int i = 0; i < length && !visitor.stopped; i++) {
+					totalSize += measureChild(array[i], "[" + i + "]", stack, visited, classInfos, visitor, children);
+				}
+			}
+		}
+		else {
+			totalSize = JvmUtil.getClassInfo(clazz).alignedShallowInstanceSize;
+			visitor.visit(clazz, totalSize);
+			ReferenceFields referenceFields = new ReferenceFields(clazz, unsafe);
+			for (int i = 0; i < referenceFields.offsets.length && !visitor.stopped; i++) {
+				totalSize += measureChild(unsafe.getObject(root, referenceFields.offsets[i]), referenceFields.names[i], 
+										 stack, visited, classInfos, visitor, children);
+			}
+		}
+		return new ClassHistogram(clazz.getName(), visitor.toClassEntries(), children.toChildEntries(), 
+								  visitor.totalCount, totalSize, children.count, !visitor.stopped);
+	}
+	
+	private static long measureChild(Object child, String path, ObjectStack stack, VisitedSet visited, 
+			IdentityHashMap<Class<?>, JvmUtil.ClassInfo> classInfos, HistogramVisitor visitor, ChildCollector children) {
+		if (child == null) {
+			return 0;
+		}
+		stack.push(child);
+		long size = traverse(stack, visited, classInfos, null, visitor);
+		// Child which is already reached through a previous child has no retained size
+		if (size > 0) {
+			children.add(path, child.getClass(), size);
+		}
+		return size;
+	}
+	
+	static long traverse(ObjectStack stack, VisitedSet visited, 
+			IdentityHashMap<Class<?>, JvmUtil.ClassInfo> classInfos, ParallelTraversal traversal) {
+		return traverse(stack, visited, classInfos, traversal, null);
+	}
+	
+	/**
+	 * Traverses objects in stack which are not visited yet and returns their total size. 
+	 * If visitor is given, it is notified for every object and traversal is stopped when it refuses to continue.
+	 */
+	static long traverse(ObjectStack stack, VisitedSet visited, 
+			IdentityHashMap<Class<?>, JvmUtil.ClassInfo> classInfos, ParallelTraversal traversal, 
+			ObjectVisitor visitor) {
+		Unsafe unsafe = JvmUtil.getUnsafe();
+		long totalSize = 0;
+		while (!stack.isEmpty()) {
+			if (traversal != null && stack.size() >= SPLIT_THRESHOLD) {
+				traversal.share(stack);
+			}
+			Object obj = stack.pop();
+			if (!visited.add(obj)) {
+				continue;
+			}
+			Class<?> clazz = obj.getClass();
+			long size;
+			if (clazz.isArray()) {
+				int length = Array.getLength(obj);
+				// Elements may be aligned to their sizes after array length, so base offset depends on array type
+				size = JvmUtil.alignObjectSize(
+						unsafe.arrayBaseOffset(clazz) + (long) length * unsafe.arrayIndexScale(clazz));
+				if (!clazz.getComponentType().isPrimitive()) {
+					// Every array of references can be accessed as object array
+					Object[] array = (Object[]) obj;
+					for (int i = length - 1; i >= 0; i--) {
+						Object o = array[i];
+						if (o != null) {
+							stack.push(o);
+						}
+					}
+				}
+			}
+			else {
+				JvmUtil.ClassInfo classInfo = classInfos.get(clazz);
+				if (classInfo == null) {
+					classInfo = JvmUtil.getClassInfo(clazz);
+					classInfos.put(clazz, classInfo);
+				}
+				for (long offset : classInfo.referenceFieldOffsets) {
+					Object o = unsafe.getObject(obj, offset);
+					if (o != null) {
+						stack.push(o);
+					}
+				}
+				size = classInfo.alignedShallowInstanceSize;
+			}
+			totalSize += size;
+			if (visitor != null && !visitor.visit(clazz, size)) {
+				stack.clear();
+			}
+		}
+		return totalSize;
+	}
+	
+	/**
+	 * Callback of {@link ObjectGraphSizer#traverse} for every visited object.
+	 */
+	interface ObjectVisitor {
+		
+		/**
+		 * Returns <code>false</code> to stop traversal.
+		 */
+		boolean visit(Class<?> clazz, long size);
+		
+	}
+	
+	interface VisitedSet {
+		
+		/**
+		 * Adds object if it is not visited yet and returns <code>true</code>, 
+		 * otherwise returns <code>false</code>.
+		 */
+		boolean add(Object obj);
+		
+	}
+	
+	/**
+	 * Open addressing (linear probing) set of objects compared by identity. 
+	 * Addresses of objects may be changed by GC, so objects are placed by their identity hash codes.
+	 */
+	static class IdentitySet implements VisitedSet {
+		
+		private Object[] table;
+		private int size;
+		
+		IdentitySet(int capacity) {
+			table = new Object[Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1];
+		}
+		
+		private static int indexOf(Object obj, int mask) {
+			// Identity hash codes are not well distributed on low bits on some JVMs
+			return (System.identityHashCode(obj) * 0x9E3779B9) & mask;
+		}
+		
+		@Override
+		public boolean add(Object obj) {
+			int mask = table.length - 1;
+			int i = indexOf(obj, mask);
+			for (Object o = table[i]; o != null; o = table[i]) {
+				if (o == obj) {
+					return false;
+				}
+				i = (i + 1) & mask;
+			}
+			table[i] = obj;
+			// Keep load factor under 0.5, so probe sequences are short
+			if (++size << 1 > table.length) {
+				grow();
+			}
+			return true;
+		}
+		
+		private void grow() {
+			Object[] oldTable = table;
+			Object[] newTable = new Object[oldTable.length << 1];
+			int mask = newTable.length - 1;
+			for (Object o : oldTable) {
+				if (o != null) {
+					int i = indexOf(o, mask);
+					while (newTable[i] != null) {
+						i = (i + 1) & mask;
+					}
+					newTable[i] = o;
+				}
+			}
+			table = newTable;
+		}
+		
+		int size() {
+			return size;
+		}
+		
+		void clear() {
+			if (size > 0) {
+				Arrays.fill(table, null);
+				size = 0;
+			}
+		}
+		
+	}
+	
+	/**
+	 * Identity set shared by threads. It is split into segments by identity hash codes 
+	 * and every segment is locked separately.
+	 */
+	static class SegmentedIdentitySet implements VisitedSet {
+		
+		private final IdentitySet[] segments;
+		private final int shift;
+		
+		SegmentedIdentitySet(int segmentCount) {
+			int count = Integer.highestOneBit(Math.max(segmentCount, 2) - 1) << 1;
+			segments = new IdentitySet[count];
+			for (int i = 0; i < count; i++) {
+				segments[i] = new IdentitySet(INITIAL_CAPACITY);
+			}
+			// Segment is selected by high bits, while low bits select the slot in segment
+			shift = Integer.SIZE - Integer.numberOfTrailingZeros(count);
+		}
+		
+		@Override
+		public boolean add(Object obj) {
+			IdentitySet segment = segments[(System.identityHashCode(obj) * 0x9E3779B9) >>> shift];
+			synchronized (segment) {
+				return segment.add(obj);
+			}
+		}
+		
+	}
+	
+	/**
+	 * Stack of objects on an array indexed by <code>int</code>.
+	 */
+	static class ObjectStack {
+		
+		private Object[] elements;
+		private int size;
+		
+		ObjectStack(int capacity) {
+			elements = new Object[capacity];
+		}
+		
+		void push(Object obj) {
+			if (size == elements.length) {
+				Object[] newElements = new Object[size << 1];
+				System.arraycopy(elements, 0, newElements, 0, size);
+				elements = newElements;
+			}
+			elements[size++] = obj;
+		}
+		
+		void pushAll(Object[] objects) {
+			for (Object obj : objects) {
+				if (obj != null) {
+					push(obj);
+				}
+			}
+		}
+		
+		void clear() {
+			Arrays.fill(elements, 0, size, null);
+			size = 0;
+		}
+		
+		Object pop() {
+			Object obj = elements[--size];
+			elements[size] = null;
+			return obj;
+		}
+		
+		/**
+		 * Removes the older half of objects (from the bottom of stack). 
+		 * They are closer to the roots, so they are more likely to lead to larger parts of graph.
+		 */
+		Object[] popOlderHalf() {
+			int count = size >>> 1;
+			Object[] objects = new Object[count];
+			System.arraycopy(elements, 0, objects, 0, count);
+			System.arraycopy(elements, count, elements, 0, size - count);
+			for (int i = size - count; i < size; i++) {
+				elements[i] = null;
+			}
+			size -= count;
+			return objects;
+		}
+		
+		boolean isEmpty() {
+			return size == 0;
+		}
+		
+		int size() {
+			return size;
+		}
+		
+	}
+	
+	/**
+	 * Traverses graph by a group of threads which share work as batches of objects. 
+	 * Traversal is completed when there is no batch which is waiting or being processed.
+	 */
+	static class ParallelTraversal {
+		
+		private final int parallelism;
+		private final SegmentedIdentitySet visited;
+		private final ConcurrentLinkedQueue<Object[]> batches = new ConcurrentLinkedQueue<Object[]>();
+		// Count of batches which are queued or being processed
+		private final AtomicInteger pendingBatchCount = new AtomicInteger();
+		private final AtomicInteger queuedBatchCount = new AtomicInteger();
+		private final AtomicLong totalSize = new AtomicLong();
+		private volatile Throwable failure;
+		
+		ParallelTraversal(int parallelism) {
+			this.parallelism = parallelism;
+			this.visited = new SegmentedIdentitySet(parallelism * SEGMENT_COUNT_PER_THREAD);
+		}
+		
+		long run(Object[] roots) {
+			offer(roots.clone());
+			Thread[] threads = new Thread[parallelism];
+			for (int i = 0; i < parallelism; i++) {
+				threads[i] = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						work();
+					}
+				}, "jcommon-sizeOf-" + i);
+				threads[i].setDaemon(true);
+				threads[i].start();
+			}
+			try {
+				for (Thread thread : threads) {
+					thread.join();
+				}
+			} 
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				failure = e;
+			}
+			if (failure != null) {
+				throw new IllegalStateException("Unable to measure size of object graph", failure);
+			}
+			return totalSize.get();
+		}
+		
+		/**
+		 * Gives half of objects in stack to other threads if there is no batch waiting for them.
+		 */
+		void share(ObjectStack stack) {
+			if (queuedBatchCount.get() < parallelism) {
+				offer(stack.popOlderHalf());
+			}
+		}
+		
+		private void offer(Object[] batch) {
+			// Batch is counted as pending before it is queued, so the count never drops to zero too early
+			pendingBatchCount.incrementAndGet();
+			queuedBatchCount.incrementAndGet();
+			batches.offer(batch);
+		}
+		
+		private void work() {
+			ObjectStack stack = new ObjectStack(INITIAL_CAPACITY);
+			IdentityHashMap<Class<?>, JvmUtil.ClassInfo> classInfos = new IdentityHashMap<Class<?>, JvmUtil.ClassInfo>();
+			long size = 0;
+			try {
+				while (pendingBatchCount.get() > 0 && failure == null) {
+					Object[] batch = batches.poll();
+					if (batch == null) {
+						Thread.yield();
+						continue;
+					}
+					queuedBatchCount.decrementAndGet();
+					try {
+						stack.pushAll(batch);
+						size += traverse(stack, visited, classInfos, this);
+					}
+					finally {
+						pendingBatchCount.decrementAndGet();
+					}
+				}
+			}
+			catch (Throwable t) {
+				failure = t;
+			}
+			totalSize.addAndGet(size);
+		}
+		
+	}
+	
+	/**
+	 * Non-static reference fields of a class including inherited ones, sorted by their names.
+	 */
+	static class ReferenceFields {
+		
+		final long[] offsets;
+		final String[] names;
+		
+		ReferenceFields(Class<?> clazz, Unsafe unsafe) {
+			List<Field> fields = new ArrayList<Field>();
+			for (Class<?> c = clazz; c != null; c = c.getSuperclass()) {
+				for (Field f : c.getDeclaredFields()) {
+					if (!Modifier.isStatic(f.getModifiers()) && !f.getType().isPrimitive()) {
+						fields.add(f);
+					}
+				}
+			}
+			Collections.sort(fields, 
+					new Comparator<Field>() {
+						@Override
+						public int compare(Field f1, Field f2) {
+							return f1.getName().compareTo(f2.getName());
+						}
+					});
+			offsets = new long[fields.size()];
+			names = new String[fields.size()];
+			for (int i = 0; i < offsets.length; i++) {
+				offsets[i] = unsafe.objectFieldOffset(fields.get(i));
+				names[i] = fields.get(i).getName();
+			}
+		}
+		
+	}
+	
+	/**
+	 * Counts instances and shallow sizes of visited objects per class 
+	 * until count of visited objects reaches the limit.
+	 */
+	private static class HistogramVisitor implements ObjectVisitor {
+		
+		private final IdentityHashMap<Class<?>, long[]> counts = new IdentityHashMap<Class<?>, long[]>();
+		private final long maxObjects;
+		private long totalCount;
+		private boolean stopped;
+		
+		HistogramVisitor(long maxObjects) {
+			this.maxObjects = maxObjects;
+		}
+		
+		@Override
+		public boolean visit(Class<?> clazz, long size) {
+			long[] count = counts.get(clazz);
+			if (count == null) {
+				count = new long[2];
+				counts.put(clazz, count);
+			}
+			count[0]++;
+			count[1] += size;
+			if (++totalCount >= maxObjects) {
+				stopped = true;
+			}
+			return !stopped;
+		}
+		
+		List<ClassHistogram.ClassEntry> toClassEntries() {
+			List<ClassHistogram.ClassEntry> entries = new ArrayList<ClassHistogram.ClassEntry>(counts.size());
+			for (Map.Entry<Class<?>, long[]> e : counts.entrySet()) {
+				entries.add(new ClassHistogram.ClassEntry(e.getKey().getName(), e.getValue()[0], e.getValue()[1]));
+			}
+			return entries;
+		}
+		
+	}
+	
+	/**
+	 * Keeps immediate children of root with the largest retained sizes.
+	 */
+	private static class ChildCollector {
+		
+		private final PriorityQueue<ClassHistogram.ChildEntry> largest;
+		private final int maxChildren;
+		private long count;
+		
+		ChildCollector(int maxChildren) {
+			this.maxChildren = maxChildren;
+			this.largest = new PriorityQueue<ClassHistogram.ChildEntry>(
+					Math.max(maxChildren, 1), ClassHistogram.ChildEntry.BY_RETAINED_SIZE);
+		}
+		
+		void add(String path, Class<?> clazz, long retainedSize) {
+			count++;
+			if (largest.size() < maxChildren) {
+				largest.add(new ClassHistogram.ChildEntry(path, clazz.getName(), retainedSize));
+			}
+			else if (maxChildren > 0 && largest.peek().getRetainedSize() < retainedSize) {
+				largest.poll();
+				largest.add(new ClassHistogram.ChildEntry(path, clazz.getName(), retainedSize));
+			}
+		}
+		
+		List<ClassHistogram.ChildEntry> toChildEntries() {
+			return new ArrayList<ClassHistogram.ChildEntry>(largest);
+		}
+		
+	}
+	
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tr.com.serkanozal.jcommon.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.RandomAccess;
+
+import tr.com.serkanozal.jcommon.util.ObjectGraphSizer.IdentitySet;
+import tr.com.serkanozal.jcommon.util.ObjectGraphSizer.ObjectStack;
+
+/**
+ * @author Serkan ÖZAL
+ * 
+ * Estimates sizes of huge collections, maps and arrays for {@link JvmUtil#estimateSizeOf(Object, double, long)} 
+ * by measuring deep sizes of a sample of their elements and extrapolating them to all elements.
+ * 
+ * Every sampled element is measured separately (with the container excluded), 
+ * so objects shared by elements are counted for every element and the estimation is biased upwards for them. 
+ * For maps, shallow size of entry object is added to every element as the per entry overhead of map. 
+ * Backing arrays referenced directly by container are measured shallowly and exactly. 
+ * Internal nodes of linked collections (such as {@link java.util.LinkedList}) are not included.
+ * 
+ * Elements of arrays and random access lists are sampled uniformly by index. 
+ * Elements of other containers are sampled while iterating them, 
+ * so if time budget is exceeded, sample contains only elements at the beginning of iteration order.
+ */
+@SuppressWarnings("restriction")
+final class ObjectSizeEstimator {
+
+	// Sample is never smaller than this count (unless container is smaller), so variance can be estimated
+	private static final int MIN_SAMPLE_COUNT = 32;
+	// z value of 95% confidence level for normal distribution
+	private static final double Z_95 = 1.96;
+	private static final int INITIAL_CAPACITY = 64;
+	
+	private final Object root;
+	private final long deadline;
+	private final Random random = new Random();
+	private final ObjectStack stack = new ObjectStack(INITIAL_CAPACITY);
+	private final IdentitySet visited = new IdentitySet(INITIAL_CAPACITY);
+	private final IdentityHashMap<Class<?>, JvmUtil.ClassInfo> classInfos = new IdentityHashMap<Class<?>, JvmUtil.ClassInfo>();
+	
+	private long sampledCount;
+	private double sum;
+	private double sumOfSquares;
+	private boolean budgetExceeded;
+	
+	private ObjectSizeEstimator(Object root, long timeBudgetMillis) {
+		this.root = root;
+		this.deadline = timeBudgetMillis > 0 ? System.nanoTime() + timeBudgetMillis * 1000000L : Long.MAX_VALUE;
+	}
+	
+	static JvmUtil.SizeEstimate estimate(Object obj, double sampleRatio, long timeBudgetMillis) {
+		if (!(sampleRatio > 0.0 && sampleRatio <= 1.0)) {
+			throw new IllegalArgumentException("Sample ratio must be in (0, 1]: " + sampleRatio);
+		}
+		if (obj instanceof Object[] || obj instanceof Collection<?> || obj instanceof Map<?, ?>) {
+			return new ObjectSizeEstimator(obj, timeBudgetMillis).estimate(sampleRatio);
+		}
+		// Other objects (including primitive arrays) can't be sampled, they are measured exactly
+		long size = JvmUtil.sizeOf(obj);
+		return new JvmUtil.SizeEstimate(size, size, size, 0, 0, true);
+	}
+	
+	private JvmUtil.SizeEstimate estimate(double sampleRatio) {
+		long elementCount;
+		long containerSize;
+		if (root instanceof Object[]) {
+			Object[] array = (Object[]) root;
+			elementCount = array.length;
+			containerSize = JvmUtil.shallowSizeOf(array);
+			sampleArray(array, sampleCountOf(elementCount, sampleRatio));
+		}
+		else {
+			Object container = root;
+			boolean keysOnly = false;
+			Map<?, ?> delegate = delegateMapOf(root);
+			if (delegate != null) {
+				// Set backed by a map (such as HashSet), elements are the keys of map
+				containerSize = JvmUtil.shallowSizeOf(root);
+				container = delegate;
+				keysOnly = true;
+			}
+			else {
+				containerSize = 0;
+			}
+			containerSize += shallowSizeOfContainer(container);
+			if (container instanceof Map<?, ?>) {
+				Map<?, ?> map = (Map<?, ?>) container;
+				elementCount = map.size();
+				sampleMap(map, sampleCountOf(elementCount, sampleRatio), keysOnly);
+			}
+			else {
+				Collection<?> collection = (Collection<?>) container;
+				elementCount = collection.size();
+				sampleCollection(collection, sampleCountOf(elementCount, sampleRatio));
+			}
+		}
+		
+		if (sampledCount == 0) {
+			return new JvmUtil.SizeEstimate(containerSize, containerSize, containerSize, 
+												elementCount, 0, !budgetExceeded);
+		}
+		double mean = sum / sampledCount;
+		double variance = 
+				sampledCount > 1 ? 
+						Math.max(0.0, (sumOfSquares - sampledCount * mean * mean) / (sampledCount - 1)) : 
+						0.0;
+		// Standard error of total with finite population correction
+		double standardError = 
+				elementCount * Math.sqrt((1.0 - (double) sampledCount / elementCount) * variance / sampledCount);
+		long estimatedSize = containerSize + Math.round(mean * elementCount);
+		long margin = Math.round(Z_95 * standardError);
+		return new JvmUtil.SizeEstimate(estimatedSize, Math.max(containerSize, estimatedSize - margin), 
+											estimatedSize + margin, elementCount, sampledCount, !budgetExceeded);
+	}
+	
+	private static long sampleCountOf(long elementCount, double sampleRatio) {
+		long sampleCount = (long) Math.ceil(elementCount * sampleRatio);
+		return Math.min(elementCount, Math.max(sampleCount, MIN_SAMPLE_COUNT));
+	}
+	
+	private void sampleArray(Object[] array, long sampleCount) {
+		sampleIndexes(array.length, sampleCount, array, null);
+	}
+	
+	private void sampleCollection(Collection<?> collection, long sampleCount) {
+		if (collection instanceof List<?> && collection instanceof RandomAccess) {
+			sampleIndexes(collection.size(), sampleCount, null, (List<?>) collection);
+			return;
+		}
+		int remaining = collection.size();
+		long needed = sampleCount;
+		for (Iterator<?> iterator = collection.iterator(); iterator.hasNext() && needed > 0; remaining--) {
+			Object element = iterator.next();
+			// Selection sampling, every element is selected with probability of needed / remaining
+			if (random.nextDouble() * remaining < needed) {
+				if (!measure(0, element, null, null)) {
+					return;
+				}
+				needed--;
+			}
+		}
+	}
+	
+	private void sampleMap(Map<?, ?> map, long sampleCount, boolean keysOnly) {
+		int remaining = map.size();
+		long needed = sampleCount;
+		for (Iterator<?> iterator = map.entrySet().iterator(); iterator.hasNext() && needed > 0; remaining--) {
+			Map.Entry<?, ?> entry = (Map.Entry<?, ?>) iterator.next();
+			if (random.nextDouble() * remaining < needed) {
+				Object value = keysOnly ? null : entry.getValue();
+				if (!measure(JvmUtil.shallowSizeOf(entry), entry.getKey(), value, entry)) {
+					return;
+				}
+				needed--;
+			}
+		}
+	}
+	
+	/**
+	 * Samples elements by selection sampling over indexes, so sampled indexes are distinct 
+	 * and elements are visited in the order of indexes.
+	 */
+	private void sampleIndexes(int length, long sampleCount, Object[] array, List<?> list) {
+		long needed = sampleCount;
+		for (int i = 0; i < length && needed > 0; i++) {
+			if (random.nextDouble() * (length - i) < needed) {
+				Object element = array != null ? array[i] : list.get(i);
+				if (!measure(0, element, null, null)) {
+					return;
+				}
+				needed--;
+			}
+		}
+	}
+	
+	/**
+	 * Measures deep size of sampled element and returns <code>false</code> if time budget is exceeded.
+	 */
+	private boolean measure(long overhead, Object element, Object value, Object entry) {
+		if (System.nanoTime() > deadline) {
+			budgetExceeded = true;
+			return false;
+		}
+		visited.clear();
+		// Container is excluded, so back references from elements to it are not followed
+		visited.add(root);
+		if (entry != null) {
+			visited.add(entry);
+		}
+		if (element != null) {
+			stack.push(element);
+		}
+		if (value != null) {
+			stack.push(value);
+		}
+		double size = overhead + ObjectGraphSizer.traverse(stack, visited, classInfos, null);
+		sampledCount++;
+		sum += size;
+		sumOfSquares += size * size;
+		return true;
+	}
+	
+	/**
+	 * Finds the map which backs a collection (such as map of {@link java.util.HashSet}).
+	 */
+	private static Map<?, ?> delegateMapOf(Object container) {
+		if (!(container instanceof Collection<?>)) {
+			return null;
+		}
+		for (Object o : referencesOf(container)) {
+			if (o instanceof Map<?, ?>) {
+				return (Map<?, ?>) o;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Gets shallow size of container and arrays (such as hash tables) referenced directly by container.
+	 */
+	private static long shallowSizeOfContainer(Object container) {
+		long size = JvmUtil.shallowSizeOf(container);
+		for (Object o : referencesOf(container)) {
+			if (o instanceof Object[]) {
+				size += JvmUtil.shallowSizeOf(o);
+			}
+		}
+		return size;
+	}
+	
+	private static Object[] referencesOf(Object obj) {
+		long[] offsets = JvmUtil.getClassInfo(obj.getClass()).referenceFieldOffsets;
+		ArrayList<Object> references = new ArrayList<Object>(offsets.length);
+		for (long offset : offsets) {
+			Object o = JvmUtil.getUnsafe().getObject(obj, offset);
+			if (o != null) {
+				references.add(o);
+			}
+		}
+		return references.toArray();
+	}
+	
+}
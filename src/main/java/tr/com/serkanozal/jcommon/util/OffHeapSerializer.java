@@ -0,0 +1,580 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package tr.com.serkanozal.jcommon.util;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import sun.misc.Unsafe;
+
+/**
+ * @author Serkan ÖZAL
+ * 
+ * Serializes objects into native memory or {@link ByteBuffer} regions by copying their field contents 
+ * as they are laid out in heap, and deserializes them by allocating instances without constructors 
+ * and copying contents back. Layouts are computed once per class from field offsets and cached.
+ * 
+ * Adjacent primitive fields are merged and copied by the widest aligned words which fit into them, 
+ * so an object whose primitive fields are packed together (as JVMs lay them out) is copied by a few raw reads and writes. 
+ * Transient and static fields are not serialized. Primitive arrays are copied as a single block by <code>Unsafe.copyMemory</code>. 
+ * 
+ * Reference fields (and elements of reference arrays) are serialized recursively after primitive fields 
+ * with a leading byte for <code>null</code>. Since class names are not written, 
+ * they must hold instances of exactly their declared types, which must be concrete classes, arrays or enums. 
+ * Enums are written by their ordinals. Objects must form trees: 
+ * shared objects are serialized once for every reference to them and cyclic graphs are rejected.
+ * 
+ * Data is written in native byte order and its layout depends on the JVM, 
+ * so it must be read back by the same JVM version and configuration, such as for snapshots or replication 
+ * between identical nodes.
+ */
+@SuppressWarnings("restriction")
+public class OffHeapSerializer {
+
+	public static final int MAX_DEPTH = 1024;
+	
+	private static final byte NULL = 0;
+	private static final byte NOT_NULL = 1;
+	
+	private static final int KIND_OBJECT = 0;
+	private static final int KIND_ENUM = 1;
+	private static final int KIND_PRIMITIVE_ARRAY = 2;
+	private static final int KIND_REFERENCE_ARRAY = 3;
+	
+	private static final Unsafe unsafe = JvmUtil.getUnsafe();
+	private static final long BYTE_ARRAY_BASE_OFFSET = unsafe.arrayBaseOffset(byte[].class);
+	private static final long BUFFER_ADDRESS_OFFSET = findBufferAddressOffset();
+	
+	private static final ClassMetadataCache<Layout> layoutCache = 
+			new ClassMetadataCache<Layout>() {
+				@Override
+				protected Layout computeValue(Class<?> clazz) {
+					return createLayout(clazz);
+				}
+			};
+	
+	private OffHeapSerializer() {
+		
+	}
+	
+	private static long findBufferAddressOffset() {
+		try {
+			return unsafe.objectFieldOffset(Buffer.class.getDeclaredField("address"));
+		}
+		catch (NoSuchFieldException e) {
+			throw new RuntimeException("Unable to find address field of buffers", e);
+		}
+	}
+	
+	/**
+	 * Gets size of serialized form of given object in bytes.
+	 */
+	public static long sizeOf(Object obj) {
+		return sizeOf(obj, rootLayoutOf(obj), 0);
+	}
+	
+	/**
+	 * Serializes given object into native memory region at given address.
+	 * 
+	 * @return count of written bytes
+	 * @throws IndexOutOfBoundsException if serialized form doesn't fit into region
+	 */
+	public static long serialize(Object obj, long address, long capacity) {
+		Layout layout = rootLayoutOf(obj);
+		Region region = new Region(null, address, address + capacity);
+		write(obj, layout, region, 0);
+		return region.offset - address;
+	}
+	
+	/**
+	 * Serializes given object into given buffer at its position and advances its position.
+	 * 
+	 * @return count of written bytes
+	 * @throws IndexOutOfBoundsException if serialized form doesn't fit into remaining part of buffer
+	 * @throws ReadOnlyBufferException if buffer is read-only
+	 */
+	public static int serialize(Object obj, ByteBuffer buffer) {
+		Layout layout = rootLayoutOf(obj);
+		Region region = regionOf(buffer, true);
+		long start = region.offset;
+		write(obj, layout, region, 0);
+		int size = (int) (region.offset - start);
+		buffer.position(buffer.position() + size);
+		return size;
+	}
+	
+	/**
+	 * Deserializes an object of given class from native memory region at given address.
+	 * 
+	 * @throws IndexOutOfBoundsException if serialized form exceeds region
+	 * @throws IllegalArgumentException if objects in serialized form are nested deeper than {@link #MAX_DEPTH}
+	 */
+	public static <T> T deserialize(Class<T> clazz, long address, long size) {
+		return clazz.cast(read(layoutOf(clazz), new Region(null, address, address + size), 0));
+	}
+	
+	/**
+	 * Deserializes an object of given class from given buffer at its position and advances its position.
+	 */
+	public static <T> T deserialize(Class<T> clazz, ByteBuffer buffer) {
+		Region region = regionOf(buffer, false);
+		long start = region.offset;
+		T obj = clazz.cast(read(layoutOf(clazz), region, 0));
+		buffer.position(buffer.position() + (int) (region.offset - start));
+		return obj;
+	}
+	
+	private static Layout rootLayoutOf(Object obj) {
+		if (obj == null) {
+			throw new IllegalArgumentException("Object to be serialized must not be null");
+		}
+		if (obj instanceof Enum<?>) {
+			return layoutOf(((Enum<?>) obj).getDeclaringClass());
+		}
+		return layoutOf(obj.getClass());
+	}
+	
+	private static Region regionOf(ByteBuffer buffer, boolean write) {
+		// Read-only direct buffers can be written through their addresses, so they are checked explicitly
+		if (write && buffer.isReadOnly()) {
+			throw new ReadOnlyBufferException();
+		}
+		if (buffer.isDirect()) {
+			long address = unsafe.getLong(buffer, BUFFER_ADDRESS_OFFSET) + buffer.position();
+			return new Region(null, address, address + buffer.remaining());
+		}
+		if (buffer.hasArray()) {
+			long offset = BYTE_ARRAY_BASE_OFFSET + buffer.arrayOffset() + buffer.position();
+			return new Region(buffer.array(), offset, offset + buffer.remaining());
+		}
+		throw new IllegalArgumentException("Read-only heap buffers are not supported");
+	}
+	
+	private static Layout layoutOf(Class<?> clazz) {
+		return layoutCache.get(clazz);
+	}
+	
+	private static Layout valueLayoutOf(Object value, Class<?> declaredType) {
+		Class<?> clazz = value.getClass();
+		if (clazz != declaredType) {
+			// Constants of enums with bodies are instances of anonymous sub classes
+			if (!(value instanceof Enum<?>) || ((Enum<?>) value).getDeclaringClass() != declaredType) {
+				throw new IllegalArgumentException(
+						"Instance of " + clazz.getName() + " cannot be serialized as " + declaredType.getName() + 
+						" since class names are not serialized");
+			}
+			clazz = declaredType;
+		}
+		return layoutOf(clazz);
+	}
+	
+	private static void checkDepth(int depth) {
+		if (depth > MAX_DEPTH) {
+			throw new IllegalArgumentException("Object graph is deeper than " + MAX_DEPTH + " or it is cyclic");
+		}
+	}
+	
+	private static long sizeOf(Object obj, Layout layout, int depth) {
+		checkDepth(depth);
+		switch (layout.kind) {
+			case KIND_ENUM:
+				return JvmUtil.INT_SIZE;
+			case KIND_PRIMITIVE_ARRAY:
+				return JvmUtil.INT_SIZE + (long) layout.indexScale * Array.getLength(obj);
+			case KIND_REFERENCE_ARRAY:
+				Object[] array = (Object[]) obj;
+				long arraySize = JvmUtil.INT_SIZE + array.length;
+				Class<?> componentType = layout.referenceType(0);
+				for (Object element : array) {
+					if (element != null) {
+						arraySize += sizeOf(element, valueLayoutOf(element, componentType), depth + 1);
+					}
+				}
+				return arraySize;
+			default:
+				long size = layout.primitiveSize + layout.referenceOffsets.length;
+				for (int i = 0; i < layout.referenceOffsets.length; i++) {
+					Object value = unsafe.getObject(obj, layout.referenceOffsets[i]);
+					if (value != null) {
+						size += sizeOf(value, valueLayoutOf(value, layout.referenceType(i)), depth + 1);
+					}
+				}
+				return size;
+		}
+	}
+	
+	private static void write(Object obj, Layout layout, Region region, int depth) {
+		checkDepth(depth);
+		switch (layout.kind) {
+			case KIND_ENUM:
+				region.putInt(((Enum<?>) obj).ordinal());
+				break;
+			case KIND_PRIMITIVE_ARRAY:
+				int length = Array.getLength(obj);
+				region.putInt(length);
+				region.copyFrom(obj, layout.baseOffset, (long) layout.indexScale * length);
+				break;
+			case KIND_REFERENCE_ARRAY:
+				Object[] array = (Object[]) obj;
+				Class<?> componentType = layout.referenceType(0);
+				region.putInt(array.length);
+				for (Object element : array) {
+					writeReference(element, componentType, region, depth);
+				}
+				break;
+			default:
+				for (int i = 0; i < layout.wordOffsets.length; i++) {
+					region.putWord(obj, layout.wordOffsets[i], layout.wordSizes[i]);
+				}
+				for (int i = 0; i < layout.referenceOffsets.length; i++) {
+					writeReference(unsafe.getObject(obj, layout.referenceOffsets[i]), layout.referenceType(i), region, depth);
+				}
+		}
+	}
+	
+	private static void writeReference(Object value, Class<?> declaredType, Region region, int depth) {
+		if (value == null) {
+			region.putByte(NULL);
+		}
+		else {
+			Layout layout = valueLayoutOf(value, declaredType);
+			region.putByte(NOT_NULL);
+			write(value, layout, region, depth + 1);
+		}
+	}
+	
+	private static Object read(Layout layout, Region region, int depth) {
+		// Corrupted input may nest objects endlessly, so depth is checked as it is while writing
+		checkDepth(depth);
+		switch (layout.kind) {
+			case KIND_ENUM:
+				return layout.enumConstant(region.getInt());
+			case KIND_PRIMITIVE_ARRAY: {
+				int length = region.getArrayLength(layout.indexScale);
+				Object array = Array.newInstance(layout.referenceType(0), length);
+				region.copyTo(array, layout.baseOffset, (long) layout.indexScale * length);
+				return array;
+			}
+			case KIND_REFERENCE_ARRAY: {
+				// Every element takes at least its null marker
+				int length = region.getArrayLength(1);
+				Class<?> componentType = layout.referenceType(0);
+				Layout componentLayout = layoutOf(componentType);
+				Object[] array = (Object[]) Array.newInstance(componentType, length);
+				for (int i = 0; i < length; i++) {
+					array[i] = readReference(componentLayout, region, depth);
+				}
+				return array;
+			}
+			default:
+				Object obj;
+				try {
+					obj = unsafe.allocateInstance(layout.type());
+				} 
+				catch (InstantiationException e) {
+					throw new IllegalArgumentException("Unable to instantiate class: " + layout.type().getName(), e);
+				}
+				for (int i = 0; i < layout.wordOffsets.length; i++) {
+					region.getWord(obj, layout.wordOffsets[i], layout.wordSizes[i]);
+				}
+				for (int i = 0; i < layout.referenceOffsets.length; i++) {
+					unsafe.putObject(obj, layout.referenceOffsets[i], readReference(layoutOf(layout.referenceType(i)), region, depth));
+				}
+				return obj;
+		}
+	}
+	
+	private static Object readReference(Layout layout, Region region, int depth) {
+		return region.getByte() == NULL ? null : read(layout, region, depth + 1);
+	}
+	
+	private static Layout createLayout(Class<?> clazz) {
+		if (clazz.isArray()) {
+			Class<?> componentType = clazz.getComponentType();
+			if (componentType.isPrimitive()) {
+				return new Layout(	clazz, KIND_PRIMITIVE_ARRAY, componentType, 
+									unsafe.arrayBaseOffset(clazz), unsafe.arrayIndexScale(clazz));
+			}
+			checkSerializableType(componentType);
+			return new Layout(clazz, KIND_REFERENCE_ARRAY, componentType, 0, 0);
+		}
+		if (clazz.isEnum()) {
+			return new Layout(clazz, KIND_ENUM, null, 0, 0);
+		}
+		checkSerializableType(clazz);
+		
+		List<Field> fields = new ArrayList<Field>();
+		for (Class<?> c = clazz; c != null; c = c.getSuperclass()) {
+			for (Field f : c.getDeclaredFields()) {
+				if (!Modifier.isStatic(f.getModifiers())) {
+					fields.add(f);
+				}
+			}
+		}
+		Collections.sort(fields, new Comparator<Field>() {
+			@Override
+			public int compare(Field f1, Field f2) {
+				long offset1 = unsafe.objectFieldOffset(f1);
+				long offset2 = unsafe.objectFieldOffset(f2);
+				return offset1 < offset2 ? -1 : (offset1 == offset2 ? 0 : 1);
+			}
+		});
+		
+		List<Long> wordOffsets = new ArrayList<Long>();
+		List<Integer> wordSizes = new ArrayList<Integer>();
+		List<Long> referenceOffsets = new ArrayList<Long>();
+		List<Class<?>> referenceTypes = new ArrayList<Class<?>>();
+		long runStart = -1;
+		long runEnd = -1;
+		for (Field f : fields) {
+			long offset = unsafe.objectFieldOffset(f);
+			boolean serialized = !Modifier.isTransient(f.getModifiers());
+			if (serialized && f.getType().isPrimitive()) {
+				// Only adjacent fields are merged, since gaps may hold fields which are invisible to reflection
+				if (offset != runEnd) {
+					addRun(wordOffsets, wordSizes, runStart, runEnd);
+					runStart = offset;
+				}
+				runEnd = offset + JvmUtil.sizeOfType(f.getType());
+			}
+			else {
+				addRun(wordOffsets, wordSizes, runStart, runEnd);
+				runStart = -1;
+				runEnd = -1;
+				if (serialized) {
+					referenceOffsets.add(offset);
+					referenceTypes.add(f.getType());
+				}
+			}
+		}
+		addRun(wordOffsets, wordSizes, runStart, runEnd);
+		return new Layout(clazz, wordOffsets, wordSizes, referenceOffsets, referenceTypes);
+	}
+	
+	/**
+	 * Splits run of adjacent fields into the widest words which are aligned to their sizes.
+	 */
+	private static void addRun(List<Long> wordOffsets, List<Integer> wordSizes, long runStart, long runEnd) {
+		if (runStart < 0) {
+			return;
+		}
+		long offset = runStart;
+		while (offset < runEnd) {
+			int wordSize = JvmUtil.LONG_SIZE;
+			while (wordSize > 1 && (offset % wordSize != 0 || offset + wordSize > runEnd)) {
+				wordSize >>= 1;
+			}
+			wordOffsets.add(offset);
+			wordSizes.add(wordSize);
+			offset += wordSize;
+		}
+	}
+	
+	private static void checkSerializableType(Class<?> clazz) {
+		if (clazz.isInterface() || (Modifier.isAbstract(clazz.getModifiers()) && !clazz.isArray())) {
+			throw new IllegalArgumentException(
+					"Abstract type " + clazz.getName() + " cannot be serialized since class names are not serialized");
+		}
+	}
+	
+	private static long[] toLongArray(List<Long> list) {
+		long[] array = new long[list.size()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = list.get(i);
+		}
+		return array;
+	}
+	
+	/**
+	 * Serialized form of a class. Classes are referred weakly, since layouts of classes 
+	 * which may be unloaded must not refer to them. They are reachable while their instances are serialized 
+	 * or while they are given for deserialization, so they are never cleared while they are used.
+	 */
+	static class Layout {
+		
+		final int kind;
+		final WeakReference<Class<?>> typeRef;
+		// Primitive fields are copied by words of 1, 2, 4 or 8 bytes
+		final long[] wordOffsets;
+		final int[] wordSizes;
+		final long primitiveSize;
+		final long[] referenceOffsets;
+		// Types of reference fields, or component type of array
+		final WeakReference<?>[] referenceTypeRefs;
+		final long baseOffset;
+		final int indexScale;
+		
+		Layout(Class<?> type, int kind, Class<?> componentType, long baseOffset, int indexScale) {
+			this.kind = kind;
+			this.typeRef = new WeakReference<Class<?>>(type);
+			this.wordOffsets = new long[0];
+			this.wordSizes = new int[0];
+			this.primitiveSize = 0;
+			this.referenceOffsets = new long[0];
+			this.referenceTypeRefs = new WeakReference<?>[] { new WeakReference<Class<?>>(componentType) };
+			this.baseOffset = baseOffset;
+			this.indexScale = indexScale;
+		}
+		
+		Layout(	Class<?> type, List<Long> wordOffsets, List<Integer> wordSizes, 
+				List<Long> referenceOffsets, List<Class<?>> referenceTypes) {
+			this.kind = KIND_OBJECT;
+			this.typeRef = new WeakReference<Class<?>>(type);
+			this.wordOffsets = toLongArray(wordOffsets);
+			this.wordSizes = new int[wordSizes.size()];
+			long primitiveSize = 0;
+			for (int i = 0; i < this.wordSizes.length; i++) {
+				this.wordSizes[i] = wordSizes.get(i);
+				primitiveSize += this.wordSizes[i];
+			}
+			this.primitiveSize = primitiveSize;
+			this.referenceOffsets = toLongArray(referenceOffsets);
+			this.referenceTypeRefs = new WeakReference<?>[referenceTypes.size()];
+			for (int i = 0; i < referenceTypeRefs.length; i++) {
+				referenceTypeRefs[i] = new WeakReference<Class<?>>(referenceTypes.get(i));
+			}
+			this.baseOffset = 0;
+			this.indexScale = 0;
+		}
+		
+		Class<?> type() {
+			return typeRef.get();
+		}
+		
+		Class<?> referenceType(int i) {
+			return (Class<?>) referenceTypeRefs[i].get();
+		}
+		
+		Object enumConstant(int ordinal) {
+			return type().getEnumConstants()[ordinal];
+		}
+		
+	}
+	
+	/**
+	 * Bounded memory region in native memory (<code>base</code> is <code>null</code>) or in a byte array.
+	 */
+	static class Region {
+		
+		final Object base;
+		final long limit;
+		long offset;
+		
+		Region(Object base, long offset, long limit) {
+			this.base = base;
+			this.offset = offset;
+			this.limit = limit;
+		}
+		
+		long reserve(long size) {
+			long position = offset;
+			if (size > limit - position) {
+				throw new IndexOutOfBoundsException(
+						"Region has " + (limit - position) + " bytes but " + size + " bytes are required");
+			}
+			offset = position + size;
+			return position;
+		}
+		
+		void putByte(byte value) {
+			unsafe.putByte(base, reserve(1), value);
+		}
+		
+		byte getByte() {
+			return unsafe.getByte(base, reserve(1));
+		}
+		
+		void putInt(int value) {
+			unsafe.putInt(base, reserve(JvmUtil.INT_SIZE), value);
+		}
+		
+		int getInt() {
+			return unsafe.getInt(base, reserve(JvmUtil.INT_SIZE));
+		}
+		
+		/**
+		 * Reads length of an array and checks that its elements can be in the rest of region, 
+		 * so a corrupted length never causes a huge allocation.
+		 */
+		int getArrayLength(long minElementSize) {
+			int length = getInt();
+			if (length < 0 || length * minElementSize > limit - offset) {
+				throw new IndexOutOfBoundsException(
+						"Region has " + (limit - offset) + " bytes but array length is " + length);
+			}
+			return length;
+		}
+		
+		/**
+		 * Writes word of given object at given offset. 
+		 * <code>Unsafe.copyMemory</code> only accepts primitive arrays as heap objects, so fields are copied by raw reads.
+		 */
+		void putWord(Object src, long srcOffset, int size) {
+			long position = reserve(size);
+			switch (size) {
+				case JvmUtil.LONG_SIZE:
+					unsafe.putLong(base, position, unsafe.getLong(src, srcOffset));
+					break;
+				case JvmUtil.INT_SIZE:
+					unsafe.putInt(base, position, unsafe.getInt(src, srcOffset));
+					break;
+				case JvmUtil.SHORT_SIZE:
+					unsafe.putShort(base, position, unsafe.getShort(src, srcOffset));
+					break;
+				default:
+					unsafe.putByte(base, position, unsafe.getByte(src, srcOffset));
+			}
+		}
+		
+		void getWord(Object dest, long destOffset, int size) {
+			long position = reserve(size);
+			switch (size) {
+				case JvmUtil.LONG_SIZE:
+					unsafe.putLong(dest, destOffset, unsafe.getLong(base, position));
+					break;
+				case JvmUtil.INT_SIZE:
+					unsafe.putInt(dest, destOffset, unsafe.getInt(base, position));
+					break;
+				case JvmUtil.SHORT_SIZE:
+					unsafe.putShort(dest, destOffset, unsafe.getShort(base, position));
+					break;
+				default:
+					unsafe.putByte(dest, destOffset, unsafe.getByte(base, position));
+			}
+		}
+		
+		void copyFrom(Object src, long srcOffset, long size) {
+			unsafe.copyMemory(src, srcOffset, base, reserve(size), size);
+		}
+		
+		void copyTo(Object dest, long destOffset, long size) {
+			unsafe.copyMemory(base, reserve(size), dest, destOffset, size);
+		}
+		
+	}
+	
+}
@@ -17,12 +17,18 @@
 package tr.com.serkanozal.jcommon.util;
 
 import java.lang.annotation.Annotation;
+import java.lang.ref.SoftReference;
+import java.lang.reflect.AccessibleObject;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.log4j.Logger;
 
@@ -33,226 +39,245 @@ public class ReflectionUtil {
 
 	private static final Logger logger = LogUtil.getLogger();
 	
+	// Marks members which don't exist, so they are not looked up again
+	private static final Object NOT_FOUND = new Object();
+	private static final MethodAccessor[] NO_METHOD_ACCESSORS = new MethodAccessor[0];
+	
+	private static final ClassMetadataCache<MemberCache> memberCaches = 
+			new ClassMetadataCache<MemberCache>() {
+				@Override
+				protected MemberCache computeValue(Class<?> clazz) {
+					return new MemberCache(ClassMetadataCache.isPermanent(clazz));
+				}
+			};
+	
 	private ReflectionUtil() {
 		
 	}
 	
+	/**
+	 * Gets field with given name from class or from its nearest super class which declares it. 
+	 * Field is resolved once and cached by the class.
+	 */
 	public static Field getField(Class<?> cls, String fieldName) {
-		while (cls != null && cls.equals(Object.class) == false) {
-			Field field = null;
+		FieldAccessor accessor = getFieldAccessor(cls, fieldName);
+		return accessor != null ? accessor.getField() : null;
+	}
+	
+	/**
+	 * Gets cached accessor of field with given name from class or from its nearest super class which declares it. 
+	 * Returns <code>null</code> if there is no such field.
+	 */
+	public static FieldAccessor getFieldAccessor(Class<?> cls, String fieldName) {
+		if (cls == null) {
+			return null;
+		}
+		MemberCache memberCache = memberCaches.get(cls);
+		Object accessor = memberCache.get(memberCache.fields, fieldName);
+		if (accessor == null) {
+			Field field = findField(cls, fieldName);
+			accessor = field != null ? new FieldAccessor(field) : NOT_FOUND;
+			memberCache.put(memberCache.fields, fieldName, accessor);
+		}
+		return accessor != NOT_FOUND ? (FieldAccessor) accessor : null;
+	}
+	
+	private static Field findField(Class<?> cls, String fieldName) {
+		for (Class<?> c = cls; c != null && c.equals(Object.class) == false; c = c.getSuperclass()) {
 			try {
-				field = cls.getDeclaredField(fieldName);
+				return c.getDeclaredField(fieldName);
 			} 
 			catch (SecurityException e) {
-				logger.error("Unable to get field " + fieldName + " from class " + cls.getName(), e);
+				logger.error("Unable to get field " + fieldName + " from class " + c.getName(), e);
 			} 
 			catch (NoSuchFieldException e) {
-				logger.warn("Unable to get field " + fieldName + " from class " + cls.getName() + ". " + 
-							 "If there is any super class for class " + cls.getName() + ", it will be tried for getting field ...");
+				// Super class is tried
 			}
-			if (field != null) {
-				field.setAccessible(true);
-				return field;
-			}
-			cls = cls.getSuperclass();
+		}
+		if (logger.isDebugEnabled()) {
+			logger.debug("Unable to find field " + fieldName + " in class " + cls.getName() + " or its super classes");
 		}
 		return null;
 	}
 	
+	/**
+	 * Gets all fields of class and its super classes (super class fields first). 
+	 * Returned list is shared and cannot be modified.
+	 */
 	public static List<Field> getAllFields(Class<?> cls) {
-		List<Field> fields = new ArrayList<Field>();
-		createFields(cls, fields, null);
-		return fields;
+		return getMemberIndex(cls).fields;
 	}
 
+	/**
+	 * Gets fields of class and its super classes annotated with given annotation (super class fields first). 
+	 * Returned list is shared and cannot be modified.
+	 */
 	public static List<Field> getAllFields(Class<?> cls, Class<? extends Annotation> annotationFilter) {
-		List<Field> fields = new ArrayList<Field>();
-		createFields(cls, fields, annotationFilter);
-		return fields;
-	}
-	
-	private static void createFields(Class<?> cls, List<Field> fields, 
-			Class<? extends Annotation> annotationFilter) {
-		if (cls == null || cls.equals(Object.class)) {
-			return;
+		if (annotationFilter == null) {
+			return getAllFields(cls);
 		}
-		
-		Class<?> superCls = cls.getSuperclass();
-		createFields(superCls, fields, annotationFilter);
-		
-		for (Field f : cls.getDeclaredFields()) {
-			f.setAccessible(true);
-			if (annotationFilter == null) {
-				fields.add(f);
-			}	
-			else {
-				if (f.getAnnotation(annotationFilter) != null) {
-					fields.add(f);
-				}	
-			}
-		}	
+		return getMemberIndex(cls).getFields(annotationFilter);
 	}
 	
+	/**
+	 * Gets the first method with given name from class or from its nearest super class which declares it. 
+	 * Methods are resolved once and cached by the class.
+	 */
 	public static Method getMethod(Class<?> cls, String methodName) {
-		while (cls != null && cls.equals(Object.class) == false) {
-			Method method = null;
-			for (Method m : cls.getDeclaredMethods()) {
-				if (m.getName().equals(methodName)) {
-					method = m;
-					break;
-				}
-			}
-			if (method == null) {
-				logger.warn("Unable to get method " + methodName + " from class " + cls.getName() + ". " + 
-							 "If there is any super class for class " + cls.getName() + ", it will be tried for getting method ...");
-			}
-			else {
-				method.setAccessible(true);
-				return method;
+		MethodAccessor accessor = getMethodAccessor(cls, methodName);
+		return accessor != null ? accessor.getMethod() : null;
+	}
+	
+	/**
+	 * Gets method with given name and parameter types (no parameter if it is <code>null</code>) 
+	 * from class or from its nearest super class which declares it. 
+	 * Methods are resolved once and cached by the class.
+	 */
+	public static Method getMethod(Class<?> cls, String methodName, Class<?>[] paramTypes) {
+		MethodAccessor accessor = getMethodAccessor(cls, methodName, paramTypes);
+		return accessor != null ? accessor.getMethod() : null;
+	}
+	
+	/**
+	 * Gets cached accessor of the first method with given name like {@link #getMethod(Class, String)}. 
+	 * Returns <code>null</code> if there is no such method.
+	 */
+	public static MethodAccessor getMethodAccessor(Class<?> cls, String methodName) {
+		MethodAccessor[] candidates = getMethodCandidates(cls, methodName);
+		return candidates.length > 0 ? candidates[0] : null;
+	}
+	
+	/**
+	 * Gets cached accessor of method with given name and parameter types like {@link #getMethod(Class, String, Class[])}. 
+	 * Returns <code>null</code> if there is no such method.
+	 */
+	public static MethodAccessor getMethodAccessor(Class<?> cls, String methodName, Class<?>[] paramTypes) {
+		for (MethodAccessor candidate : getMethodCandidates(cls, methodName)) {
+			if (candidate.hasParameterTypes(paramTypes)) {
+				return candidate;
 			}
-			cls = cls.getSuperclass();
 		}
 		return null;
 	}
 	
-	public static Method getMethod(Class<?> cls, String methodName, Class<?>[] paramTypes) {
-		while (cls != null && cls.equals(Object.class) == false) {
-			Method method = null;
-			for (Method m : cls.getDeclaredMethods()) {
-				if (m.getName().equals(methodName)) {
-					Class<?>[] methodParamTypes = m.getParameterTypes();
-					if (paramTypes == null) {
-						if (methodParamTypes.length == 0) {
-							method = m;
-							break;
-						}	
-					}	
-					else {
-						if (paramTypes.length == methodParamTypes.length) {
-							boolean allParamsAreSame = true;
-							int length = paramTypes.length;
-							for (int i = 0; i < length; i++) {
-								if (paramTypes[i].equals(methodParamTypes[i]) == false) {
-									allParamsAreSame = false;
-									break;
-								}
-							}
-							if (allParamsAreSame) {
-								method = m;
-								break;
-							}
-						}
+	/**
+	 * Gets accessors of all methods with given name in class and in its super classes, 
+	 * ordered from class to its super classes and by declaration order in every class. 
+	 * So looking up by parameter types doesn't allocate anything after methods are resolved.
+	 */
+	private static MethodAccessor[] getMethodCandidates(Class<?> cls, String methodName) {
+		if (cls == null) {
+			return NO_METHOD_ACCESSORS;
+		}
+		MemberCache memberCache = memberCaches.get(cls);
+		MethodAccessor[] candidates = (MethodAccessor[]) memberCache.get(memberCache.methods, methodName);
+		if (candidates == null) {
+			List<MethodAccessor> accessors = new ArrayList<MethodAccessor>();
+			for (Class<?> c = cls; c != null && c.equals(Object.class) == false; c = c.getSuperclass()) {
+				for (Method m : c.getDeclaredMethods()) {
+					if (m.getName().equals(methodName)) {
+						accessors.add(new MethodAccessor(m));
 					}
 				}
 			}
-			if (method == null) {
-				logger.warn("Unable to get method " + methodName + " from class " + cls.getName() + ". " + 
-							 "If there is any super class for class " + cls.getName() + ", it will be tried for getting method ...");
+			if (accessors.isEmpty() && logger.isDebugEnabled()) {
+				logger.debug("Unable to find method " + methodName + " in class " + cls.getName() + " or its super classes");
+			}
+			candidates = accessors.toArray(new MethodAccessor[accessors.size()]);
+			memberCache.put(memberCache.methods, methodName, candidates);
+		}
+		return candidates;
+	}
+	
+	/**
+	 * Gets cached accessor of bean properties of class. 
+	 * Accessor class is generated once per class and reflection is used if it cannot be generated.
+	 * 
+	 * @see BeanAccessor
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> BeanAccessor<T> getBeanAccessor(Class<T> cls) {
+		MemberCache memberCache = memberCaches.get(cls);
+		Object accessor = memberCache.getBeanAccessor();
+		if (accessor == null) {
+			accessor = createBeanAccessor(cls);
+			memberCache.setBeanAccessor(accessor);
+		}
+		return (BeanAccessor<T>) accessor;
+	}
+	
+	private static <T> BeanAccessor<T> createBeanAccessor(Class<T> cls) {
+		BeanAccessor.Property[] properties = BeanAccessor.findProperties(cls);
+		if (BeanAccessorGenerator.canGenerate(cls, properties)) {
+			try {
+				return BeanAccessorGenerator.generate(cls, properties);
+			}
+			catch (Exception e) {
+				logger.warn("Unable to generate accessor class for class " + cls.getName() + ". Reflection will be used", e);
 			}
-			else {
-				method.setAccessible(true);
-				return method;
+			catch (LinkageError e) {
+				logger.warn("Unable to generate accessor class for class " + cls.getName() + ". Reflection will be used", e);
 			}
-			cls = cls.getSuperclass();
 		}
-		return null;
+		return new ReflectiveBeanAccessor<T>(cls, properties);
 	}
 	
+	/**
+	 * Gets all methods of class and its super classes (super class methods first). 
+	 * Returned list is shared and cannot be modified.
+	 */
 	public static List<Method> getAllMethods(Class<?> cls) {
-		List<Method> methods = new ArrayList<Method>();
-		createMethods(cls, methods, null);
-		return methods;
+		return getMemberIndex(cls).methods;
 	}
 	
+	/**
+	 * Gets methods of class and its super classes annotated with given annotation (super class methods first). 
+	 * Returned list is shared and cannot be modified.
+	 */
 	public static List<Method> getAllMethods(Class<?> cls, Class<? extends Annotation> annotationFilter) {
-		List<Method> methods = new ArrayList<Method>();
-		createMethods(cls, methods, annotationFilter);
-		return methods;
+		if (annotationFilter == null) {
+			return getAllMethods(cls);
+		}
+		return getMemberIndex(cls).getMethods(annotationFilter);
 	}
 	
-	private static void createMethods(Class<?> cls, List<Method> methods, 
-			Class<? extends Annotation> annotationFilter) {
+	/**
+	 * Gets index of members of class which is built once by extending index of its super class.
+	 */
+	private static MemberIndex getMemberIndex(Class<?> cls) {
 		if (cls == null || cls.equals(Object.class)) {
-			return;
+			return MemberIndex.EMPTY;
 		}
-		
-		Class<?> superCls = cls.getSuperclass();
-		createMethods(superCls, methods, annotationFilter);
-		
-		for (Method m : cls.getDeclaredMethods()) {
-			m.setAccessible(true);
-			if (annotationFilter == null) {
-				methods.add(m);
-			}	
-			else {
-				if (m.getAnnotation(annotationFilter) != null) {
-					methods.add(m);
-				}	
+		MemberCache memberCache = memberCaches.get(cls);
+		MemberIndex memberIndex = memberCache.getMemberIndex();
+		if (memberIndex == null) {
+			memberIndex = new MemberIndex(getMemberIndex(cls.getSuperclass()), cls);
+			memberCache.setMemberIndex(memberIndex);
+		}
+		return memberIndex;
+	}
+	
+	private static void makeAccessible(AccessibleObject member) {
+		try {
+			member.setAccessible(true);
+		}
+		catch (RuntimeException e) {
+			// Members of classes in modules which are not opened cannot be made accessible on Java 9+
+			if (logger.isDebugEnabled()) {
+				logger.debug("Unable to make " + member + " accessible", e);
 			}
-		}	
+		}
 	}
 	
 	public static boolean isPrimitiveType(String clsName) {
-		if (clsName.equalsIgnoreCase("boolean")) {
-			return true;
-		}	
-		else if (clsName.equalsIgnoreCase("byte")) {
-			return true;
-		}
-		else if (clsName.equalsIgnoreCase("char")) {
-			return true;
-		}
-		else if (clsName.equalsIgnoreCase("short")) {
-			return true;
-		}	
-		else if (clsName.equalsIgnoreCase("int")) {
-			return true;
-		}	
-		else if (clsName.equalsIgnoreCase("float")) {
-			return true;
-		}	
-		else if (clsName.equalsIgnoreCase("long")) {
-			return true;
-		}	
-		else if (clsName.equalsIgnoreCase("double")) {
-			return true;
-		}	
-		else {
-			return false;
-		}
+		return TypeDescriptor.ofPrimitiveName(clsName) != null;
 	}
 	
+	/**
+	 * Returns <code>true</code> if class is a primitive type, a wrapper of a primitive type or {@link String}.
+	 */
 	public static boolean isPrimitiveType(Class<?> cls) {
-		if (cls.equals(boolean.class) || cls.equals(Boolean.class)) {
-			return true;
-		}	
-		else if (cls.equals(byte.class) || cls.equals(Byte.class)) {
-			return true;
-		}	
-		else if (cls.equals(char.class) || cls.equals(Character.class)) {
-			return true;
-		}	
-		else if (cls.equals(short.class) || cls.equals(Short.class)) {
-			return true;
-		}	
-		else if (cls.equals(int.class) || cls.equals(Integer.class)) {
-			return true;
-		}	
-		else if (cls.equals(float.class) || cls.equals(Float.class)) {
-			return true;
-		}	
-		else if (cls.equals(long.class) || cls.equals(Long.class)) {
-			return true;
-		}	
-		else if (cls.equals(double.class) || cls.equals(Double.class)) {
-			return true;
-		}
-		else if (cls.equals(String.class)) {
-			return true;
-		}
-		else {
-			return false;
-		}	
+		return TypeDescriptor.of(cls).is(TypeDescriptor.PRIMITIVE | TypeDescriptor.WRAPPER | TypeDescriptor.STRING);
 	}
 	
 	public static boolean isNonPrimitiveType(String clsName) {
@@ -264,127 +289,184 @@ public class ReflectionUtil {
 	}
 
 	public static boolean isComplexType(Class<?> cls) {
-		if (isPrimitiveType(cls)) {
-			return false;
+		return !TypeDescriptor.of(cls).is(TypeDescriptor.PRIMITIVE | TypeDescriptor.WRAPPER | TypeDescriptor.STRING | 
+										  TypeDescriptor.ENUM | TypeDescriptor.COLLECTION);
+	}
+	
+	public static boolean isCollectionType(Class<?> cls) {
+		return TypeDescriptor.of(cls).is(TypeDescriptor.COLLECTION);
+	}
+	
+	public static Class<?> getNonPrimitiveType(String clsName) {
+		TypeDescriptor descriptor = TypeDescriptor.ofPrimitiveName(clsName);
+		if (descriptor != null) {
+			return descriptor.wrapperType;
 		}
-		else if (cls.isEnum()) {
-			return false;
+		try {
+			return Class.forName(clsName);
+		} 
+		catch (ClassNotFoundException e) {
+			logger.error("Unable to get class " + clsName, e);
+			return null;
 		}
-		else if (cls.equals(String.class)) {
-			return false;
+	}
+	
+	public static Class<?> getNonPrimitiveType(Class<?> cls) {
+		TypeDescriptor descriptor = TypeDescriptor.of(cls);
+		return descriptor.is(TypeDescriptor.PRIMITIVE) ? descriptor.wrapperType : cls;
+	}
+	
+	/**
+	 * Returns <code>true</code> if class is an integral type (<code>byte</code>, <code>short</code>, 
+	 * <code>int</code> or <code>long</code>) or its wrapper.
+	 */
+	public static boolean isDecimalType(Class<?> cls) {
+		return TypeDescriptor.of(cls).is(TypeDescriptor.DECIMAL);
+	}	
+	
+	/**
+	 * Accessors of fields and methods of a class resolved so far by their names, accessor of its bean properties 
+	 * and index of its members. They refer to their classes, so they are held by soft references 
+	 * for classes which may be unloaded, otherwise they would never be unloaded. 
+	 * They are resolved again if they are cleared by GC.
+	 */
+	private static class MemberCache {
+		
+		private final ConcurrentMap<String, Object> fields = new ConcurrentHashMap<String, Object>();
+		private final ConcurrentMap<String, Object> methods = new ConcurrentHashMap<String, Object>();
+		private final boolean permanent;
+		private volatile Object beanAccessor;
+		private volatile Object memberIndex;
+		
+		private MemberCache(boolean permanent) {
+			this.permanent = permanent;
 		}
-		else if (isCollectionType(cls)) {
-			return false;
+		
+		private Object getBeanAccessor() {
+			return unwrap(beanAccessor);
 		}
-		else if (List.class.isAssignableFrom(cls)) {
-			return false;
+		
+		private void setBeanAccessor(Object accessor) {
+			beanAccessor = wrap(accessor);
 		}
-		else {
-			return true;
+		
+		private MemberIndex getMemberIndex() {
+			return (MemberIndex) unwrap(memberIndex);
 		}
-	}
-	
-	public static boolean isCollectionType(Class<?> cls) {
-		if (cls.isArray()) {
-			return true;
+		
+		private void setMemberIndex(MemberIndex index) {
+			memberIndex = wrap(index);
 		}
-		else if (List.class.isAssignableFrom(cls)) {
-			return true;
+		
+		private Object get(ConcurrentMap<String, Object> members, String name) {
+			return unwrap(members.get(name));
 		}
-		else if (Set.class.isAssignableFrom(cls)) {
-			return true;
+		
+		private void put(ConcurrentMap<String, Object> members, String name, Object value) {
+			members.put(name, value == NOT_FOUND ? value : wrap(value));
 		}
-		else if (Map.class.isAssignableFrom(cls)) {
-			return true;
+		
+		private Object wrap(Object value) {
+			return permanent ? value : new SoftReference<Object>(value);
 		}
-		else {
-			return false;
+		
+		private static Object unwrap(Object value) {
+			if (value instanceof SoftReference<?>) {
+				return ((SoftReference<?>) value).get();
+			}
+			return value;
 		}
+		
 	}
 	
-	public static Class<?> getNonPrimitiveType(String clsName) {
-		if (clsName.equalsIgnoreCase("boolean")) {
-			return Boolean.class;
-		}	
-		else if (clsName.equalsIgnoreCase("byte")) {
-			return Byte.class;
-		}
-		else if (clsName.equalsIgnoreCase("char")) {
-			return Character.class;
-		}
-		else if (clsName.equalsIgnoreCase("short")) {
-			return Short.class;
-		}	
-		else if (clsName.equalsIgnoreCase("int")) {
-			return Integer.class;
-		}	
-		else if (clsName.equalsIgnoreCase("float")) {
-			return Float.class;
-		}	
-		else if (clsName.equalsIgnoreCase("long")) {
-			return Long.class;
-		}	
-		else if (clsName.equalsIgnoreCase("double")) {
-			return Double.class;
-		}	
-		else {
-			try {
-				return Class.forName(clsName);
-			} 
-			catch (ClassNotFoundException e) {
-				logger.error("Unable to get class " + clsName, e);
-				return null;
+	/**
+	 * Immutable index of fields and methods of a class and its super classes, 
+	 * also grouped by types of their annotations. Members are made accessible once while index is built. 
+	 * Index of a class shares members of index of its super class.
+	 */
+	private static class MemberIndex {
+		
+		private static final MemberIndex EMPTY = new MemberIndex();
+		
+		private final List<Field> fields;
+		private final List<Method> methods;
+		private final Map<Class<? extends Annotation>, List<Field>> fieldsByAnnotation;
+		private final Map<Class<? extends Annotation>, List<Method>> methodsByAnnotation;
+		
+		private MemberIndex() {
+			this.fields = Collections.emptyList();
+			this.methods = Collections.emptyList();
+			this.fieldsByAnnotation = Collections.emptyMap();
+			this.methodsByAnnotation = Collections.emptyMap();
+		}
+		
+		private MemberIndex(MemberIndex superIndex, Class<?> cls) {
+			Field[] declaredFields = cls.getDeclaredFields();
+			Method[] declaredMethods = cls.getDeclaredMethods();
+			for (Field f : declaredFields) {
+				makeAccessible(f);
 			}
-		}	
-	}
-	
-	public static Class<?> getNonPrimitiveType(Class<?> cls) {
-		if (cls.equals(boolean.class)) {
-			return Boolean.class;
-		}	
-		else if (cls.equals(byte.class)) {
-			return Byte.class;
-		}
-		else if (cls.equals(char.class)) {
-			return Character.class;
-		}
-		else if (cls.equals(short.class)) {
-			return Short.class;
-		}	
-		else if (cls.equals(int.class)) {
-			return Integer.class;
-		}	
-		else if (cls.equals(float.class)) {
-			return Float.class;
-		}	
-		else if (cls.equals(long.class)) {
-			return Long.class;
-		}	
-		else if (cls.equals(double.class)) {
-			return Double.class;
-		}	
-		else {
-			return cls;
-		}	
-	}
-	
-	public static boolean isDecimalType(Class<?> cls) {
+			for (Method m : declaredMethods) {
+				makeAccessible(m);
+			}
+			this.fields = concat(superIndex.fields, declaredFields);
+			this.methods = concat(superIndex.methods, declaredMethods);
+			this.fieldsByAnnotation = groupByAnnotation(superIndex.fieldsByAnnotation, declaredFields);
+			this.methodsByAnnotation = groupByAnnotation(superIndex.methodsByAnnotation, declaredMethods);
+		}
 		
-		if (cls.equals(byte.class) || cls.equals(Byte.class)) {
-			return true;
-		}	
-		else if (cls.equals(short.class) || cls.equals(Short.class)) {
-			return true;
-		}	
-		else if (cls.equals(int.class) || cls.equals(Integer.class)) {
-			return true;
-		}	
-		else if (cls.equals(long.class) || cls.equals(Long.class)) {
-			return true;
-		}	
-		else {
-			return false;
+		private List<Field> getFields(Class<? extends Annotation> annotationType) {
+			List<Field> annotatedFields = fieldsByAnnotation.get(annotationType);
+			return annotatedFields != null ? annotatedFields : Collections.<Field>emptyList();
 		}
-	}	
+		
+		private List<Method> getMethods(Class<? extends Annotation> annotationType) {
+			List<Method> annotatedMethods = methodsByAnnotation.get(annotationType);
+			return annotatedMethods != null ? annotatedMethods : Collections.<Method>emptyList();
+		}
+		
+		private static <M> List<M> concat(List<M> superMembers, M[] declaredMembers) {
+			if (declaredMembers.length == 0) {
+				return superMembers;
+			}
+			List<M> members = new ArrayList<M>(superMembers.size() + declaredMembers.length);
+			members.addAll(superMembers);
+			members.addAll(Arrays.asList(declaredMembers));
+			return Collections.unmodifiableList(members);
+		}
+		
+		private static <M extends AccessibleObject> Map<Class<? extends Annotation>, List<M>> groupByAnnotation(
+				Map<Class<? extends Annotation>, List<M>> superGroups, M[] declaredMembers) {
+			Map<Class<? extends Annotation>, List<M>> declaredGroups = new HashMap<Class<? extends Annotation>, List<M>>();
+			for (M member : declaredMembers) {
+				for (Annotation annotation : member.getDeclaredAnnotations()) {
+					List<M> group = declaredGroups.get(annotation.annotationType());
+					if (group == null) {
+						group = new ArrayList<M>(1);
+						declaredGroups.put(annotation.annotationType(), group);
+					}
+					group.add(member);
+				}
+			}
+			if (declaredGroups.isEmpty()) {
+				return superGroups;
+			}
+			Map<Class<? extends Annotation>, List<M>> groups = new HashMap<Class<? extends Annotation>, List<M>>(superGroups);
+			for (Map.Entry<Class<? extends Annotation>, List<M>> e : declaredGroups.entrySet()) {
+				List<M> superGroup = superGroups.get(e.getKey());
+				if (superGroup == null) {
+					groups.put(e.getKey(), Collections.unmodifiableList(e.getValue()));
+				}
+				else {
+					List<M> group = new ArrayList<M>(superGroup.size() + e.getValue().size());
+					group.addAll(superGroup);
+					group.addAll(e.getValue());
+					groups.put(e.getKey(), Collections.unmodifiableList(group));
+				}
+			}
+			return groups;
+		}
+		
+	}
 	
 }
\ No newline at end of file
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package tr.com.serkanozal.jcommon.util;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+
+/**
+ * @author Serkan ÖZAL
+ * 
+ * {@link BeanAccessor} which accesses properties by reflection. 
+ * It is used when an accessor class cannot be generated for a bean class.
+ */
+final class ReflectiveBeanAccessor<T> extends BeanAccessor<T> {
+
+	private final Constructor<T> constructor;
+	private final MethodAccessor[] getters;
+	private final MethodAccessor[] setters;
+	private final FieldAccessor[] fields;
+	
+	ReflectiveBeanAccessor(Class<T> beanClass, Property[] properties) {
+		super(beanClass, properties);
+		this.constructor = findConstructor(beanClass);
+		this.getters = new MethodAccessor[properties.length];
+		this.setters = new MethodAccessor[properties.length];
+		this.fields = new FieldAccessor[properties.length];
+		for (int i = 0; i < properties.length; i++) {
+			Property property = properties[i];
+			if (property.getter != null) {
+				getters[i] = new MethodAccessor(property.getter);
+			}
+			if (property.setter != null) {
+				setters[i] = new MethodAccessor(property.setter);
+			}
+			if (property.field != null) {
+				fields[i] = new FieldAccessor(property.field);
+			}
+		}
+	}
+	
+	private static <T> Constructor<T> findConstructor(Class<T> beanClass) {
+		if (Modifier.isAbstract(beanClass.getModifiers())) {
+			return null;
+		}
+		try {
+			Constructor<T> constructor = beanClass.getConstructor();
+			constructor.setAccessible(true);
+			return constructor;
+		} 
+		catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+	
+	@Override
+	public T newInstance() {
+		if (constructor == null) {
+			return super.newInstance();
+		}
+		try {
+			return constructor.newInstance();
+		} 
+		catch (InvocationTargetException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new RuntimeException(cause);
+		}
+		catch (InstantiationException e) {
+			throw new IllegalStateException("Unable to create instance of class " + getBeanClass().getName(), e);
+		}
+		catch (IllegalAccessException e) {
+			throw new IllegalStateException("Unable to create instance of class " + getBeanClass().getName(), e);
+		}
+	}
+	
+	@Override
+	public Object get(T bean, int index) {
+		property(index);
+		// Generated accessors cast bean, so it is also done here to behave the same
+		getBeanClass().cast(bean);
+		if (getters[index] != null) {
+			return getters[index].invoke(bean);
+		}
+		if (fields[index] != null) {
+			return fields[index].get(bean);
+		}
+		throw invalidAccess(index);
+	}
+	
+	@Override
+	public void set(T bean, int index, Object value) {
+		Property property = property(index);
+		getBeanClass().cast(bean);
+		if (!property.isWritable()) {
+			throw invalidAccess(index);
+		}
+		Class<?> type = property.type;
+		if (type.isPrimitive()) {
+			if (value == null) {
+				throw new NullPointerException("Primitive property " + property.name + " cannot be set to null");
+			}
+			ReflectionUtil.getNonPrimitiveType(type).cast(value);
+		}
+		else {
+			type.cast(value);
+		}
+		if (setters[index] != null) {
+			setters[index].invoke(bean, value);
+		}
+		else {
+			fields[index].set(bean, value);
+		}
+	}
+	
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package tr.com.serkanozal.jcommon.util;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * @author Serkan ÖZAL
+ * 
+ * Classification of a type used by type checks of {@link ReflectionUtil} and {@link JvmUtil}, 
+ * so all questions about a type are answered by a single lookup. 
+ * 
+ * Descriptors of primitive types, their wrappers and {@link String} are in a fixed identity map. 
+ * Descriptors of other classes are computed once and cached per class. They don't refer to their classes, 
+ * so they don't prevent unloading of them. 
+ * Primitive type names are looked up case-insensitively by a perfect hash table on their lengths and first characters.
+ */
+final class TypeDescriptor {
+
+	static final int PRIMITIVE = 1;
+	static final int WRAPPER = 1 << 1;
+	static final int STRING = 1 << 2;
+	// Integral types (byte, short, int and long) and their wrappers
+	static final int DECIMAL = 1 << 3;
+	static final int ENUM = 1 << 4;
+	// Arrays, lists, sets and maps
+	static final int COLLECTION = 1 << 5;
+	
+	private static final int NAME_TABLE_SIZE = 32;
+	
+	// Descriptor of null type, which is not any kind of type
+	private static final TypeDescriptor NONE = new TypeDescriptor(null, null, 0, 0);
+	
+	private static final Map<Class<?>, TypeDescriptor> KNOWN_DESCRIPTORS = new IdentityHashMap<Class<?>, TypeDescriptor>();
+	private static final TypeDescriptor[] NAME_TABLE = new TypeDescriptor[NAME_TABLE_SIZE];
+	private static final int NAME_HASH_MULTIPLIER;
+	private static final ClassMetadataCache<TypeDescriptor> descriptorCache = 
+			new ClassMetadataCache<TypeDescriptor>() {
+				@Override
+				protected TypeDescriptor computeValue(Class<?> clazz) {
+					return create(clazz);
+				}
+			};
+	
+	static {
+		register(boolean.class, Boolean.class, JvmUtil.BOOLEAN_SIZE, 0);
+		register(byte.class, Byte.class, JvmUtil.BYTE_SIZE, DECIMAL);
+		register(char.class, Character.class, JvmUtil.CHAR_SIZE, 0);
+		register(short.class, Short.class, JvmUtil.SHORT_SIZE, DECIMAL);
+		register(int.class, Integer.class, JvmUtil.INT_SIZE, DECIMAL);
+		register(float.class, Float.class, JvmUtil.FLOAT_SIZE, 0);
+		register(long.class, Long.class, JvmUtil.LONG_SIZE, DECIMAL);
+		register(double.class, Double.class, JvmUtil.DOUBLE_SIZE, 0);
+		KNOWN_DESCRIPTORS.put(String.class, new TypeDescriptor(null, null, 0, STRING));
+		NAME_HASH_MULTIPLIER = buildNameTable();
+	}
+	
+	final Class<?> primitiveType;
+	final Class<?> wrapperType;
+	final int size;
+	final int flags;
+	
+	private TypeDescriptor(Class<?> primitiveType, Class<?> wrapperType, int size, int flags) {
+		this.primitiveType = primitiveType;
+		this.wrapperType = wrapperType;
+		this.size = size;
+		this.flags = flags;
+	}
+	
+	private static void register(Class<?> primitiveType, Class<?> wrapperType, int size, int flags) {
+		KNOWN_DESCRIPTORS.put(primitiveType, new TypeDescriptor(primitiveType, wrapperType, size, flags | PRIMITIVE));
+		KNOWN_DESCRIPTORS.put(wrapperType, new TypeDescriptor(primitiveType, wrapperType, size, flags | WRAPPER));
+	}
+	
+	/**
+	 * Finds a multiplier which places every primitive type name into a different slot.
+	 */
+	private static int buildNameTable() {
+		for (int multiplier = 1; multiplier < NAME_TABLE_SIZE * NAME_TABLE_SIZE; multiplier++) {
+			boolean collided = false;
+			for (TypeDescriptor descriptor : KNOWN_DESCRIPTORS.values()) {
+				if (descriptor.is(PRIMITIVE)) {
+					int slot = nameSlot(descriptor.primitiveType.getName(), multiplier);
+					if (NAME_TABLE[slot] != null) {
+						collided = true;
+						break;
+					}
+					NAME_TABLE[slot] = descriptor;
+				}
+			}
+			if (!collided) {
+				return multiplier;
+			}
+			for (int i = 0; i < NAME_TABLE_SIZE; i++) {
+				NAME_TABLE[i] = null;
+			}
+		}
+		throw new IllegalStateException("Unable to build perfect hash table of primitive type names");
+	}
+	
+	private static int nameSlot(String name, int multiplier) {
+		// Upper case and lower case ASCII letters differ only by this bit
+		return (name.length() * multiplier + (name.charAt(0) | 0x20)) & (NAME_TABLE_SIZE - 1);
+	}
+	
+	private static TypeDescriptor create(Class<?> clazz) {
+		int flags = 0;
+		if (clazz.isEnum()) {
+			flags |= ENUM;
+		}
+		if (clazz.isArray() || List.class.isAssignableFrom(clazz) || 
+				Set.class.isAssignableFrom(clazz) || Map.class.isAssignableFrom(clazz)) {
+			flags |= COLLECTION;
+		}
+		return new TypeDescriptor(null, null, 0, flags);
+	}
+	
+	static TypeDescriptor of(Class<?> type) {
+		if (type == null) {
+			return NONE;
+		}
+		TypeDescriptor descriptor = KNOWN_DESCRIPTORS.get(type);
+		return descriptor != null ? descriptor : descriptorCache.get(type);
+	}
+	
+	/**
+	 * Gets descriptor of primitive type with given name (case-insensitive) 
+	 * or <code>null</code> if it is not name of a primitive type.
+	 */
+	static TypeDescriptor ofPrimitiveName(String name) {
+		if (name.length() == 0) {
+			return null;
+		}
+		TypeDescriptor descriptor = NAME_TABLE[nameSlot(name, NAME_HASH_MULTIPLIER)];
+		if (descriptor != null && descriptor.primitiveType.getName().equalsIgnoreCase(name)) {
+			return descriptor;
+		}
+		return null;
+	}
+	
+	boolean is(int flag) {
+		return (flags & flag) != 0;
+	}
+	
+}
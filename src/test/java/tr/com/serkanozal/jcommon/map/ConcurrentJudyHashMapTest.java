@@ -0,0 +1,239 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tr.com.serkanozal.jcommon.map;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * @author Serkan ÖZAL
+ */
+public class ConcurrentJudyHashMapTest {
+
+	@Test
+	public void putGotAndRemovedSuccessfully() {
+		final int ENTRY_COUNT = Integer.SIZE - 1;
+		ConcurrentMap<Integer, String> map = new ConcurrentJudyHashMap<Integer, String>();
+
+		for (int i = 0; i < ENTRY_COUNT; i++) {
+			Assert.assertNull(map.put(i << i, i + " << " + i));
+			Assert.assertEquals(i + 1, map.size());
+		}
+
+		for (int i = 0; i < ENTRY_COUNT; i++) {
+			Assert.assertEquals(i + " << " + i, map.get(i << i));
+		}
+
+		for (int i = 0; i < ENTRY_COUNT; i++) {
+			Assert.assertEquals(i + " << " + i, map.remove(i << i));
+			Assert.assertNull(map.get(i << i));
+			Assert.assertEquals(ENTRY_COUNT - (i + 1), map.size());
+		}
+
+		Assert.assertTrue(map.isEmpty());
+	}
+
+	@Test
+	public void concurrentMapOperationsWorkedSuccessfully() {
+		ConcurrentMap<Integer, String> map = new ConcurrentJudyHashMap<Integer, String>();
+
+		Assert.assertNull(map.putIfAbsent(1, "one"));
+		Assert.assertEquals("one", map.putIfAbsent(1, "ONE"));
+
+		Assert.assertFalse(map.replace(1, "ONE", "one!"));
+		Assert.assertTrue(map.replace(1, "one", "ONE"));
+		Assert.assertEquals("ONE", map.replace(1, "one"));
+		Assert.assertNull(map.replace(2, "two"));
+
+		Assert.assertFalse(map.remove(1, "ONE"));
+		Assert.assertTrue(map.remove(1, "one"));
+		Assert.assertNull(map.get(1));
+		Assert.assertTrue(map.isEmpty());
+	}
+
+	@Test
+	public void entriesIteratedSuccessfully() {
+		final int ENTRY_COUNT = 10000;
+		Map<Integer, String> expectedMap = new HashMap<Integer, String>();
+		Map<Integer, String> map = new ConcurrentJudyHashMap<Integer, String>();
+
+		for (int i = 0; i < ENTRY_COUNT; i++) {
+			expectedMap.put(i * 31, String.valueOf(i));
+			map.put(i * 31, String.valueOf(i));
+		}
+
+		Assert.assertEquals(expectedMap, new HashMap<Integer, String>(map));
+		Assert.assertTrue(map.containsValue(String.valueOf(ENTRY_COUNT - 1)));
+
+		map.clear();
+		Assert.assertTrue(map.isEmpty());
+		Assert.assertFalse(map.entrySet().iterator().hasNext());
+	}
+
+	@Test
+	public void collidingKeysPutGotAndRemovedSuccessfully() {
+		final int ENTRY_COUNT = 1000;
+		final int HASH_CODE_COUNT = 10;
+		ConcurrentMap<JudyHashMapTest.CollidingKey, String> map = 
+				new ConcurrentJudyHashMap<JudyHashMapTest.CollidingKey, String>();
+
+		for (int i = 0; i < ENTRY_COUNT; i++) {
+			Assert.assertNull(map.putIfAbsent(new JudyHashMapTest.CollidingKey(i, HASH_CODE_COUNT), String.valueOf(i)));
+			Assert.assertEquals(i + 1, map.size());
+		}
+		Assert.assertEquals("0", map.putIfAbsent(new JudyHashMapTest.CollidingKey(0, HASH_CODE_COUNT), "zero"));
+		Assert.assertEquals(ENTRY_COUNT, map.entrySet().size());
+
+		int iteratedCount = 0;
+		for (Map.Entry<JudyHashMapTest.CollidingKey, String> entry : map.entrySet()) {
+			Assert.assertEquals(String.valueOf(entry.getKey().id), entry.getValue());
+			iteratedCount++;
+		}
+		Assert.assertEquals(ENTRY_COUNT, iteratedCount);
+
+		for (int i = 0; i < ENTRY_COUNT; i += 2) {
+			Assert.assertEquals(String.valueOf(i), map.remove(new JudyHashMapTest.CollidingKey(i, HASH_CODE_COUNT)));
+		}
+		for (int i = 0; i < ENTRY_COUNT; i++) {
+			if (i % 2 == 0) {
+				Assert.assertNull(map.get(new JudyHashMapTest.CollidingKey(i, HASH_CODE_COUNT)));
+			}
+			else {
+				Assert.assertEquals(String.valueOf(i), map.get(new JudyHashMapTest.CollidingKey(i, HASH_CODE_COUNT)));
+			}
+		}
+		Assert.assertEquals(ENTRY_COUNT / 2, map.size());
+	}
+
+	@Test
+	public void concurrentPutsAndRemovesOfCollidingKeysWorkedSuccessfully() throws InterruptedException {
+		final int THREAD_COUNT = 8;
+		final int ENTRY_COUNT_PER_THREAD = 2000;
+		final int HASH_CODE_COUNT = 16;
+		final ConcurrentMap<JudyHashMapTest.CollidingKey, Integer> map = 
+				new ConcurrentJudyHashMap<JudyHashMapTest.CollidingKey, Integer>(true);
+		final AtomicInteger failureCount = new AtomicInteger();
+		final CountDownLatch latch = new CountDownLatch(THREAD_COUNT);
+
+		for (int t = 0; t < THREAD_COUNT; t++) {
+			final int threadIndex = t;
+			new Thread() {
+				@Override
+				public void run() {
+					try {
+						for (int i = 0; i < ENTRY_COUNT_PER_THREAD; i++) {
+							int id = i * THREAD_COUNT + threadIndex;
+							if (map.putIfAbsent(new JudyHashMapTest.CollidingKey(id, HASH_CODE_COUNT), id) != null) {
+								failureCount.incrementAndGet();
+							}
+						}
+						for (int i = 0; i < ENTRY_COUNT_PER_THREAD; i += 2) {
+							int id = i * THREAD_COUNT + threadIndex;
+							if (map.remove(new JudyHashMapTest.CollidingKey(id, HASH_CODE_COUNT)) == null) {
+								failureCount.incrementAndGet();
+							}
+						}
+					}
+					catch (Exception e) {
+						failureCount.incrementAndGet();
+					}
+					finally {
+						latch.countDown();
+					}
+				}
+			}.start();
+		}
+		latch.await();
+
+		Assert.assertEquals(0, failureCount.get());
+		Assert.assertEquals(THREAD_COUNT * ENTRY_COUNT_PER_THREAD / 2, map.size());
+		for (int id = 0; id < THREAD_COUNT * ENTRY_COUNT_PER_THREAD; id++) {
+			Integer value = map.get(new JudyHashMapTest.CollidingKey(id, HASH_CODE_COUNT));
+			if ((id / THREAD_COUNT) % 2 == 0) {
+				Assert.assertNull(value);
+			}
+			else {
+				Assert.assertEquals(Integer.valueOf(id), value);
+			}
+		}
+	}
+
+	@Test
+	public void concurrentPutsAndRemovesWorkedSuccessfully() throws InterruptedException {
+		final int THREAD_COUNT = 8;
+		final int ENTRY_COUNT_PER_THREAD = 50000;
+		final ConcurrentMap<Integer, Integer> map = new ConcurrentJudyHashMap<Integer, Integer>();
+		final AtomicInteger failureCount = new AtomicInteger();
+		final CyclicBarrier barrier = new CyclicBarrier(THREAD_COUNT);
+		final CountDownLatch latch = new CountDownLatch(THREAD_COUNT);
+
+		for (int t = 0; t < THREAD_COUNT; t++) {
+			final int threadIndex = t;
+			new Thread() {
+				@Override
+				public void run() {
+					try {
+						for (int i = 0; i < ENTRY_COUNT_PER_THREAD; i++) {
+							int key = i * THREAD_COUNT + threadIndex;
+							map.put(key, key);
+							// Every key is also tried to be put by another thread
+							map.putIfAbsent((key + 1) % (ENTRY_COUNT_PER_THREAD * THREAD_COUNT), -1);
+						}
+						// Wait all puts to be finished before removing
+						barrier.await();
+						for (int i = 0; i < ENTRY_COUNT_PER_THREAD; i += 2) {
+							int key = i * THREAD_COUNT + threadIndex;
+							if (map.remove(key) == null) {
+								failureCount.incrementAndGet();
+							}
+						}
+					}
+					catch (Exception e) {
+						failureCount.incrementAndGet();
+					}
+					finally {
+						latch.countDown();
+					}
+				}
+			}.start();
+		}
+		latch.await();
+
+		Assert.assertEquals(0, failureCount.get());
+		Assert.assertEquals(THREAD_COUNT * ENTRY_COUNT_PER_THREAD / 2, map.size());
+		for (int i = 0; i < ENTRY_COUNT_PER_THREAD; i++) {
+			for (int t = 0; t < THREAD_COUNT; t++) {
+				int key = i * THREAD_COUNT + t;
+				if (i % 2 == 0) {
+					Assert.assertNull(map.get(key));
+				}
+				else {
+					Assert.assertNotNull(map.get(key));
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tr.com.serkanozal.jcommon.map;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * @author Serkan ÖZAL
+ */
+public class IntJudyMapTest {
+
+	@Test
+	public void putGotAndRemovedSuccessfully() {
+		final int ENTRY_COUNT = Integer.SIZE - 1;
+		IntJudyMap<String> map = new IntJudyMap<String>();
+		
+		for (int i = 0; i < ENTRY_COUNT; i++) {
+			Assert.assertNull(map.put(i << i, i + " << " + i));
+			Assert.assertEquals(i + 1, map.size());
+		}
+		
+		for (int i = 0; i < ENTRY_COUNT; i++) {
+			Assert.assertTrue(map.containsKey(i << i));
+			Assert.assertEquals(i + " << " + i, map.get(i << i));
+		}
+		
+		for (int i = 0; i < ENTRY_COUNT; i++) {
+			Assert.assertEquals(i + " << " + i, map.remove(i << i));
+			Assert.assertNull(map.get(i << i));
+			Assert.assertFalse(map.containsKey(i << i));
+		}
+		
+		Assert.assertTrue(map.isEmpty());
+	}
+	
+	@Test
+	public void nullValuePutAndGotSuccessfully() {
+		IntJudyMap<String> map = new IntJudyMap<String>();
+		
+		map.put(1, null);
+		
+		Assert.assertTrue(map.containsKey(1));
+		Assert.assertNull(map.get(1));
+		Assert.assertEquals(1, map.size());
+	}
+	
+	@Test
+	public void keysIteratedInAscendingOrderSuccessfully() {
+		final int ENTRY_COUNT = 10000;
+		Random random = new Random(ENTRY_COUNT);
+		IntJudyMap<Integer> map = new IntJudyMap<Integer>();
+		int[] expectedKeys = new int[ENTRY_COUNT];
+		
+		for (int i = 0; i < ENTRY_COUNT; i++) {
+			int key = random.nextInt();
+			while (map.containsKey(key)) {
+				key = random.nextInt();
+			}
+			expectedKeys[i] = key;
+			map.put(key, key);
+		}
+		Arrays.sort(expectedKeys);
+		
+		Assert.assertTrue(Arrays.equals(expectedKeys, map.keys()));
+		
+		int i = 0;
+		for (IntJudyMap<Integer>.Cursor cursor = map.cursor(); cursor.advance();) {
+			Assert.assertEquals(expectedKeys[i], cursor.getKey());
+			Assert.assertEquals(Integer.valueOf(expectedKeys[i]), cursor.getValue());
+			i++;
+		}
+		Assert.assertEquals(ENTRY_COUNT, i);
+	}
+	
+	@Test
+	public void entriesRemovedByCursorSuccessfully() {
+		final int ENTRY_COUNT = 1000;
+		IntJudyMap<Integer> map = new IntJudyMap<Integer>();
+		
+		for (int i = -ENTRY_COUNT; i < ENTRY_COUNT; i++) {
+			map.put(i, i);
+		}
+		
+		for (IntJudyMap<Integer>.Cursor cursor = map.cursor(); cursor.advance();) {
+			if (cursor.getKey() % 2 == 0) {
+				cursor.remove();
+			}
+			else {
+				cursor.setValue(-cursor.getKey());
+			}
+		}
+		
+		Assert.assertEquals(ENTRY_COUNT, map.size());
+		for (int i = -ENTRY_COUNT; i < ENTRY_COUNT; i++) {
+			if (i % 2 == 0) {
+				Assert.assertFalse(map.containsKey(i));
+			}
+			else {
+				Assert.assertEquals(Integer.valueOf(-i), map.get(i));
+			}
+		}
+	}
+	
+	@Test
+	public void orderedOperationsWorkedSuccessfully() {
+		final int ENTRY_COUNT = 10000;
+		IntJudyMap<String> map = new IntJudyMap<String>();
+		
+		for (int i = 0; i < ENTRY_COUNT; i++) {
+			map.put(i * 10 - ENTRY_COUNT * 5, String.valueOf(i));
+		}
+		map.put(Integer.MAX_VALUE, "max");
+		
+		Assert.assertEquals(-ENTRY_COUNT * 5, map.firstKey());
+		Assert.assertEquals(Integer.valueOf(-10), map.ceilingKey(-19));
+		Assert.assertEquals(Integer.valueOf(0), map.ceilingKey(0));
+		Assert.assertEquals(Integer.valueOf(10), map.higherKey(0));
+		Assert.assertEquals(Integer.valueOf(Integer.MAX_VALUE), map.ceilingKey(ENTRY_COUNT * 5));
+		Assert.assertNull(map.higherKey(Integer.MAX_VALUE));
+		
+		int expectedKey = -100;
+		for (IntJudyMap<String>.Cursor cursor = map.cursor(-100, 100); cursor.advance();) {
+			Assert.assertEquals(expectedKey, cursor.getKey());
+			if (expectedKey % 20 == 0) {
+				cursor.remove();
+			}
+			expectedKey += 10;
+		}
+		Assert.assertEquals(100, expectedKey);
+		Assert.assertEquals(ENTRY_COUNT + 1 - 10, map.size());
+		Assert.assertFalse(map.cursor(100, 100).advance());
+		
+		IntJudyMap<String>.Cursor cursor = map.cursor(Integer.MIN_VALUE, Integer.MAX_VALUE);
+		for (int i = 0; i < ENTRY_COUNT - 10; i++) {
+			Assert.assertTrue(cursor.advance());
+		}
+		// Upper bound is exclusive
+		Assert.assertFalse(cursor.advance());
+		
+		map.clear();
+		try {
+			map.firstKey();
+			Assert.fail("Empty map should not have first key");
+		}
+		catch (NoSuchElementException e) {
+			// Expected since map is empty
+		}
+	}
+	
+	@Test
+	public void statsTrackedSuccessfully() {
+		IntJudyMap<String> map = new IntJudyMap<String>();
+		
+		JudyStats stats = map.getStats();
+		Assert.assertEquals(4, stats.getLevelCount());
+		Assert.assertEquals(1, stats.getNodeCount());
+		Assert.assertEquals(0, stats.getSlotCount());
+		
+		for (int i = 0; i < 300; i++) {
+			map.put(i, String.valueOf(i));
+		}
+		stats = map.getStats();
+		Assert.assertEquals(300, stats.getEntryCount());
+		Assert.assertEquals(1, stats.getNodeCount(0));
+		Assert.assertEquals(1, stats.getNodeCount(1));
+		Assert.assertEquals(1, stats.getNodeCount(2));
+		Assert.assertEquals(2, stats.getSlotCount(2));
+		// Keys from 0 to 255 fill a whole node, remaining 44 keys are held by a bitmap node
+		Assert.assertEquals(1, stats.getUncompressedNodeCount(3));
+		Assert.assertEquals(1, stats.getBitmapNodeCount(3));
+		Assert.assertEquals(300, stats.getSlotCount(3));
+		Assert.assertEquals(300.0 / 512, stats.getFillRatio(3), 0.0001);
+		Assert.assertTrue(stats.getEstimatedBytes() > 0);
+		Assert.assertEquals(0, stats.getEstimatedEntryBytes());
+		
+		for (int i = 3; i < 300; i++) {
+			map.remove(i);
+		}
+		stats = map.getStats();
+		Assert.assertEquals(1, stats.getSlotCount(2));
+		Assert.assertEquals(1, stats.getNodeCount(3));
+		Assert.assertEquals(1, stats.getLinearNodeCount(3));
+		Assert.assertEquals(3, stats.getSlotCount(3));
+		
+		map.clear();
+		stats = map.getStats();
+		Assert.assertEquals(1, stats.getNodeCount());
+		Assert.assertEquals(0, stats.getSlotCount());
+	}
+	
+}
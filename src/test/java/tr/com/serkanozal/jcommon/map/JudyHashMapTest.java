@@ -16,8 +16,11 @@
 
 package tr.com.serkanozal.jcommon.map;
 
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Random;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -163,53 +166,285 @@ public class JudyHashMapTest {
 	public void keySetRetrievedSuccessfully() {
 		final int ENTRY_COUNT = Integer.SIZE - 1;
 		Map<Integer, String> map = new JudyHashMap<Integer, String>();
+		int[] expectedKeys = new int[ENTRY_COUNT];
 		
 		for (int i = 0; i < ENTRY_COUNT; i++) {
 			map.put(i << i, i + " << " + i);
+			expectedKeys[i] = i << i;
 		}
+		// Keys are iterated in hash code order which is the natural order for integers
+		Arrays.sort(expectedKeys);
 		
 		int i = 0;
 		for (Integer key : map.keySet()) {
-			Integer expectedKey = i << i;
+			Integer expectedKey = expectedKeys[i];
 			i++;
 			Assert.assertEquals(expectedKey, key);
 		}
+		Assert.assertEquals(ENTRY_COUNT, i);
 	}
 	
 	@Test
 	public void valuesRetrievedSuccessfully() {
 		final int ENTRY_COUNT = Integer.SIZE - 1;
 		Map<Integer, String> map = new JudyHashMap<Integer, String>();
+		int[] expectedKeys = new int[ENTRY_COUNT];
 		
 		for (int i = 0; i < ENTRY_COUNT; i++) {
-			map.put(i << i, i + " << " + i);
+			map.put(i << i, String.valueOf(i << i));
+			expectedKeys[i] = i << i;
 		}
+		Arrays.sort(expectedKeys);
 		
 		int i = 0;
 		for (String value : map.values()) {
-			String expectedValue = i + " << " + i;
+			String expectedValue = String.valueOf(expectedKeys[i]);
 			i++;
 			Assert.assertEquals(expectedValue, value);
 		}
+		Assert.assertEquals(ENTRY_COUNT, i);
 	}
 	
 	@Test
 	public void entrySetRetrievedSuccessfully() {
 		final int ENTRY_COUNT = Integer.SIZE - 1;
 		Map<Integer, String> map = new JudyHashMap<Integer, String>();
+		int[] expectedKeys = new int[ENTRY_COUNT];
 		
 		for (int i = 0; i < ENTRY_COUNT; i++) {
-			map.put(i << i, i + " << " + i);
+			map.put(i << i, String.valueOf(i << i));
+			expectedKeys[i] = i << i;
 		}
+		Arrays.sort(expectedKeys);
 		
 		int i = 0;
-		for (Map.Entry<Integer, String> entry : map.entrySet()) {
-			Integer expectedKey = i << i;
-			String expectedValue = i + " << " + i;
+		for (Iterator<Map.Entry<Integer, String>> iterator = map.entrySet().iterator(); iterator.hasNext();) {
+			Map.Entry<Integer, String> entry = iterator.next();
+			Integer expectedKey = expectedKeys[i];
+			String expectedValue = String.valueOf(expectedKeys[i]);
 			i++;
 			Assert.assertEquals(expectedKey, entry.getKey());
 			Assert.assertEquals(expectedValue, entry.getValue());
+			iterator.remove();
+		}
+		Assert.assertEquals(ENTRY_COUNT, i);
+		Assert.assertTrue(map.isEmpty());
+	}
+	
+	@Test
+	public void putOverExistingKeyReturnsOldValueAndKeepsSize() {
+		Map<Integer, String> map = new JudyHashMap<Integer, String>();
+		
+		Assert.assertNull(map.put(1, "one"));
+		Assert.assertEquals("one", map.put(1, "ONE"));
+		Assert.assertEquals(1, map.size());
+		Assert.assertEquals("ONE", map.get(1));
+	}
+	
+	@Test
+	public void nodesPromotedAndDemotedSuccessfully() {
+		// Sequential keys fill last level nodes densely, so nodes pass through all layouts
+		final int ENTRY_COUNT = 100000;
+		Map<Integer, String> map = new JudyHashMap<Integer, String>();
+		
+		for (int i = 0; i < ENTRY_COUNT; i++) {
+			map.put(i, String.valueOf(i));
+		}
+		Assert.assertEquals(ENTRY_COUNT, map.size());
+		for (int i = 0; i < ENTRY_COUNT; i++) {
+			Assert.assertEquals(String.valueOf(i), map.get(i));
+		}
+		
+		for (int i = 0; i < ENTRY_COUNT; i += 2) {
+			Assert.assertEquals(String.valueOf(i), map.remove(i));
+		}
+		Assert.assertEquals(ENTRY_COUNT / 2, map.size());
+		for (int i = 0; i < ENTRY_COUNT; i++) {
+			if (i % 2 == 0) {
+				Assert.assertNull(map.get(i));
+			}
+			else {
+				Assert.assertEquals(String.valueOf(i), map.get(i));
+			}
+		}
+		
+		for (int i = 1; i < ENTRY_COUNT; i += 2) {
+			Assert.assertEquals(String.valueOf(i), map.remove(i));
+		}
+		Assert.assertTrue(map.isEmpty());
+	}
+	
+	@Test
+	public void randomKeysPutGotAndRemovedSuccessfully() {
+		final int ENTRY_COUNT = 100000;
+		Random random = new Random(ENTRY_COUNT);
+		Map<Integer, String> expectedMap = new HashMap<Integer, String>();
+		Map<Integer, String> map = new JudyHashMap<Integer, String>();
+		
+		for (int i = 0; i < ENTRY_COUNT; i++) {
+			int key = random.nextInt();
+			expectedMap.put(key, String.valueOf(key));
+			map.put(key, String.valueOf(key));
 		}
+		Assert.assertEquals(expectedMap.size(), map.size());
+		
+		for (Map.Entry<Integer, String> entry : expectedMap.entrySet()) {
+			Assert.assertEquals(entry.getValue(), map.get(entry.getKey()));
+			Assert.assertEquals(entry.getValue(), map.remove(entry.getKey()));
+			Assert.assertFalse(map.containsKey(entry.getKey()));
+		}
+		Assert.assertTrue(map.isEmpty());
+	}
+	
+	@Test
+	public void collidingKeysPutGotAndRemovedSuccessfully() {
+		final int ENTRY_COUNT = 1000;
+		final int HASH_CODE_COUNT = 10;
+		Map<CollidingKey, String> map = new JudyHashMap<CollidingKey, String>();
+		
+		for (int i = 0; i < ENTRY_COUNT; i++) {
+			Assert.assertNull(map.put(new CollidingKey(i, HASH_CODE_COUNT), String.valueOf(i)));
+			Assert.assertEquals(i + 1, map.size());
+		}
+		Assert.assertEquals("0", map.put(new CollidingKey(0, HASH_CODE_COUNT), "zero"));
+		Assert.assertEquals(ENTRY_COUNT, map.size());
+		Assert.assertEquals("zero", map.put(new CollidingKey(0, HASH_CODE_COUNT), "0"));
+		
+		for (int i = 0; i < ENTRY_COUNT; i++) {
+			Assert.assertEquals(String.valueOf(i), map.get(new CollidingKey(i, HASH_CODE_COUNT)));
+		}
+		Assert.assertNull(map.get(new CollidingKey(ENTRY_COUNT, HASH_CODE_COUNT)));
+		Assert.assertNull(map.remove(new CollidingKey(ENTRY_COUNT, HASH_CODE_COUNT)));
+		
+		for (int i = 0; i < ENTRY_COUNT; i++) {
+			Assert.assertEquals(String.valueOf(i), map.remove(new CollidingKey(i, HASH_CODE_COUNT)));
+			Assert.assertFalse(map.containsKey(new CollidingKey(i, HASH_CODE_COUNT)));
+			Assert.assertEquals(ENTRY_COUNT - (i + 1), map.size());
+			if (i + 1 < ENTRY_COUNT) {
+				Assert.assertEquals(String.valueOf(i + 1), map.get(new CollidingKey(i + 1, HASH_CODE_COUNT)));
+			}
+		}
+		Assert.assertTrue(map.isEmpty());
+	}
+	
+	@Test
+	public void spreadHashCodesPutGotAndRemovedSuccessfully() {
+		final int ENTRY_COUNT = 10000;
+		Map<Integer, String> map = new JudyHashMap<Integer, String>(true);
+		
+		for (int i = 0; i < ENTRY_COUNT; i++) {
+			// Keys differ only at high bits
+			Assert.assertNull(map.put(i << 16, String.valueOf(i)));
+		}
+		Assert.assertEquals(ENTRY_COUNT, map.size());
+		
+		for (int i = 0; i < ENTRY_COUNT; i++) {
+			Assert.assertEquals(String.valueOf(i), map.get(i << 16));
+			Assert.assertNull(map.get((i << 16) + 1));
+		}
+		
+		for (int i = 0; i < ENTRY_COUNT; i++) {
+			Assert.assertEquals(String.valueOf(i), map.remove(i << 16));
+		}
+		Assert.assertTrue(map.isEmpty());
+	}
+	
+	@Test
+	public void orderedOperationsWorkedSuccessfully() {
+		final int ENTRY_COUNT = 10000;
+		JudyHashMap<Integer, String> map = new JudyHashMap<Integer, String>();
+		
+		for (int i = ENTRY_COUNT - 1; i >= 0; i--) {
+			// Both of negative and positive keys are put in reverse order
+			map.put(i * 10 - ENTRY_COUNT * 5, String.valueOf(i));
+		}
+		
+		Assert.assertEquals(Integer.valueOf(-ENTRY_COUNT * 5), map.firstKey());
+		Assert.assertEquals(Integer.valueOf(-10), map.ceilingKey(-19));
+		Assert.assertEquals(Integer.valueOf(0), map.ceilingKey(0));
+		Assert.assertEquals(Integer.valueOf(10), map.ceilingKey(1));
+		Assert.assertNull(map.ceilingKey(ENTRY_COUNT * 5));
+		
+		Map<Integer, String> subMap = map.subMap(-100, 100);
+		Assert.assertEquals(20, subMap.size());
+		int expectedKey = -100;
+		for (Map.Entry<Integer, String> entry : subMap.entrySet()) {
+			Assert.assertEquals(Integer.valueOf(expectedKey), entry.getKey());
+			expectedKey += 10;
+		}
+		Assert.assertEquals(100, expectedKey);
+		Assert.assertTrue(subMap.containsKey(0));
+		Assert.assertFalse(subMap.containsKey(100));
+		
+		for (Iterator<Integer> i = subMap.keySet().iterator(); i.hasNext();) {
+			if (i.next() % 20 == 0) {
+				i.remove();
+			}
+		}
+		Assert.assertEquals(10, subMap.size());
+		Assert.assertEquals(ENTRY_COUNT - 10, map.size());
+		Assert.assertNull(map.get(0));
+		Assert.assertEquals(Integer.valueOf(10), map.ceilingKey(0));
+		
+		map.clear();
+		try {
+			map.firstKey();
+			Assert.fail("Empty map should not have first key");
+		}
+		catch (NoSuchElementException e) {
+			// Expected since map is empty
+		}
+	}
+	
+	@Test
+	public void bulkPutAllAndGetAllWorkedSuccessfully() {
+		final int ENTRY_COUNT = 100000;
+		Random random = new Random(ENTRY_COUNT);
+		Map<Integer, String> expectedMap = new HashMap<Integer, String>();
+		JudyHashMap<Integer, String> map = new JudyHashMap<Integer, String>();
+		
+		// Some of keys are already in map
+		for (int i = 0; i < ENTRY_COUNT / 10; i++) {
+			map.put(i, "old");
+		}
+		for (int i = 0; i < ENTRY_COUNT; i++) {
+			int key = i % 2 == 0 ? i : random.nextInt();
+			expectedMap.put(key, String.valueOf(key));
+		}
+		map.putAll(expectedMap);
+		Assert.assertEquals(expectedMap.size() + ENTRY_COUNT / 20, map.size());
+		
+		Integer[] keys = new Integer[ENTRY_COUNT];
+		String[] values = new String[ENTRY_COUNT];
+		for (int i = 0; i < ENTRY_COUNT; i++) {
+			keys[i] = random.nextBoolean() ? -i : i;
+		}
+		map.getAll(keys, values);
+		for (int i = 0; i < ENTRY_COUNT; i++) {
+			Assert.assertEquals(map.get(keys[i]), values[i]);
+		}
+		
+		Integer[] fewKeys = new Integer[] { 0, 1, 2 };
+		String[] fewValues = new String[fewKeys.length];
+		map.getAll(fewKeys, fewValues);
+		Assert.assertEquals("0", fewValues[0]);
+		Assert.assertEquals("old", fewValues[1]);
+		Assert.assertEquals("2", fewValues[2]);
+	}
+	
+	@Test
+	public void bulkPutAllOfCollidingKeysWorkedSuccessfully() {
+		final int ENTRY_COUNT = 10000;
+		final int HASH_CODE_COUNT = 100;
+		Map<CollidingKey, String> expectedMap = new HashMap<CollidingKey, String>();
+		JudyHashMap<CollidingKey, String> map = new JudyHashMap<CollidingKey, String>();
+		
+		for (int i = 0; i < ENTRY_COUNT; i++) {
+			expectedMap.put(new CollidingKey(i, HASH_CODE_COUNT), String.valueOf(i));
+		}
+		map.putAll(expectedMap);
+		Assert.assertEquals(ENTRY_COUNT, map.size());
+		Assert.assertEquals(expectedMap, new HashMap<CollidingKey, String>(map));
 	}
 	
 	@Test
@@ -288,6 +523,36 @@ public class JudyHashMapTest {
 							" get operation: " + (hashMapExecutionTime / 1000) + " milliseconds ...");
 	}
 	
+	@Test
+	public void statsTrackedSuccessfully() {
+		final int ENTRY_COUNT = 10000;
+		JudyHashMap<Integer, Integer> map = new JudyHashMap<Integer, Integer>();
+		LinkedJudyHashMap<Integer, Integer> linkedMap = new LinkedJudyHashMap<Integer, Integer>();
+		
+		for (int i = 0; i < ENTRY_COUNT; i++) {
+			map.put(i, i);
+			linkedMap.put(i, i);
+		}
+		JudyStats stats = map.getStats();
+		Assert.assertEquals(ENTRY_COUNT, stats.getEntryCount());
+		Assert.assertEquals(ENTRY_COUNT, stats.getSlotCount(stats.getLevelCount() - 1));
+		Assert.assertTrue(stats.getFillRatio(stats.getLevelCount() - 1) > 0.9);
+		Assert.assertTrue(stats.getEstimatedEntryBytes() > 0);
+		Assert.assertTrue(stats.getEstimatedBytes() > stats.getEstimatedEntryBytes());
+		Assert.assertEquals(0, stats.getEstimatedEntryBytes() % ENTRY_COUNT);
+		// Linked entries have two more references, but they may still fit into the same aligned size
+		Assert.assertTrue(linkedMap.getStats().getEstimatedEntryBytes() >= stats.getEstimatedEntryBytes());
+		
+		for (int i = 0; i < ENTRY_COUNT; i++) {
+			map.remove(i);
+		}
+		stats = map.getStats();
+		Assert.assertEquals(0, stats.getEntryCount());
+		Assert.assertEquals(1, stats.getNodeCount());
+		Assert.assertEquals(0, stats.getSlotCount());
+		Assert.assertEquals(0, stats.getEstimatedEntryBytes());
+	}
+	
 	@Test
 	public void judyHashMapVsConcurrentHashMapForPutOperation() {
 		final int ENTRY_COUNT = 1000000;
@@ -364,4 +629,29 @@ public class JudyHashMapTest {
 							" get operation: " + (concurrentHashMapExecutionTime / 1000) + " milliseconds ...");
 	}
 	
+	/**
+	 * Key whose hash code collides with the hash codes of other keys having the same id modulo.
+	 */
+	static class CollidingKey {
+		
+		final int id;
+		final int hashCodeCount;
+		
+		CollidingKey(int id, int hashCodeCount) {
+			this.id = id;
+			this.hashCodeCount = hashCodeCount;
+		}
+		
+		@Override
+		public int hashCode() {
+			return id % hashCodeCount;
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof CollidingKey && ((CollidingKey) obj).id == id;
+		}
+		
+	}
+	
 }
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tr.com.serkanozal.jcommon.map;
+
+import java.util.Iterator;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * @author Serkan ÖZAL
+ */
+public class LinkedJudyHashMapTest {
+
+	@Test
+	public void keySetRetrievedSuccessfully() {
+		final int ENTRY_COUNT = Integer.SIZE - 1;
+		Map<Integer, String> map = new LinkedJudyHashMap<Integer, String>();
+		
+		for (int i = 0; i < ENTRY_COUNT; i++) {
+			map.put(i << i, i + " << " + i);
+		}
+		
+		int i = 0;
+		for (Integer key : map.keySet()) {
+			Integer expectedKey = i << i;
+			i++;
+			Assert.assertEquals(expectedKey, key);
+		}
+		Assert.assertEquals(ENTRY_COUNT, i);
+	}
+	
+	@Test
+	public void valuesRetrievedSuccessfully() {
+		final int ENTRY_COUNT = Integer.SIZE - 1;
+		Map<Integer, String> map = new LinkedJudyHashMap<Integer, String>();
+		
+		for (int i = 0; i < ENTRY_COUNT; i++) {
+			map.put(i << i, i + " << " + i);
+		}
+		
+		int i = 0;
+		for (String value : map.values()) {
+			String expectedValue = i + " << " + i;
+			i++;
+			Assert.assertEquals(expectedValue, value);
+		}
+		Assert.assertEquals(ENTRY_COUNT, i);
+	}
+	
+	@Test
+	public void entrySetRetrievedSuccessfully() {
+		final int ENTRY_COUNT = Integer.SIZE - 1;
+		Map<Integer, String> map = new LinkedJudyHashMap<Integer, String>();
+		
+		for (int i = 0; i < ENTRY_COUNT; i++) {
+			map.put(i << i, i + " << " + i);
+		}
+		
+		int i = 0;
+		for (Map.Entry<Integer, String> entry : map.entrySet()) {
+			Integer expectedKey = i << i;
+			String expectedValue = i + " << " + i;
+			i++;
+			Assert.assertEquals(expectedKey, entry.getKey());
+			Assert.assertEquals(expectedValue, entry.getValue());
+		}
+		Assert.assertEquals(ENTRY_COUNT, i);
+	}
+	
+	@Test
+	public void insertionOrderKeptAfterRemovalsSuccessfully() {
+		final int ENTRY_COUNT = 1000;
+		Map<Integer, String> map = new LinkedJudyHashMap<Integer, String>();
+		
+		for (int i = ENTRY_COUNT - 1; i >= 0; i--) {
+			map.put(i, String.valueOf(i));
+		}
+		for (Iterator<Integer> i = map.keySet().iterator(); i.hasNext();) {
+			if (i.next() % 2 == 0) {
+				i.remove();
+			}
+		}
+		// Putting an existing key doesn't change its order
+		map.put(ENTRY_COUNT - 1, "last");
+		map.put(0, "0");
+		
+		int expectedKey = ENTRY_COUNT - 1;
+		for (Integer key : map.keySet()) {
+			Assert.assertEquals(Integer.valueOf(expectedKey), key);
+			expectedKey = expectedKey == 1 ? 0 : expectedKey - 2;
+		}
+		Assert.assertEquals("last", map.get(ENTRY_COUNT - 1));
+		Assert.assertEquals(ENTRY_COUNT / 2 + 1, map.size());
+		
+		map.clear();
+		Assert.assertFalse(map.entrySet().iterator().hasNext());
+	}
+	
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tr.com.serkanozal.jcommon.map;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * @author Serkan ÖZAL
+ */
+public class LongJudyMapTest {
+
+	@Test
+	public void putGotAndRemovedSuccessfully() {
+		final int ENTRY_COUNT = Long.SIZE - 1;
+		LongJudyMap<String> map = new LongJudyMap<String>();
+		
+		for (int i = 0; i < ENTRY_COUNT; i++) {
+			Assert.assertNull(map.put(1L << i, "1 << " + i));
+			Assert.assertEquals(i + 1, map.size());
+		}
+		
+		for (int i = 0; i < ENTRY_COUNT; i++) {
+			Assert.assertEquals("1 << " + i, map.get(1L << i));
+		}
+		
+		for (int i = 0; i < ENTRY_COUNT; i++) {
+			Assert.assertEquals("1 << " + i, map.remove(1L << i));
+			Assert.assertNull(map.get(1L << i));
+		}
+		
+		Assert.assertTrue(map.isEmpty());
+	}
+	
+	@Test
+	public void keysIteratedInAscendingOrderSuccessfully() {
+		final int ENTRY_COUNT = 10000;
+		Random random = new Random(ENTRY_COUNT);
+		LongJudyMap<Long> map = new LongJudyMap<Long>();
+		long[] expectedKeys = new long[ENTRY_COUNT + 2];
+		
+		expectedKeys[0] = Long.MIN_VALUE;
+		expectedKeys[1] = Long.MAX_VALUE;
+		map.put(Long.MIN_VALUE, Long.MIN_VALUE);
+		map.put(Long.MAX_VALUE, Long.MAX_VALUE);
+		for (int i = 2; i < expectedKeys.length; i++) {
+			long key = random.nextLong();
+			while (map.containsKey(key)) {
+				key = random.nextLong();
+			}
+			expectedKeys[i] = key;
+			map.put(key, key);
+		}
+		Arrays.sort(expectedKeys);
+		
+		Assert.assertTrue(Arrays.equals(expectedKeys, map.keys()));
+		
+		for (LongJudyMap<Long>.Cursor cursor = map.cursor(); cursor.advance();) {
+			Assert.assertEquals(cursor.getKey(), cursor.getValue().longValue());
+			cursor.remove();
+		}
+		Assert.assertTrue(map.isEmpty());
+	}
+	
+	@Test
+	public void orderedOperationsWorkedSuccessfully() {
+		final int ENTRY_COUNT = 10000;
+		LongJudyMap<String> map = new LongJudyMap<String>();
+		
+		for (int i = 0; i < ENTRY_COUNT; i++) {
+			map.put(i * 10 - ENTRY_COUNT * 5, String.valueOf(i));
+		}
+		map.put(Long.MAX_VALUE, "max");
+		
+		Assert.assertEquals(-ENTRY_COUNT * 5, map.firstKey());
+		Assert.assertEquals(Long.valueOf(-10), map.ceilingKey(-19));
+		Assert.assertEquals(Long.valueOf(0), map.ceilingKey(0));
+		Assert.assertEquals(Long.valueOf(10), map.higherKey(0));
+		Assert.assertEquals(Long.valueOf(Long.MAX_VALUE), map.ceilingKey(ENTRY_COUNT * 5));
+		Assert.assertNull(map.higherKey(Long.MAX_VALUE));
+		
+		long expectedKey = -100;
+		for (LongJudyMap<String>.Cursor cursor = map.cursor(-100, 100); cursor.advance();) {
+			Assert.assertEquals(expectedKey, cursor.getKey());
+			if (expectedKey % 20 == 0) {
+				cursor.remove();
+			}
+			expectedKey += 10;
+		}
+		Assert.assertEquals(100, expectedKey);
+		Assert.assertEquals(ENTRY_COUNT + 1 - 10, map.size());
+		Assert.assertFalse(map.cursor(100, 100).advance());
+		
+		LongJudyMap<String>.Cursor cursor = map.cursor(Long.MIN_VALUE, Long.MAX_VALUE);
+		for (int i = 0; i < ENTRY_COUNT - 10; i++) {
+			Assert.assertTrue(cursor.advance());
+		}
+		// Upper bound is exclusive
+		Assert.assertFalse(cursor.advance());
+		
+		map.clear();
+		try {
+			map.firstKey();
+			Assert.fail("Empty map should not have first key");
+		}
+		catch (NoSuchElementException e) {
+			// Expected since map is empty
+		}
+	}
+	
+}
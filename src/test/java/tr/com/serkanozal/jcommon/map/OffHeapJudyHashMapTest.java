@@ -0,0 +1,122 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tr.com.serkanozal.jcommon.map;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * @author Serkan ÖZAL
+ */
+public class OffHeapJudyHashMapTest {
+
+	@Test
+	public void putGotAndRemovedSuccessfully() {
+		final int ENTRY_COUNT = 100000;
+		Random random = new Random(ENTRY_COUNT);
+		Map<Integer, String> expectedMap = new HashMap<Integer, String>();
+		OffHeapJudyHashMap<Integer, String> map = new OffHeapJudyHashMap<Integer, String>();
+		try {
+			for (int i = 0; i < ENTRY_COUNT; i++) {
+				int key = random.nextInt();
+				Assert.assertEquals(expectedMap.put(key, String.valueOf(i)), map.put(key, String.valueOf(i)));
+			}
+			Assert.assertEquals(expectedMap.size(), map.size());
+			Assert.assertEquals(expectedMap, new HashMap<Integer, String>(map));
+			
+			for (Map.Entry<Integer, String> entry : expectedMap.entrySet()) {
+				Assert.assertEquals(entry.getValue(), map.get(entry.getKey()));
+				Assert.assertEquals(entry.getValue(), map.remove(entry.getKey()));
+				Assert.assertFalse(map.containsKey(entry.getKey()));
+			}
+			Assert.assertTrue(map.isEmpty());
+			Assert.assertEquals(0L, map.getMemoryUsage());
+		}
+		finally {
+			map.close();
+		}
+	}
+	
+	@Test
+	public void collidingKeysPutGotAndRemovedSuccessfully() {
+		final int ENTRY_COUNT = 1000;
+		final int HASH_CODE_COUNT = 10;
+		OffHeapJudyHashMap<JudyHashMapTest.CollidingKey, String> map = 
+				new OffHeapJudyHashMap<JudyHashMapTest.CollidingKey, String>();
+		try {
+			for (int i = 0; i < ENTRY_COUNT; i++) {
+				Assert.assertNull(map.put(new JudyHashMapTest.CollidingKey(i, HASH_CODE_COUNT), String.valueOf(i)));
+			}
+			Assert.assertEquals(ENTRY_COUNT, map.size());
+			
+			for (Iterator<Map.Entry<JudyHashMapTest.CollidingKey, String>> i = map.entrySet().iterator(); i.hasNext();) {
+				Map.Entry<JudyHashMapTest.CollidingKey, String> entry = i.next();
+				Assert.assertEquals(String.valueOf(entry.getKey().id), entry.getValue());
+				if (entry.getKey().id % 2 == 0) {
+					i.remove();
+				}
+			}
+			Assert.assertEquals(ENTRY_COUNT / 2, map.size());
+			
+			for (int i = 0; i < ENTRY_COUNT; i++) {
+				if (i % 2 == 0) {
+					Assert.assertNull(map.get(new JudyHashMapTest.CollidingKey(i, HASH_CODE_COUNT)));
+					// Handles of removed entries are reused
+					Assert.assertNull(map.put(new JudyHashMapTest.CollidingKey(i, HASH_CODE_COUNT), "again"));
+				}
+				else {
+					Assert.assertEquals(String.valueOf(i), map.get(new JudyHashMapTest.CollidingKey(i, HASH_CODE_COUNT)));
+				}
+			}
+			Assert.assertEquals(ENTRY_COUNT, map.size());
+			
+			map.clear();
+			Assert.assertTrue(map.isEmpty());
+			Assert.assertEquals(0L, map.getMemoryUsage());
+		}
+		finally {
+			map.close();
+		}
+	}
+	
+	@Test
+	public void closedMapSeenAsEmptySuccessfully() {
+		OffHeapJudyHashMap<Integer, String> map = new OffHeapJudyHashMap<Integer, String>();
+		for (int i = 0; i < 100; i++) {
+			map.put(i, String.valueOf(i));
+		}
+		map.close();
+		Assert.assertTrue(map.isClosed());
+		Assert.assertEquals(0, map.size());
+		Assert.assertTrue(map.isEmpty());
+		Assert.assertFalse(map.entrySet().iterator().hasNext());
+		try {
+			map.put(1, "1");
+			Assert.fail("Map has been closed");
+		}
+		catch (IllegalStateException e) {
+			// Expected since native memory of map is released
+		}
+	}
+	
+}
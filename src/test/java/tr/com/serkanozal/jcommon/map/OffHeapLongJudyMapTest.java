@@ -0,0 +1,132 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tr.com.serkanozal.jcommon.map;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * @author Serkan ÖZAL
+ */
+public class OffHeapLongJudyMapTest {
+
+	@Test
+	public void putGotAndRemovedSuccessfully() {
+		final int ENTRY_COUNT = Long.SIZE - 1;
+		OffHeapLongJudyMap map = new OffHeapLongJudyMap();
+		try {
+			for (int i = 0; i < ENTRY_COUNT; i++) {
+				Assert.assertEquals(0L, map.put(1L << i, i));
+				Assert.assertEquals(i + 1, map.size());
+			}
+			Assert.assertEquals(0L, map.put(0L, -1L));
+			Assert.assertEquals(-1L, map.put(0L, 0L));
+			Assert.assertTrue(map.containsKey(0L));
+			Assert.assertEquals(-1L, map.get(-1L, -1L));
+			
+			for (int i = 0; i < ENTRY_COUNT; i++) {
+				Assert.assertEquals(i, map.get(1L << i));
+			}
+			
+			for (int i = 0; i < ENTRY_COUNT; i++) {
+				Assert.assertEquals(i, map.remove(1L << i));
+				Assert.assertFalse(map.containsKey(1L << i));
+			}
+			Assert.assertEquals(0L, map.remove(0L));
+			
+			Assert.assertTrue(map.isEmpty());
+			Assert.assertEquals(0L, map.getMemoryUsage());
+		}
+		finally {
+			map.close();
+		}
+	}
+	
+	@Test
+	public void randomKeysPutIteratedAndRemovedSuccessfully() {
+		final int ENTRY_COUNT = 100000;
+		Random random = new Random(ENTRY_COUNT);
+		OffHeapLongJudyMap map = new OffHeapLongJudyMap();
+		long[] expectedKeys = new long[ENTRY_COUNT];
+		try {
+			for (int i = 0; i < ENTRY_COUNT; i++) {
+				// Keys are clustered, so nodes of all layouts are used
+				long key = i % 2 == 0 ? random.nextLong() : random.nextInt(ENTRY_COUNT * 4) - ENTRY_COUNT * 2;
+				while (map.containsKey(key)) {
+					key = random.nextLong();
+				}
+				expectedKeys[i] = key;
+				map.put(key, ~key);
+			}
+			Assert.assertEquals(ENTRY_COUNT, map.size());
+			Assert.assertTrue(map.getMemoryUsage() > 0);
+			Assert.assertTrue(OffHeapLongJudyMap.getTotalMemoryUsage() >= map.getMemoryUsage());
+			
+			long[] sortedKeys = expectedKeys.clone();
+			Arrays.sort(sortedKeys);
+			Assert.assertTrue(Arrays.equals(sortedKeys, map.keys()));
+			
+			for (int i = 0; i < ENTRY_COUNT; i++) {
+				Assert.assertEquals(~expectedKeys[i], map.get(expectedKeys[i]));
+				Assert.assertEquals(~expectedKeys[i], map.remove(expectedKeys[i]));
+				Assert.assertFalse(map.containsKey(expectedKeys[i]));
+			}
+			Assert.assertTrue(map.isEmpty());
+			Assert.assertEquals(0L, map.getMemoryUsage());
+		}
+		finally {
+			map.close();
+		}
+	}
+	
+	@Test
+	public void memoryLimitAndCloseHandledSuccessfully() {
+		final int MEMORY_LIMIT = 64 * 1024;
+		OffHeapLongJudyMap map = new OffHeapLongJudyMap(MEMORY_LIMIT);
+		int putCount = 0;
+		try {
+			for (long key = 0; ; key += 0x0101010101L) {
+				map.put(key, key);
+				putCount++;
+			}
+		}
+		catch (IllegalStateException e) {
+			// Memory limit has been exceeded, map is left as it was before the failed put
+		}
+		Assert.assertEquals(putCount, map.size());
+		Assert.assertTrue(map.getMemoryUsage() <= MEMORY_LIMIT);
+		for (int i = 0; i < putCount; i++) {
+			Assert.assertEquals(i * 0x0101010101L, map.get(i * 0x0101010101L, -1L));
+		}
+		
+		map.close();
+		Assert.assertTrue(map.isClosed());
+		Assert.assertEquals(0L, map.getMemoryUsage());
+		try {
+			map.put(1L, 1L);
+			Assert.fail("Closed map should not be used");
+		}
+		catch (IllegalStateException e) {
+			// Expected since map is closed
+		}
+	}
+	
+}
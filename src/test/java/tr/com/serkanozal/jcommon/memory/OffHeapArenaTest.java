@@ -0,0 +1,90 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package tr.com.serkanozal.jcommon.memory;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import sun.misc.Unsafe;
+import tr.com.serkanozal.jcommon.util.JvmUtil;
+
+/**
+ * @author Serkan ÖZAL
+ */
+@SuppressWarnings("restriction")
+public class OffHeapArenaTest {
+
+	private final Unsafe unsafe = JvmUtil.getUnsafe();
+	
+	@Test
+	public void blocksAllocatedInChunksSuccessfully() {
+		OffHeapArena arena = new OffHeapArena(4096);
+		try {
+			long previousAddress = 0;
+			for (int i = 0; i < 100; i++) {
+				long address = arena.allocate(3, 1 << (i % 7));
+				Assert.assertEquals(0, address % (1 << (i % 7)));
+				Assert.assertTrue(address >= previousAddress + 3 || arena.getChunkCount() > 1);
+				unsafe.putByte(address, (byte) i);
+				previousAddress = address;
+			}
+			Assert.assertEquals(1, arena.getChunkCount());
+			Assert.assertEquals(300, arena.getAllocatedMemory());
+			
+			// Block bigger than chunk size gets its own chunk
+			long address = arena.allocate(10000);
+			unsafe.setMemory(address, 10000, (byte) 1);
+			Assert.assertEquals(2, arena.getChunkCount());
+			Assert.assertTrue(arena.getReservedMemory() >= 4096 + 10000);
+		}
+		finally {
+			arena.close();
+		}
+	}
+	
+	@Test
+	public void arenaResetAndClosedSuccessfully() {
+		long totalReservedMemory = MemoryUtil.getTotalReservedMemory();
+		OffHeapArena arena = new OffHeapArena(1024);
+		long firstAddress = arena.allocate(512);
+		for (int i = 0; i < 10; i++) {
+			arena.allocate(512);
+		}
+		Assert.assertTrue(arena.getChunkCount() > 1);
+		
+		arena.reset();
+		Assert.assertEquals(1, arena.getChunkCount());
+		Assert.assertEquals(0, arena.getAllocatedMemory());
+		Assert.assertEquals(1024, arena.getReservedMemory());
+		// Reset arena is reused from the beginning of its first chunk
+		Assert.assertEquals(firstAddress, arena.allocate(512));
+		
+		arena.close();
+		Assert.assertEquals(0, arena.getReservedMemory());
+		Assert.assertEquals(totalReservedMemory, MemoryUtil.getTotalReservedMemory());
+		try {
+			arena.allocate(8);
+			Assert.fail("Arena has been closed");
+		}
+		catch (IllegalStateException e) {
+			// Expected since arena is closed
+		}
+	}
+	
+}
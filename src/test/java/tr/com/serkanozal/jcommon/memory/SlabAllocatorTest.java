@@ -0,0 +1,239 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package tr.com.serkanozal.jcommon.memory;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import sun.misc.Unsafe;
+import tr.com.serkanozal.jcommon.util.JvmUtil;
+
+/**
+ * @author Serkan ÖZAL
+ */
+@SuppressWarnings("restriction")
+public class SlabAllocatorTest {
+
+	private final Unsafe unsafe = JvmUtil.getUnsafe();
+	
+	@Test
+	public void blocksAllocatedAndFreedSuccessfully() {
+		SlabAllocator allocator = new SlabAllocator();
+		try {
+			long[] addresses = new long[1000];
+			for (int i = 0; i < addresses.length; i++) {
+				addresses[i] = allocator.allocate(i + 1);
+				Assert.assertEquals(0, addresses[i] % MemoryUtil.DEFAULT_ALIGNMENT);
+				unsafe.setMemory(addresses[i], i + 1, (byte) i);
+			}
+			// Blocks must not overlap
+			for (int i = 0; i < addresses.length; i++) {
+				Assert.assertEquals((byte) i, unsafe.getByte(addresses[i]));
+				Assert.assertEquals((byte) i, unsafe.getByte(addresses[i] + i));
+			}
+			Assert.assertEquals(addresses.length, allocator.getLiveAllocationCount());
+			Assert.assertTrue(allocator.getReservedMemory() >= allocator.getAllocatedMemory());
+			
+			for (int i = 0; i < addresses.length; i++) {
+				allocator.free(addresses[i], i + 1);
+			}
+			Assert.assertEquals(0, allocator.getLiveAllocationCount());
+			Assert.assertEquals(0, allocator.getAllocatedMemory());
+			
+			// Freed block is reused by the next allocation of the same size class
+			long address = allocator.allocate(100);
+			allocator.free(address, 100);
+			Assert.assertEquals(address, allocator.allocate(120));
+		}
+		finally {
+			allocator.close();
+		}
+	}
+	
+	@Test
+	public void alignedAndLargeBlocksAllocatedSuccessfully() {
+		SlabAllocator allocator = new SlabAllocator();
+		try {
+			for (int alignment = 8; alignment <= SlabAllocator.MAX_ALIGNMENT; alignment <<= 1) {
+				long address = allocator.allocate(10, alignment);
+				Assert.assertEquals(0, address % alignment);
+			}
+			long reservedMemory = allocator.getReservedMemory();
+			long size = SlabAllocator.MAX_BLOCK_SIZE * 4;
+			long address = allocator.allocate(size, 64);
+			Assert.assertEquals(0, address % 64);
+			unsafe.setMemory(address, size, (byte) 1);
+			Assert.assertTrue(allocator.getReservedMemory() >= reservedMemory + size);
+			allocator.free(address, size, 64);
+			Assert.assertEquals(reservedMemory, allocator.getReservedMemory());
+			try {
+				allocator.free(address, size, 64);
+				Assert.fail("Large block has been already freed");
+			}
+			catch (IllegalArgumentException e) {
+				// Expected since block is not allocated anymore
+			}
+		}
+		finally {
+			allocator.close();
+		}
+	}
+	
+	@Test
+	public void blocksAllocatedAndFreedByConcurrentThreadsSuccessfully() throws InterruptedException {
+		final int THREAD_COUNT = 8;
+		final int ALLOCATION_COUNT = 1000;
+		final SlabAllocator allocator = new SlabAllocator();
+		final AtomicInteger corruptionCount = new AtomicInteger();
+		try {
+			Thread[] threads = new Thread[THREAD_COUNT];
+			for (int i = 0; i < THREAD_COUNT; i++) {
+				final long pattern = i + 1;
+				threads[i] = new Thread() {
+					@Override
+					public void run() {
+						long[] addresses = new long[ALLOCATION_COUNT];
+						for (int round = 0; round < 10; round++) {
+							for (int j = 0; j < ALLOCATION_COUNT; j++) {
+								addresses[j] = allocator.allocate(8 + (j % 64) * 8);
+								unsafe.putLong(addresses[j], pattern);
+							}
+							for (int j = 0; j < ALLOCATION_COUNT; j++) {
+								// Blocks of other threads must never be the same
+								if (unsafe.getLong(addresses[j]) != pattern) {
+									corruptionCount.incrementAndGet();
+								}
+								allocator.free(addresses[j], 8 + (j % 64) * 8);
+							}
+						}
+					}
+				};
+				threads[i].start();
+			}
+			for (Thread thread : threads) {
+				thread.join();
+			}
+			Assert.assertEquals(0, corruptionCount.get());
+			Assert.assertEquals(THREAD_COUNT * ALLOCATION_COUNT * 10, allocator.getAllocationCount());
+			Assert.assertEquals(0, allocator.getLiveAllocationCount());
+			Assert.assertEquals(0, allocator.getAllocatedMemory());
+		}
+		finally {
+			allocator.close();
+		}
+	}
+	
+	@Test
+	public void threadCachesReclaimedSuccessfully() throws InterruptedException {
+		final SlabAllocator allocator = new SlabAllocator();
+		try {
+			Thread thread = new Thread() {
+				@Override
+				public void run() {
+					long[] addresses = new long[10];
+					for (int i = 0; i < addresses.length; i++) {
+						addresses[i] = allocator.allocate(SlabAllocator.MAX_BLOCK_SIZE);
+					}
+					for (int i = 0; i < addresses.length; i++) {
+						allocator.free(addresses[i], SlabAllocator.MAX_BLOCK_SIZE);
+					}
+				}
+			};
+			thread.start();
+			thread.join();
+			
+			// Counters of dead thread are kept and its cached blocks refill cache of another thread, 
+			// so no more slab is reserved
+			Assert.assertEquals(10, allocator.getAllocationCount());
+			Assert.assertEquals(0, allocator.getLiveAllocationCount());
+			long reservedMemory = allocator.getReservedMemory();
+			long address = allocator.allocate(SlabAllocator.MAX_BLOCK_SIZE);
+			Assert.assertEquals(reservedMemory, allocator.getReservedMemory());
+			
+			// Flushed blocks are also given to other threads
+			allocator.free(address, SlabAllocator.MAX_BLOCK_SIZE);
+			allocator.flushThreadCache();
+			thread = new Thread() {
+				@Override
+				public void run() {
+					allocator.allocate(SlabAllocator.MAX_BLOCK_SIZE);
+				}
+			};
+			thread.start();
+			thread.join();
+			Assert.assertEquals(reservedMemory, allocator.getReservedMemory());
+			Assert.assertEquals(12, allocator.getAllocationCount());
+			Assert.assertEquals(1, allocator.getLiveAllocationCount());
+		}
+		finally {
+			allocator.close();
+		}
+	}
+	
+	@Test
+	public void closedAllocatorNotRetainedByThreadCachesSuccessfully() throws InterruptedException {
+		WeakReference<SlabAllocator> allocatorRef = useAndCloseByAnotherThread();
+		for (int i = 0; i < 10 && allocatorRef.get() != null; i++) {
+			JvmUtil.runGC();
+		}
+		Assert.assertNull(allocatorRef.get());
+	}
+	
+	/**
+	 * Allocator is closed by another thread, so cache of current thread is still in its thread locals.
+	 */
+	private static WeakReference<SlabAllocator> useAndCloseByAnotherThread() throws InterruptedException {
+		final SlabAllocator allocator = new SlabAllocator();
+		allocator.free(allocator.allocate(100), 100);
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				allocator.close();
+			}
+		};
+		thread.start();
+		thread.join();
+		return new WeakReference<SlabAllocator>(allocator);
+	}
+	
+	@Test
+	public void reservedMemoryReleasedByCloseSuccessfully() {
+		long totalReservedMemory = MemoryUtil.getTotalReservedMemory();
+		SlabAllocator allocator = new SlabAllocator();
+		allocator.allocate(10);
+		allocator.allocate(SlabAllocator.MAX_BLOCK_SIZE + 1);
+		Assert.assertEquals(totalReservedMemory + allocator.getReservedMemory(), MemoryUtil.getTotalReservedMemory());
+		
+		allocator.close();
+		Assert.assertTrue(allocator.isClosed());
+		Assert.assertEquals(0, allocator.getReservedMemory());
+		Assert.assertEquals(totalReservedMemory, MemoryUtil.getTotalReservedMemory());
+		try {
+			allocator.allocate(10);
+			Assert.fail("Allocator has been closed");
+		}
+		catch (IllegalStateException e) {
+			// Expected since allocator is closed
+		}
+	}
+	
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package tr.com.serkanozal.jcommon.util;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * @author Serkan ÖZAL
+ */
+public class BeanAccessorTest {
+
+	@Test
+	public void generatedAccessorAccessesPropertiesSuccessfully() {
+		BeanAccessor<SampleBean> accessor = ReflectionUtil.getBeanAccessor(SampleBean.class);
+		Assert.assertFalse(accessor instanceof ReflectiveBeanAccessor);
+		Assert.assertSame(accessor, ReflectionUtil.getBeanAccessor(SampleBean.class));
+		checkAccessor(accessor);
+	}
+	
+	@Test
+	public void reflectiveAccessorAccessesPropertiesSuccessfully() {
+		BeanAccessor<SampleBean> accessor = 
+				new ReflectiveBeanAccessor<SampleBean>(SampleBean.class, BeanAccessor.findProperties(SampleBean.class));
+		checkAccessor(accessor);
+	}
+	
+	@Test
+	public void accessorOfNonPublicClassFallsBackToReflection() {
+		BeanAccessor<HiddenBean> accessor = ReflectionUtil.getBeanAccessor(HiddenBean.class);
+		Assert.assertTrue(accessor instanceof ReflectiveBeanAccessor);
+		HiddenBean bean = accessor.newInstance();
+		accessor.setInt(bean, accessor.indexOf("value"), 3);
+		Assert.assertEquals(3, bean.getValue());
+	}
+	
+	@Test
+	public void accessorOfClassWithNonPublicPropertyTypeFallsBackToReflection() {
+		BeanAccessor<HiddenTypeBean> accessor = ReflectionUtil.getBeanAccessor(HiddenTypeBean.class);
+		Assert.assertTrue(accessor instanceof ReflectiveBeanAccessor);
+		HiddenTypeBean bean = accessor.newInstance();
+		HiddenBean value = new HiddenBean();
+		accessor.set(bean, accessor.indexOf("hidden"), value);
+		Assert.assertSame(value, bean.getHidden());
+		Assert.assertSame(value, accessor.get(bean, accessor.indexOf("hidden")));
+		HiddenBean[] values = { value };
+		accessor.set(bean, accessor.indexOf("hiddens"), values);
+		Assert.assertSame(values, accessor.get(bean, accessor.indexOf("hiddens")));
+	}
+	
+	private void checkAccessor(BeanAccessor<SampleBean> accessor) {
+		Assert.assertEquals(7, accessor.getPropertyCount());
+		int active = accessor.indexOf("active");
+		int age = accessor.indexOf("age");
+		int fullName = accessor.indexOf("fullName");
+		int id = accessor.indexOf("id");
+		int name = accessor.indexOf("name");
+		int note = accessor.indexOf("note");
+		int score = accessor.indexOf("score");
+		Assert.assertEquals(-1, accessor.indexOf("hidden"));
+		// Properties are sorted by their names
+		Assert.assertEquals(0, active);
+		Assert.assertEquals(6, score);
+		Assert.assertFalse(accessor.getProperties().get(fullName).isWritable());
+		
+		SampleBean bean = accessor.newInstance();
+		accessor.setInt(bean, age, 30);
+		accessor.setLong(bean, id, Long.MAX_VALUE);
+		accessor.setDouble(bean, score, 2.5);
+		accessor.setBoolean(bean, active, true);
+		accessor.set(bean, name, "Serkan");
+		accessor.set(bean, note, "note");
+		Assert.assertEquals(30, bean.getAge());
+		Assert.assertEquals(Long.MAX_VALUE, bean.getId());
+		Assert.assertEquals(2.5, bean.getScore());
+		Assert.assertTrue(bean.isActive());
+		Assert.assertEquals("note", bean.note);
+		
+		Assert.assertEquals(30, accessor.getInt(bean, age));
+		Assert.assertEquals(30, accessor.get(bean, age));
+		Assert.assertEquals(Long.MAX_VALUE, accessor.getLong(bean, id));
+		Assert.assertEquals(2.5, accessor.getDouble(bean, score));
+		Assert.assertTrue(accessor.getBoolean(bean, active));
+		Assert.assertEquals("Serkan (30)", accessor.get(bean, fullName));
+		accessor.set(bean, age, 31);
+		Assert.assertEquals(31, bean.getAge());
+		
+		SampleBean copy = accessor.newInstance();
+		accessor.copy(bean, copy);
+		Assert.assertEquals(31, copy.getAge());
+		Assert.assertEquals(Long.MAX_VALUE, copy.getId());
+		Assert.assertEquals(2.5, copy.getScore());
+		Assert.assertTrue(copy.isActive());
+		Assert.assertEquals("Serkan", copy.getName());
+		Assert.assertEquals("note", copy.note);
+		
+		try {
+			accessor.set(bean, fullName, "x");
+			Assert.fail("Read-only property cannot be set");
+		}
+		catch (IllegalArgumentException e) {
+			
+		}
+		try {
+			accessor.getLong(bean, age);
+			Assert.fail("Property cannot be accessed as another type");
+		}
+		catch (IllegalArgumentException e) {
+			
+		}
+		try {
+			accessor.get(bean, 100);
+			Assert.fail("There is no property at this index");
+		}
+		catch (IllegalArgumentException e) {
+			
+		}
+		try {
+			accessor.set(bean, age, "x");
+			Assert.fail("Property cannot be set to value of another type");
+		}
+		catch (ClassCastException e) {
+			
+		}
+	}
+	
+	public static class SampleBean {
+		
+		public String note;
+		private String name;
+		private int age;
+		private long id;
+		private double score;
+		private boolean active;
+		@SuppressWarnings("unused")
+		private int hidden;
+		
+		public String getName() {
+			return name;
+		}
+		
+		public void setName(String name) {
+			this.name = name;
+		}
+		
+		public int getAge() {
+			return age;
+		}
+		
+		public void setAge(int age) {
+			this.age = age;
+		}
+		
+		public long getId() {
+			return id;
+		}
+		
+		public void setId(long id) {
+			this.id = id;
+		}
+		
+		public double getScore() {
+			return score;
+		}
+		
+		public void setScore(double score) {
+			this.score = score;
+		}
+		
+		public boolean isActive() {
+			return active;
+		}
+		
+		public void setActive(boolean active) {
+			this.active = active;
+		}
+		
+		public String getFullName() {
+			return name + " (" + age + ")";
+		}
+		
+	}
+	
+	static class HiddenBean {
+		
+		private int value;
+		
+		public HiddenBean() {
+			
+		}
+		
+		public int getValue() {
+			return value;
+		}
+		
+		public void setValue(int value) {
+			this.value = value;
+		}
+		
+	}
+	
+	public static class HiddenTypeBean {
+		
+		private HiddenBean hidden;
+		public HiddenBean[] hiddens;
+		
+		public HiddenBean getHidden() {
+			return hidden;
+		}
+		
+		public void setHidden(HiddenBean hidden) {
+			this.hidden = hidden;
+		}
+		
+	}
+	
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package tr.com.serkanozal.jcommon.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * @author Serkan ÖZAL
+ */
+public class ClassHistogramTest {
+
+	@Test
+	public void histogramBuiltSuccessfully() {
+		Map<Integer, String> map = new HashMap<Integer, String>();
+		for (int i = 0; i < 1000; i++) {
+			map.put(i, "value-" + i);
+		}
+		Holder holder = new Holder(map, new long[100]);
+		
+		ClassHistogram histogram = JvmUtil.histogramOf(holder);
+		Assert.assertTrue(histogram.isCompleted());
+		Assert.assertEquals(JvmUtil.sizeOf(holder), histogram.getTotalSize());
+		Assert.assertEquals(Holder.class.getName(), histogram.getRootClassName());
+		
+		long totalCount = 0;
+		long totalSize = 0;
+		Map<String, ClassHistogram.ClassEntry> entries = new HashMap<String, ClassHistogram.ClassEntry>();
+		for (ClassHistogram.ClassEntry entry : histogram.getClassEntries()) {
+			totalCount += entry.getCount();
+			totalSize += entry.getShallowSize();
+			entries.put(entry.getClassName(), entry);
+		}
+		Assert.assertEquals(histogram.getTotalCount(), totalCount);
+		Assert.assertEquals(histogram.getTotalSize(), totalSize);
+		Assert.assertEquals(1000, entries.get(String.class.getName()).getCount());
+		Assert.assertEquals(1, entries.get(Holder.class.getName()).getCount());
+		
+		// Shared object is retained by the first child which reaches it
+		List<ClassHistogram.ChildEntry> children = histogram.getChildEntries();
+		Assert.assertEquals(2, histogram.getChildCount());
+		Assert.assertEquals(2, children.size());
+		Assert.assertEquals("map", children.get(0).getPath());
+		Assert.assertEquals(JvmUtil.sizeOf(map), children.get(0).getRetainedSize());
+		Assert.assertEquals(JvmUtil.sizeOf(holder.array), children.get(1).getRetainedSize());
+		
+		String csv = histogram.toClassesCsv();
+		Assert.assertTrue(csv.startsWith("class,count,shallowSize\n"));
+		Assert.assertTrue(csv.contains("\n" + String.class.getName() + ",1000,"));
+		Assert.assertTrue(histogram.toChildrenCsv().contains("\nmap," + HashMap.class.getName() + ","));
+		String json = histogram.toJson();
+		Assert.assertTrue(json.startsWith("{\"rootClass\":\"" + Holder.class.getName() + "\""));
+		Assert.assertTrue(json.contains("{\"class\":\"java.lang.String\",\"count\":1000,"));
+		Assert.assertTrue(json.endsWith("]}"));
+	}
+	
+	@Test
+	public void histogramLimitedSuccessfully() {
+		List<Object> list = new ArrayList<Object>();
+		for (int i = 0; i < 1000; i++) {
+			list.add(new Object[] { new Object() });
+		}
+		Object[] array = list.toArray();
+		
+		ClassHistogram histogram = JvmUtil.histogramOf(array, 100, 10);
+		Assert.assertFalse(histogram.isCompleted());
+		Assert.assertEquals(100, histogram.getTotalCount());
+		
+		histogram = JvmUtil.histogramOf(array, Long.MAX_VALUE, 10);
+		Assert.assertTrue(histogram.isCompleted());
+		Assert.assertEquals(2001, histogram.getTotalCount());
+		Assert.assertEquals(1000, histogram.getChildCount());
+		Assert.assertEquals(10, histogram.getChildEntries().size());
+	}
+	
+	@SuppressWarnings("unused")
+	private static class Holder {
+		
+		private final Map<Integer, String> map;
+		private final Map<Integer, String> sameMap;
+		private final long[] array;
+		
+		private Holder(Map<Integer, String> map, long[] array) {
+			this.map = map;
+			this.sameMap = map;
+			this.array = array;
+		}
+		
+	}
+	
+}
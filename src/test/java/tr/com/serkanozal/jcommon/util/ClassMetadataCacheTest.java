@@ -0,0 +1,112 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tr.com.serkanozal.jcommon.util;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * @author Serkan ÖZAL
+ */
+public class ClassMetadataCacheTest {
+
+	@Test
+	public void metadataComputedOnceByConcurrentThreadsSuccessfully() throws InterruptedException {
+		final int THREAD_COUNT = 8;
+		final AtomicInteger computeCount = new AtomicInteger();
+		final ClassMetadataCache<Object> cache = 
+				new ClassMetadataCache<Object>() {
+					@Override
+					protected Object computeValue(Class<?> clazz) {
+						computeCount.incrementAndGet();
+						return new Object();
+					}
+				};
+		final ConcurrentHashMap<Object, Boolean> values = new ConcurrentHashMap<Object, Boolean>();
+		final CountDownLatch startLatch = new CountDownLatch(1);
+		Thread[] threads = new Thread[THREAD_COUNT];
+		for (int i = 0; i < THREAD_COUNT; i++) {
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						startLatch.await();
+					} 
+					catch (InterruptedException e) {
+						return;
+					}
+					for (int j = 0; j < 1000; j++) {
+						values.put(cache.get(String.class), Boolean.TRUE);
+						values.put(cache.get(ClassMetadataCacheTest.class), Boolean.TRUE);
+					}
+				}
+			};
+			threads[i].start();
+		}
+		startLatch.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		
+		// Values may be computed more than once by racing threads, but only one of them is published
+		Assert.assertEquals(2, values.size());
+		Assert.assertTrue(computeCount.get() >= 2);
+		Assert.assertEquals(2, cache.size());
+	}
+	
+	@Test
+	public void metadataOfUnloadedClassesRemovedSuccessfully() throws Exception {
+		ClassMetadataCache<Long> cache = 
+				new ClassMetadataCache<Long>() {
+					@Override
+					protected Long computeValue(Class<?> clazz) {
+						return (long) clazz.getName().length();
+					}
+				};
+		Assert.assertTrue(ClassMetadataCache.isPermanent(String.class));
+		Assert.assertTrue(ClassMetadataCache.isPermanent(ClassMetadataCacheTest.class));
+		
+		URL classesUrl = ClassMetadataCacheTest.class.getProtectionDomain().getCodeSource().getLocation();
+		URLClassLoader classLoader = new URLClassLoader(new URL[] { classesUrl }, null);
+		Class<?> clazz = classLoader.loadClass(SampleClass.class.getName());
+		Assert.assertFalse(ClassMetadataCache.isPermanent(clazz));
+		Assert.assertEquals(Long.valueOf(SampleClass.class.getName().length()), cache.get(clazz));
+		Assert.assertEquals(1, cache.size());
+		
+		clazz = null;
+		classLoader = null;
+		for (int i = 0; i < 20 && cache.size() > 0; i++) {
+			System.gc();
+			Thread.sleep(100);
+		}
+		Assert.assertEquals(0, cache.size());
+	}
+	
+	public static class SampleClass {
+		
+		long value;
+		
+	}
+	
+}
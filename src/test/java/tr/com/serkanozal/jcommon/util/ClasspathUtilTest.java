@@ -0,0 +1,272 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package tr.com.serkanozal.jcommon.util;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * @author Serkan ÖZAL
+ */
+public class ClasspathUtilTest {
+
+	@Test
+	public void classpathUrlsFoundSuccessfully() {
+		List<URL> urls = new ArrayList<URL>(ClasspathUtil.getClasspathUrls());
+		Assert.assertFalse(urls.isEmpty());
+		for (URL url : urls) {
+			for (URL rootUrl : urls) {
+				if (url != rootUrl) {
+					Assert.assertFalse(url.toExternalForm().startsWith(rootUrl.toExternalForm()));
+				}
+			}
+		}
+	}
+	
+	@Test
+	public void directoryScannedSuccessfully() throws Exception {
+		URL root = ClasspathUtilTest.class.getProtectionDomain().getCodeSource().getLocation();
+		ClasspathIndex index = ClasspathUtil.scan(Collections.singleton(root), 4);
+		
+		String packageName = ClasspathUtilTest.class.getPackage().getName();
+		Assert.assertTrue(index.getPackageNames().contains(packageName));
+		Assert.assertTrue(index.getClassNamesInPackage(packageName).contains(ClasspathUtilTest.class.getName()));
+		Assert.assertTrue(index.getClassNamesInPackage(packageName).contains(ScannedChild.class.getName()));
+		
+		ClasspathIndex.ClassEntry entry = index.getClassEntry(ScannedChild.class.getName());
+		Assert.assertEquals(ScannedBase.class.getName(), entry.getSuperclassName());
+		Assert.assertEquals(Arrays.asList(Runnable.class.getName()), entry.getInterfaceNames());
+		Assert.assertTrue(entry.getAnnotationNames().isEmpty());
+		Assert.assertSame(root, entry.getRoot());
+		Assert.assertTrue(index.getClassEntry(ScannedMarker.class.getName()).isAnnotation());
+		
+		// Annotation is not visible at runtime, so it can only be found in class file
+		Assert.assertEquals(Arrays.asList(ScannedBase.class.getName()), 
+				index.getClassNamesAnnotatedWith(ScannedMarker.class));
+		Assert.assertEquals(Arrays.asList(ScannedChild.class.getName(), ScannedGrandChild.class.getName()), 
+				index.getSubtypeNamesOf(ScannedBase.class));
+		Assert.assertTrue(index.getSubtypeNamesOf(Runnable.class).contains(ScannedGrandChild.class.getName()));
+		Assert.assertTrue(index.getSubtypeNamesOf(Object.class).contains(ClasspathUtilTest.class.getName()));
+		
+		Assert.assertTrue(index.getResourceNames().contains("testResource.txt"));
+		List<URL> resourceUrls = index.getResourceUrls("testResource.txt");
+		Assert.assertEquals(1, resourceUrls.size());
+		Assert.assertEquals(ClasspathUtilTest.class.getResource("/testResource.txt"), resourceUrls.get(0));
+	}
+	
+	@Test
+	public void archiveScannedSuccessfully() throws Exception {
+		File file = File.createTempFile("jcommon-classpath", ".jar");
+		file.deleteOnExit();
+		JarOutputStream out = new JarOutputStream(new FileOutputStream(file));
+		try {
+			addClassFile(out, ScannedBase.class);
+			addClassFile(out, ScannedChild.class);
+			out.putNextEntry(new JarEntry("META-INF/test/"));
+			out.putNextEntry(new JarEntry("META-INF/test/resource.txt"));
+			out.write("jcommon".getBytes("UTF-8"));
+			out.closeEntry();
+		}
+		finally {
+			out.close();
+		}
+		
+		URL root = file.toURI().toURL();
+		URL missingRoot = new File(file.getPath() + ".missing").toURI().toURL();
+		ClasspathIndex index = ClasspathUtil.scan(Arrays.asList(root, missingRoot));
+		Assert.assertEquals(2, index.getClassCount());
+		Assert.assertEquals(Arrays.asList(ScannedChild.class.getName()), index.getSubtypeNamesOf(ScannedBase.class));
+		Assert.assertEquals(Collections.singleton("META-INF/test/resource.txt"), index.getResourceNames());
+		InputStream in = index.getResourceUrls("META-INF/test/resource.txt").get(0).openStream();
+		try {
+			Assert.assertEquals("jcommon", IoUtil.getContentOfInputStream(in));
+		}
+		finally {
+			in.close();
+		}
+	}
+	
+	@Test
+	public void webApplicationLibrariesScannedAsRootsSuccessfully() throws Exception {
+		File root = File.createTempFile("jcommon-classpath", "");
+		root.delete();
+		File libDirectory = new File(root, "WEB-INF/lib");
+		libDirectory.mkdirs();
+		File file = new File(libDirectory, "library.jar");
+		JarOutputStream out = new JarOutputStream(new FileOutputStream(file));
+		try {
+			addClassFile(out, ScannedBase.class);
+			out.putNextEntry(new JarEntry("library.txt"));
+			out.write("jcommon".getBytes("UTF-8"));
+			out.closeEntry();
+		}
+		finally {
+			out.close();
+		}
+		
+		try {
+			URL libRoot = libDirectory.toURI().toURL();
+			URL jarRoot = file.toURI().toURL();
+			Assert.assertTrue(libRoot.toExternalForm().endsWith("WEB-INF/lib/"));
+			ClasspathIndex index = ClasspathUtil.scan(Collections.singleton(libRoot), 2);
+			Assert.assertEquals(Arrays.asList(libRoot, jarRoot), index.getRoots());
+			Assert.assertEquals(jarRoot, index.getClassEntry(ScannedBase.class.getName()).getRoot());
+			InputStream in = index.getResourceUrls("library.txt").get(0).openStream();
+			try {
+				Assert.assertEquals("jcommon", IoUtil.getContentOfInputStream(in));
+			}
+			finally {
+				in.close();
+			}
+		}
+		finally {
+			file.delete();
+			libDirectory.delete();
+			libDirectory.getParentFile().delete();
+			root.delete();
+		}
+	}
+	
+	@Test
+	public void malformedClassFilesAndDirectoryCyclesSkippedSuccessfully() throws Exception {
+		File root = File.createTempFile("jcommon-classpath", "");
+		root.delete();
+		File directory = new File(root, "a");
+		directory.mkdirs();
+		File validClassFile = new File(directory, "Valid.class");
+		File invalidClassFile = new File(directory, "Invalid.class");
+		File link = new File(directory, "loop");
+		try {
+			writeClassFile(validClassFile, "a/Valid", 1);
+			// Name of class attribute refers to a constant which doesn't exist
+			writeClassFile(invalidClassFile, "a/Invalid", 0x7FFF);
+			boolean linked = false;
+			try {
+				linked = Runtime.getRuntime().exec(
+						new String[] { "ln", "-s", root.getAbsolutePath(), link.getAbsolutePath() }).waitFor() == 0;
+			}
+			catch (IOException e) {
+				// Symbolic links are not supported, so only class files are checked
+			}
+			
+			ClasspathIndex index = ClasspathUtil.scan(Collections.singleton(root.toURI().toURL()), 2);
+			Assert.assertEquals(Collections.singleton("a.Valid"), index.getClassNames());
+			Assert.assertEquals(linked, link.exists());
+		}
+		finally {
+			link.delete();
+			validClassFile.delete();
+			invalidClassFile.delete();
+			directory.delete();
+			root.delete();
+		}
+	}
+	
+	/**
+	 * Writes a class file which has a single class attribute with given name index.
+	 */
+	private static void writeClassFile(File file, String className, int attributeNameIndex) throws IOException {
+		DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+		try {
+			out.writeInt(0xCAFEBABE);
+			out.writeShort(0);
+			out.writeShort(49);
+			out.writeShort(5);
+			out.writeByte(1);
+			out.writeUTF(className);
+			out.writeByte(7);
+			out.writeShort(1);
+			out.writeByte(1);
+			out.writeUTF("java/lang/Object");
+			out.writeByte(7);
+			out.writeShort(3);
+			// Access flags, class, super class and counts of interfaces, fields and methods
+			out.writeShort(0x0021);
+			out.writeShort(2);
+			out.writeShort(4);
+			out.writeShort(0);
+			out.writeShort(0);
+			out.writeShort(0);
+			out.writeShort(1);
+			out.writeShort(attributeNameIndex);
+			out.writeInt(0);
+		}
+		finally {
+			out.close();
+		}
+	}
+	
+	private static void addClassFile(JarOutputStream out, Class<?> clazz) throws IOException {
+		String name = clazz.getName().replace('.', '/') + ".class";
+		out.putNextEntry(new JarEntry(name));
+		InputStream in = clazz.getClassLoader().getResourceAsStream(name);
+		try {
+			byte[] buffer = new byte[1024];
+			for (int length = in.read(buffer); length > 0; length = in.read(buffer)) {
+				out.write(buffer, 0, length);
+			}
+		}
+		finally {
+			in.close();
+		}
+		out.closeEntry();
+	}
+	
+	@Retention(RetentionPolicy.CLASS)
+	static @interface ScannedMarker {
+		
+		String value() default "";
+		int[] ids() default { };
+		
+	}
+	
+	@ScannedMarker(value = "base", ids = { 1, 2 })
+	static class ScannedBase {
+		
+	}
+	
+	static class ScannedChild extends ScannedBase implements Runnable {
+		
+		@Override
+		public void run() {
+			
+		}
+		
+	}
+	
+	static class ScannedGrandChild extends ScannedChild {
+		
+	}
+	
+}
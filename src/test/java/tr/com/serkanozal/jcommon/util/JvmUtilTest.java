@@ -16,9 +16,301 @@
 
 package tr.com.serkanozal.jcommon.util;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
 /**
  * @author Serkan ÖZAL
  */
 public class JvmUtilTest {
 
+	@Test
+	public void sizeOfArraysMeasuredSuccessfully() {
+		long[] longArray = new long[10];
+		long longArraySize = JvmUtil.alignObjectSize(JvmUtil.getArrayHeaderSize() + 10 * JvmUtil.LONG_SIZE);
+		Assert.assertEquals(longArraySize, JvmUtil.sizeOf(longArray));
+		
+		Object[] objectArray = new Object[] { longArray, null, longArray };
+		long objectArraySize = JvmUtil.alignObjectSize(JvmUtil.getArrayHeaderSize() + 3 * JvmUtil.getReferenceSize());
+		// Shared array is counted once
+		Assert.assertEquals(objectArraySize + longArraySize, JvmUtil.sizeOf(objectArray));
+		Assert.assertEquals(objectArraySize + longArraySize, JvmUtil.sizeOfAll(objectArray, longArray));
+	}
+	
+	@Test
+	public void sizeOfCyclicGraphMeasuredSuccessfully() {
+		Node first = new Node(null);
+		Node second = new Node(first);
+		first.next = second;
+		
+		long nodeSize = JvmUtil.shallowSizeOf(first);
+		long dataSize = JvmUtil.shallowSizeOf(first.data);
+		Assert.assertTrue(nodeSize > 0);
+		// Both of nodes and their shared data array are counted once
+		Assert.assertEquals(2 * nodeSize + dataSize, JvmUtil.sizeOf(first));
+		Assert.assertEquals(2 * nodeSize + dataSize, JvmUtil.sizeOf(second));
+		Assert.assertEquals(nodeSize + dataSize, JvmUtil.sizeOf(new Node(null)));
+	}
+	
+	@Test
+	public void sizeOfLargeGraphMeasuredByMultipleThreadsSuccessfully() {
+		final int ENTRY_COUNT = 200000;
+		Map<Integer, List<Node>> map = new HashMap<Integer, List<Node>>();
+		Node last = null;
+		for (int i = 0; i < ENTRY_COUNT; i++) {
+			List<Node> nodes = new ArrayList<Node>();
+			last = new Node(last);
+			nodes.add(last);
+			nodes.add(new Node(null));
+			map.put(i, nodes);
+		}
+		
+		long size = JvmUtil.sizeOf(map);
+		Assert.assertTrue(size > ENTRY_COUNT * 3 * JvmUtil.shallowSizeOf(last));
+		for (int parallelism = 1; parallelism <= 8; parallelism <<= 1) {
+			Assert.assertEquals(size, JvmUtil.sizeOf(map, parallelism));
+		}
+	}
+	
+	@Test
+	public void sizeOfHugeContainersEstimatedSuccessfully() {
+		final int ENTRY_COUNT = 100000;
+		List<long[]> list = new ArrayList<long[]>(ENTRY_COUNT);
+		Map<Integer, long[]> map = new HashMap<Integer, long[]>();
+		Set<Integer> set = new HashSet<Integer>();
+		for (int i = 0; i < ENTRY_COUNT; i++) {
+			list.add(new long[8]);
+			map.put(ENTRY_COUNT + i, new long[8]);
+			set.add(ENTRY_COUNT + i);
+		}
+		
+		// All elements have the same size, so estimation is exact
+		JvmUtil.SizeEstimate listEstimate = JvmUtil.estimateSizeOf(list, 0.01);
+		Assert.assertEquals(JvmUtil.sizeOf(list), listEstimate.getSize());
+		Assert.assertEquals(listEstimate.getSize(), listEstimate.getLowerBound());
+		Assert.assertEquals(listEstimate.getSize(), listEstimate.getUpperBound());
+		Assert.assertEquals(ENTRY_COUNT, listEstimate.getElementCount());
+		Assert.assertEquals(ENTRY_COUNT / 100, listEstimate.getSampledElementCount());
+		Assert.assertTrue(listEstimate.isCompleted());
+		
+		JvmUtil.SizeEstimate arrayEstimate = JvmUtil.estimateSizeOf(list.toArray(), 0.01);
+		Assert.assertEquals(JvmUtil.sizeOf(list.toArray()), arrayEstimate.getSize());
+		
+		assertEstimated(JvmUtil.sizeOf(map), JvmUtil.estimateSizeOf(map, 0.01, 10000));
+		assertEstimated(JvmUtil.sizeOf(set), JvmUtil.estimateSizeOf(set, 0.01, 10000));
+		
+		// Other objects are measured exactly
+		Assert.assertEquals(JvmUtil.sizeOf(new long[8]), JvmUtil.estimateSizeOf(new long[8], 0.01).getSize());
+		
+		try {
+			JvmUtil.estimateSizeOf(list, 0.0);
+			Assert.fail("Sample ratio must be positive");
+		}
+		catch (IllegalArgumentException e) {
+			// Expected since sample ratio is not valid
+		}
+	}
+	
+	private static void assertEstimated(long expectedSize, JvmUtil.SizeEstimate estimate) {
+		Assert.assertTrue(estimate.toString(), estimate.getLowerBound() <= estimate.getSize());
+		Assert.assertTrue(estimate.toString(), estimate.getSize() <= estimate.getUpperBound());
+		// Entries differ only in a few bytes, so estimation is very close
+		Assert.assertTrue(estimate + " vs " + expectedSize, Math.abs(estimate.getSize() - expectedSize) < expectedSize / 100);
+	}
+	
+	@Test
+	public void classInfosCachedSuccessfully() {
+		JvmUtil.warmUpClassInfos(Node.class, String.class);
+		JvmUtil.ClassInfo classInfo = JvmUtil.getClassInfo(Node.class);
+		Assert.assertSame(classInfo, JvmUtil.getClassInfo(Node.class));
+		Assert.assertEquals(2, classInfo.referenceFieldOffsets.length);
+		Assert.assertEquals(0, classInfo.primitiveFieldOffsets.length);
+		Assert.assertFalse(classInfo.fieldOffsets.get("data").isStatic);
+		Assert.assertEquals(JvmUtil.shallowSizeOf(new Node(null)), classInfo.alignedShallowInstanceSize);
+		
+		Assert.assertNotNull(JvmUtil.getField(Node.class, "next"));
+		Assert.assertSame(JvmUtil.getField(Node.class, "next"), JvmUtil.getField(Node.class, "next"));
+	}
+	
+	@Test
+	public void addressesOfObjectsFoundByConcurrentThreadsSuccessfully() throws InterruptedException {
+		final int THREAD_COUNT = 8;
+		final Object[] objs = new Object[THREAD_COUNT + 1];
+		for (int i = 0; i < THREAD_COUNT; i++) {
+			objs[i] = new Node(null);
+		}
+		// Objects are moved to old generation, so they are not moved while threads are running
+		System.gc();
+		final long[] addresses = new long[objs.length];
+		JvmUtil.addressesOf(objs, addresses);
+		Assert.assertEquals(0, addresses[THREAD_COUNT]);
+		
+		final AtomicInteger mismatchCount = new AtomicInteger();
+		Thread[] threads = new Thread[THREAD_COUNT];
+		for (int i = 0; i < THREAD_COUNT; i++) {
+			final int index = i;
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					for (int j = 0; j < 100000; j++) {
+						// Other threads must never see the object of this thread
+						if (JvmUtil.addressOf(objs[index]) != addresses[index]) {
+							mismatchCount.incrementAndGet();
+						}
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		Assert.assertEquals(0, mismatchCount.get());
+		
+		try {
+			JvmUtil.addressesOf(objs, new long[1]);
+			Assert.fail("Addresses array is shorter than objects array");
+		}
+		catch (IllegalArgumentException e) {
+			// Expected since addresses array is too short
+		}
+	}
+	
+	@Test
+	public void optionsDetectedLazilySuccessfully() {
+		JvmUtil.VMOptions options = JvmUtil.getOptions();
+		Assert.assertSame(options, JvmUtil.getOptions());
+		Assert.assertEquals(JvmUtil.getIndexScale(), options.getReferenceSize());
+		Assert.assertEquals(JvmUtil.getIndexScale() < JvmUtil.getAddressSize(), options.isCompressedRef());
+		// Object alignment is always power of two
+		Assert.assertTrue(options.getObjectAlignment() > 0);
+		Assert.assertEquals(0, options.getObjectAlignment() & (options.getObjectAlignment() - 1));
+		Assert.assertTrue(JvmUtil.getOptionsDetectionTime() >= 0);
+	}
+	
+	@Test
+	public void optionsCacheCheckedSuccessfully() throws IOException {
+		JvmUtil.VMOptions options = JvmUtil.getOptions();
+		File cacheDir = File.createTempFile("jcommon-vm-options", "");
+		cacheDir.delete();
+		File cacheFile = new File(new File(cacheDir, "cache"), "vm-options.properties");
+		try {
+			JvmUtil.storeOptions(cacheFile, "key", options);
+			Assert.assertTrue(cacheFile.isFile());
+			Assert.assertNull(JvmUtil.loadOptions(cacheFile, "otherKey"));
+			JvmUtil.VMOptions loadedOptions = JvmUtil.loadOptions(cacheFile, "key");
+			Assert.assertEquals(options.getReferenceSize(), loadedOptions.getReferenceSize());
+			Assert.assertEquals(options.getObjectAlignment(), loadedOptions.getObjectAlignment());
+			Assert.assertEquals(options.isCompressedRef(), loadedOptions.isCompressedRef());
+			Assert.assertEquals(options.getCompressRefShift(), loadedOptions.getCompressRefShift());
+			
+			// Options which don't match the probes are not used
+			JvmUtil.VMOptions wrongOptions = 
+					new JvmUtil.VMOptions("Wrong", options.getReferenceSize() * 2, options.getObjectAlignment(), 
+							options.isCompressedRef(), options.getCompressRefShift());
+			JvmUtil.storeOptions(cacheFile, "key", wrongOptions);
+			Assert.assertNull(JvmUtil.loadOptions(cacheFile, "key"));
+		}
+		finally {
+			cacheFile.delete();
+			cacheFile.getParentFile().delete();
+			cacheDir.delete();
+		}
+	}
+	
+	@Test
+	public void layoutDetectedByProbesSuccessfully() {
+		Assert.assertTrue(JvmUtil.isJavaVersionSupported());
+		// Header is a mark word followed by class pointer if it is not encoded in mark word
+		Assert.assertEquals(JvmUtil.getHeaderSize() - JvmUtil.getAddressSize(), JvmUtil.getClassDefPointerSize());
+		Assert.assertTrue(JvmUtil.getArrayHeaderSize() <= JvmUtil.arrayBaseOffset(long.class));
+		
+		long[] array = new long[10];
+		Object[] objs = new Object[] { array };
+		long[] addresses = new long[1];
+		JvmUtil.addressesOf(objs, addresses);
+		Assert.assertEquals(array.length, JvmUtil.getArrayLength(addresses[0], long.class));
+		Assert.assertEquals(
+				JvmUtil.alignObjectSize(JvmUtil.arrayBaseOffset(long.class) + array.length * JvmUtil.LONG_SIZE), 
+				JvmUtil.shallowSizeOf(array));
+		Assert.assertEquals(JvmUtil.shallowSizeOf(new Node(null)), JvmUtil.sizeOfWithUnsafe(new Node(null)));
+	}
+	
+	@Test
+	public void typesClassifiedSuccessfully() {
+		Assert.assertTrue(JvmUtil.isPrimitiveType(long.class));
+		Assert.assertFalse(JvmUtil.isPrimitiveType(Long.class));
+		Assert.assertFalse(JvmUtil.isPrimitiveType(null));
+		Assert.assertEquals(long.class, JvmUtil.primitiveTypeOf(Long.class));
+		Assert.assertEquals(char.class, JvmUtil.primitiveTypeOf(char.class));
+		Assert.assertNull(JvmUtil.primitiveTypeOf(String.class));
+		Assert.assertEquals(Boolean.class, JvmUtil.complexTypeOf(boolean.class));
+		Assert.assertEquals(Node.class, JvmUtil.complexTypeOf(Node.class));
+		Assert.assertEquals(JvmUtil.SHORT_SIZE, JvmUtil.sizeOfType(short.class));
+		Assert.assertEquals(JvmUtil.DOUBLE_SIZE, JvmUtil.sizeOfType(double.class));
+		Assert.assertEquals(JvmUtil.getReferenceSize(), JvmUtil.sizeOfType(Double.class));
+	}
+	
+	@Test
+	public void objectGraphDumpedWithLimitsSuccessfully() throws IOException {
+		// Long chain would overflow thread stack if graph is traversed recursively
+		Node head = null;
+		for (int i = 0; i < 100000; i++) {
+			head = new Node(head);
+		}
+		StringWriter sw = new StringWriter();
+		JvmUtil.dump(sw, head, new JvmUtil.DumpOptions().setMaxDepth(8).setTopCount(3));
+		String output = sw.toString();
+		Assert.assertTrue(output.contains("Total: 100,001 objects\n"));
+		Assert.assertTrue(output.contains(String.format("%,d  root%n", JvmUtil.sizeOf(head))));
+		Assert.assertTrue(output.contains("more below depth 8"));
+		Assert.assertTrue(output.split("\n").length < 32);
+		
+		Object[] array = new Object[1000];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = new Integer(i);
+		}
+		sw = new StringWriter();
+		JvmUtil.dump(sw, array, new JvmUtil.DumpOptions());
+		output = sw.toString();
+		Assert.assertTrue(output.contains("+- 1,000 x Integer"));
+		Assert.assertFalse(output.contains("[0] => Integer"));
+		
+		sw = new StringWriter();
+		JvmUtil.dump(sw, array, new JvmUtil.DumpOptions().setAggregationThreshold(Integer.MAX_VALUE).setMaxLines(10));
+		output = sw.toString();
+		Assert.assertTrue(output.contains("[0] => Integer"));
+		Assert.assertTrue(output.contains("output is limited to 10 lines"));
+		Assert.assertFalse(output.contains("[10] => Integer"));
+		
+		sw = new StringWriter();
+		JvmUtil.dump(sw, head, new JvmUtil.DumpOptions().setMaxObjects(1000));
+		Assert.assertTrue(sw.toString().contains("sizes are partial"));
+	}
+	
+	static class Node {
+		
+		Node next;
+		// Same array is shared by all nodes which are created with a next node
+		final long[] data;
+		
+		Node(Node next) {
+			this.next = next;
+			this.data = next != null ? next.data : new long[4];
+		}
+		
+	}
+	
 }
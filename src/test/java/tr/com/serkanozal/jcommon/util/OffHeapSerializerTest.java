@@ -0,0 +1,225 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package tr.com.serkanozal.jcommon.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ReadOnlyBufferException;
+import java.util.Arrays;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import sun.misc.Unsafe;
+
+/**
+ * @author Serkan ÖZAL
+ */
+@SuppressWarnings("restriction")
+public class OffHeapSerializerTest {
+
+	private final Unsafe unsafe = JvmUtil.getUnsafe();
+	
+	@Test
+	public void objectSerializedIntoNativeMemoryAndDeserializedSuccessfully() {
+		Record record = createRecord();
+		long size = OffHeapSerializer.sizeOf(record);
+		long address = unsafe.allocateMemory(size);
+		try {
+			Assert.assertEquals(size, OffHeapSerializer.serialize(record, address, size));
+			assertRecord(record, OffHeapSerializer.deserialize(Record.class, address, size));
+			
+			try {
+				OffHeapSerializer.serialize(record, address, size - 1);
+				Assert.fail("Region is smaller than serialized form");
+			}
+			catch (IndexOutOfBoundsException e) {
+				// Expected since region is too small
+			}
+		}
+		finally {
+			unsafe.freeMemory(address);
+		}
+	}
+	
+	@Test
+	public void objectSerializedIntoBuffersAndDeserializedSuccessfully() {
+		Record record = createRecord();
+		int size = (int) OffHeapSerializer.sizeOf(record);
+		ByteBuffer[] buffers = new ByteBuffer[] { ByteBuffer.allocate(size + 10), ByteBuffer.allocateDirect(size + 10) };
+		for (ByteBuffer buffer : buffers) {
+			buffer.position(10);
+			Assert.assertEquals(size, OffHeapSerializer.serialize(record, buffer));
+			Assert.assertEquals(size + 10, buffer.position());
+			
+			buffer.position(10);
+			assertRecord(record, OffHeapSerializer.deserialize(Record.class, buffer));
+			Assert.assertEquals(size + 10, buffer.position());
+		}
+		
+		long[] values = new long[] { 1, -1, Long.MAX_VALUE };
+		ByteBuffer buffer = ByteBuffer.allocate((int) OffHeapSerializer.sizeOf(values));
+		OffHeapSerializer.serialize(values, buffer);
+		buffer.flip();
+		Assert.assertTrue(Arrays.equals(values, OffHeapSerializer.deserialize(long[].class, buffer)));
+	}
+	
+	@Test
+	public void unsupportedGraphsRejectedSuccessfully() {
+		Node first = new Node();
+		first.next = new Node();
+		first.next.next = first;
+		try {
+			OffHeapSerializer.sizeOf(first);
+			Assert.fail("Cyclic graph cannot be serialized");
+		}
+		catch (IllegalArgumentException e) {
+			// Expected since graph is cyclic
+		}
+		
+		Holder holder = new Holder();
+		holder.value = "abc";
+		try {
+			OffHeapSerializer.sizeOf(holder);
+			Assert.fail("Field holds an instance of a sub class of its type");
+		}
+		catch (IllegalArgumentException e) {
+			// Expected since class names are not serialized
+		}
+	}
+	
+	@Test
+	public void corruptedOrReadOnlyBuffersRejectedSuccessfully() {
+		ByteBuffer buffer = ByteBuffer.allocate(64).order(ByteOrder.nativeOrder());
+		int size = OffHeapSerializer.serialize(new String[] { "a", "b" }, buffer);
+		// Length of array is written at first and it is corrupted
+		int[] lengths = new int[] { Integer.MAX_VALUE, -1, size };
+		for (int length : lengths) {
+			buffer.putInt(0, length);
+			buffer.position(0);
+			buffer.limit(size);
+			try {
+				OffHeapSerializer.deserialize(String[].class, buffer);
+				Assert.fail("Array length exceeds buffer");
+			}
+			catch (IndexOutOfBoundsException e) {
+				// Expected since array cannot be in buffer
+			}
+		}
+		
+		// Every byte is a not null marker of the next node, so nodes are nested endlessly
+		byte[] markers = new byte[OffHeapSerializer.MAX_DEPTH * 2];
+		Arrays.fill(markers, (byte) 1);
+		try {
+			OffHeapSerializer.deserialize(Node.class, ByteBuffer.wrap(markers));
+			Assert.fail("Nodes are nested deeper than limit");
+		}
+		catch (IllegalArgumentException e) {
+			// Expected since depth limit is exceeded before buffer ends
+		}
+		
+		ByteBuffer directBuffer = ByteBuffer.allocateDirect(64);
+		try {
+			OffHeapSerializer.serialize(new long[] { 1 }, directBuffer.asReadOnlyBuffer());
+			Assert.fail("Buffer is read-only");
+		}
+		catch (ReadOnlyBufferException e) {
+			// Expected since buffer is read-only
+		}
+		Assert.assertEquals(0, directBuffer.getLong(4));
+	}
+	
+	private static Record createRecord() {
+		Record record = new Record();
+		record.b = true;
+		record.bt = -3;
+		record.c = 'x';
+		record.s = 1234;
+		record.i = -123456;
+		record.f = 1.5f;
+		record.l = Long.MIN_VALUE + 7;
+		record.d = Math.PI;
+		record.name = "record";
+		record.values = new int[] { 3, 2, 1 };
+		record.tags = new String[] { "a", null, "b" };
+		record.state = State.ACTIVE;
+		record.transientValue = 99;
+		record.child = new Record();
+		record.child.i = 42;
+		return record;
+	}
+	
+	private static void assertRecord(Record expected, Record actual) {
+		Assert.assertEquals(expected.b, actual.b);
+		Assert.assertEquals(expected.bt, actual.bt);
+		Assert.assertEquals(expected.c, actual.c);
+		Assert.assertEquals(expected.s, actual.s);
+		Assert.assertEquals(expected.i, actual.i);
+		Assert.assertEquals(expected.f, actual.f);
+		Assert.assertEquals(expected.l, actual.l);
+		Assert.assertEquals(expected.d, actual.d);
+		Assert.assertEquals(expected.name, actual.name);
+		Assert.assertTrue(Arrays.equals(expected.values, actual.values));
+		Assert.assertTrue(Arrays.equals(expected.tags, actual.tags));
+		Assert.assertSame(expected.state, actual.state);
+		// Transient fields are not serialized
+		Assert.assertEquals(0, actual.transientValue);
+		Assert.assertNull(actual.child.name);
+		Assert.assertNull(actual.child.child);
+		Assert.assertEquals(expected.child.i, actual.child.i);
+	}
+	
+	enum State {
+		
+		ACTIVE, PASSIVE
+		
+	}
+	
+	static class Record {
+		
+		boolean b;
+		byte bt;
+		char c;
+		short s;
+		int i;
+		float f;
+		long l;
+		double d;
+		String name;
+		int[] values;
+		String[] tags;
+		State state;
+		transient int transientValue;
+		Record child;
+		
+	}
+	
+	static class Node {
+		
+		Node next;
+		
+	}
+	
+	static class Holder {
+		
+		Object value;
+		
+	}
+	
+}
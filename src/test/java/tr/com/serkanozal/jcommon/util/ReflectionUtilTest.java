@@ -17,6 +17,10 @@
 package tr.com.serkanozal.jcommon.util;
 
 import java.io.Serializable;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
 import java.util.List;
 
 import junit.framework.Assert;
@@ -86,11 +90,150 @@ public class ReflectionUtilTest {
 		Assert.assertEquals("i", ReflectionUtil.getField(SampleClass.class, "i").getName());
 	}
 	
+	@Test
+	public void getMethod() {
+		Assert.assertEquals("getI", ReflectionUtil.getMethod(SampleClass.class, "getI").getName());
+		Assert.assertNotNull(ReflectionUtil.getMethod(SampleClass.class, "setS", new Class<?>[] { String.class }));
+		Assert.assertNull(ReflectionUtil.getMethod(SampleClass.class, "setS", new Class<?>[] { int.class }));
+		Assert.assertNull(ReflectionUtil.getMethod(SampleClass.class, "noSuchMethod"));
+		// Resolved methods are cached
+		Assert.assertSame(ReflectionUtil.getMethod(SampleClass.class, "getI"), 
+						  ReflectionUtil.getMethod(SampleClass.class, "getI", null));
+	}
+	
+	@Test
+	public void fieldAccessorAccessedSuccessfully() {
+		FieldAccessor intAccessor = ReflectionUtil.getFieldAccessor(AccessorSample.class, "i");
+		Assert.assertSame(intAccessor, ReflectionUtil.getFieldAccessor(AccessorSample.class, "i"));
+		Assert.assertSame(intAccessor.getField(), ReflectionUtil.getField(AccessorSample.class, "i"));
+		Assert.assertNull(ReflectionUtil.getFieldAccessor(AccessorSample.class, "noSuchField"));
+		
+		AccessorSample sample = new AccessorSample();
+		intAccessor.setInt(sample, 10);
+		Assert.assertEquals(10, sample.i);
+		Assert.assertEquals(10, intAccessor.getInt(sample));
+		intAccessor.set(sample, 20);
+		Assert.assertEquals(20, intAccessor.get(sample));
+		
+		FieldAccessor longAccessor = ReflectionUtil.getFieldAccessor(AccessorSample.class, "l");
+		longAccessor.setLong(sample, Long.MAX_VALUE);
+		Assert.assertEquals(Long.MAX_VALUE, longAccessor.getLong(sample));
+		FieldAccessor doubleAccessor = ReflectionUtil.getFieldAccessor(AccessorSample.class, "d");
+		doubleAccessor.setDouble(sample, 1.5);
+		Assert.assertEquals(1.5, sample.d);
+		FieldAccessor booleanAccessor = ReflectionUtil.getFieldAccessor(AccessorSample.class, "b");
+		booleanAccessor.setBoolean(sample, true);
+		Assert.assertTrue(booleanAccessor.getBoolean(sample));
+		
+		// Inherited field
+		FieldAccessor stringAccessor = ReflectionUtil.getFieldAccessor(AccessorSample.class, "s");
+		stringAccessor.set(sample, "str");
+		Assert.assertEquals("str", sample.getS());
+		Assert.assertEquals("str", stringAccessor.get(sample));
+		
+		FieldAccessor staticAccessor = ReflectionUtil.getFieldAccessor(AccessorSample.class, "counter");
+		Assert.assertTrue(staticAccessor.isStatic());
+		staticAccessor.setInt(null, 5);
+		Assert.assertEquals(5, AccessorSample.counter);
+		
+		try {
+			intAccessor.getLong(sample);
+			Assert.fail("Field cannot be accessed as another type");
+		}
+		catch (IllegalArgumentException e) {
+			
+		}
+		try {
+			intAccessor.getInt(new SampleClass());
+			Assert.fail("Field cannot be accessed on object of another class");
+		}
+		catch (IllegalArgumentException e) {
+			
+		}
+		try {
+			stringAccessor.set(sample, 1);
+			Assert.fail("Field cannot be set to value of another type");
+		}
+		catch (IllegalArgumentException e) {
+			
+		}
+	}
+	
+	@Test
+	public void staticFieldAccessorInitializesClassLazilySuccessfully() {
+		FieldAccessor accessor = ReflectionUtil.getFieldAccessor(LazilyInitialized.class, "value");
+		Assert.assertFalse(lazilyInitializedClassInitialized);
+		Assert.assertEquals(1, accessor.getInt(null));
+		Assert.assertTrue(lazilyInitializedClassInitialized);
+		
+		// Initialization error is reported while field is accessed, not while accessor is created
+		FieldAccessor failingAccessor = ReflectionUtil.getFieldAccessor(FailingInitialization.class, "value");
+		Assert.assertNotNull(failingAccessor);
+		try {
+			failingAccessor.getInt(null);
+			Assert.fail("Class cannot be initialized");
+		}
+		catch (LinkageError e) {
+			
+		}
+	}
+	
+	@Test
+	public void methodAccessorInvokedSuccessfully() {
+		MethodAccessor setter = ReflectionUtil.getMethodAccessor(SampleClass.class, "setI", new Class<?>[] { int.class });
+		MethodAccessor getter = ReflectionUtil.getMethodAccessor(SampleClass.class, "getI");
+		Assert.assertSame(getter, ReflectionUtil.getMethodAccessor(SampleClass.class, "getI"));
+		
+		SampleClass sample = new SampleClass();
+		setter.invoke(sample, 5);
+		Assert.assertEquals(5, getter.invoke(sample));
+		
+		MethodAccessor thrower = ReflectionUtil.getMethodAccessor(AccessorSample.class, "fail", null);
+		try {
+			thrower.invoke(new AccessorSample());
+			Assert.fail("Exception of method must be rethrown");
+		}
+		catch (UnsupportedOperationException e) {
+			
+		}
+	}
+	
 	@Test
 	public void getAllFields() {
 		Assert.assertEquals(2, ReflectionUtil.getAllFields(SampleClass.class).size());
 	}
 	
+	@Test
+	public void annotatedMembersIndexedSuccessfully() {
+		List<Field> fields = ReflectionUtil.getAllFields(AnnotatedSubClass.class);
+		Assert.assertEquals(4, fields.size());
+		// Super class fields are first
+		Assert.assertEquals("a", fields.get(0).getName());
+		Assert.assertEquals("d", fields.get(3).getName());
+		Assert.assertSame(fields, ReflectionUtil.getAllFields(AnnotatedSubClass.class));
+		try {
+			fields.clear();
+			Assert.fail("Shared list cannot be modified");
+		}
+		catch (UnsupportedOperationException e) {
+			
+		}
+		
+		List<Field> markedFields = ReflectionUtil.getAllFields(AnnotatedSubClass.class, Marker.class);
+		Assert.assertEquals(2, markedFields.size());
+		Assert.assertEquals("a", markedFields.get(0).getName());
+		Assert.assertEquals("c", markedFields.get(1).getName());
+		Assert.assertTrue(markedFields.get(1).isAccessible());
+		Assert.assertEquals(1, ReflectionUtil.getAllFields(AnnotatedClass.class, Marker.class).size());
+		Assert.assertTrue(ReflectionUtil.getAllFields(AnnotatedSubClass.class, Deprecated.class).isEmpty());
+		
+		List<Method> markedMethods = ReflectionUtil.getAllMethods(AnnotatedSubClass.class, Marker.class);
+		Assert.assertEquals(1, markedMethods.size());
+		Assert.assertEquals("marked", markedMethods.get(0).getName());
+		Assert.assertEquals(2, ReflectionUtil.getAllMethods(AnnotatedSubClass.class).size());
+		Assert.assertTrue(ReflectionUtil.getAllMethods(null).isEmpty());
+	}
+	
 	@Test
 	public void isPrimitiveType() {
 		Assert.assertTrue(ReflectionUtil.isPrimitiveType(int.class));
@@ -98,6 +241,19 @@ public class ReflectionUtilTest {
 		Assert.assertFalse(ReflectionUtil.isPrimitiveType(SampleClass.class));
 	}
 	
+	@Test
+	public void isPrimitiveTypeName() {
+		for (String name : new String[] { "boolean", "byte", "char", "short", "int", "float", "long", "double" }) {
+			Assert.assertTrue(ReflectionUtil.isPrimitiveType(name));
+			Assert.assertTrue(ReflectionUtil.isPrimitiveType(name.toUpperCase()));
+		}
+		Assert.assertFalse(ReflectionUtil.isPrimitiveType("Integer"));
+		Assert.assertFalse(ReflectionUtil.isPrimitiveType("bytes"));
+		Assert.assertFalse(ReflectionUtil.isPrimitiveType(""));
+		Assert.assertEquals(Integer.class, ReflectionUtil.getNonPrimitiveType("Int"));
+		Assert.assertEquals(String.class, ReflectionUtil.getNonPrimitiveType("java.lang.String"));
+	}
+	
 	@Test
 	public void isNonPrimitiveType() {
 		Assert.assertFalse(ReflectionUtil.isNonPrimitiveType(int.class));
@@ -108,6 +264,9 @@ public class ReflectionUtilTest {
 	@Test
 	public void isComplexType() {
 		Assert.assertFalse(ReflectionUtil.isComplexType(String.class));
+		Assert.assertFalse(ReflectionUtil.isComplexType(Long.class));
+		Assert.assertFalse(ReflectionUtil.isComplexType(Thread.State.class));
+		Assert.assertFalse(ReflectionUtil.isComplexType(java.util.ArrayList.class));
 		Assert.assertTrue(ReflectionUtil.isComplexType(SampleClass.class));
 	}
 	
@@ -115,6 +274,8 @@ public class ReflectionUtilTest {
 	public void isCollectionType() {
 		Assert.assertFalse(ReflectionUtil.isCollectionType(String.class));
 		Assert.assertTrue(ReflectionUtil.isCollectionType(List.class));
+		Assert.assertTrue(ReflectionUtil.isCollectionType(int[].class));
+		Assert.assertTrue(ReflectionUtil.isCollectionType(java.util.HashMap.class));
 	}
 	
 	@Test
@@ -136,7 +297,83 @@ public class ReflectionUtilTest {
 		Assert.assertTrue(ReflectionUtil.isDecimalType(short.class));
 		Assert.assertTrue(ReflectionUtil.isDecimalType(int.class));
 		Assert.assertTrue(ReflectionUtil.isDecimalType(long.class));
+		Assert.assertTrue(ReflectionUtil.isDecimalType(Long.class));
+		Assert.assertFalse(ReflectionUtil.isDecimalType(double.class));
+		Assert.assertFalse(ReflectionUtil.isDecimalType(char.class));
 		Assert.assertFalse(ReflectionUtil.isCollectionType(double.class));
 	}
 	
+	private static volatile boolean lazilyInitializedClassInitialized;
+	
+	@SuppressWarnings("unused")
+	private static class LazilyInitialized {
+		
+		private static int value = initialize();
+		
+		private static int initialize() {
+			lazilyInitializedClassInitialized = true;
+			return 1;
+		}
+		
+	}
+	
+	@SuppressWarnings("unused")
+	private static class FailingInitialization {
+		
+		private static int value = fail();
+		
+		private static int fail() {
+			throw new IllegalStateException();
+		}
+		
+	}
+	
+	private static class AccessorSample extends SampleClass {
+		
+		private static int counter;
+		
+		private int i;
+		private volatile long l;
+		private double d;
+		private boolean b;
+		
+		@SuppressWarnings("unused")
+		private void fail() {
+			throw new UnsupportedOperationException();
+		}
+		
+	}
+	
+	@Retention(RetentionPolicy.RUNTIME)
+	private static @interface Marker {
+		
+	}
+	
+	@SuppressWarnings("unused")
+	private static class AnnotatedClass {
+		
+		@Marker
+		private int a;
+		private int b;
+		
+		@Marker
+		private void marked() {
+			
+		}
+		
+	}
+	
+	@SuppressWarnings("unused")
+	private static class AnnotatedSubClass extends AnnotatedClass {
+		
+		@Marker
+		private int c;
+		private int d;
+		
+		private void unmarked() {
+			
+		}
+		
+	}
+	
 }